@@ -1,5 +1,6 @@
 package com.ascendix.jdbc.salesforce;
 
+import com.ascendix.jdbc.salesforce.connection.CacheDatabase;
 import com.ascendix.jdbc.salesforce.connection.ForceConnection;
 import com.ascendix.jdbc.salesforce.connection.ForceConnectionInfo;
 import com.ascendix.jdbc.salesforce.connection.ForceService;
@@ -82,9 +83,23 @@ public class ForceDriver implements Driver {
             }
             info.setApiVersion(resolveStringProperty(properties, "api", ForceService.DEFAULT_API_VERSION));
             info.setLoginDomain(resolveStringProperty(properties, "loginDomain", ForceService.DEFAULT_LOGIN_DOMAIN));
+            info.setPrefetchDepth(resolveIntProperty(properties, "prefetchDepth", ForceService.DEFAULT_PREFETCH_DEPTH));
+            info.setFetchSize(resolveIntProperty(properties, "fetchSize", 0));
+            info.setChildQueryConcurrency(resolveIntProperty(properties, "childQueryConcurrency", ForceService.DEFAULT_CHILD_QUERY_CONCURRENCY));
+            info.setDecodeParallelism(resolveIntProperty(properties, "decodeParallelism", 0));
+            info.setResultSetHeapBudget(resolveIntProperty(properties, "resultSetHeapBudget", 0));
+            info.setBulkThreshold(resolveIntProperty(properties, "bulkThreshold", 0));
+            info.setParallelExtract(resolveIntProperty(properties, "parallelExtract", 0));
+            info.setQueryTimeout(resolveIntProperty(properties, "queryTimeout", ForceService.DEFAULT_QUERY_TIMEOUT));
+            info.setResultCacheHeapBudget(resolveIntProperty(properties, "resultCacheHeapBudget", ForceService.DEFAULT_RESULT_CACHE_HEAP_BUDGET));
+            info.setCacheTtl(resolveIntProperty(properties, "cacheTtl", ForceService.DEFAULT_CACHE_TTL));
+            info.setCacheMaxRows(resolveIntProperty(properties, "cacheMaxRows", 0));
+            info.setCacheStaleWhileRevalidate(resolveIntProperty(properties, "cacheStaleWhileRevalidate", 0));
+            info.setCacheFile(properties.getProperty("cacheFile"));
+            CacheDatabase.setFile(info.getCacheFile());
 
             PartnerConnection partnerConnection = ForceService.createPartnerConnection(info);
-            return new ForceConnection(partnerConnection, (newUrl, userName, userPassword) -> {
+            return new ForceConnection(partnerConnection, info, (newUrl, userName, userPassword) -> {
                 logger.info("[ForceDriver] relogin helper ");
                 Properties newConnStringProps;
                 Properties newProperties = new Properties();
@@ -152,6 +167,18 @@ public class ForceDriver implements Driver {
         return defaultValue;
     }
 
+    protected static int resolveIntProperty(Properties properties, String propertyName, int defaultValue) {
+        String intValue = properties.getProperty(propertyName);
+        if (intValue != null && !intValue.trim().isEmpty()) {
+            try {
+                return Integer.parseInt(intValue.trim());
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "[ForceDriver] invalid value of "+propertyName+"="+intValue+", using "+defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     private static String resolveStringProperty(Properties properties, String propertyName, String defaultValue) {
         String boolValue = properties.getProperty(propertyName);
         if (boolValue != null) {
@@ -0,0 +1,70 @@
+package com.ascendix.jdbc.salesforce.connection;
+
+import com.sforce.ws.transport.Transport;
+import com.sforce.ws.transport.TransportFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Transport factory of the Partner API connections whose calls can be aborted from another thread.
+ * <p>
+ * The factory keeps the HTTP connections of the calls in flight. {@link #abort()} disconnects them,
+ * so a thread blocked on the response of a long query or queryMore call fails at once instead of waiting
+ * for the read timeout, and refuses the new calls until {@link #reset()}.
+ * The connections sharing the factory are aborted together.
+ */
+public class AbortableCalls implements TransportFactory {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private final Set<AbortableTransport> calls = ConcurrentHashMap.newKeySet();
+    private volatile boolean aborted;
+
+    @Override
+    public Transport createTransport() {
+        return new AbortableTransport(this);
+    }
+
+    /**
+     * Disconnects the calls in flight and refuses the new ones.
+     */
+    public void abort() {
+        aborted = true;
+        if (!calls.isEmpty()) {
+            logger.info("[AbortableCalls] aborting calls in flight: " + calls.size());
+        }
+        for (AbortableTransport call : calls) {
+            call.disconnect();
+        }
+    }
+
+    /**
+     * Accepts the new calls again.
+     */
+    public void reset() {
+        aborted = false;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    int getCallsInFlight() {
+        return calls.size();
+    }
+
+    void started(AbortableTransport call) {
+        calls.add(call);
+        // the abort may have missed the call registered at the same time
+        if (aborted) {
+            call.disconnect();
+        }
+    }
+
+    void finished(AbortableTransport call) {
+        calls.remove(call);
+    }
+}
@@ -0,0 +1,236 @@
+package com.ascendix.jdbc.salesforce.connection;
+
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.MessageHandler;
+import com.sforce.ws.MessageHandlerWithHeaders;
+import com.sforce.ws.transport.JdkHttpTransport;
+import com.sforce.ws.transport.LimitingInputStream;
+import com.sforce.ws.transport.LimitingOutputStream;
+import com.sforce.ws.transport.MessageHandlerOutputStream;
+import com.sforce.ws.transport.Transport;
+import com.sforce.ws.util.FileUtil;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The HTTP transport of the WSC {@link JdkHttpTransport} which exposes its connection to {@link AbortableCalls},
+ * so the call can be disconnected by another thread. The call is in flight from the connect
+ * until the response is closed.
+ */
+class AbortableTransport implements Transport {
+
+    private final AbortableCalls calls;
+    private ConnectorConfig config;
+    private URL url;
+    private volatile HttpURLConnection connection;
+    private boolean successful;
+
+    AbortableTransport(AbortableCalls calls) {
+        this.calls = calls;
+    }
+
+    @Override
+    public void setConfig(ConnectorConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public OutputStream connect(String uri, String soapAction) throws IOException {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("SOAPAction", "\"" + (soapAction == null ? "" : soapAction) + "\"");
+        headers.put("Content-Type", "text/xml; charset=UTF-8");
+        headers.put("Accept", "text/xml");
+        return connect(uri, headers);
+    }
+
+    @Override
+    public OutputStream connect(String uri, HashMap<String, String> headers) throws IOException {
+        return connect(uri, headers, true);
+    }
+
+    @Override
+    public OutputStream connect(String uri, HashMap<String, String> headers, boolean enableCompression) throws IOException {
+        if (calls.isAborted()) {
+            throw new InterruptedIOException("The call to " + uri + " is aborted");
+        }
+        url = new URL(uri);
+        HttpURLConnection httpConnection = JdkHttpTransport.createConnection(config, url, headers, enableCompression);
+        if (config.getSslContext() != null && httpConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) httpConnection).setSSLSocketFactory(config.getSslContext().getSocketFactory());
+        }
+        httpConnection.setRequestMethod("POST");
+        httpConnection.setDoInput(true);
+        httpConnection.setDoOutput(true);
+        if (config.useChunkedPost()) {
+            httpConnection.setChunkedStreamingMode(4096);
+        }
+        connection = httpConnection;
+        calls.started(this);
+        try {
+            return wrapOutput(httpConnection.getOutputStream(), enableCompression);
+        } catch (IOException | RuntimeException e) {
+            calls.finished(this);
+            throw e;
+        }
+    }
+
+    private OutputStream wrapOutput(OutputStream output, boolean enableCompression) throws IOException {
+        if (config.getMaxRequestSize() > 0) {
+            output = new LimitingOutputStream(config.getMaxRequestSize(), output);
+        }
+        if (enableCompression && config.isCompression()) {
+            output = new GZIPOutputStream(output);
+        }
+        if (config.isTraceMessage()) {
+            output = config.teeOutputStream(output);
+        }
+        if (config.hasMessageHandlers()) {
+            output = new MessageHandlerOutputStream(config, url, output);
+        }
+        return output;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        // the request is sent by the JDK connection when the response is requested, the abort before
+        // the request has no socket to close
+        if (calls.isAborted()) {
+            calls.finished(this);
+            throw aborted(null);
+        }
+        try {
+            return new CallInputStream(wrapInput(readResponse()));
+        } catch (IOException | RuntimeException e) {
+            calls.finished(this);
+            if (calls.isAborted()) {
+                throw aborted(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The JDK connection disconnected by another thread fails with any exception, even NullPointerException,
+     * the failures of the aborted call are reported as the abort.
+     */
+    private InterruptedIOException aborted(Throwable cause) {
+        InterruptedIOException aborted = new InterruptedIOException("The call to " + url + " is aborted");
+        aborted.initCause(cause);
+        return aborted;
+    }
+
+    private InputStream readResponse() throws IOException {
+        InputStream input;
+        try {
+            input = connection.getInputStream();
+        } catch (IOException e) {
+            // the SOAP faults come with the error status
+            input = connection.getErrorStream();
+            if (input == null) {
+                throw e;
+            }
+        }
+        successful = connection.getResponseCode() < 400;
+        return input;
+    }
+
+    private InputStream wrapInput(InputStream input) throws IOException {
+        if (config.getMaxResponseSize() > 0) {
+            input = new LimitingInputStream(config.getMaxResponseSize(), input);
+        }
+        if ("gzip".equals(connection.getHeaderField("Content-Encoding"))) {
+            input = new GZIPInputStream(input);
+        }
+        if (!config.hasMessageHandlers() && !config.isTraceMessage()) {
+            return input;
+        }
+        byte[] bytes = FileUtil.toBytes(input);
+        Iterator<MessageHandler> handlers = config.getMessagerHandlers();
+        while (handlers.hasNext()) {
+            MessageHandler handler = handlers.next();
+            if (handler instanceof MessageHandlerWithHeaders) {
+                ((MessageHandlerWithHeaders) handler).handleResponse(url, bytes, connection.getHeaderFields());
+            } else {
+                handler.handleResponse(url, bytes);
+            }
+        }
+        if (config.isTraceMessage()) {
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                config.getTraceStream().print(header.getKey());
+                config.getTraceStream().print("=");
+                config.getTraceStream().println(header.getValue());
+            }
+            config.teeInputStream(bytes);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    void disconnect() {
+        HttpURLConnection httpConnection = connection;
+        if (httpConnection != null) {
+            httpConnection.disconnect();
+        }
+    }
+
+    /**
+     * Ends the call when the response is closed.
+     */
+    private class CallInputStream extends FilterInputStream {
+
+        private CallInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException | RuntimeException e) {
+                if (calls.isAborted()) {
+                    throw aborted(e);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException | RuntimeException e) {
+                if (calls.isAborted()) {
+                    throw aborted(e);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                calls.finished(AbortableTransport.this);
+            }
+        }
+    }
+}
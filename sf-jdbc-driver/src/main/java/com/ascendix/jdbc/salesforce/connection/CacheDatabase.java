@@ -0,0 +1,176 @@
+package com.ascendix.jdbc.salesforce.connection;
+
+import org.mapdb.DB;
+import org.mapdb.DBException;
+import org.mapdb.DBMaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The MapDB database of the caches of the driver, shared by all the connections of the JVM.
+ * <p>
+ * The database is a temporary file deleted when the JVM exits unless the cacheFile connection property sets
+ * the file it is kept in, so the cached results, the cached metadata and the partner URLs survive a restart.
+ * The database is opened by the first cache which needs it. The file written by another version of the driver
+ * or not closed properly - the checksum of its header is checked by MapDB as it is opened - is created again,
+ * the file used by another JVM is not shared, the JVM falls back to a temporary file.
+ * <p>
+ * The keys of the caches start with the {@link #namespace} of the org and the API version of the connection,
+ * the secrets are {@link #hash hashed} before they are stored in the keys.
+ */
+public final class CacheDatabase {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    /** the version of the format of the records, a file of another version is created again */
+    static final int FORMAT_VERSION = 2;
+    static final String FORMAT_VERSION_NAME = "FormatVersion";
+    /** the time the file locked by the JVM being stopped is waited for */
+    private static final long FILE_LOCK_WAIT = TimeUnit.SECONDS.toMillis(5);
+
+    private static String path;
+    private static DB db;
+    private static boolean persistent;
+
+    private CacheDatabase() {
+    }
+
+    /**
+     * Sets the file of the database, the file set after the database is opened is ignored.
+     *
+     * @param cacheFile the path of the file, null or empty - a temporary file
+     */
+    public static synchronized void setFile(String cacheFile) {
+        String file = cacheFile == null || cacheFile.trim().isEmpty() ? null : cacheFile.trim();
+        if (file == null || file.equals(path)) {
+            return;
+        }
+        if (db != null) {
+            logger.warning("[CacheDatabase] the caches are open in " + (persistent ? path : "a temporary file")
+                    + ", the cache file " + file + " is ignored");
+            return;
+        }
+        path = file;
+    }
+
+    /**
+     * @return the database, opened by the first call
+     */
+    public static synchronized DB get() {
+        if (db == null) {
+            if (path != null) {
+                db = open(new File(path));
+                persistent = db != null;
+            }
+            if (db == null) {
+                db = temporary();
+            }
+        }
+        return db;
+    }
+
+    /**
+     * @return true if the caches are kept in the cache file
+     */
+    public static synchronized boolean isPersistent() {
+        get();
+        return persistent;
+    }
+
+    /**
+     * Opens the database of the file, the file of another format or broken is created again.
+     *
+     * @return the database, null if the file can not be used
+     */
+    static DB open(File file) {
+        try {
+            DB opened = fileDB(file);
+            if (isCurrentFormat(opened)) {
+                logger.info("[CacheDatabase] opened the cache file " + file);
+                return opened;
+            }
+            logger.info("[CacheDatabase] the cache file was written by another version, it is created again " + file);
+            opened.close();
+        } catch (DBException.FileLocked e) {
+            logger.warning("[CacheDatabase] the cache file is used by another process, the caches are not kept " + file);
+            return null;
+        } catch (DBException e) {
+            logger.log(Level.WARNING, "[CacheDatabase] the cache file is broken, it is created again " + file, e);
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+            DB created = fileDB(file);
+            created.atomicInteger(FORMAT_VERSION_NAME, FORMAT_VERSION).create();
+            return created;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "[CacheDatabase] failed to create the cache file, the caches are not kept " + file, e);
+            return null;
+        }
+    }
+
+    private static DB fileDB(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new DBException.VolumeIOError("Failed to create the directory " + parent);
+        }
+        return DBMaker.fileDB(file)
+                .fileChannelEnable()
+                .fileLockWait(FILE_LOCK_WAIT)
+                .closeOnJvmShutdown()
+                .make();
+    }
+
+    private static boolean isCurrentFormat(DB db) {
+        if (!db.getAllNames().iterator().hasNext()) {
+            // a new file
+            db.atomicInteger(FORMAT_VERSION_NAME, FORMAT_VERSION).create();
+            return true;
+        }
+        return db.exists(FORMAT_VERSION_NAME) && db.atomicInteger(FORMAT_VERSION_NAME).open().get() == FORMAT_VERSION;
+    }
+
+    private static DB temporary() {
+        return DBMaker.tempFileDB().closeOnJvmShutdown().make();
+    }
+
+    /**
+     * The org is the prefix of the session id, the host of the endpoint if the session id has no prefix.
+     *
+     * @return the prefix of the cache keys of the org and the API version
+     */
+    public static String namespace(String sessionId, String serviceEndpoint, String apiVersion) {
+        String org = null;
+        if (sessionId != null && sessionId.indexOf('!') > 0) {
+            org = sessionId.substring(0, sessionId.indexOf('!'));
+        } else if (serviceEndpoint != null) {
+            org = URI.create(serviceEndpoint).getHost();
+        }
+        return org + '/' + apiVersion + '/';
+    }
+
+    /**
+     * @return the SHA-256 of the secret in hex, the secrets are not stored as they are
+     */
+    public static String hash(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ascendix.jdbc.salesforce.connection;
 
 import com.ascendix.jdbc.salesforce.statement.ForcePreparedStatement;
 import com.ascendix.jdbc.salesforce.metadata.ForceDatabaseMetaData;
+import com.sforce.soap.partner.DescribeSObjectResult;
 import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.ws.ConnectionException;
 
@@ -20,9 +21,9 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.logging.Level;
@@ -46,19 +47,27 @@ public class ForceConnection implements Connection {
 
     private final PartnerConnection partnerConnection;
     /** the updated partner connection in case if we want to support relogin command */
-    private PartnerConnection partnerConnectionUpdated;
+    private volatile PartnerConnection partnerConnectionUpdated;
     /** the function to provide partner connection in case if we want to support relogin command */
     UpdateLoginFunction loginHandler;
 
     private final DatabaseMetaData metadata;
+    /** connection settings the connection has been opened with */
+    private final ForceConnectionInfo connectionInfo;
     private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
     private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
 
-    private Map connectionCache = new HashMap<>();
+    /** the descriptions of the objects shared by the statements of the connection, which may run at the same time */
+    private final Map<String, DescribeSObjectResult> connectionCache = new ConcurrentHashMap<>();
     Properties clientInfo = new Properties();
 
     public ForceConnection(PartnerConnection partnerConnection, UpdateLoginFunction loginHandler) {
+        this(partnerConnection, new ForceConnectionInfo(), loginHandler);
+    }
+
+    public ForceConnection(PartnerConnection partnerConnection, ForceConnectionInfo connectionInfo, UpdateLoginFunction loginHandler) {
         this.partnerConnection = partnerConnection;
+        this.connectionInfo = connectionInfo;
         this.metadata = new ForceDatabaseMetaData(this);
         this.loginHandler = loginHandler;
     }
@@ -96,6 +105,10 @@ public class ForceConnection implements Connection {
         return result;
     }
 
+    public ForceConnectionInfo getConnectionInfo() {
+        return connectionInfo;
+    }
+
     public DatabaseMetaData getMetaData() {
         return metadata;
     }
@@ -111,7 +124,7 @@ public class ForceConnection implements Connection {
         return "Salesforce";
     }
 
-    public Map getCache() {
+    public Map<String, DescribeSObjectResult> getCache() {
         return connectionCache;
     }
 
@@ -228,14 +241,14 @@ public class ForceConnection implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
         logger.info("[Conn] createStatement 2 IMPLEMENTED");
-        return new ForcePreparedStatement(this);
+        return new ForcePreparedStatement(this, resultSetType);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
             throws SQLException {
         logger.info("[Conn] prepareStatement 1 IMPLEMENTED "+sql);
-        return new ForcePreparedStatement(this, sql);
+        return new ForcePreparedStatement(this, sql, resultSetType);
     }
 
     @Override
@@ -295,8 +308,8 @@ public class ForceConnection implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
             throws SQLException {
-        logger.info("[Conn] createStatement 3 NOT_IMPLEMENTED");
-        return new ForcePreparedStatement(this);
+        logger.info("[Conn] createStatement 3 IMPLEMENTED");
+        return new ForcePreparedStatement(this, resultSetType);
     }
 
     @Override
@@ -15,4 +15,28 @@ public class ForceConnectionInfo {
     private String apiVersion = ForceService.DEFAULT_API_VERSION;
     private String loginDomain;
     private String clientName;
+    private int prefetchDepth = ForceService.DEFAULT_PREFETCH_DEPTH;
+    private int childQueryConcurrency = ForceService.DEFAULT_CHILD_QUERY_CONCURRENCY;
+    /** number of threads decoding the records of a query batch, 0 - the thread reading the results */
+    private int decodeParallelism;
+    /** default query batch size for the statements of the connection, 0 - the server default */
+    private int fetchSize;
+    /** megabytes of the rows of a scrollable result set kept in heap before they are spilled to disk, 0 - no limit */
+    private int resultSetHeapBudget;
+    /** number of records above which a query is run by the Bulk API, 0 - only the queries with the BULK hint */
+    private int bulkThreshold;
+    /** number of workers extracting the Id ranges of every query which can be split, 0 - only the queries with the PARALLEL hint */
+    private int parallelExtract;
+    /** seconds a query of a statement may run before it is cancelled, 0 - no limit */
+    private int queryTimeout = ForceService.DEFAULT_QUERY_TIMEOUT;
+    /** megabytes of the cached results kept in heap before they are demoted to disk, the cache is shared by the connections and takes the biggest budget */
+    private int resultCacheHeapBudget = ForceService.DEFAULT_RESULT_CACHE_HEAP_BUDGET;
+    /** seconds the results of the queries with the CACHE hint are cached unless the hint sets its own TTL */
+    private int cacheTtl = ForceService.DEFAULT_CACHE_TTL;
+    /** max number of the rows of a cached result unless the hint sets its own, 0 - no limit */
+    private int cacheMaxRows;
+    /** seconds an expired cached result is read while it is loaded again in background, 0 - the readers wait for the load */
+    private int cacheStaleWhileRevalidate;
+    /** the file the caches are kept in across the restarts of the JVM, null - a temporary file, the caches are shared by the connections and the first file is used */
+    private String cacheFile;
 }
@@ -5,12 +5,11 @@ import com.sforce.soap.partner.Connector;
 import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.ws.ConnectionException;
 import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.transport.TransportFactory;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
 import org.mapdb.HTreeMap;
 import org.mapdb.Serializer;
 
@@ -27,19 +26,30 @@ public class ForceService {
     public static final String DEFAULT_API_VERSION = "50.0";
     public static final int EXPIRE_AFTER_CREATE = 60;
     public static final int EXPIRE_STORE_SIZE = 16;
-
-
-    private static final DB cacheDb = DBMaker.tempFileDB().closeOnJvmShutdown().make();
-
-    private static HTreeMap<String, String> partnerUrlCache = cacheDb
-            .hashMap("PartnerUrlCache", Serializer.STRING, Serializer.STRING)
-            .expireAfterCreate(EXPIRE_AFTER_CREATE, TimeUnit.MINUTES)
-            .expireStoreSize(EXPIRE_STORE_SIZE * FileUtils.ONE_MB)
-            .create();
-
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+    public static final int DEFAULT_CHILD_QUERY_CONCURRENCY = 4;
+    public static final int DEFAULT_PARALLEL_EXTRACT_WORKERS = 4;
+    public static final int DEFAULT_QUERY_TIMEOUT = 0;
+    public static final int DEFAULT_RESULT_CACHE_HEAP_BUDGET = 64;
+    public static final int DEFAULT_CACHE_TTL = 3600;
+
+
+    /**
+     * The partner URLs of the access tokens, the cache database is opened by the first connection by a session id.
+     */
+    private static final class PartnerUrls {
+
+        private static final HTreeMap<String, String> partnerUrlCache = CacheDatabase.get()
+                .hashMap("PartnerUrlCache", Serializer.STRING, Serializer.STRING)
+                .expireAfterCreate(EXPIRE_AFTER_CREATE, TimeUnit.MINUTES)
+                .expireStoreSize(EXPIRE_STORE_SIZE * FileUtils.ONE_MB)
+                .createOrOpen();
+    }
 
     private static String getPartnerUrl(String accessToken, boolean sandbox) {
-        return partnerUrlCache.computeIfAbsent(accessToken, s -> getPartnerUrlFromUserInfo(accessToken, sandbox));
+        // the cache may be kept in a file, the token is not
+        return PartnerUrls.partnerUrlCache.computeIfAbsent(CacheDatabase.hash(accessToken),
+                s -> getPartnerUrlFromUserInfo(accessToken, sandbox));
     }
 
     private static String getPartnerUrlFromUserInfo(String accessToken, boolean sandbox) {
@@ -101,6 +111,36 @@ public class ForceService {
         return connection;
     }
 
+    /**
+     * Opens another connection in the session of the given one. The connections do not share the SOAP headers,
+     * so they can run queries with different query options at the same time.
+     * The calls of the new connection are made by the transport factory of the given one.
+     */
+    public static PartnerConnection createSessionConnection(PartnerConnection connection) throws ConnectionException {
+        return createSessionConnection(connection, connection.getConfig().getTransportFactory());
+    }
+
+    /**
+     * Opens another connection in the session of the given one which makes its calls by the given transport factory,
+     * null - the default transport.
+     */
+    public static PartnerConnection createSessionConnection(PartnerConnection connection, TransportFactory transportFactory)
+            throws ConnectionException {
+        ConnectorConfig source = connection.getConfig();
+        ConnectorConfig partnerConfig = new ConnectorConfig();
+        partnerConfig.setTransportFactory(transportFactory);
+        partnerConfig.setSessionId(source.getSessionId());
+        partnerConfig.setServiceEndpoint(source.getServiceEndpoint());
+        partnerConfig.setConnectionTimeout(source.getConnectionTimeout());
+        partnerConfig.setReadTimeout(source.getReadTimeout());
+        partnerConfig.setCompression(source.isCompression());
+        PartnerConnection sessionConnection = Connector.newConnection(partnerConfig);
+        if (connection.getCallOptions() != null) {
+            sessionConnection.setCallOptions(connection.getCallOptions().getClient(), connection.getCallOptions().getDefaultNamespace());
+        }
+        return sessionConnection;
+    }
+
     private static String buildAuthEndpoint(ForceConnectionInfo info) {
         String protocol = info.getHttps() ? "https" : "http";
         String domain = info.getSandbox() ? SANDBOX_LOGIN_DOMAIN : info.getLoginDomain() != null ? info.getLoginDomain() : DEFAULT_LOGIN_DOMAIN;
@@ -0,0 +1,148 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.google.api.client.http.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forward-only cursor over the results of a completed Bulk API 2.0 query job.
+ * <p>
+ * The results are downloaded chunk by chunk, every chunk is a CSV stream with its own header line.
+ * The records are parsed from the stream as the pages are requested, so only the current page
+ * and the buffer of the parser are held in memory. The next chunk is requested when the current one is read.
+ * <p>
+ * With a positive max rows the cursor stops as soon as that many rows are produced.
+ */
+public class BulkQueryCursor implements AutoCloseable {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    public static final int DEFAULT_PAGE_SIZE = 2000;
+
+    private final BulkQueryService service;
+    private final String jobId;
+    private final int maxRows;
+    private HttpResponse chunk;
+    private CsvReader reader;
+    /** the locator of the next chunk, null for the first one */
+    private String nextLocator;
+    private boolean lastChunk;
+    private List<String> columnNames;
+    private int chunksFetched;
+    private int rowsReturned;
+    private boolean exhausted;
+    private boolean closed;
+
+    BulkQueryCursor(BulkQueryService service, String jobId, int maxRows) {
+        this.service = service;
+        this.jobId = jobId;
+        this.maxRows = maxRows;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @return the names of the columns from the header of the results
+     */
+    public List<String> getColumnNames() throws IOException {
+        if (columnNames == null && !closed) {
+            openNextChunk();
+        }
+        return columnNames;
+    }
+
+    public boolean hasNextPage() {
+        return !closed && !exhausted;
+    }
+
+    /**
+     * @param pageSize  the max number of rows in the page, 0 - {@link #DEFAULT_PAGE_SIZE}
+     * @param rowMapper converts the values of a row to the returned value, an empty value is passed as null
+     * @return converted rows of the next page or null if there are no more rows
+     */
+    public <T> List<T> nextPage(int pageSize, Function<String[], T> rowMapper) throws IOException {
+        if (!hasNextPage()) {
+            return null;
+        }
+        int size = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+        if (maxRows > 0) {
+            size = Math.min(size, maxRows - rowsReturned);
+        }
+        List<T> rows = new ArrayList<>(Math.min(size, DEFAULT_PAGE_SIZE));
+        String[] record;
+        while (rows.size() < size && (record = nextRecord()) != null) {
+            rows.add(rowMapper.apply(record));
+        }
+        rowsReturned += rows.size();
+        if (rows.size() < size || maxRows > 0 && rowsReturned >= maxRows) {
+            exhausted = true;
+            closeChunk();
+        }
+        return rows.isEmpty() ? null : rows;
+    }
+
+    private String[] nextRecord() throws IOException {
+        while (true) {
+            if (reader == null) {
+                if (lastChunk) {
+                    return null;
+                }
+                openNextChunk();
+            }
+            String[] record = reader.readRecord();
+            if (record != null) {
+                return record;
+            }
+            closeChunk();
+        }
+    }
+
+    private void openNextChunk() throws IOException {
+        chunk = service.getResults(jobId, nextLocator);
+        chunksFetched++;
+        nextLocator = BulkQueryService.getNextLocator(chunk);
+        lastChunk = nextLocator == null;
+        reader = new CsvReader(new InputStreamReader(chunk.getContent(), StandardCharsets.UTF_8));
+        String[] header = reader.readRecord();
+        if (columnNames == null) {
+            columnNames = header == null ? new ArrayList<>() : Arrays.asList(header);
+        }
+    }
+
+    private void closeChunk() {
+        if (chunk == null) {
+            return;
+        }
+        try {
+            reader.close();
+            chunk.disconnect();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "[BulkQueryCursor] failed to close the results of job " + jobId, e);
+        }
+        chunk = null;
+        reader = null;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            closeChunk();
+            if (!exhausted) {
+                // the results of the job expire on the server on their own
+                logger.info("[BulkQueryCursor] closed before the last row, job=" + jobId + " chunks fetched=" + chunksFetched);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.google.api.client.util.Key;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bulk API 2.0 query job info as returned by the jobs/query resources.
+ */
+@Data
+@NoArgsConstructor
+public class BulkQueryJob {
+
+    public static final String JOB_COMPLETE = "JobComplete";
+    public static final String FAILED = "Failed";
+    public static final String ABORTED = "Aborted";
+
+    @Key("id")
+    private String id;
+    @Key("state")
+    private String state;
+    @Key("errorMessage")
+    private String errorMessage;
+    @Key("numberRecordsProcessed")
+    private Long numberRecordsProcessed;
+
+    public boolean isComplete() {
+        return JOB_COMPLETE.equals(state);
+    }
+
+    public boolean isFailed() {
+        return FAILED.equals(state) || ABORTED.equals(state);
+    }
+}
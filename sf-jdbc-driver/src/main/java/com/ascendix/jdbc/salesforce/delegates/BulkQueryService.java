@@ -0,0 +1,197 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectorConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client of the Bulk API 2.0 query jobs.
+ * <p>
+ * A query is submitted as a job and the job is polled with a growing interval until Salesforce completes it.
+ * The results are then read by a {@link BulkQueryCursor} chunk by chunk as CSV streams,
+ * so a result of any size is never held in memory as a whole.
+ * The Bulk API processes the query in the background and does not spend an API call per batch of records
+ * as the SOAP queryMore does, which makes it the better choice for the large extracts.
+ */
+public class BulkQueryService {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+    private static final JsonFactory JSON_FACTORY = new JacksonFactory();
+
+    private static final String LOCATOR_HEADER = "Sforce-Locator";
+    private static final int CONNECT_TIMEOUT = 30_000;
+    private static final int READ_TIMEOUT = 120_000;
+    static final long INITIAL_POLL_INTERVAL = 500;
+    static final long MAX_POLL_INTERVAL = 10_000;
+
+    private final String jobsUrl;
+    private final HttpRequestFactory requestFactory;
+    private long initialPollInterval = INITIAL_POLL_INTERVAL;
+    private long maxPollInterval = MAX_POLL_INTERVAL;
+    private final Object pollLock = new Object();
+    private volatile boolean cancelled;
+
+    /**
+     * @param instanceUrl the scheme and host of the Salesforce instance, e.g. https://na1.salesforce.com
+     */
+    public BulkQueryService(String instanceUrl, String apiVersion, String sessionId) {
+        this.jobsUrl = instanceUrl + "/services/data/v" + apiVersion + "/jobs/query";
+        Credential credential = new Credential(BearerToken.authorizationHeaderAccessMethod())
+                .setAccessToken(sessionId);
+        this.requestFactory = HTTP_TRANSPORT.createRequestFactory(request -> {
+            request.setConnectTimeout(CONNECT_TIMEOUT);
+            request.setReadTimeout(READ_TIMEOUT);
+            request.setParser(JSON_FACTORY.createJsonObjectParser());
+            request.setInterceptor(credential);
+        });
+    }
+
+    /**
+     * Creates the client for the instance and the session of the Partner API connection.
+     */
+    public static BulkQueryService forConnection(PartnerConnection partnerConnection, String apiVersion) {
+        ConnectorConfig config = partnerConnection.getConfig();
+        try {
+            URL endpoint = new URL(config.getServiceEndpoint());
+            String instanceUrl = endpoint.getProtocol() + "://" + endpoint.getAuthority();
+            return new BulkQueryService(instanceUrl, apiVersion, config.getSessionId());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Invalid service endpoint: " + config.getServiceEndpoint(), e);
+        }
+    }
+
+    /**
+     * Stops waiting for the job from another thread, the job is aborted by the waiting thread.
+     */
+    public void cancel() {
+        synchronized (pollLock) {
+            cancelled = true;
+            pollLock.notifyAll();
+        }
+    }
+
+    void setPollIntervals(long initialPollInterval, long maxPollInterval) {
+        this.initialPollInterval = initialPollInterval;
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * Runs the query as a Bulk API job and waits for its completion.
+     *
+     * @param maxRows the max number of rows returned by the cursor, 0 - no limit
+     * @return the cursor over the results of the completed job
+     */
+    public BulkQueryCursor openQuery(String soql, int maxRows) throws IOException {
+        logger.info("[BulkQueryService] openQuery " + soql);
+        BulkQueryJob job = createJob(soql);
+        awaitCompletion(job.getId());
+        return new BulkQueryCursor(this, job.getId(), maxRows);
+    }
+
+    BulkQueryJob createJob(String soql) throws IOException {
+        Map<String, Object> request = new HashMap<>();
+        request.put("operation", "query");
+        request.put("query", soql);
+        request.put("contentType", "CSV");
+        request.put("columnDelimiter", "COMMA");
+        request.put("lineEnding", "LF");
+        HttpResponse response = requestFactory
+                .buildPostRequest(new GenericUrl(jobsUrl), new JsonHttpContent(JSON_FACTORY, request))
+                .execute();
+        BulkQueryJob job = response.parseAs(BulkQueryJob.class);
+        logger.info("[BulkQueryService] created job " + job.getId());
+        return job;
+    }
+
+    BulkQueryJob getJob(String jobId) throws IOException {
+        return requestFactory.buildGetRequest(new GenericUrl(jobsUrl + "/" + jobId))
+                .execute()
+                .parseAs(BulkQueryJob.class);
+    }
+
+    private BulkQueryJob awaitCompletion(String jobId) throws IOException {
+        long interval = initialPollInterval;
+        while (true) {
+            BulkQueryJob job = getJob(jobId);
+            if (job.isComplete()) {
+                logger.info("[BulkQueryService] job " + jobId + " complete, records=" + job.getNumberRecordsProcessed());
+                return job;
+            }
+            if (job.isFailed()) {
+                throw new IOException("Bulk query job " + jobId + " " + job.getState() + ": " + job.getErrorMessage());
+            }
+            try {
+                synchronized (pollLock) {
+                    if (!cancelled) {
+                        pollLock.wait(interval);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abortJob(jobId);
+                throw new InterruptedIOException("Interrupted while waiting for the bulk query job " + jobId);
+            }
+            if (cancelled) {
+                abortJob(jobId);
+                throw new InterruptedIOException("Cancelled while waiting for the bulk query job " + jobId);
+            }
+            interval = Math.min(maxPollInterval, interval * 3 / 2);
+        }
+    }
+
+    private void abortJob(String jobId) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("state", BulkQueryJob.ABORTED);
+        // the Java HTTP client has no PATCH, Salesforce takes the method from the parameter
+        GenericUrl url = new GenericUrl(jobsUrl + "/" + jobId);
+        url.set("_HttpMethod", "PATCH");
+        try {
+            requestFactory.buildPostRequest(url, new JsonHttpContent(JSON_FACTORY, request)).execute().disconnect();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "[BulkQueryService] failed to abort job " + jobId, e);
+        }
+    }
+
+    /**
+     * Requests a chunk of the results of a completed job. The content of the response is streamed,
+     * the caller has to disconnect the response.
+     *
+     * @param locator the locator of the chunk returned with the previous one, null for the first chunk
+     */
+    HttpResponse getResults(String jobId, String locator) throws IOException {
+        GenericUrl url = new GenericUrl(jobsUrl + "/" + jobId + "/results");
+        if (locator != null) {
+            url.set("locator", locator);
+        }
+        return requestFactory.buildGetRequest(url).execute();
+    }
+
+    /**
+     * @return the locator of the chunk following the one in the response, null if it is the last one
+     */
+    static String getNextLocator(HttpResponse response) {
+        String locator = response.getHeaders().getFirstHeaderStringValue(LOCATOR_HEADER);
+        return locator == null || locator.isEmpty() || "null".equals(locator) ? null : locator;
+    }
+}
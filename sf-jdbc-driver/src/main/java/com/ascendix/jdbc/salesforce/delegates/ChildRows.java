@@ -0,0 +1,56 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.sforce.soap.partner.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The decoded rows of a child subquery of one parent record.
+ * <p>
+ * The Partner API returns only the first batch of the child rows with their parent. The locator of the rest
+ * is kept here until they are fetched with queryMore by the {@link ChildRowsFetcher}.
+ */
+@SuppressWarnings("rawtypes")
+class ChildRows extends ArrayList<List> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the plan the child rows are decoded with */
+    private final transient ProjectionPlan plan;
+    private final String relationshipName;
+    private String queryLocator;
+
+    ChildRows(ProjectionPlan plan, String relationshipName) {
+        this.plan = plan;
+        this.relationshipName = relationshipName;
+    }
+
+    String getRelationshipName() {
+        return relationshipName;
+    }
+
+    /**
+     * @return the locator of the next batch of the child rows, null if all the rows are decoded
+     */
+    String getQueryLocator() {
+        return queryLocator;
+    }
+
+    void setQueryLocator(String queryLocator) {
+        this.queryLocator = queryLocator;
+    }
+
+    boolean isComplete() {
+        return queryLocator == null;
+    }
+
+    /**
+     * Decodes a batch returned by queryMore for the locator of these rows and moves the locator to the next batch.
+     */
+    void addBatch(QueryResult batch) {
+        addAll(plan.decodeRecords(Arrays.asList(batch.getRecords()).iterator(), relationshipName));
+        queryLocator = batch.isDone() ? null : batch.getQueryLocator();
+    }
+}
@@ -0,0 +1,140 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Completes the child subqueries whose rows did not fit into the response with their parents.
+ * <p>
+ * The remaining batches of every incomplete subquery are fetched with queryMore. The subqueries of different parents
+ * are fetched concurrently by not more than the given number of threads, the batches of one subquery - in order.
+ * The fetched batches are decoded by the calling thread in the order of the parents,
+ * so the projection plans are still used by one thread only.
+ */
+@SuppressWarnings("rawtypes")
+class ChildRowsFetcher {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sf-jdbc-child-query-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PartnerConnection partnerConnection;
+    private final int concurrency;
+
+    /**
+     * @param concurrency the max number of child subqueries fetched at the same time
+     */
+    ChildRowsFetcher(PartnerConnection partnerConnection, int concurrency) {
+        this.partnerConnection = partnerConnection;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Fetches the remaining rows of all the incomplete child subqueries of the records,
+     * including the subqueries nested in the fetched child rows.
+     */
+    void fetchRemainingRows(List<List> records) throws ConnectionException {
+        List<ChildRows> incomplete = new ArrayList<>();
+        collectIncomplete(records, incomplete);
+        while (!incomplete.isEmpty()) {
+            logger.info("[ChildRowsFetcher] fetching the rest of " + incomplete.size() + " child subqueries");
+            List<List<QueryResult>> batches = fetch(incomplete);
+            List<ChildRows> nested = new ArrayList<>();
+            for (int i = 0; i < incomplete.size(); i++) {
+                ChildRows rows = incomplete.get(i);
+                int decoded = rows.size();
+                for (QueryResult batch : batches.get(i)) {
+                    rows.addBatch(batch);
+                }
+                collectIncomplete(rows.subList(decoded, rows.size()), nested);
+            }
+            incomplete = nested;
+        }
+    }
+
+    private static void collectIncomplete(List<List> rows, List<ChildRows> incomplete) {
+        for (List row : rows) {
+            for (Object value : row) {
+                if (value instanceof ChildRows) {
+                    ChildRows childRows = (ChildRows) value;
+                    if (!childRows.isComplete()) {
+                        incomplete.add(childRows);
+                    }
+                    collectIncomplete(childRows, incomplete);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the remaining batches of every subquery in the order of the subqueries
+     */
+    private List<List<QueryResult>> fetch(List<ChildRows> incomplete) throws ConnectionException {
+        List<List<QueryResult>> batches = new ArrayList<>(incomplete.size());
+        for (int i = 0; i < incomplete.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        int workers = Math.min(concurrency, incomplete.size());
+        if (workers == 1) {
+            for (int i = 0; i < incomplete.size(); i++) {
+                fetchBatches(incomplete.get(i).getQueryLocator(), batches.get(i));
+            }
+            return batches;
+        }
+        AtomicInteger next = new AtomicInteger();
+        Callable<Void> worker = () -> {
+            for (int i = next.getAndIncrement(); i < incomplete.size(); i = next.getAndIncrement()) {
+                fetchBatches(incomplete.get(i).getQueryLocator(), batches.get(i));
+            }
+            return null;
+        };
+        List<Future<Void>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(worker));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof ConnectionException) {
+                throw (ConnectionException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConnectionException("Failed to fetch the child rows", e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while fetching the child rows", e);
+        }
+        return batches;
+    }
+
+    private void fetchBatches(String queryLocator, List<QueryResult> batches) throws ConnectionException {
+        String locator = queryLocator;
+        while (locator != null) {
+            QueryResult batch = partnerConnection.queryMore(locator);
+            batches.add(batch);
+            locator = batch.isDone() ? null : batch.getQueryLocator();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forward-only cursor over the merged rows of the queries of the Id ranges of one query.
+ * <p>
+ * The range queries are run by not more than the given number of workers. Every worker has its own
+ * Partner API connection, so the query options and the queryMore chains of the workers do not interfere.
+ * A worker takes the next range when it has read all the batches of the previous one. The batches are decoded
+ * and converted by the workers and passed to the consumer through bounded queues, a worker waits while
+ * the consumer is behind.
+ * <p>
+ * The unordered merge returns the pages in the order they are fetched. The ordered merge returns the rows
+ * in the order of the ranges, the pages of a later range wait in the queue of the range until the earlier ranges
+ * are read.
+ * <p>
+ * With a positive max rows the cursor stops as soon as that many rows are produced and stops the workers.
+ */
+public class ChunkedQueryCursor<T> implements AutoCloseable {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sf-jdbc-extract-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** pages of a range held ahead of the consumer in the ordered merge, per worker in the unordered one */
+    private static final int QUEUED_PAGES = 2;
+
+    private static class Page<T> {
+        private final List<T> rows;
+        private final Exception error;
+
+        private Page(List<T> rows, Exception error) {
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+
+    private final List<String> queries;
+    private final List<FieldDef> expectedSchema;
+    private final int batchSize;
+    private final int maxRows;
+    private final boolean ordered;
+    private final int childQueryConcurrency;
+    private final Function<List, T> rowMapper;
+    /** one queue per range for the ordered merge, one shared queue for the unordered one */
+    private final List<BlockingQueue<Page<T>>> queues = new ArrayList<>();
+    private final AtomicInteger nextQuery = new AtomicInteger();
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private volatile Exception failure;
+    private volatile boolean closed;
+    private int finishedQueries;
+    private int rowsReturned;
+    private boolean exhausted;
+
+    ChunkedQueryCursor(List<String> queries, List<FieldDef> expectedSchema, int batchSize, int maxRows, boolean ordered,
+                       int workers, int childQueryConcurrency, Callable<PartnerConnection> connections,
+                       Function<List, T> rowMapper) {
+        this.queries = queries;
+        this.expectedSchema = expectedSchema;
+        this.batchSize = batchSize;
+        this.maxRows = maxRows;
+        this.ordered = ordered;
+        this.childQueryConcurrency = childQueryConcurrency;
+        this.rowMapper = rowMapper;
+        int workerCount = Math.max(1, Math.min(workers, queries.size()));
+        if (ordered) {
+            queries.forEach(query -> queues.add(new ArrayBlockingQueue<>(QUEUED_PAGES + 1)));
+        } else {
+            queues.add(new ArrayBlockingQueue<>(QUEUED_PAGES * workerCount + 1));
+        }
+        logger.info("[ChunkedQueryCursor] running " + queries.size() + " range queries by " + workerCount
+                + " workers, ordered=" + ordered);
+        for (int i = 0; i < workerCount; i++) {
+            tasks.add(executor.submit(() -> work(connections)));
+        }
+    }
+
+    private BlockingQueue<Page<T>> queueOf(int query) {
+        return ordered ? queues.get(query) : queues.get(0);
+    }
+
+    private void work(Callable<PartnerConnection> connections) {
+        try {
+            PartnerService partnerService = new PartnerService(connections.call(), 0, childQueryConcurrency);
+            for (int query = nextQuery.getAndIncrement(); query < queries.size() && !closed && failure == null;
+                 query = nextQuery.getAndIncrement()) {
+                try (PartnerQueryCursor cursor = partnerService.openQuery(queries.get(query), expectedSchema, batchSize, maxRows)) {
+                    List<T> rows;
+                    while ((rows = cursor.nextPage(rowMapper)) != null && !closed) {
+                        queueOf(query).put(new Page<>(rows, null));
+                    }
+                }
+                // the end of the range
+                queueOf(query).put(new Page<>(null, null));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!closed) {
+                logger.log(Level.WARNING, "[ChunkedQueryCursor] range query failed", e);
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Passes the error to the consumer whatever queue it waits on, the queued pages are not needed any more.
+     */
+    private void fail(Exception error) {
+        failure = error;
+        for (BlockingQueue<Page<T>> queue : queues) {
+            queue.clear();
+            queue.offer(new Page<>(null, error));
+        }
+    }
+
+    public boolean hasNextPage() {
+        return !closed && !exhausted;
+    }
+
+    /**
+     * @return rows of the next page or null if all the range queries are read
+     */
+    public List<T> nextPage() throws ConnectionException {
+        while (hasNextPage() && finishedQueries < queries.size()) {
+            Page<T> page = takePage();
+            if (page.error != null) {
+                close();
+                if (page.error instanceof ConnectionException) {
+                    throw (ConnectionException) page.error;
+                } else if (page.error instanceof RuntimeException) {
+                    throw (RuntimeException) page.error;
+                }
+                throw new ConnectionException("Range query failed", page.error);
+            }
+            if (page.rows == null) {
+                finishedQueries++;
+                continue;
+            }
+            List<T> rows = page.rows;
+            if (maxRows > 0 && rowsReturned + rows.size() >= maxRows) {
+                rows = rows.subList(0, maxRows - rowsReturned);
+                exhausted = true;
+                stopWorkers();
+            }
+            rowsReturned += rows.size();
+            if (!rows.isEmpty()) {
+                return rows;
+            }
+        }
+        exhausted = true;
+        return null;
+    }
+
+    private Page<T> takePage() throws ConnectionException {
+        Exception error = failure;
+        if (error != null) {
+            return new Page<>(null, error);
+        }
+        try {
+            return queueOf(finishedQueries).take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while waiting for the next page", e);
+        }
+    }
+
+    private void stopWorkers() {
+        tasks.forEach(task -> task.cancel(true));
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            stopWorkers();
+            // wakes up the consumer waiting for a page when the cursor is closed by another thread
+            for (BlockingQueue<Page<T>> queue : queues) {
+                queue.clear();
+                queue.offer(new Page<>(null, new ConnectionException("The query cursor is closed")));
+            }
+            if (!exhausted) {
+                logger.info("[ChunkedQueryCursor] closed before the last row, range queries read=" + finishedQueries);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader of RFC 4180 CSV records.
+ * <p>
+ * The characters are read into one reused buffer and every value is cut out of it directly, the lines are never
+ * copied on their own. Only a value with escaped quotes or a value split by the end of the buffer
+ * is assembled in a reused builder. Quoted values may contain commas, quotes and line breaks,
+ * the records are separated by LF or CRLF.
+ * <p>
+ * An empty unquoted value is read as null, an empty quoted value - as the empty string.
+ */
+class CsvReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private final StringBuilder builder = new StringBuilder();
+    private final List<String> values = new ArrayList<>();
+    private int position;
+    private int limit;
+    private boolean endOfRecord;
+
+    CsvReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    CsvReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * @return the values of the next record, null at the end of the input
+     */
+    String[] readRecord() throws IOException {
+        if (!ensureAvailable()) {
+            return null;
+        }
+        values.clear();
+        do {
+            if (!ensureAvailable()) {
+                // the input ends with a comma
+                values.add(null);
+                break;
+            }
+            values.add(buffer[position] == '"' ? readQuoted() : readUnquoted());
+        } while (!endOfRecord);
+        return values.toArray(new String[0]);
+    }
+
+    private String readUnquoted() throws IOException {
+        int start = position;
+        boolean assembled = false;
+        while (true) {
+            if (position == limit) {
+                builder.setLength(assembled ? builder.length() : 0);
+                builder.append(buffer, start, position - start);
+                assembled = true;
+                if (!fill()) {
+                    endOfRecord = true;
+                    return builder.length() == 0 ? null : builder.toString();
+                }
+                start = 0;
+            }
+            char c = buffer[position];
+            if (isDelimiter(c)) {
+                String value;
+                if (assembled) {
+                    builder.append(buffer, start, position - start);
+                    value = builder.length() == 0 ? null : builder.toString();
+                } else {
+                    value = position == start ? null : new String(buffer, start, position - start);
+                }
+                consumeDelimiter();
+                return value;
+            }
+            position++;
+        }
+    }
+
+    private String readQuoted() throws IOException {
+        // skip the opening quote
+        int start = ++position;
+        boolean assembled = false;
+        while (true) {
+            if (position == limit) {
+                builder.setLength(assembled ? builder.length() : 0);
+                builder.append(buffer, start, position - start);
+                assembled = true;
+                if (!fill()) {
+                    throw new IOException("Unterminated quoted value: " + builder);
+                }
+                start = 0;
+            }
+            if (buffer[position] != '"') {
+                position++;
+                continue;
+            }
+            int end = position++;
+            if (position < limit && buffer[position] == '"') {
+                // escaped quote - keep the first one of the pair
+                builder.setLength(assembled ? builder.length() : 0);
+                builder.append(buffer, start, end + 1 - start);
+                assembled = true;
+                start = ++position;
+                continue;
+            }
+            String value;
+            if (assembled) {
+                value = builder.append(buffer, start, end - start).toString();
+            } else {
+                value = new String(buffer, start, end - start);
+            }
+            if (position == limit) {
+                builder.setLength(0);
+                builder.append(value);
+                if (fill() && buffer[position] == '"') {
+                    // the escaped quote is split by the end of the buffer
+                    builder.append('"');
+                    start = ++position;
+                    assembled = true;
+                    continue;
+                }
+            }
+            finishQuoted();
+            return value;
+        }
+    }
+
+    private void finishQuoted() throws IOException {
+        if (!ensureAvailable()) {
+            endOfRecord = true;
+            return;
+        }
+        if (!isDelimiter(buffer[position])) {
+            throw new IOException("Unexpected character after a quoted value: " + buffer[position]);
+        }
+        consumeDelimiter();
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ',' || c == '\n' || c == '\r';
+    }
+
+    private void consumeDelimiter() throws IOException {
+        char c = buffer[position++];
+        endOfRecord = c != ',';
+        if (c == '\r' && ensureAvailable() && buffer[position] == '\n') {
+            position++;
+        }
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        return position < limit || fill();
+    }
+
+    /**
+     * Reads the next characters into the buffer, the previous content of the buffer is discarded.
+     */
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = Math.max(0, reader.read(buffer, 0, buffer.length));
+        return limit > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
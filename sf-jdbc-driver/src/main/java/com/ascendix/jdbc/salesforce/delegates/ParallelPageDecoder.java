@@ -0,0 +1,88 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Decodes the records of a page in slices on a fork-join pool.
+ * <p>
+ * A page is split in halves until the slices are small enough, the slices are decoded by the threads of the pool
+ * and their results are joined in the order of the records, so the rows keep the order of the page.
+ * Pages smaller than two slices are decoded by the calling thread. The pools are shared by all the connections
+ * with the same parallelism, their threads are daemons.
+ */
+class ParallelPageDecoder {
+
+    /** the min number of records decoded by one task, smaller slices cost more to schedule than to decode */
+    static final int MIN_SLICE = 64;
+    /** slices per thread, more slices than threads even the load when the records are not of the same size */
+    private static final int SLICES_PER_THREAD = 4;
+
+    private static final ConcurrentMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+
+    ParallelPageDecoder(int parallelism) {
+        this.pool = pools.computeIfAbsent(parallelism, ParallelPageDecoder::createPool);
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("sf-jdbc-decode-" + parallelism + "-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Applies the decoding function to the slices of the items in parallel.
+     *
+     * @return the results of the slices concatenated in the order of the items
+     */
+    <S, R> List<R> decode(List<S> items, Function<List<S>, List<R>> sliceDecoder) {
+        int sliceSize = Math.max(MIN_SLICE, items.size() / (pool.getParallelism() * SLICES_PER_THREAD));
+        if (items.size() < 2 * sliceSize) {
+            return sliceDecoder.apply(items);
+        }
+        return pool.invoke(new SliceTask<>(items, sliceSize, sliceDecoder));
+    }
+
+    private static class SliceTask<S, R> extends RecursiveTask<List<R>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<S> items;
+        private final int sliceSize;
+        private final Function<List<S>, List<R>> sliceDecoder;
+
+        private SliceTask(List<S> items, int sliceSize, Function<List<S>, List<R>> sliceDecoder) {
+            this.items = items;
+            this.sliceSize = sliceSize;
+            this.sliceDecoder = sliceDecoder;
+        }
+
+        @Override
+        protected List<R> compute() {
+            if (items.size() <= sliceSize) {
+                return sliceDecoder.apply(items);
+            }
+            int middle = items.size() / 2;
+            SliceTask<S, R> head = new SliceTask<>(items.subList(0, middle), sliceSize, sliceDecoder);
+            SliceTask<S, R> tail = new SliceTask<>(items.subList(middle, items.size()), sliceSize, sliceDecoder);
+            tail.fork();
+            List<R> headRows = head.compute();
+            List<R> tailRows = tail.join();
+            List<R> rows = new ArrayList<>(headRows.size() + tailRows.size());
+            rows.addAll(headRows);
+            rows.addAll(tailRows);
+            return rows;
+        }
+    }
+}
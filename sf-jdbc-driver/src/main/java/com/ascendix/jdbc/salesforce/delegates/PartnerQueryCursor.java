@@ -0,0 +1,223 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forward-only cursor over the batches of a SOQL query.
+ * Every call of {@link #nextPage()} returns the rows of one query/queryMore batch
+ * already flattened and expanded according to the expected schema.
+ * The child subqueries are expanded one parent record at a time, so the product is not kept in memory
+ * apart from the rows returned to the caller.
+ * <p>
+ * With a positive prefetch depth the following batches are downloaded by a background thread
+ * while the consumer processes the current one. Not more than prefetchDepth batches are fetched ahead.
+ * <p>
+ * With a positive max rows the cursor stops as soon as that many rows are produced,
+ * the rest of the batches are not requested.
+ */
+public class PartnerQueryCursor implements AutoCloseable {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final AtomicInteger prefetchThreadCounter = new AtomicInteger();
+    private static final ExecutorService prefetchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sf-jdbc-prefetch-" + prefetchThreadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class PrefetchedBatch {
+        private static final PrefetchedBatch END = new PrefetchedBatch(null, null);
+
+        private final QueryResult queryResult;
+        private final Exception error;
+
+        private PrefetchedBatch(QueryResult queryResult, Exception error) {
+            this.queryResult = queryResult;
+            this.error = error;
+        }
+    }
+
+    private final PartnerService partnerService;
+    private final PartnerConnection partnerConnection;
+    private final List<FieldDef> expectedSchema;
+    private final int prefetchDepth;
+    private final int maxRows;
+    private final int totalSize;
+    /** the batch returned by the initial query call and not consumed yet */
+    private QueryResult firstBatch;
+    /** the locator of the next batch to be fetched synchronously, null if there are no more batches */
+    private String queryLocator;
+    private volatile BlockingQueue<PrefetchedBatch> prefetched;
+    private Semaphore prefetchPermits;
+    private volatile Future<?> prefetchTask;
+    private int pagesFetched;
+    private int rowsReturned;
+    private boolean exhausted;
+    private volatile boolean closed;
+
+    PartnerQueryCursor(PartnerService partnerService, PartnerConnection partnerConnection, QueryResult firstBatch,
+                       List<FieldDef> expectedSchema, int prefetchDepth, int maxRows) {
+        this.partnerService = partnerService;
+        this.partnerConnection = partnerConnection;
+        this.firstBatch = firstBatch;
+        this.expectedSchema = expectedSchema;
+        this.prefetchDepth = prefetchDepth;
+        this.maxRows = maxRows;
+        this.totalSize = firstBatch.getSize();
+    }
+
+    /**
+     * @return the number of records of the query reported with the first batch, the child rows are not counted
+     */
+    public int getTotalSize() {
+        return totalSize;
+    }
+
+    public boolean hasNextPage() {
+        return !closed && !exhausted;
+    }
+
+    /**
+     * @return rows of the next batch or null if the query has no more batches
+     */
+    public List<List> nextPage() throws ConnectionException {
+        return nextPage(row -> new ArrayList<>(row));
+    }
+
+    /**
+     * @param rowMapper converts an expanded row to the returned value, the row passed to the mapper
+     *                  is a reused buffer and must not be kept. The mapper is called by several threads at once
+     *                  when the service decodes the pages in parallel.
+     * @return converted rows of the next batch or null if the query has no more batches
+     */
+    public <T> List<T> nextPage(Function<List, T> rowMapper) throws ConnectionException {
+        QueryResult batch = nextBatch();
+        if (batch == null) {
+            exhausted = true;
+            return null;
+        }
+        pagesFetched++;
+        List<List> records = partnerService.decodeRecords(batch, expectedSchema);
+        List<T> rows = partnerService.expandRecords(records, expectedSchema, maxRows > 0 ? maxRows - rowsReturned : 0, rowMapper);
+        if (isLimitReached(rows.size())) {
+            exhausted = true;
+            stopPrefetch();
+        } else if (queryLocator != null && prefetchDepth > 0 && prefetched == null) {
+            // the rest of the batches are downloaded while the consumer processes the first one
+            startPrefetch(queryLocator);
+            queryLocator = null;
+        }
+        rowsReturned += rows.size();
+        return rows;
+    }
+
+    private boolean isLimitReached(int pageRows) {
+        return maxRows > 0 && rowsReturned + pageRows >= maxRows;
+    }
+
+    private QueryResult nextBatch() throws ConnectionException {
+        if (!hasNextPage()) {
+            return null;
+        }
+        if (firstBatch != null) {
+            QueryResult batch = firstBatch;
+            firstBatch = null;
+            queryLocator = batch.isDone() ? null : batch.getQueryLocator();
+            return batch;
+        }
+        if (prefetched != null) {
+            return takePrefetchedBatch();
+        }
+        if (queryLocator == null) {
+            return null;
+        }
+        QueryResult batch = partnerConnection.queryMore(queryLocator);
+        queryLocator = batch.isDone() ? null : batch.getQueryLocator();
+        return batch;
+    }
+
+    private void startPrefetch(String locator) {
+        prefetched = new LinkedBlockingQueue<>();
+        prefetchPermits = new Semaphore(prefetchDepth);
+        prefetchTask = prefetchExecutor.submit(() -> prefetch(locator));
+    }
+
+    private void prefetch(String locator) {
+        try {
+            while (locator != null) {
+                prefetchPermits.acquire();
+                if (closed) {
+                    return;
+                }
+                QueryResult batch = partnerConnection.queryMore(locator);
+                prefetched.put(new PrefetchedBatch(batch, null));
+                locator = batch.isDone() ? null : batch.getQueryLocator();
+            }
+            prefetched.put(PrefetchedBatch.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ConnectionException | RuntimeException e) {
+            if (!closed) {
+                logger.log(Level.WARNING, "[PartnerQueryCursor] prefetch failed", e);
+            }
+            prefetched.add(new PrefetchedBatch(null, e));
+        }
+    }
+
+    private QueryResult takePrefetchedBatch() throws ConnectionException {
+        PrefetchedBatch batch;
+        try {
+            batch = prefetched.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while waiting for the next batch", e);
+        }
+        prefetchPermits.release();
+        if (batch.error instanceof ConnectionException) {
+            throw (ConnectionException) batch.error;
+        } else if (batch.error != null) {
+            throw (RuntimeException) batch.error;
+        }
+        return batch.queryResult;
+    }
+
+    private void stopPrefetch() {
+        if (prefetchTask != null) {
+            prefetchTask.cancel(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            stopPrefetch();
+            if (prefetched != null) {
+                // wakes up the consumer waiting for a batch when the cursor is closed by another thread
+                prefetched.offer(PrefetchedBatch.END);
+            }
+            if (!exhausted) {
+                // Partner API has no call to release a query locator - the server expires it on its own
+                logger.info("[PartnerQueryCursor] closed before the last batch, batches fetched=" + pagesFetched);
+            }
+        }
+    }
+}
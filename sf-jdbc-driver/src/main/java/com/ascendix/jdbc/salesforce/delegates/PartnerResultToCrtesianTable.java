@@ -1,60 +1,136 @@
 package com.ascendix.jdbc.salesforce.delegates;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
 
+/**
+ * Expands the rows with child subquery results to the cartesian product of the parent fields and the child rows.
+ * A parent row holds the list of child rows in the position of each subquery of the schema,
+ * a parent without children gets one row with nulls in place of the child fields.
+ */
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class PartnerResultToCrtesianTable {
 
-    private List<Object> schema;
-
-    private PartnerResultToCrtesianTable(List schema) {
-        this.schema = schema;
+    private PartnerResultToCrtesianTable() {
     }
 
     public static List<List> expand(List<List> list, List schema) {
-        PartnerResultToCrtesianTable expander = new PartnerResultToCrtesianTable(schema);
-        return expander.expandOn(list, 0, 0);
+        List<List> result = new ArrayList<>();
+        for (List row : list) {
+            Iterator<List> expanded = expandRow(row, schema);
+            while (expanded.hasNext()) {
+                result.add(new ArrayList<>(expanded.next()));
+            }
+        }
+        return result;
     }
 
-    private List<List> expandOn(List<List> rows, int columnPosition, int schemaPosititon) {
-        return rows.stream()
-                .map(row -> expandRow(row, columnPosition, schemaPosititon))
-                .flatMap(Collection::stream)
-                .collect(Collectors.toList());
+    /**
+     * Lazily expands one parent row, the rows of the product are built one at a time.
+     * The iterator reuses one row buffer - a returned row is valid until the next call of next(),
+     * copy it if it has to be kept.
+     */
+    public static Iterator<List> expandRow(List row, List schema) {
+        return new RowExpansion(row, schema);
     }
 
-    private List<List> expandRow(List row, int columnPosition, int schemaPosititon) {
-        List<List> result = new ArrayList<>();
-        if (schemaPosititon > schema.size() - 1) {
-            result.add(row);
-            return result;
-        } else if (schema.get(schemaPosititon) instanceof List) {
-            int nestedListSize = ((List) schema.get(schemaPosititon)).size();
-            Object value = row.get(columnPosition);
-            List nestedList = value instanceof List ? (List) value : Collections.emptyList();
-            if (nestedList.isEmpty()) {
-                result.add(expandRow(row, Collections.nCopies(nestedListSize, null), columnPosition));
-            } else {
-                nestedList.forEach(item -> result.add(expandRow(row, item, columnPosition)));
+    private static class RowExpansion implements Iterator<List> {
+
+        private final List row;
+        /** the positions of the subqueries in the parent row */
+        private final int[] subqueryColumns;
+        /** the number of fields of each subquery */
+        private final int[] subquerySizes;
+        /** the child rows of each subquery, null if the subquery has no rows */
+        private final List[] subqueryRows;
+        /** the child row of each subquery used by the next row of the product */
+        private final int[] current;
+        private final List<Object> buffer;
+        private boolean hasNext = true;
+
+        private RowExpansion(List row, List schema) {
+            this.row = row;
+            int columns = Math.min(row.size(), schema.size());
+            int subqueries = 0;
+            for (int column = 0; column < columns; column++) {
+                if (schema.get(column) instanceof List) {
+                    subqueries++;
+                }
+            }
+            this.subqueryColumns = new int[subqueries];
+            this.subquerySizes = new int[subqueries];
+            this.subqueryRows = new List[subqueries];
+            this.current = new int[subqueries];
+            int width = row.size();
+            for (int column = 0, subquery = 0; column < columns; column++) {
+                if (schema.get(column) instanceof List) {
+                    Object value = row.get(column);
+                    subqueryColumns[subquery] = column;
+                    subquerySizes[subquery] = ((List) schema.get(column)).size();
+                    subqueryRows[subquery] = value instanceof List && !((List) value).isEmpty() ? (List) value : null;
+                    width += subquerySizes[subquery] - 1;
+                    subquery++;
+                }
             }
-            return expandOn(result, columnPosition + nestedListSize, schemaPosititon + 1);
-        } else {
-            result.add(row);
-            return expandOn(result, columnPosition + 1, schemaPosititon + 1);
+            this.buffer = new ArrayList<>(width);
         }
 
-    }
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
 
-    private static List expandRow(List row, Object nestedItem, int position) {
-        List nestedItemsToInsert = nestedItem instanceof List ? (List) nestedItem : Arrays.asList(nestedItem);
-        List newRow = new ArrayList<>(row.subList(0, position));
-        newRow.addAll(nestedItemsToInsert);
-        newRow.addAll(row.subList(position + 1, row.size()));
-        return newRow;
+        @Override
+        public List next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            buffer.clear();
+            int subquery = 0;
+            for (int column = 0; column < row.size(); column++) {
+                if (subquery < subqueryColumns.length && subqueryColumns[subquery] == column) {
+                    addChildFields(subquery);
+                    subquery++;
+                } else {
+                    buffer.add(row.get(column));
+                }
+            }
+            advance();
+            return buffer;
+        }
+
+        private void addChildFields(int subquery) {
+            if (subqueryRows[subquery] == null) {
+                for (int i = 0; i < subquerySizes[subquery]; i++) {
+                    buffer.add(null);
+                }
+                return;
+            }
+            Object child = subqueryRows[subquery].get(current[subquery]);
+            if (child instanceof List) {
+                List childFields = (List) child;
+                for (int i = 0; i < childFields.size(); i++) {
+                    buffer.add(childFields.get(i));
+                }
+            } else {
+                buffer.add(child);
+            }
+        }
+
+        /**
+         * Moves to the next combination of the child rows, the last subquery changes first.
+         */
+        private void advance() {
+            for (int subquery = current.length - 1; subquery >= 0; subquery--) {
+                if (subqueryRows[subquery] != null && current[subquery] + 1 < subqueryRows[subquery].size()) {
+                    current[subquery]++;
+                    return;
+                }
+                current[subquery] = 0;
+            }
+            hasNext = false;
+        }
     }
 }
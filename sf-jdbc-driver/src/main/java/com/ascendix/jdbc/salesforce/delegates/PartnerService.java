@@ -7,23 +7,55 @@ import com.sforce.soap.partner.*;
 import com.sforce.soap.partner.sobject.SObject;
 import com.sforce.ws.ConnectionException;
 import com.sforce.ws.bind.XmlObject;
-import org.apache.commons.collections4.IteratorUtils;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class PartnerService {
 
     private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
     private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
 
+    /** Limits of the batch size accepted by the QueryOptions header */
+    public static final int MIN_QUERY_BATCH_SIZE = 200;
+    public static final int MAX_QUERY_BATCH_SIZE = 2000;
+
     private PartnerConnection partnerConnection;
-    private List<String> sObjectTypesCache;
+    /** the list is replaced as a whole, so the threads reading it do not need a lock */
+    private volatile List<String> sObjectTypesCache;
+    /** the number of query batches to download in background ahead of the consumer, 0 - no prefetch */
+    private int prefetchDepth;
+    /** the max number of child subqueries with more rows than the parent batch fetched at the same time */
+    private int childQueryConcurrency;
+    private List<FieldDef> projectionSchema;
+    private ProjectionPlan projectionPlan;
+    /** decodes the pages on a fork-join pool, null - the pages are decoded by the reading thread */
+    private ParallelPageDecoder pageDecoder;
 
     public PartnerService(PartnerConnection partnerConnection) {
+        this(partnerConnection, 0);
+    }
+
+    public PartnerService(PartnerConnection partnerConnection, int prefetchDepth) {
+        this(partnerConnection, prefetchDepth, 1);
+    }
+
+    public PartnerService(PartnerConnection partnerConnection, int prefetchDepth, int childQueryConcurrency) {
+        this(partnerConnection, prefetchDepth, childQueryConcurrency, 0);
+    }
+
+    /**
+     * @param decodeParallelism the number of threads decoding the records of a page, 0 - the reading thread only
+     */
+    public PartnerService(PartnerConnection partnerConnection, int prefetchDepth, int childQueryConcurrency, int decodeParallelism) {
         this.partnerConnection = partnerConnection;
+        this.prefetchDepth = prefetchDepth;
+        this.childQueryConcurrency = childQueryConcurrency;
+        this.pageDecoder = decodeParallelism > 0 ? new ParallelPageDecoder(decodeParallelism) : null;
     }
 
     public List<Table> getTables() {
@@ -79,14 +111,16 @@ public class PartnerService {
     }
 
     private List<String> getSObjectTypes() throws ConnectionException {
-        if (sObjectTypesCache == null) {
+        List<String> sObjectTypes = sObjectTypesCache;
+        if (sObjectTypes == null) {
             DescribeGlobalSObjectResult[] sobs = partnerConnection.describeGlobal().getSobjects();
-            sObjectTypesCache = Arrays.stream(sobs)
+            sObjectTypes = Collections.unmodifiableList(Arrays.stream(sobs)
                     .map(DescribeGlobalSObjectResult::getName)
-                    .collect(Collectors.toList());
-            logger.info("[PartnerService] getSObjectTypes count="+sObjectTypesCache.size());
+                    .collect(Collectors.toList()));
+            sObjectTypesCache = sObjectTypes;
+            logger.info("[PartnerService] getSObjectTypes count="+sObjectTypes.size());
         }
-        return sObjectTypesCache;
+        return sObjectTypes;
 
     }
 
@@ -129,81 +163,152 @@ public class PartnerService {
     }
 
     public List<List> query(String soql, List<FieldDef> expectedSchema) throws ConnectionException {
-        logger.info("[PartnerService] query "+soql);
-        List<List> resultRows = Collections.synchronizedList(new LinkedList<>());
-        QueryResult queryResult = null;
-        do {
-            queryResult = queryResult == null ? partnerConnection.query(soql)
-                    : partnerConnection.queryMore(queryResult.getQueryLocator());
-
-            List<XmlObject> rows = Arrays.asList(queryResult.getRecords());
-            // extract the root entity name
-            Object rootEntityName = rows.stream().filter(xmlo -> "type".equals(xmlo.getName().getLocalPart())).findFirst().map(XmlObject::getValue).orElse(null);
-            String parentName = null;
-            resultRows.addAll(removeServiceInfo(rows, parentName, rootEntityName==null ? null : (String)rootEntityName));
-        } while (!queryResult.isDone());
-
-        return PartnerResultToCrtesianTable.expand(resultRows, expectedSchema);
-    }
-
-    private List<List> removeServiceInfo(List<XmlObject> rows, String parentName, String rootEntityName) {
-        return rows.stream()
-                .filter(this::isDataObjectType)
-                .map(row -> removeServiceInfo(row, parentName, rootEntityName))
-                .collect(Collectors.toList());
+        return query(soql, expectedSchema, 0, 0);
     }
 
-    private List<ForceResultField> removeServiceInfo(XmlObject row, String parentName, String rootEntityName) {
-        return IteratorUtils.toList(row.getChildren()).stream()
-                .filter(this::isDataObjectType)
-                .skip(1) // Removes duplicate Id from SF Partner API response
-                // (https://developer.salesforce.com/forums/?id=906F00000008kciIAA)
-                .flatMap(field -> translateField(field, parentName, rootEntityName))
-                .collect(Collectors.toList());
+    public List<List> query(String soql, List<FieldDef> expectedSchema, int batchSize, int maxRows) throws ConnectionException {
+        logger.info("[PartnerService] query "+soql);
+        List<List> resultRows = new ArrayList<>();
+        try (PartnerQueryCursor cursor = openQuery(soql, expectedSchema, batchSize, maxRows)) {
+            List<List> page;
+            while ((page = cursor.nextPage()) != null) {
+                resultRows.addAll(page);
+            }
+        }
+        return resultRows;
     }
 
-    private Stream<ForceResultField> translateField(XmlObject field, String parentName, String rootEntityName) {
-        Stream.Builder outStream = Stream.builder();
+    /**
+     * Runs the query and opens a cursor over its batches.
+     * The first batch is requested immediately, the rest - on demand or by the background prefetch.
+     */
+    public PartnerQueryCursor openQuery(String soql, List<FieldDef> expectedSchema) throws ConnectionException {
+        return openQuery(soql, expectedSchema, 0, 0);
+    }
 
-        String fieldType = field.getXmlType() != null ? field.getXmlType().getLocalPart() : null;
-        if ("sObject".equalsIgnoreCase(fieldType)) {
-            List<ForceResultField> childFields = removeServiceInfo(field, field.getName().getLocalPart(), rootEntityName);
-            childFields.forEach(outStream::add);
+    /**
+     * @param batchSize the number of records requested per batch, 0 - the server default (500).
+     *                  It is sent in the QueryOptions header clamped to the range the API accepts.
+     * @param maxRows   the max number of rows returned by the cursor, 0 - no limit.
+     *                  No more batches are requested once the limit is reached.
+     */
+    public PartnerQueryCursor openQuery(String soql, List<FieldDef> expectedSchema, int batchSize, int maxRows) throws ConnectionException {
+        logger.info("[PartnerService] openQuery "+soql+" batchSize="+batchSize+" prefetchDepth="+prefetchDepth);
+        if (batchSize > 0) {
+            partnerConnection.setQueryOptions(toQueryBatchSize(batchSize));
         } else {
-            if (isNestedResultset(field)) {
-                outStream.add(removeServiceInfo(IteratorUtils.toList(field.getChildren()), field.getName().getLocalPart(), rootEntityName));
-            } else {
-                outStream.add(toForceResultField(field, parentName, rootEntityName));
-            }
+            partnerConnection.clearQueryOptions();
         }
-        return outStream.build();
+        QueryResult firstBatch = partnerConnection.query(soql);
+        return new PartnerQueryCursor(this, partnerConnection, firstBatch, expectedSchema, prefetchDepth, maxRows);
     }
 
+    /**
+     * Runs the queries of the Id ranges of a query in parallel and opens a cursor over their merged rows.
+     *
+     * @param ordered     true to return the rows in the order of the queries, false - in the order they are fetched
+     * @param workers     the max number of the queries run at the same time
+     * @param connections opens the Partner API connection of a worker
+     */
+    public <T> ChunkedQueryCursor<T> openChunkedQuery(List<String> queries, List<FieldDef> expectedSchema, int batchSize,
+                                                      int maxRows, boolean ordered, int workers,
+                                                      Callable<PartnerConnection> connections, Function<List, T> rowMapper) {
+        return new ChunkedQueryCursor<>(queries, expectedSchema, batchSize, maxRows, ordered, workers,
+                childQueryConcurrency, connections, rowMapper);
+    }
 
-    private ForceResultField toForceResultField(XmlObject field, String parentName, String rootEntityName) {
-        String fieldType = field.getXmlType() != null ? field.getXmlType().getLocalPart() : null;
-        if ("sObject".equalsIgnoreCase(fieldType)) {
-            List<XmlObject> children = new ArrayList<>();
-            field.getChildren().forEachRemaining(children::add);
-            field = children.get(2);
+    /**
+     * @return the Id of the first record returned by the query, null if the query returns no records
+     */
+    public String queryFirstId(String soql) throws ConnectionException {
+        logger.info("[PartnerService] queryFirstId "+soql);
+        partnerConnection.clearQueryOptions();
+        SObject[] records = partnerConnection.query(soql).getRecords();
+        if (records.length == 0) {
+            return null;
         }
-        String name = field.getName().getLocalPart();
-        if (parentName != null && (rootEntityName == null || !rootEntityName.equals(parentName))) {
-            name = parentName+"."+name;
+        return records[0].getId() != null ? records[0].getId() : (String) records[0].getField("Id");
+    }
+
+    /**
+     * Runs the query with queryAll, the deleted and the archived records are returned too.
+     *
+     * @return the Ids of the records returned by the query
+     */
+    public Set<String> queryAllIds(String soql) throws ConnectionException {
+        logger.info("[PartnerService] queryAllIds "+soql);
+        partnerConnection.setQueryOptions(MAX_QUERY_BATCH_SIZE);
+        Set<String> ids = new HashSet<>();
+        QueryResult result = partnerConnection.queryAll(soql);
+        while (true) {
+            for (SObject record : result.getRecords()) {
+                ids.add(record.getId() != null ? record.getId() : (String) record.getField("Id"));
+            }
+            if (result.isDone()) {
+                return ids;
+            }
+            result = partnerConnection.queryMore(result.getQueryLocator());
         }
-        Object value = field.getValue();
-        return new ForceResultField(null, fieldType, name, value);
     }
 
-    private boolean isNestedResultset(XmlObject object) {
-        return object.getXmlType() != null && "QueryResult".equals(object.getXmlType().getLocalPart());
+    /**
+     * @return the current time of the Salesforce server
+     */
+    public Instant getServerTimestamp() throws ConnectionException {
+        return partnerConnection.getServerTimestamp().getTimestamp().toInstant();
     }
 
-    private final static List<String> SOAP_RESPONSE_SERVICE_OBJECT_TYPES = Arrays.asList("type", "done", "queryLocator",
-            "size");
+    static int toQueryBatchSize(int fetchSize) {
+        return Math.max(MIN_QUERY_BATCH_SIZE, Math.min(MAX_QUERY_BATCH_SIZE, fetchSize));
+    }
+
+    /**
+     * @return the records of the batch as rows with the lists of child rows in place of the subqueries.
+     * The child rows which did not fit into the batch are fetched with queryMore.
+     */
+    List<List> decodeRecords(QueryResult queryResult, List<FieldDef> expectedSchema) throws ConnectionException {
+        List<SObject> batch = Arrays.asList(queryResult.getRecords());
+        List<List> records = pageDecoder == null
+                ? getProjectionPlan(expectedSchema).decodeRecords(batch.iterator(), null)
+                // a plan is not thread-safe, every slice is decoded by its own one
+                : pageDecoder.decode(batch, slice -> ProjectionPlan.compile(expectedSchema).decodeRecords(slice.iterator(), null));
+        new ChildRowsFetcher(partnerConnection, childQueryConcurrency).fetchRemainingRows(records);
+        return records;
+    }
 
-    private boolean isDataObjectType(XmlObject obj) {
-        return !SOAP_RESPONSE_SERVICE_OBJECT_TYPES.contains(obj.getName().getLocalPart());
+    /**
+     * Expands the child rows of the decoded records to the flat rows of the result and converts them.
+     *
+     * @param maxRows the max number of returned rows, 0 - no limit
+     */
+    <T> List<T> expandRecords(List<List> records, List<FieldDef> expectedSchema, int maxRows, Function<List, T> rowMapper) {
+        if (pageDecoder == null) {
+            return expandSlice(records, expectedSchema, maxRows, rowMapper);
+        }
+        List<T> rows = pageDecoder.decode(records, slice -> expandSlice(slice, expectedSchema, maxRows, rowMapper));
+        return maxRows > 0 && rows.size() > maxRows ? new ArrayList<>(rows.subList(0, maxRows)) : rows;
+    }
+
+    private static <T> List<T> expandSlice(List<List> records, List<FieldDef> expectedSchema, int maxRows, Function<List, T> rowMapper) {
+        List<T> rows = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size() && (maxRows <= 0 || rows.size() < maxRows); i++) {
+            Iterator<List> expanded = PartnerResultToCrtesianTable.expandRow(records.get(i), expectedSchema);
+            while (expanded.hasNext() && (maxRows <= 0 || rows.size() < maxRows)) {
+                rows.add(rowMapper.apply(expanded.next()));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return the plan compiled for the schema of the statement, the plan is compiled again only if the schema changes
+     */
+    private ProjectionPlan getProjectionPlan(List<FieldDef> expectedSchema) {
+        if (projectionPlan == null || projectionSchema != expectedSchema) {
+            projectionPlan = ProjectionPlan.compile(expectedSchema);
+            projectionSchema = expectedSchema;
+        }
+        return projectionPlan;
     }
 
     public SaveResult[] createRecords(String entityName, List<Map<String, Object>> recordsDefinitions) throws ConnectionException {
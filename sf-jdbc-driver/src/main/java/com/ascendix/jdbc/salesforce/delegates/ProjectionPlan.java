@@ -0,0 +1,280 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.ws.bind.XmlObject;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decodes the records of a SOAP query response into the flat rows of {@link ForceResultField}s.
+ * <p>
+ * The plan is compiled once from the expected schema - a list of field definitions where a nested list
+ * stands for a child subquery - and is reused for every record of every batch of the statement.
+ * A record is written straight into a row array sized by the schema, the relationship fields are flattened
+ * into the same row and every child subquery takes one slot holding the {@link ChildRows} decoded from it.
+ * The qualified field names are remembered per slot and are not rebuilt while the records have the same shape.
+ * An empty relationship comes as one nil element, it is padded with the null fields to the width the relationship
+ * has in the other records, or in the expected schema, so every row has the same fields in the same slots.
+ * <p>
+ * A plan is not thread-safe, it is used by the thread reading the rows of the statement.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+class ProjectionPlan {
+
+    private static final String SOBJECT_TYPE = "sObject";
+    private static final String QUERY_RESULT_TYPE = "QueryResult";
+
+    /** the number of slots in a row */
+    private int width;
+    /** plans of the child subqueries by slot */
+    private ProjectionPlan[] childPlans;
+    /** the name of the last field decoded into a slot */
+    private SlotName[] slotNames;
+    /** the expected fields by slot */
+    private FieldDef[] fields;
+    /** the relationship decoded from a slot and the number of the slots it took, the widest one */
+    private String[] relationships;
+    private int[] spans;
+
+    private ProjectionPlan(int width) {
+        this.width = width;
+        this.childPlans = new ProjectionPlan[width];
+        this.slotNames = new SlotName[width];
+        this.fields = new FieldDef[width];
+        this.relationships = new String[width];
+        this.spans = new int[width];
+    }
+
+    /**
+     * @param schema the expected fields of the query, a nested list for each child subquery
+     */
+    static ProjectionPlan compile(List schema) {
+        if (schema == null) {
+            return new ProjectionPlan(0);
+        }
+        ProjectionPlan plan = new ProjectionPlan(schema.size());
+        for (int slot = 0; slot < schema.size(); slot++) {
+            if (schema.get(slot) instanceof List) {
+                plan.childPlans[slot] = compile((List) schema.get(slot));
+            } else if (schema.get(slot) instanceof FieldDef) {
+                plan.fields[slot] = (FieldDef) schema.get(slot);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Decodes the data records of a query batch (or of a child QueryResult) skipping the service elements.
+     */
+    List<List> decodeRecords(Iterator<? extends XmlObject> records, String parentName) {
+        List<List> rows = new ArrayList<>();
+        while (records.hasNext()) {
+            XmlObject record = records.next();
+            if (isDataElement(record)) {
+                rows.add(decode(record, parentName));
+            }
+        }
+        return rows;
+    }
+
+    List decode(XmlObject record, String parentName) {
+        Row row = new Row(width);
+        decodeFields(record, parentName, row);
+        return row.toList();
+    }
+
+    private void decodeFields(XmlObject record, String parentName, Row row) {
+        Iterator<XmlObject> fields = record.getChildren();
+        // Removes duplicate Id from SF Partner API response
+        // (https://developer.salesforce.com/forums/?id=906F00000008kciIAA)
+        boolean skipped = false;
+        while (fields.hasNext()) {
+            XmlObject field = fields.next();
+            if (!isDataElement(field)) {
+                continue;
+            }
+            if (!skipped) {
+                skipped = true;
+                continue;
+            }
+            QName xmlType = field.getXmlType();
+            String fieldType = xmlType != null ? xmlType.getLocalPart() : null;
+            String localName = field.getName().getLocalPart();
+            if (SOBJECT_TYPE.equalsIgnoreCase(fieldType)) {
+                int slot = row.size;
+                decodeFields(field, localName, row);
+                learnSpan(slot, localName, row.size - slot);
+            } else if (QUERY_RESULT_TYPE.equals(fieldType)) {
+                row.add(childPlan(row.size).decodeChildResult(field, localName));
+            } else {
+                int span = isNil(field) ? emptyRelationshipSpan(row.size, parentName, localName) : 0;
+                if (span > 0) {
+                    padRelationship(row, span);
+                } else {
+                    row.add(new ForceResultField(null, fieldType, qualifiedName(row.size, parentName, localName), field.getValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a child QueryResult, the locator of the rest of its rows is kept if the result is not complete.
+     */
+    private ChildRows decodeChildResult(XmlObject result, String relationshipName) {
+        ChildRows rows = new ChildRows(this, relationshipName);
+        boolean done = true;
+        String queryLocator = null;
+        Iterator<XmlObject> children = result.getChildren();
+        while (children.hasNext()) {
+            XmlObject child = children.next();
+            switch (child.getName().getLocalPart()) {
+                case "done":
+                    done = !"false".equals(String.valueOf(child.getValue()));
+                    break;
+                case "queryLocator":
+                    queryLocator = child.getValue() != null ? child.getValue().toString() : null;
+                    break;
+                case "type":
+                case "size":
+                    break;
+                default:
+                    rows.add(decode(child, relationshipName));
+            }
+        }
+        if (!done) {
+            rows.setQueryLocator(queryLocator);
+        }
+        return rows;
+    }
+
+    private void learnSpan(int slot, String relationshipName, int span) {
+        ensureSlot(slot);
+        if (!relationshipName.equals(relationships[slot])) {
+            relationships[slot] = relationshipName;
+            spans[slot] = span;
+        } else {
+            spans[slot] = Math.max(spans[slot], span);
+        }
+    }
+
+    /**
+     * @return the number of the slots of the relationship whose nil element is in the slot,
+     * 0 if the element is a null field
+     */
+    private int emptyRelationshipSpan(int slot, String parentName, String localName) {
+        if (slot < width && localName.equals(relationships[slot])) {
+            return spans[slot];
+        }
+        if (parentName != null) {
+            // the expected fields of a nested relationship are named by the first relationship only
+            return 0;
+        }
+        int span = 0;
+        while (slot + span < width && isFieldOf(fields[slot + span], localName)) {
+            span++;
+        }
+        return span;
+    }
+
+    private static boolean isFieldOf(FieldDef field, String relationshipName) {
+        return field != null && field.getAlias() != null
+                && field.getAlias().regionMatches(true, 0, relationshipName + ".", 0, relationshipName.length() + 1);
+    }
+
+    private void padRelationship(Row row, int span) {
+        for (int i = 0; i < span; i++) {
+            int slot = row.size;
+            ensureSlot(slot);
+            String name = slotNames[slot] != null ? slotNames[slot].qualifiedName : fields[slot].getAlias();
+            row.add(new ForceResultField(null, null, name, null));
+        }
+    }
+
+    private ProjectionPlan childPlan(int slot) {
+        ensureSlot(slot);
+        if (childPlans[slot] == null) {
+            // the response has a subquery which is not in the expected schema
+            childPlans[slot] = new ProjectionPlan(0);
+        }
+        return childPlans[slot];
+    }
+
+    private String qualifiedName(int slot, String parentName, String localName) {
+        ensureSlot(slot);
+        SlotName slotName = slotNames[slot];
+        if (slotName == null || !slotName.matches(parentName, localName)) {
+            slotName = new SlotName(parentName, localName);
+            slotNames[slot] = slotName;
+        }
+        return slotName.qualifiedName;
+    }
+
+    private void ensureSlot(int slot) {
+        if (slot >= width) {
+            // the records have more fields than expected - the plan grows to fit them
+            width = slot + 1;
+            childPlans = Arrays.copyOf(childPlans, width);
+            slotNames = Arrays.copyOf(slotNames, width);
+            fields = Arrays.copyOf(fields, width);
+            relationships = Arrays.copyOf(relationships, width);
+            spans = Arrays.copyOf(spans, width);
+        }
+    }
+
+    private static boolean isNil(XmlObject element) {
+        return element.getValue() == null && !element.getChildren().hasNext();
+    }
+
+    private static boolean isDataElement(XmlObject element) {
+        switch (element.getName().getLocalPart()) {
+            case "type":
+            case "done":
+            case "queryLocator":
+            case "size":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static class SlotName {
+        private final String parentName;
+        private final String localName;
+        private final String qualifiedName;
+
+        private SlotName(String parentName, String localName) {
+            this.parentName = parentName;
+            this.localName = localName;
+            this.qualifiedName = parentName != null ? parentName + "." + localName : localName;
+        }
+
+        private boolean matches(String parentName, String localName) {
+            return this.localName.equals(localName)
+                    && (this.parentName == null ? parentName == null : this.parentName.equals(parentName));
+        }
+    }
+
+    private static class Row {
+        private Object[] slots;
+        private int size;
+
+        private Row(int width) {
+            this.slots = new Object[width];
+        }
+
+        private void add(Object value) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(4, size * 2));
+            }
+            slots[size++] = value;
+        }
+
+        private List toList() {
+            return Arrays.asList(size == slots.length ? slots : Arrays.copyOf(slots, size));
+        }
+    }
+}
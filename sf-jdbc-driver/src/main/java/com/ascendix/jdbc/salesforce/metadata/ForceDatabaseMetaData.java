@@ -29,7 +29,7 @@ public class ForceDatabaseMetaData implements DatabaseMetaData, Serializable {
 
     private transient PartnerService partnerService;
     private transient ForceConnection connection;
-    private List<Table> tablesCache;
+    private volatile List<Table> tablesCache;
     private int counter;
 
     public ForceDatabaseMetaData(ForceConnection connection) {
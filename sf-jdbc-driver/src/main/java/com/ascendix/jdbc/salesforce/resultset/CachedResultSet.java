@@ -2,6 +2,7 @@ package com.ascendix.jdbc.salesforce.resultset;
 
 import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
 
+import javax.sql.rowset.RowSetMetaDataImpl;
 import javax.sql.rowset.serial.SerialBlob;
 import java.io.InputStream;
 import java.io.Reader;
@@ -25,8 +26,12 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetTime;
 import java.util.*;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CachedResultSet implements ResultSet, Serializable {
@@ -37,24 +42,29 @@ public class CachedResultSet implements ResultSet, Serializable {
     private static final long serialVersionUID = 1L;
 
     private transient Integer index;
-    private List<ColumnMap<String, Object>> rows = new ArrayList<>();
+    private transient ColumnIndex columnIndex;
+    private ColumnarRows rows;
     private ResultSetMetaData metadata;
     private SQLWarning warningsChain;
 
     public CachedResultSet(List<ColumnMap<String, Object>> rows) {
-        this.rows = new ArrayList(rows);
+        this.rows = new ColumnarRows(rows);
     }
 
     public CachedResultSet(List<ColumnMap<String, Object>> rows, ResultSetMetaData metadata) {
-        this(new ArrayList(rows));
+        this(rows);
         this.metadata = metadata;
     }
 
-    public CachedResultSet(ResultSetMetaData metadata) {
-        this(new ArrayList());
+    public CachedResultSet(ColumnarRows rows, ResultSetMetaData metadata) {
+        this.rows = rows;
         this.metadata = metadata;
     }
 
+    public CachedResultSet(ResultSetMetaData metadata) {
+        this(new ColumnarRows(), metadata);
+    }
+
     public CachedResultSet(ColumnMap<String, Object> singleRow) {
         this(new ArrayList(Arrays.asList(singleRow)));
     }
@@ -63,19 +73,125 @@ public class CachedResultSet implements ResultSet, Serializable {
         this(new ArrayList(Arrays.asList(singleRow)), metadata);
     }
 
+    public ColumnarRows getRows() {
+        return rows;
+    }
+
+    /**
+     * @param columns the columns of the new result in their order, starting at 1
+     * @return a new result of the given columns over the rows of this one
+     */
+    public CachedResultSet selectColumns(int[] columns) throws SQLException {
+        return new CachedResultSet(rows.selectColumns(columns), selectColumns(metadata, columns));
+    }
+
+    /**
+     * @return a copy of the metadata of the given columns in their order, null for null metadata
+     */
+    public static ResultSetMetaData selectColumns(ResultSetMetaData metadata, int[] columns) throws SQLException {
+        if (metadata == null) {
+            return null;
+        }
+        RowSetMetaDataImpl selected = new RowSetMetaDataImpl();
+        if (columns.length > 0) {
+            selected.setColumnCount(columns.length);
+        }
+        for (int i = 1; i <= columns.length; i++) {
+            int column = columns[i - 1];
+            selected.setColumnName(i, metadata.getColumnName(column));
+            selected.setColumnLabel(i, metadata.getColumnLabel(column));
+            selected.setColumnTypeName(i, metadata.getColumnTypeName(column));
+            selected.setTableName(i, metadata.getTableName(column));
+            selected.setSchemaName(i, metadata.getSchemaName(column));
+            selected.setCatalogName(i, metadata.getCatalogName(column));
+            selected.setColumnType(i, metadata.getColumnType(column));
+            selected.setPrecision(i, Math.max(0, metadata.getPrecision(column)));
+            selected.setScale(i, Math.max(0, metadata.getScale(column)));
+            selected.setColumnDisplaySize(i, Math.max(0, metadata.getColumnDisplaySize(column)));
+            selected.setNullable(i, metadata.isNullable(column));
+            selected.setAutoIncrement(i, metadata.isAutoIncrement(column));
+            selected.setCaseSensitive(i, metadata.isCaseSensitive(column));
+            selected.setCurrency(i, metadata.isCurrency(column));
+            selected.setSigned(i, metadata.isSigned(column));
+            selected.setSearchable(i, metadata.isSearchable(column));
+        }
+        return selected;
+    }
+
     public Object getObject(String columnName) throws SQLException {
-        return rows.get(getIndex()).get(columnName.toUpperCase());
+        return TypedValues.toJdbcObject(getValue(columnName));
     }
 
     public Object getObject(int columnIndex) throws SQLException {
-        return rows.get(getIndex()).getByIndex(columnIndex);
+        return TypedValues.toJdbcObject(getValue(columnIndex));
     }
 
     protected void addRow(ColumnMap<String, Object> row) {
         rows.add(row);
+        columnIndex = null;
+    }
+
+    /**
+     * @return the value of the row the cursor is currently positioned on, the column starts at 1
+     */
+    protected Object getValue(int columnIndex) {
+        return rows.get(getIndex(), columnIndex);
+    }
+
+    /**
+     * @return the value of the row the cursor is currently positioned on, null if there is no such column
+     */
+    protected Object getValue(String columnName) {
+        int column = getColumnIndex().indexOf(columnName);
+        return column > 0 ? getValue(column) : null;
+    }
+
+    /**
+     * The column positions by the case-insensitive column labels and names of the metadata
+     * and by the names the columns are stored with. Built on the first access by name.
+     */
+    private ColumnIndex getColumnIndex() {
+        if (columnIndex == null) {
+            List<String> storedNames = getStoredColumnNames();
+            try {
+                ResultSetMetaData metaData = getMetaData();
+                int columns = metaData.getColumnCount();
+                ColumnIndex result = new ColumnIndex(columns * 2 + storedNames.size());
+                for (int column = 1; column <= columns; column++) {
+                    result.add(metaData.getColumnLabel(column), column);
+                }
+                for (int column = 1; column <= columns; column++) {
+                    result.add(metaData.getColumnName(column), column);
+                }
+                addStoredNames(result, storedNames);
+                columnIndex = result;
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "[CachedRS] failed to read the column names of the metadata", e);
+                ColumnIndex result = new ColumnIndex(storedNames.size());
+                addStoredNames(result, storedNames);
+                columnIndex = result;
+            }
+        }
+        return columnIndex;
+    }
+
+    private static void addStoredNames(ColumnIndex index, List<String> storedNames) {
+        for (int column = 1; column <= storedNames.size(); column++) {
+            index.add(storedNames.get(column - 1), column);
+        }
+    }
+
+    /**
+     * @return the names the columns are stored with
+     */
+    protected List<String> getStoredColumnNames() {
+        return rows.getColumnNames();
     }
 
-    private int getIndex() {
+    /**
+     * @return the row the cursor is positioned on starting at 0, -1 before the first row and the row count after the last
+     */
+    protected int getIndex() {
         if (index == null) {
             index = -1;
         }
@@ -86,59 +202,82 @@ public class CachedResultSet implements ResultSet, Serializable {
         index = i;
     }
 
-    private void increaseIndex() {
-        index = getIndex() + 1;
+    /**
+     * Moves the cursor to a row, a row out of the result moves it before the first or after the last row.
+     *
+     * @return true if the cursor is on a row
+     */
+    private boolean moveTo(int i) {
+        int count = getRowCount();
+        setIndex(Math.max(-1, Math.min(i, count)));
+        return getIndex() >= 0 && getIndex() < count;
+    }
+
+    protected int getRowCount() {
+        return rows.size();
     }
 
     public String getString(String columnName) throws SQLException {
-        return (String) getObject(columnName);
+        return TypedValues.toSalesforceString(getValue(columnName));
     }
 
     public String getString(int columnIndex) throws SQLException {
-        return (String) getObject(columnIndex);
+        return TypedValues.toSalesforceString(getValue(columnIndex));
     }
 
     public boolean first() throws SQLException {
-        if (rows.size() > 0) {
-            setIndex(0);
-            return true;
-        } else {
-            return false;
-        }
+        return getRowCount() > 0 && moveTo(0);
     }
 
     public boolean last() throws SQLException {
-        if (rows.size() > 0) {
-            setIndex(rows.size() - 1);
-            return true;
-        } else {
-            return false;
-        }
+        return getRowCount() > 0 && moveTo(getRowCount() - 1);
     }
 
     public boolean next() throws SQLException {
-        if (rows.size() > 0) {
-            increaseIndex();
-            return getIndex() < rows.size();
-        } else {
-            return false;
-        }
+        return getRowCount() > 0 && moveTo(getIndex() + 1);
+    }
+
+    public boolean previous() throws SQLException {
+        return getRowCount() > 0 && moveTo(getIndex() - 1);
+    }
+
+    /**
+     * @param row the row starting at 1, negative to count from the last row
+     */
+    public boolean absolute(int row) throws SQLException {
+        return moveTo(row >= 0 ? row - 1 : getRowCount() + row);
+    }
+
+    public boolean relative(int rows) throws SQLException {
+        return moveTo(getIndex() + rows);
+    }
+
+    public void beforeFirst() throws SQLException {
+        setIndex(-1);
+    }
+
+    public void afterLast() throws SQLException {
+        setIndex(getRowCount());
+    }
+
+    public int getRow() throws SQLException {
+        return getIndex() >= 0 && getIndex() < getRowCount() ? getIndex() + 1 : 0;
     }
 
     public boolean isAfterLast() throws SQLException {
-        return rows.size() > 0 && getIndex() == rows.size();
+        return getRowCount() > 0 && getIndex() == getRowCount();
     }
 
     public boolean isBeforeFirst() throws SQLException {
-        return rows.size() > 0 && getIndex() == -1;
+        return getRowCount() > 0 && getIndex() == -1;
     }
 
     public boolean isFirst() throws SQLException {
-        return rows.size() > 0 && getIndex() == 0;
+        return getRowCount() > 0 && getIndex() == 0;
     }
 
     public boolean isLast() throws SQLException {
-        return rows.size() > 0 && getIndex() == rows.size() - 1;
+        return getRowCount() > 0 && getIndex() == getRowCount() - 1;
     }
 
     public ResultSetMetaData getMetaData() throws SQLException {
@@ -156,40 +295,61 @@ public class CachedResultSet implements ResultSet, Serializable {
         throw new UnsupportedOperationException("Not implemented yet.");
     }
 
+    /**
+     * Reads the value of a column, parses the values kept as strings and converts the values decoded
+     * when the rows were loaded.
+     */
     private class ColumnValueParser<T> {
 
         private Function<String, T> conversion;
+        private Function<Object, T> typedConversion;
 
         public ColumnValueParser(Function<String, T> parser) {
+            this(parser, value -> (T) value);
+        }
+
+        public ColumnValueParser(Function<String, T> parser, Function<Object, T> converter) {
             this.conversion = parser;
+            this.typedConversion = converter;
         }
 
         public Optional<T> parse(int columnIndex) {
-            Object value = rows.get(getIndex()).getByIndex(columnIndex);
+            Object value = getValue(columnIndex);
             return parse(value);
         }
 
         public Optional<T> parse(String columnName) {
-            Object value = rows.get(getIndex()).get(columnName.toUpperCase());
+            Object value = getValue(columnName);
             return parse(value);
         }
 
         private Optional<T> parse(Object o) {
             if (o == null) return Optional.empty();
-            if (!(o instanceof String)) return (Optional<T>) Optional.of(o);
+            if (!(o instanceof String)) return Optional.of(typedConversion.apply(o));
             return Optional.of(conversion.apply((String) o));
         }
 
     }
 
+    /**
+     * @return the converter of the numeric values to the type of a getter, other values are returned as they are
+     */
+    private static <T> Function<Object, T> fromNumber(Function<Number, T> conversion) {
+        return value -> value instanceof Number ? conversion.apply((Number) value) : (T) value;
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(BigDecimal::new)
+        return new ColumnValueParser<>(BigDecimal::new, fromNumber(CachedResultSet::toBigDecimal))
                 .parse(columnIndex)
                 .orElse(null);
     }
 
     public BigDecimal getBigDecimal(String columnName) throws SQLException {
-        return new ColumnValueParser<>(BigDecimal::new)
+        return new ColumnValueParser<>(BigDecimal::new, fromNumber(CachedResultSet::toBigDecimal))
                 .parse(columnName)
                 .orElse(null);
     }
@@ -203,19 +363,30 @@ public class CachedResultSet implements ResultSet, Serializable {
     }
 
     public Date getDate(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(this::parseDate)
+        return new ColumnValueParser<>(this::parseDate, CachedResultSet::toDate)
                 .parse(columnIndex)
                 .map(d -> new java.sql.Date(d.getTime()))
                 .orElse(null);
     }
 
     public Date getDate(String columnName) throws SQLException {
-        return new ColumnValueParser<>(this::parseDate)
+        return new ColumnValueParser<>(this::parseDate, CachedResultSet::toDate)
                 .parse(columnName)
                 .map(d -> new java.sql.Date(d.getTime()))
                 .orElse(null);
     }
 
+    private static java.util.Date toDate(Object value) {
+        if (value instanceof LocalDate) {
+            return Date.valueOf((LocalDate) value);
+        } else if (value instanceof Instant) {
+            return java.util.Date.from((Instant) value);
+        } else if (value instanceof Calendar) {
+            return ((Calendar) value).getTime();
+        }
+        return (java.util.Date) value;
+    }
+
     private java.util.Date parseDateTime(String dateRepr) {
         try {
             return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX").parse(dateRepr);
@@ -225,27 +396,21 @@ public class CachedResultSet implements ResultSet, Serializable {
     }
 
     public Timestamp getTimestamp(int columnIndex) throws SQLException {
-        Object value = rows.get(getIndex()).getByIndex(columnIndex);
-        if (value instanceof GregorianCalendar) {
-            return new java.sql.Timestamp(((GregorianCalendar) value).getTime().getTime());
-        } else {
-            return new ColumnValueParser<>(this::parseDateTime)
-                    .parse(columnIndex)
-                    .map(d -> new java.sql.Timestamp(d.getTime()))
-                    .orElse(null);
-        }
+        return new ColumnValueParser<>(this::parseDateTime, CachedResultSet::toDate)
+                .parse(columnIndex)
+                .map(CachedResultSet::toTimestamp)
+                .orElse(null);
     }
 
     public Timestamp getTimestamp(String columnName) throws SQLException {
-        Object value = rows.get(getIndex()).get(columnName);
-        if (value instanceof GregorianCalendar) {
-            return new java.sql.Timestamp(((GregorianCalendar) value).getTime().getTime());
-        } else {
-            return new ColumnValueParser<>((v) -> parseDateTime(v))
-                    .parse(columnName)
-                    .map(d -> new java.sql.Timestamp(d.getTime()))
-                    .orElse(null);
-        }
+        return new ColumnValueParser<>(this::parseDateTime, CachedResultSet::toDate)
+                .parse(columnName)
+                .map(CachedResultSet::toTimestamp)
+                .orElse(null);
+    }
+
+    private static Timestamp toTimestamp(java.util.Date value) {
+        return value instanceof Timestamp ? (Timestamp) value : new Timestamp(value.getTime());
     }
 
     public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
@@ -265,89 +430,93 @@ public class CachedResultSet implements ResultSet, Serializable {
     }
 
     public Time getTime(String columnName) throws SQLException {
-        return new ColumnValueParser<>(this::parseTime)
+        return new ColumnValueParser<>(this::parseTime, CachedResultSet::toTime)
                 .parse(columnName)
                 .map(d -> new Time(d.getTime()))
                 .orElse(null);
     }
 
     public Time getTime(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(this::parseTime)
+        return new ColumnValueParser<>(this::parseTime, CachedResultSet::toTime)
                 .parse(columnIndex)
                 .map(d -> new Time(d.getTime()))
                 .orElse(null);
     }
 
+    private static java.util.Date toTime(Object value) {
+        return value instanceof OffsetTime ? TypedValues.toTime((OffsetTime) value) : toDate(value);
+    }
+
     public BigDecimal getBigDecimal(int columnIndex, int scale) {
-        Optional<BigDecimal> result = new ColumnValueParser<>(BigDecimal::new)
+        Optional<BigDecimal> result = new ColumnValueParser<>(BigDecimal::new, fromNumber(CachedResultSet::toBigDecimal))
                 .parse(columnIndex);
         result.ifPresent(v -> v.setScale(scale));
         return result.orElse(null);
     }
 
     public BigDecimal getBigDecimal(String columnName, int scale) {
-        Optional<BigDecimal> result = new ColumnValueParser<>(BigDecimal::new)
+        Optional<BigDecimal> result = new ColumnValueParser<>(BigDecimal::new, fromNumber(CachedResultSet::toBigDecimal))
                 .parse(columnName);
         result.ifPresent(v -> v.setScale(scale));
         return result.orElse(null);
     }
 
     public float getFloat(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(Float::new)
+        return new ColumnValueParser<>(Float::new, fromNumber(Number::floatValue))
                 .parse(columnIndex)
                 .orElse(0f);
     }
 
     public float getFloat(String columnName) throws SQLException {
-        return new ColumnValueParser<>(Float::new)
+        return new ColumnValueParser<>(Float::new, fromNumber(Number::floatValue))
                 .parse(columnName)
                 .orElse(0f);
     }
 
     public double getDouble(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(Double::new)
+        return new ColumnValueParser<>(Double::new, fromNumber(Number::doubleValue))
                 .parse(columnIndex)
                 .orElse(0d);
     }
 
     public double getDouble(String columnName) throws SQLException {
-        return new ColumnValueParser<>(Double::new)
+        return new ColumnValueParser<>(Double::new, fromNumber(Number::doubleValue))
                 .parse(columnName)
                 .orElse(0d);
     }
 
     public long getLong(String columnName) throws SQLException {
-        return new ColumnValueParser<>(Long::new)
+        return new ColumnValueParser<>(Long::new, fromNumber(Number::longValue))
                 .parse(columnName)
                 .orElse(0L);
     }
 
     public long getLong(int columnIndex) throws SQLException {
-        return new ColumnValueParser<Long>(Long::new)
+        return new ColumnValueParser<>(Long::new, fromNumber(Number::longValue))
                 .parse(columnIndex)
                 .orElse(0L);
     }
 
     public int getInt(String columnName) throws SQLException {
-        return new ColumnValueParser<>(Integer::new)
+        return new ColumnValueParser<>(Integer::new, fromNumber(Number::intValue))
                 .parse(columnName)
                 .orElse(0);
     }
 
     public int getInt(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(Integer::new)
+        return new ColumnValueParser<>(Integer::new, fromNumber(Number::intValue))
                 .parse(columnIndex)
                 .orElse(0);
     }
 
     public short getShort(String columnName) throws SQLException {
-        return new ColumnValueParser<>(Short::new)
+        return new ColumnValueParser<>(Short::new, fromNumber(Number::shortValue))
                 .parse(columnName)
                 .orElse((short) 0);
     }
 
     public short getShort(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(Short::new)
+        return new ColumnValueParser<>(Short::new, fromNumber(Number::shortValue))
                 .parse(columnIndex)
                 .orElse((short) 0);
     }
@@ -395,13 +564,13 @@ public class CachedResultSet implements ResultSet, Serializable {
     }
 
     public byte getByte(int columnIndex) throws SQLException {
-        return new ColumnValueParser<>(Byte::new)
+        return new ColumnValueParser<>(Byte::new, fromNumber(Number::byteValue))
                 .parse(columnIndex)
                 .orElse((byte) 0);
     }
 
     public byte getByte(String columnName) throws SQLException {
-        return new ColumnValueParser<>(Byte::new)
+        return new ColumnValueParser<>(Byte::new, fromNumber(Number::byteValue))
                 .parse(columnName)
                 .orElse((byte) 0);
     }
@@ -418,17 +587,6 @@ public class CachedResultSet implements ResultSet, Serializable {
     // Not implemented below here
     //
 
-    public boolean absolute(int row) throws SQLException {
-        return false;
-    }
-
-    public void afterLast() throws SQLException {
-        System.out.println("after last check");
-    }
-
-    public void beforeFirst() throws SQLException {
-    }
-
     public void cancelRowUpdates() throws SQLException {
     }
 
@@ -446,8 +604,11 @@ public class CachedResultSet implements ResultSet, Serializable {
     }
 
     public int findColumn(String columnName) throws SQLException {
-
-        return 0;
+        int column = getColumnIndex().indexOf(columnName);
+        if (column == 0) {
+            throw new SQLException("Column not found: " + columnName);
+        }
+        return column;
     }
 
     public Array getArray(int i) throws SQLException {
@@ -532,11 +693,6 @@ public class CachedResultSet implements ResultSet, Serializable {
         return null;
     }
 
-    public int getRow() throws SQLException {
-
-        return 0;
-    }
-
     public Statement getStatement() throws SQLException {
 
         return null;
@@ -553,8 +709,7 @@ public class CachedResultSet implements ResultSet, Serializable {
     }
 
     public int getType() throws SQLException {
-
-        return 0;
+        return ResultSet.TYPE_SCROLL_INSENSITIVE;
     }
 
     public URL getURL(int columnIndex) throws SQLException {
@@ -612,19 +767,9 @@ public class CachedResultSet implements ResultSet, Serializable {
     public void moveToInsertRow() throws SQLException {
     }
 
-    public boolean previous() throws SQLException {
-
-        return false;
-    }
-
     public void refreshRow() throws SQLException {
     }
 
-    public boolean relative(int rows) throws SQLException {
-
-        return false;
-    }
-
     public boolean rowDeleted() throws SQLException {
 
         return false;
@@ -0,0 +1,66 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+/**
+ * Case-insensitive map of the column names of a result set to their positions.
+ * The lookup hashes and compares the name in place, without making an upper case copy of it.
+ * When several columns have the same name the first one is found.
+ */
+class ColumnIndex {
+
+    private final String[] names;
+    private final int[] positions;
+    private final int mask;
+
+    ColumnIndex(int expectedColumns) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedColumns * 2 - 1)) << 1;
+        this.names = new String[capacity];
+        this.positions = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds the column unless there is a column with the same name already.
+     *
+     * @param position the position of the column starting at 1
+     */
+    void add(String name, int position) {
+        if (name == null) {
+            return;
+        }
+        int slot = hash(name) & mask;
+        while (names[slot] != null) {
+            if (names[slot].equalsIgnoreCase(name)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        positions[slot] = position;
+    }
+
+    /**
+     * @return the position of the column starting at 1 or 0 if there is no such column
+     */
+    int indexOf(String name) {
+        if (name == null) {
+            return 0;
+        }
+        int slot = hash(name) & mask;
+        while (names[slot] != null) {
+            if (names[slot].equalsIgnoreCase(name)) {
+                return positions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            // the same case folding as String.equalsIgnoreCase
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,516 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column oriented storage of the rows of a result set.
+ * <p>
+ * The column names are kept once for all the rows. Every column is stored in an array typed by the class
+ * of its values - ints, longs, doubles and booleans, the days of dates and the milliseconds of instants
+ * are kept unboxed with a bitmap of the non-null rows, the other values are kept as references.
+ * A column which gets a value of another class is converted to a column of references,
+ * so {@link #get(int, int)} returns the same objects as were added.
+ */
+public class ColumnarRows implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** the name of every column - the first non-null name added in its position */
+    private String[] names = new String[0];
+    /** the values of every column, null for a column which has no values yet */
+    private Column[] columns = new Column[0];
+    private int size;
+
+    public ColumnarRows() {
+    }
+
+    public ColumnarRows(List<ColumnMap<String, Object>> rows) {
+        rows.forEach(this::add);
+    }
+
+    /**
+     * Creates the given number of empty rows, their values are filled by {@link #set(int, int, Object)}.
+     */
+    ColumnarRows(List<String> columnNames, int size) {
+        this.names = columnNames.toArray(new String[0]);
+        this.columns = new Column[names.length];
+        this.size = size;
+    }
+
+    public void add(ColumnMap<String, Object> row) {
+        List<String> rowNames = row.getColumnNames();
+        List<Object> values = row.getValues();
+        ensureColumns(values.size());
+        for (int column = 0; column < values.size(); column++) {
+            if (names[column] == null) {
+                names[column] = rowNames.get(column);
+            }
+            setValue(size, column, values.get(column));
+        }
+        size++;
+    }
+
+    /**
+     * Sets the value of a row created by {@link #ColumnarRows(List, int)}, the rows of a column are set in order.
+     *
+     * @param row    the row starting at 0
+     * @param column the column starting at 1
+     */
+    void set(int row, int column, Object value) {
+        setValue(row, column - 1, value);
+    }
+
+    private void setValue(int row, int column, Object value) {
+        if (value == null) {
+            // columns are null by default
+            return;
+        }
+        Column values = columns[column];
+        if (values == null) {
+            values = Column.forValue(value);
+            columns[column] = values;
+        } else if (!values.accepts(value)) {
+            values = new ReferenceColumn(values, row);
+            columns[column] = values;
+        }
+        values.set(row, value);
+    }
+
+    private void ensureColumns(int count) {
+        if (count > names.length) {
+            names = Arrays.copyOf(names, count);
+            columns = Arrays.copyOf(columns, count);
+        }
+    }
+
+    /**
+     * @param row    the row starting at 0
+     * @param column the column starting at 1
+     */
+    public Object get(int row, int column) {
+        if (column < 1 || column > names.length) {
+            throw new IndexOutOfBoundsException("Column index: " + column + ", columns: " + names.length);
+        }
+        Column values = columns[column - 1];
+        return values != null ? values.get(row) : null;
+    }
+
+    public Object get(int row, String columnName) {
+        for (int column = 0; column < names.length; column++) {
+            if (columnName.equals(names[column])) {
+                return get(row, column + 1);
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public List<String> getColumnNames() {
+        return new ArrayList<>(Arrays.asList(names));
+    }
+
+    /**
+     * @param columns the columns of the new rows in their order, starting at 1
+     * @return the rows of the given columns, the values are shared with these rows and not copied,
+     * so neither of them is added to afterwards
+     */
+    public ColumnarRows selectColumns(int[] columns) {
+        ColumnarRows selected = new ColumnarRows();
+        selected.names = new String[columns.length];
+        selected.columns = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            // the columns of the rows without values are empty
+            if (columns[i] <= names.length) {
+                selected.names[i] = names[columns[i] - 1];
+                selected.columns[i] = this.columns[columns[i] - 1];
+            }
+        }
+        selected.size = size;
+        return selected;
+    }
+
+    /**
+     * @return the approximate number of bytes the rows take in heap
+     */
+    public long estimateBytes() {
+        long bytes = 64 + names.length * 16L;
+        for (Column column : columns) {
+            if (column != null) {
+                bytes += column.estimateBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private abstract static class Column implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        static Column forValue(Object value) {
+            if (value instanceof Integer) {
+                return new IntColumn();
+            } else if (value instanceof Long) {
+                return new LongColumn();
+            } else if (value instanceof Double) {
+                return new DoubleColumn();
+            } else if (value instanceof Boolean) {
+                return new BooleanColumn();
+            } else if (value instanceof String) {
+                return new StringColumn();
+            } else if (value instanceof LocalDate) {
+                return new LocalDateColumn();
+            } else if (InstantColumn.isMillis(value)) {
+                return new InstantColumn();
+            }
+            return new ReferenceColumn();
+        }
+
+        static int grow(int capacity, int row) {
+            return Math.max(row + 1, Math.max(INITIAL_CAPACITY, capacity * 2));
+        }
+
+        abstract boolean accepts(Object value);
+
+        abstract void set(int row, Object value);
+
+        abstract Object get(int row);
+
+        /**
+         * @return the approximate number of bytes the column takes in heap
+         */
+        abstract long estimateBytes();
+
+        static long estimateBytes(Object value) {
+            return value == null ? 0 : value instanceof String ? 40 + 2L * ((String) value).length() : 32;
+        }
+    }
+
+    /**
+     * Column of unboxed values, the rows which have a value are marked in a bitmap.
+     */
+    private abstract static class PrimitiveColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private long[] present = new long[0];
+
+        void markPresent(int row) {
+            int word = row >>> 6;
+            if (word >= present.length) {
+                present = Arrays.copyOf(present, Math.max(word + 1, present.length * 2));
+            }
+            present[word] |= 1L << row;
+        }
+
+        boolean isPresent(int row) {
+            int word = row >>> 6;
+            return word < present.length && (present[word] & (1L << row)) != 0;
+        }
+
+        @Override
+        Object get(int row) {
+            return isPresent(row) ? getPresent(row) : null;
+        }
+
+        abstract Object getPresent(int row);
+
+        long estimatePresentBytes() {
+            return 32 + present.length * 8L;
+        }
+    }
+
+    private static class IntColumn extends PrimitiveColumn {
+
+        private static final long serialVersionUID = 1L;
+
+        private int[] values = new int[0];
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Integer) value;
+            markPresent(row);
+        }
+
+        @Override
+        Object getPresent(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes() {
+            return estimatePresentBytes() + values.length * 4L;
+        }
+    }
+
+    private static class LongColumn extends PrimitiveColumn {
+
+        private static final long serialVersionUID = 1L;
+
+        private long[] values = new long[0];
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Long) value;
+            markPresent(row);
+        }
+
+        @Override
+        Object getPresent(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes() {
+            return estimatePresentBytes() + values.length * 8L;
+        }
+    }
+
+    private static class DoubleColumn extends PrimitiveColumn {
+
+        private static final long serialVersionUID = 1L;
+
+        private double[] values = new double[0];
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Double;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Double) value;
+            markPresent(row);
+        }
+
+        @Override
+        Object getPresent(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes() {
+            return estimatePresentBytes() + values.length * 8L;
+        }
+    }
+
+    private static class BooleanColumn extends PrimitiveColumn {
+
+        private static final long serialVersionUID = 1L;
+
+        private long[] values = new long[0];
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            int word = row >>> 6;
+            if (word >= values.length) {
+                values = Arrays.copyOf(values, Math.max(word + 1, values.length * 2));
+            }
+            if ((Boolean) value) {
+                values[word] |= 1L << row;
+            } else {
+                values[word] &= ~(1L << row);
+            }
+            markPresent(row);
+        }
+
+        @Override
+        Object getPresent(int row) {
+            return (values[row >>> 6] & (1L << row)) != 0;
+        }
+
+        @Override
+        long estimateBytes() {
+            return estimatePresentBytes() + values.length * 8L;
+        }
+    }
+
+    private static class LocalDateColumn extends PrimitiveColumn {
+
+        private static final long serialVersionUID = 1L;
+
+        private int[] days = new int[0];
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof LocalDate;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= days.length) {
+                days = Arrays.copyOf(days, grow(days.length, row));
+            }
+            days[row] = (int) ((LocalDate) value).toEpochDay();
+            markPresent(row);
+        }
+
+        @Override
+        Object getPresent(int row) {
+            return LocalDate.ofEpochDay(days[row]);
+        }
+
+        @Override
+        long estimateBytes() {
+            return estimatePresentBytes() + days.length * 4L;
+        }
+    }
+
+    /**
+     * Column of instants with the precision of milliseconds, as the datetimes of Salesforce.
+     */
+    private static class InstantColumn extends PrimitiveColumn {
+
+        private static final long serialVersionUID = 1L;
+
+        private long[] millis = new long[0];
+
+        static boolean isMillis(Object value) {
+            return value instanceof Instant && ((Instant) value).getNano() % 1_000_000 == 0;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return isMillis(value);
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= millis.length) {
+                millis = Arrays.copyOf(millis, grow(millis.length, row));
+            }
+            millis[row] = ((Instant) value).toEpochMilli();
+            markPresent(row);
+        }
+
+        @Override
+        Object getPresent(int row) {
+            return Instant.ofEpochMilli(millis[row]);
+        }
+
+        @Override
+        long estimateBytes() {
+            return estimatePresentBytes() + millis.length * 8L;
+        }
+    }
+
+    private static class StringColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private String[] values = new String[0];
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (String) value;
+        }
+
+        @Override
+        Object get(int row) {
+            return row < values.length ? values[row] : null;
+        }
+
+        @Override
+        long estimateBytes() {
+            long bytes = 16 + values.length * 8L;
+            for (Object value : values) {
+                bytes += estimateBytes(value);
+            }
+            return bytes;
+        }
+    }
+
+    private static class ReferenceColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private Object[] values = new Object[0];
+
+        ReferenceColumn() {
+        }
+
+        /**
+         * Copies the values of the first rows of another column.
+         */
+        ReferenceColumn(Column column, int rows) {
+            values = new Object[grow(0, rows)];
+            for (int row = 0; row < rows; row++) {
+                values[row] = column.get(row);
+            }
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return true;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            return row < values.length ? values[row] : null;
+        }
+
+        @Override
+        long estimateBytes() {
+            long bytes = 16 + values.length * 8L;
+            for (Object value : values) {
+                bytes += estimateBytes(value);
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Binary format of the results and the metadata kept in the result cache of the statements.
+ * <p>
+ * An entry is a header of the format version, the flags and the length, then the body: the metadata of the columns
+ * and the rows column by column. A column is a block of its type - a bitmap of the rows which have a value,
+ * then the values: integers as variable length zig-zag numbers, dates and instants as the differences from the previous
+ * value, doubles as their 8 bytes, booleans as a bitmap, strings as UTF-8 or, when they repeat, as the indexes
+ * in a dictionary of the distinct strings. A column of values of several classes is stored value by value
+ * by {@link RowCodec}. The bodies bigger than the compression threshold are deflated.
+ * The results other than {@link CachedResultSet} are stored with the Java serialization.
+ */
+public final class ResultSetCodec {
+
+    /** the bodies smaller than this are not deflated, the compression saves less than it costs */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    /** the serializer of the results compressing the bodies bigger than {@link #DEFAULT_COMPRESSION_THRESHOLD} */
+    public static final Serializer<ResultSet> RESULT_SET = resultSetSerializer(DEFAULT_COMPRESSION_THRESHOLD);
+    public static final Serializer<ResultSetMetaData> METADATA = new MetaDataSerializer();
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte COMPRESSED = 1;
+
+    private static final byte COLUMNAR = 0;
+    private static final byte SERIALIZED = 1;
+
+    private static final byte NULLS = 0;
+    private static final byte INTS = 1;
+    private static final byte LONGS = 2;
+    private static final byte DOUBLES = 3;
+    private static final byte BOOLEANS = 4;
+    private static final byte STRINGS = 5;
+    private static final byte DICTIONARY = 6;
+    private static final byte DATES = 7;
+    private static final byte INSTANTS = 8;
+    private static final byte VALUES = 9;
+
+    /** the number of the first strings of a column which have to repeat for the column to get a dictionary */
+    private static final int DICTIONARY_SAMPLE = 64;
+
+    private static final int AUTO_INCREMENT = 1;
+    private static final int CASE_SENSITIVE = 2;
+    private static final int CURRENCY = 4;
+    private static final int SIGNED = 8;
+    private static final int SEARCHABLE = 16;
+
+    private ResultSetCodec() {
+    }
+
+    /**
+     * @param compressionThreshold the bodies of this number of bytes and bigger are deflated, -1 - no compression
+     */
+    public static Serializer<ResultSet> resultSetSerializer(int compressionThreshold) {
+        return new ResultSetSerializer(compressionThreshold);
+    }
+
+    static byte[] encode(ResultSet resultSet, int compressionThreshold) throws IOException {
+        DataOutput2 out = new DataOutput2();
+        new ResultSetSerializer(compressionThreshold).serialize(out, resultSet);
+        return out.copyBytes();
+    }
+
+    static ResultSet decode(byte[] bytes) throws IOException {
+        return RESULT_SET.deserialize(new DataInput2.ByteArray(bytes), bytes.length);
+    }
+
+    private static class ResultSetSerializer implements Serializer<ResultSet> {
+
+        private final int compressionThreshold;
+
+        private ResultSetSerializer(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+        }
+
+        @Override
+        public void serialize(DataOutput2 out, ResultSet resultSet) throws IOException {
+            RowCodec.Output body = new RowCodec.Output(1024);
+            try {
+                if (resultSet.getClass() == CachedResultSet.class && resultSet.getWarnings() == null) {
+                    body.writeByte(COLUMNAR);
+                    writeMetaData(resultSet.getMetaData(), body);
+                    writeRows(((CachedResultSet) resultSet).getRows(), body);
+                } else {
+                    body.writeByte(SERIALIZED);
+                    body.writeBytes(writeObject(resultSet));
+                }
+            } catch (SQLException e) {
+                throw new IOException("Failed to encode the result", e);
+            }
+            writeEntry(out, body, compressionThreshold);
+        }
+
+        @Override
+        public ResultSet deserialize(DataInput2 in, int available) throws IOException {
+            ByteBuffer body = readEntry(in);
+            byte kind = body.get();
+            if (kind == SERIALIZED) {
+                return (ResultSet) readObject(RowCodec.readBytes(body));
+            }
+            ResultSetMetaData metaData = readMetaData(body);
+            return new CachedResultSet(readRows(body), metaData);
+        }
+    }
+
+    private static class MetaDataSerializer implements Serializer<ResultSetMetaData> {
+
+        @Override
+        public void serialize(DataOutput2 out, ResultSetMetaData metaData) throws IOException {
+            RowCodec.Output body = new RowCodec.Output(256);
+            try {
+                writeMetaData(metaData, body);
+            } catch (SQLException e) {
+                throw new IOException("Failed to encode the metadata", e);
+            }
+            writeEntry(out, body, -1);
+        }
+
+        @Override
+        public ResultSetMetaData deserialize(DataInput2 in, int available) throws IOException {
+            return readMetaData(readEntry(in));
+        }
+    }
+
+    private static void writeEntry(DataOutput2 out, RowCodec.Output body, int compressionThreshold) throws IOException {
+        ByteBuffer bytes = body.asByteBuffer();
+        out.writeByte(FORMAT_VERSION);
+        if (compressionThreshold >= 0 && body.size() >= compressionThreshold) {
+            byte[] deflated = deflate(bytes.array(), body.size());
+            if (deflated.length < body.size()) {
+                out.writeByte(COMPRESSED);
+                out.packInt(body.size());
+                out.packInt(deflated.length);
+                out.write(deflated);
+                return;
+            }
+        }
+        out.writeByte(0);
+        out.packInt(body.size());
+        out.write(bytes.array(), 0, body.size());
+    }
+
+    private static ByteBuffer readEntry(DataInput2 in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format of the cached entry: " + version);
+        }
+        byte flags = in.readByte();
+        byte[] body = new byte[in.unpackInt()];
+        if ((flags & COMPRESSED) != 0) {
+            byte[] deflated = new byte[in.unpackInt()];
+            in.readFully(deflated);
+            inflate(deflated, body);
+        } else {
+            in.readFully(body);
+        }
+        return ByteBuffer.wrap(body);
+    }
+
+    private static byte[] deflate(byte[] bytes, int length) throws IOException {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(length / 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater, 8192)) {
+            out.write(bytes, 0, length);
+        } finally {
+            deflater.end();
+        }
+        return deflated.toByteArray();
+    }
+
+    private static void inflate(byte[] deflated, byte[] body) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            int length = 0;
+            while (length < body.length) {
+                int inflated = inflater.inflate(body, length, body.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("The cached entry is truncated");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("The cached entry is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeMetaData(ResultSetMetaData metaData, RowCodec.Output out) throws SQLException {
+        // the placeholder of the result without metadata
+        if (metaData == null || metaData instanceof CachedResultSetMetaData) {
+            out.writeVarLong(0);
+            return;
+        }
+        int columns = metaData.getColumnCount();
+        out.writeVarLong(columns + 1);
+        for (int column = 1; column <= columns; column++) {
+            RowCodec.writeValue(metaData.getColumnName(column), out);
+            RowCodec.writeValue(metaData.getColumnLabel(column), out);
+            RowCodec.writeValue(metaData.getColumnTypeName(column), out);
+            RowCodec.writeValue(metaData.getTableName(column), out);
+            RowCodec.writeValue(metaData.getSchemaName(column), out);
+            RowCodec.writeValue(metaData.getCatalogName(column), out);
+            out.writeZigZag(metaData.getColumnType(column));
+            out.writeZigZag(metaData.getPrecision(column));
+            out.writeZigZag(metaData.getScale(column));
+            out.writeZigZag(metaData.getColumnDisplaySize(column));
+            out.writeZigZag(metaData.isNullable(column));
+            out.writeByte((metaData.isAutoIncrement(column) ? AUTO_INCREMENT : 0)
+                    | (metaData.isCaseSensitive(column) ? CASE_SENSITIVE : 0)
+                    | (metaData.isCurrency(column) ? CURRENCY : 0)
+                    | (metaData.isSigned(column) ? SIGNED : 0)
+                    | (metaData.isSearchable(column) ? SEARCHABLE : 0));
+        }
+    }
+
+    private static ResultSetMetaData readMetaData(ByteBuffer in) throws IOException {
+        int columns = (int) RowCodec.readVarLong(in) - 1;
+        if (columns < 0) {
+            return null;
+        }
+        try {
+            RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+            if (columns > 0) {
+                metaData.setColumnCount(columns);
+            }
+            for (int column = 1; column <= columns; column++) {
+                metaData.setColumnName(column, (String) RowCodec.readValue(in));
+                metaData.setColumnLabel(column, (String) RowCodec.readValue(in));
+                metaData.setColumnTypeName(column, (String) RowCodec.readValue(in));
+                metaData.setTableName(column, (String) RowCodec.readValue(in));
+                metaData.setSchemaName(column, (String) RowCodec.readValue(in));
+                metaData.setCatalogName(column, (String) RowCodec.readValue(in));
+                metaData.setColumnType(column, (int) RowCodec.readZigZag(in));
+                metaData.setPrecision(column, Math.max(0, (int) RowCodec.readZigZag(in)));
+                metaData.setScale(column, Math.max(0, (int) RowCodec.readZigZag(in)));
+                metaData.setColumnDisplaySize(column, Math.max(0, (int) RowCodec.readZigZag(in)));
+                metaData.setNullable(column, (int) RowCodec.readZigZag(in));
+                byte flags = in.get();
+                metaData.setAutoIncrement(column, (flags & AUTO_INCREMENT) != 0);
+                metaData.setCaseSensitive(column, (flags & CASE_SENSITIVE) != 0);
+                metaData.setCurrency(column, (flags & CURRENCY) != 0);
+                metaData.setSigned(column, (flags & SIGNED) != 0);
+                metaData.setSearchable(column, (flags & SEARCHABLE) != 0);
+            }
+            return metaData;
+        } catch (SQLException e) {
+            throw new IOException("Failed to decode the metadata", e);
+        }
+    }
+
+    private static void writeRows(ColumnarRows rows, RowCodec.Output out) {
+        List<String> names = rows.getColumnNames();
+        out.writeVarLong(rows.size());
+        out.writeVarLong(names.size());
+        for (String name : names) {
+            RowCodec.writeValue(name, out);
+        }
+        for (int column = 1; column <= names.size(); column++) {
+            writeColumn(rows, column, out);
+        }
+    }
+
+    private static ColumnarRows readRows(ByteBuffer in) {
+        int size = (int) RowCodec.readVarLong(in);
+        String[] names = new String[(int) RowCodec.readVarLong(in)];
+        for (int column = 0; column < names.length; column++) {
+            names[column] = (String) RowCodec.readValue(in);
+        }
+        ColumnarRows rows = new ColumnarRows(Arrays.asList(names), size);
+        for (int column = 1; column <= names.length; column++) {
+            readColumn(in, rows, column);
+        }
+        return rows;
+    }
+
+    private static void writeColumn(ColumnarRows rows, int column, RowCodec.Output out) {
+        Object[] values = new Object[rows.size()];
+        int present = 0;
+        byte type = NULLS;
+        for (int row = 0; row < values.length; row++) {
+            Object value = rows.get(row, column);
+            values[row] = value;
+            if (value != null) {
+                present++;
+                byte valueType = typeOf(value);
+                type = type == NULLS || type == valueType ? valueType : VALUES;
+            }
+        }
+        Map<String, Integer> dictionary = type == STRINGS ? dictionary(values, present) : null;
+        if (dictionary != null) {
+            type = DICTIONARY;
+        }
+        out.writeByte(type);
+        if (type == NULLS) {
+            return;
+        }
+        if (type == VALUES) {
+            for (Object value : values) {
+                RowCodec.writeValue(value, out);
+            }
+            return;
+        }
+        writePresence(values, present, out);
+        if (type == BOOLEANS) {
+            writeBooleans(values, out);
+            return;
+        }
+        if (type == DICTIONARY) {
+            out.writeVarLong(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                out.writeString(value);
+            }
+        }
+        long previous = 0;
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            switch (type) {
+                case INTS:
+                    out.writeZigZag((Integer) value);
+                    break;
+                case LONGS:
+                    out.writeZigZag((Long) value);
+                    break;
+                case DOUBLES:
+                    out.writeFixedLong(Double.doubleToLongBits((Double) value));
+                    break;
+                case STRINGS:
+                    out.writeString((String) value);
+                    break;
+                case DICTIONARY:
+                    out.writeVarLong(dictionary.get(value));
+                    break;
+                case DATES:
+                    long day = ((LocalDate) value).toEpochDay();
+                    out.writeZigZag(day - previous);
+                    previous = day;
+                    break;
+                default:
+                    long millis = ((Instant) value).toEpochMilli();
+                    out.writeZigZag(millis - previous);
+                    previous = millis;
+            }
+        }
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof Integer) {
+            return INTS;
+        } else if (value instanceof Long) {
+            return LONGS;
+        } else if (value instanceof Double) {
+            return DOUBLES;
+        } else if (value instanceof Boolean) {
+            return BOOLEANS;
+        } else if (value instanceof String) {
+            return STRINGS;
+        } else if (value instanceof LocalDate) {
+            return DATES;
+        } else if (value instanceof Instant && ((Instant) value).getNano() % 1_000_000 == 0) {
+            return INSTANTS;
+        }
+        return VALUES;
+    }
+
+    /**
+     * @return the indexes of the distinct strings, null if less than every second string repeats
+     * or the first strings do not repeat at all, as ids and names
+     */
+    private static Map<String, Integer> dictionary(Object[] values, int present) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int strings = 0;
+        for (Object value : values) {
+            if (value != null) {
+                dictionary.putIfAbsent((String) value, dictionary.size());
+                strings++;
+                if (dictionary.size() > present / 2 || strings == DICTIONARY_SAMPLE && dictionary.size() == strings) {
+                    return null;
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    private static void writePresence(Object[] values, int present, RowCodec.Output out) {
+        if (present == values.length) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        int bits = 0;
+        for (int row = 0; row < values.length; row++) {
+            if (values[row] != null) {
+                bits |= 1 << (row & 7);
+            }
+            if ((row & 7) == 7 || row == values.length - 1) {
+                out.writeByte(bits);
+                bits = 0;
+            }
+        }
+    }
+
+    private static void writeBooleans(Object[] values, RowCodec.Output out) {
+        int bits = 0;
+        int index = 0;
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            if ((Boolean) value) {
+                bits |= 1 << (index & 7);
+            }
+            if ((index & 7) == 7) {
+                out.writeByte(bits);
+                bits = 0;
+            }
+            index++;
+        }
+        if ((index & 7) != 0) {
+            out.writeByte(bits);
+        }
+    }
+
+    private static void readColumn(ByteBuffer in, ColumnarRows rows, int column) {
+        int size = rows.size();
+        byte type = in.get();
+        if (type == NULLS) {
+            return;
+        }
+        if (type == VALUES) {
+            for (int row = 0; row < size; row++) {
+                rows.set(row, column, RowCodec.readValue(in));
+            }
+            return;
+        }
+        byte[] presence = null;
+        int present = size;
+        if (in.get() != 0) {
+            presence = new byte[(size + 7) >>> 3];
+            in.get(presence);
+            present = 0;
+            for (byte bits : presence) {
+                present += Integer.bitCount(bits & 0xFF);
+            }
+        }
+        byte[] booleans = null;
+        String[] dictionary = null;
+        if (type == BOOLEANS) {
+            booleans = new byte[(present + 7) >>> 3];
+            in.get(booleans);
+        } else if (type == DICTIONARY) {
+            dictionary = new String[(int) RowCodec.readVarLong(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = RowCodec.readString(in);
+            }
+        }
+        long previous = 0;
+        int index = 0;
+        for (int row = 0; row < size; row++) {
+            if (presence != null && (presence[row >>> 3] & (1 << (row & 7))) == 0) {
+                continue;
+            }
+            Object value;
+            switch (type) {
+                case INTS:
+                    value = (int) RowCodec.readZigZag(in);
+                    break;
+                case LONGS:
+                    value = RowCodec.readZigZag(in);
+                    break;
+                case DOUBLES:
+                    value = Double.longBitsToDouble(in.getLong());
+                    break;
+                case BOOLEANS:
+                    value = (booleans[index >>> 3] & (1 << (index & 7))) != 0;
+                    break;
+                case STRINGS:
+                    value = RowCodec.readString(in);
+                    break;
+                case DICTIONARY:
+                    value = dictionary[(int) RowCodec.readVarLong(in)];
+                    break;
+                case DATES:
+                    previous += RowCodec.readZigZag(in);
+                    value = LocalDate.ofEpochDay(previous);
+                    break;
+                case INSTANTS:
+                    previous += RowCodec.readZigZag(in);
+                    value = Instant.ofEpochMilli(previous);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown column type: " + type);
+            }
+            rows.set(row, column, value);
+            index++;
+        }
+    }
+
+    private static byte[] writeObject(ResultSet resultSet) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(resultSet);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object readObject(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to decode the result", e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary format of the rows of a result set.
+ * <p>
+ * A row is the number of its values followed by the values. Every value is a tag byte and the payload of its class:
+ * integers, dates and instants as variable length zig-zag numbers, doubles as their 8 bytes, strings as UTF-8,
+ * booleans and nulls in the tag alone. Values of other classes are stored with the Java serialization.
+ */
+final class RowCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte TRUE = 5;
+    private static final byte FALSE = 6;
+    private static final byte DECIMAL = 7;
+    private static final byte DATE = 8;
+    private static final byte INSTANT = 9;
+    private static final byte TIME = 10;
+    private static final byte SERIALIZED = 11;
+
+    private RowCodec() {
+    }
+
+    static void writeRow(List<Object> values, Output out) {
+        out.writeVarLong(values.size());
+        for (Object value : values) {
+            writeValue(value, out);
+        }
+    }
+
+    static Object[] readRow(ByteBuffer in) {
+        Object[] values = new Object[(int) readVarLong(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readValue(in);
+        }
+        return values;
+    }
+
+    static void writeValue(Object value, Output out) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeZigZag((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeZigZag((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeZigZag(((BigDecimal) value).scale());
+            out.writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(DATE);
+            out.writeZigZag(((LocalDate) value).toEpochDay());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            out.writeZigZag(((Instant) value).getEpochSecond());
+            out.writeVarLong(((Instant) value).getNano());
+        } else if (value instanceof OffsetTime) {
+            out.writeByte(TIME);
+            out.writeVarLong(((OffsetTime) value).toLocalTime().toNanoOfDay());
+            out.writeZigZag(((OffsetTime) value).getOffset().getTotalSeconds());
+        } else {
+            out.writeByte(SERIALIZED);
+            out.writeBytes(serialize(value));
+        }
+    }
+
+    static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INT:
+                return (int) readZigZag(in);
+            case LONG:
+                return readZigZag(in);
+            case DOUBLE:
+                return Double.longBitsToDouble(in.getLong());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DECIMAL:
+                int scale = (int) readZigZag(in);
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case DATE:
+                return LocalDate.ofEpochDay(readZigZag(in));
+            case INSTANT:
+                long seconds = readZigZag(in);
+                return Instant.ofEpochSecond(seconds, readVarLong(in));
+            case TIME:
+                long nanoOfDay = readVarLong(in);
+                return OffsetTime.of(LocalTime.ofNanoOfDay(nanoOfDay),
+                        ZoneOffset.ofTotalSeconds((int) readZigZag(in)));
+            case SERIALIZED:
+                return deserialize(readBytes(in));
+            default:
+                throw new IllegalStateException("Unknown value tag: " + tag);
+        }
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static long readZigZag(ByteBuffer in) {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] serialize(Object value) {
+        if (!(value instanceof Serializable)) {
+            return serialize(String.valueOf(value));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Growable buffer the rows are written to.
+     */
+    static class Output {
+
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[Math.max(16, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        /**
+         * @return the written bytes, valid until the next write
+         */
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buffer, 0, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeFixedLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Writes the string as UTF-8, the ASCII strings are copied char by char without the encoder.
+         */
+        void writeString(String value) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    writeBytes(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            writeVarLong(length);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[size++] = (byte) value.charAt(i);
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scrollable result set for results which do not fit in the heap.
+ * <p>
+ * The rows are kept encoded by {@link RowCodec} in blocks. The latest blocks stay in heap while their size is within
+ * the heap budget, the older ones are spilled to a temporary file and read back into a reused buffer when
+ * the cursor moves to them. Only the block of the current row is kept decoded, so all the scrolling operations
+ * work on any row at the cost of decoding a block when the cursor leaves the current one.
+ * The file is deleted when the result set is closed.
+ */
+public class SpillingResultSet extends CachedResultSet {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver RS";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_BLOCK_BYTES = 256 * 1024;
+
+    private final transient long heapBudget;
+    private final transient int blockBytes;
+    /** the name of every column - the first non-null name added in its position */
+    private final transient List<String> names = new ArrayList<>();
+    /** the sealed blocks, ordered by their rows */
+    private final transient List<Block> blocks = new ArrayList<>();
+    /** the block the rows are added to, it is never spilled */
+    private final transient RowCodec.Output openBlock;
+    private transient int openBlockFirstRow;
+    private transient int rowCount;
+    private transient long residentBytes;
+    /** the oldest sealed block which is still in heap */
+    private transient int oldestResident;
+    private transient Path spillFile;
+    private transient FileChannel spillChannel;
+    private transient long spillSize;
+    /** the buffer the spilled blocks are read into, the rows are decoded out of it at once */
+    private transient ByteBuffer readBuffer;
+    /** the block of the decoded rows, blocks.size() for the open block */
+    private transient int decodedBlock = -1;
+    private transient int decodedFirstRow;
+    private transient Object[][] decodedRows;
+    private transient boolean closed;
+
+    /**
+     * @param heapBudget the number of bytes of the encoded rows kept in heap
+     */
+    public SpillingResultSet(ResultSetMetaData metadata, long heapBudget) {
+        super(metadata);
+        this.heapBudget = heapBudget;
+        this.blockBytes = (int) Math.max(1, Math.min(MAX_BLOCK_BYTES, heapBudget / 4));
+        this.openBlock = new RowCodec.Output(Math.min(blockBytes * 2, MAX_BLOCK_BYTES));
+    }
+
+    public void add(ColumnMap<String, Object> row) throws SQLException {
+        if (closed) {
+            throw new SQLException("The result set is closed");
+        }
+        List<String> rowNames = row.getColumnNames();
+        for (int column = 0; column < rowNames.size(); column++) {
+            if (column == names.size()) {
+                names.add(rowNames.get(column));
+            } else if (names.get(column) == null) {
+                names.set(column, rowNames.get(column));
+            }
+        }
+        RowCodec.writeRow(row.getValues(), openBlock);
+        rowCount++;
+        if (decodedBlock == blocks.size()) {
+            // the decoded rows of the open block miss the new row
+            decodedBlock = -1;
+        }
+        if (openBlock.size() >= blockBytes) {
+            sealOpenBlock();
+        }
+    }
+
+    private void sealOpenBlock() throws SQLException {
+        Block block = new Block(openBlockFirstRow, rowCount - openBlockFirstRow, openBlock.toByteArray());
+        blocks.add(block);
+        residentBytes += block.length;
+        openBlock.reset();
+        openBlockFirstRow = rowCount;
+        try {
+            while (residentBytes + blockBytes > heapBudget && oldestResident < blocks.size()) {
+                spill(blocks.get(oldestResident++));
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to spill the rows to " + spillFile, e);
+        }
+    }
+
+    private void spill(Block block) throws IOException {
+        if (spillChannel == null) {
+            spillFile = Files.createTempFile("sf-jdbc-", ".rows");
+            spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logger.info("[SpillingRS] spilling rows to " + spillFile);
+        }
+        ByteBuffer data = ByteBuffer.wrap(block.data);
+        block.offset = spillSize;
+        while (data.hasRemaining()) {
+            spillSize += spillChannel.write(data, spillSize);
+        }
+        block.data = null;
+        residentBytes -= block.length;
+    }
+
+    @Override
+    protected Object getValue(int columnIndex) {
+        if (columnIndex < 1 || columnIndex > names.size()) {
+            throw new IndexOutOfBoundsException("Column index: " + columnIndex + ", columns: " + names.size());
+        }
+        Object[] row = getCurrentRow();
+        return columnIndex <= row.length ? row[columnIndex - 1] : null;
+    }
+
+    private Object[] getCurrentRow() {
+        int row = getIndex();
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("The cursor is not on a row: " + (row + 1));
+        }
+        if (decodedBlock < 0 || row < decodedFirstRow || row >= decodedFirstRow + decodedRows.length) {
+            decodeBlockOf(row);
+        }
+        return decodedRows[row - decodedFirstRow];
+    }
+
+    private void decodeBlockOf(int row) {
+        int block = findBlock(row);
+        ByteBuffer data;
+        int firstRow;
+        int rows;
+        if (block == blocks.size()) {
+            data = openBlock.asByteBuffer();
+            firstRow = openBlockFirstRow;
+            rows = rowCount - openBlockFirstRow;
+        } else {
+            Block sealed = blocks.get(block);
+            data = sealed.data != null ? ByteBuffer.wrap(sealed.data) : read(sealed);
+            firstRow = sealed.firstRow;
+            rows = sealed.rows;
+        }
+        Object[][] decoded = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            decoded[i] = RowCodec.readRow(data);
+        }
+        decodedRows = decoded;
+        decodedFirstRow = firstRow;
+        decodedBlock = block;
+    }
+
+    /**
+     * @return the block of the row, blocks.size() for the open block
+     */
+    private int findBlock(int row) {
+        if (row >= openBlockFirstRow) {
+            return blocks.size();
+        }
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (blocks.get(middle).firstRow <= row) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private ByteBuffer read(Block block) {
+        if (readBuffer == null || readBuffer.capacity() < block.length) {
+            readBuffer = ByteBuffer.allocate(Math.max(block.length, blockBytes));
+        }
+        readBuffer.clear().limit(block.length);
+        try {
+            while (readBuffer.hasRemaining()) {
+                if (spillChannel.read(readBuffer, block.offset + readBuffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + spillFile);
+                }
+            }
+            readBuffer.flip();
+            return readBuffer;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the rows spilled to " + spillFile, e);
+        }
+    }
+
+    @Override
+    protected int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    protected List<String> getStoredColumnNames() {
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * @return the temporary file of the spilled rows, null if no rows were spilled
+     */
+    Path getSpillFile() {
+        return spillFile;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        rowCount = 0;
+        blocks.clear();
+        decodedRows = null;
+        decodedBlock = -1;
+        readBuffer = null;
+        if (spillChannel != null) {
+            logger.info("[SpillingRS] close, deleting " + spillSize + " bytes of spilled rows in " + spillFile);
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "[SpillingRS] failed to delete " + spillFile, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    private static class Block {
+
+        private final int firstRow;
+        private final int rows;
+        private final int length;
+        /** the encoded rows, null when the block is spilled */
+        private byte[] data;
+        private long offset;
+
+        Block(int firstRow, int rows, byte[] data) {
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.length = data.length;
+            this.data = data;
+        }
+    }
+}
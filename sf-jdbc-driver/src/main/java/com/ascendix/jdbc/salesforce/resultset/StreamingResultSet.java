@@ -0,0 +1,215 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Forward-only result set which keeps only the current page of rows in memory.
+ * The next page is requested from the {@link PageSupplier} when the cursor moves past the end of the current one,
+ * so time-to-first-row and memory consumption depend on the page size rather than on the size of the result.
+ */
+public class StreamingResultSet extends CachedResultSet {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver RS";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final long serialVersionUID = 1L;
+
+    @FunctionalInterface
+    public interface PageSupplier extends AutoCloseable {
+
+        /**
+         * @return the next page of rows or null if there are no more pages
+         */
+        List<ColumnMap<String, Object>> nextPage() throws SQLException;
+
+        @Override
+        default void close() throws SQLException {
+        }
+    }
+
+    private transient PageSupplier pageSupplier;
+    private transient List<ColumnMap<String, Object>> page = Collections.emptyList();
+    private transient List<ColumnMap<String, Object>> nextPage;
+    private transient int pageIndex = -1;
+    private transient int row = 0;
+    private transient boolean afterLast;
+    private transient boolean closed;
+
+    public StreamingResultSet(PageSupplier pageSupplier, ResultSetMetaData metadata) {
+        super(metadata);
+        this.pageSupplier = pageSupplier;
+    }
+
+    @Override
+    protected Object getValue(int columnIndex) {
+        return page.get(pageIndex).getByIndex(columnIndex);
+    }
+
+    @Override
+    protected List<String> getStoredColumnNames() {
+        return page.isEmpty() ? Collections.emptyList() : page.get(0).getColumnNames();
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        checkOpen();
+        if (pageIndex + 1 < page.size() || fetchNextPage()) {
+            pageIndex++;
+            row++;
+            return true;
+        }
+        pageIndex = page.size();
+        afterLast = row > 0;
+        closeSupplier();
+        return false;
+    }
+
+    /**
+     * Moves the cursor to the next page.
+     *
+     * @return false if there are no more rows
+     */
+    private boolean fetchNextPage() throws SQLException {
+        List<ColumnMap<String, Object>> fetched = peekNextPage();
+        nextPage = null;
+        if (fetched == null) {
+            return false;
+        }
+        page = fetched;
+        pageIndex = -1;
+        return true;
+    }
+
+    /**
+     * Fetches the next non-empty page without moving the cursor.
+     *
+     * @return the next page or null if there are no more rows
+     */
+    private List<ColumnMap<String, Object>> peekNextPage() throws SQLException {
+        while (nextPage == null && pageSupplier != null) {
+            List<ColumnMap<String, Object>> fetched = pageSupplier.nextPage();
+            if (fetched == null) {
+                closeSupplier();
+            } else if (!fetched.isEmpty()) {
+                nextPage = fetched;
+            }
+        }
+        return nextPage;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("The result set is closed");
+        }
+    }
+
+    private void closeSupplier() throws SQLException {
+        if (pageSupplier != null) {
+            PageSupplier supplier = pageSupplier;
+            pageSupplier = null;
+            supplier.close();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            logger.info("[StreamingRS] close after " + row + " rows");
+            closed = true;
+            page = Collections.emptyList();
+            nextPage = null;
+            closeSupplier();
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        if (row != 0) {
+            return false;
+        }
+        return peekNextPage() != null;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return afterLast;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return row == 1 && !afterLast;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        if (row == 0 || afterLast) {
+            return false;
+        }
+        if (pageIndex + 1 < page.size()) {
+            return false;
+        }
+        return peekNextPage() == null;
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return afterLast ? 0 : row;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        throw forwardOnly("first");
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        throw forwardOnly("last");
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        throw forwardOnly("absolute");
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        throw forwardOnly("relative");
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        throw forwardOnly("previous");
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw forwardOnly("beforeFirst");
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        throw forwardOnly("afterLast");
+    }
+
+    private SQLException forwardOnly(String operation) {
+        return new SQLException("The " + operation + " operation is not supported by a TYPE_FORWARD_ONLY result set");
+    }
+
+}
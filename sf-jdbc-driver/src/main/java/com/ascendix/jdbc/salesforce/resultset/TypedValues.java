@@ -0,0 +1,127 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.function.Function;
+
+/**
+ * Conversions of the field values returned by the Partner API as strings.
+ * <p>
+ * The values are decoded once when a page of results arrives, by the decoder of the Salesforce type of their field:
+ * int to Integer, double, percent and currency to Double, decimal to BigDecimal, boolean to Boolean,
+ * date to LocalDate, datetime to Instant and time to OffsetTime. A value which does not parse is kept as the string.
+ * The result sets return the decoded values as the JDBC types of the columns and format them back
+ * to the Salesforce representation for getString.
+ */
+public class TypedValues {
+
+    private static final DateTimeFormatter DATETIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSSXXX");
+    private static final LocalDate EPOCH = LocalDate.of(1970, 1, 1);
+
+    private TypedValues() {
+    }
+
+    /**
+     * @param forceTypeName the Salesforce type of the field, the leading underscore of the Java keywords is ignored
+     * @return the function which decodes the string values of the type, the identity for the types kept as strings
+     */
+    public static Function<Object, Object> decoderFor(String forceTypeName) {
+        if (forceTypeName == null) {
+            return Function.identity();
+        }
+        switch (forceTypeName.replaceFirst("\\A_+", "")) {
+            case "int":
+                return decoder(Integer::valueOf);
+            case "long":
+                return decoder(Long::valueOf);
+            case "double":
+            case "percent":
+            case "currency":
+                return decoder(Double::valueOf);
+            case "decimal":
+                return decoder(BigDecimal::new);
+            case "boolean":
+                return decoder(TypedValues::parseBoolean);
+            case "date":
+                return decoder(LocalDate::parse);
+            case "datetime":
+                return decoder(value -> OffsetDateTime.parse(value).toInstant());
+            case "time":
+                return decoder(OffsetTime::parse);
+            default:
+                return Function.identity();
+        }
+    }
+
+    private static Function<Object, Object> decoder(Function<String, Object> parser) {
+        return value -> {
+            if (!(value instanceof String)) {
+                return value;
+            }
+            try {
+                return parser.apply((String) value);
+            } catch (NumberFormatException | DateTimeParseException e) {
+                return value;
+            }
+        };
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        }
+        throw new NumberFormatException("Not a boolean: " + value);
+    }
+
+    /**
+     * @return the decoded value as the JDBC type of its column - java.sql.Date, Timestamp or Time
+     * for the temporal values, the value itself otherwise
+     */
+    public static Object toJdbcObject(Object value) {
+        if (value instanceof LocalDate) {
+            return Date.valueOf((LocalDate) value);
+        } else if (value instanceof Instant) {
+            return Timestamp.from((Instant) value);
+        } else if (value instanceof OffsetTime) {
+            return toTime((OffsetTime) value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the decoded value in the representation of the Partner API
+     */
+    public static String toSalesforceString(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Instant) {
+            return DATETIME_FORMAT.format((Instant) value);
+        } else if (value instanceof OffsetTime) {
+            return TIME_FORMAT.format((OffsetTime) value);
+        } else if (value instanceof Calendar) {
+            return DATETIME_FORMAT.format(((Calendar) value).toInstant());
+        }
+        return value.toString();
+    }
+
+    /**
+     * @return the time of the day on the 1st of January 1970
+     */
+    static Time toTime(OffsetTime value) {
+        return new Time(value.atDate(EPOCH).toInstant().toEpochMilli());
+    }
+}
@@ -0,0 +1,105 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor of the asynchronous queries of the statements.
+ * <p>
+ * A query blocks its thread for all its calls, so the queries run one thread each. On a JVM with virtual threads
+ * every query gets a new virtual thread, otherwise the threads come from a cached pool of daemon threads.
+ * The virtual threads are created by reflection, the driver is built for Java 8.
+ */
+final class AsyncQueries {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final String THREAD_NAME = "sf-jdbc-async-";
+
+    private static final ExecutorService executor = createExecutor();
+    /** the future of the query run by the thread */
+    private static final ThreadLocal<CompletableFuture<?>> running = new ThreadLocal<>();
+
+    private AsyncQueries() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            logger.info("[AsyncQueries] running the asynchronous queries on virtual threads");
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.FINE, "[AsyncQueries] virtual threads are not available", e);
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the query on the executor.
+     *
+     * @param onCancel called when the returned future is cancelled before the query is complete
+     * @return the future of the result of the query, the query is not started if the future is cancelled before
+     */
+    static <T> CompletableFuture<T> supply(Callable<T> query, Runnable onCancel) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            running.set(future);
+            try {
+                T result = query.call();
+                if (!future.complete(result) && result instanceof AutoCloseable) {
+                    // cancelled while it was running, the result is not read by anyone
+                    close((AutoCloseable) result);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                running.remove();
+            }
+        });
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                onCancel.run();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * The statement starts the cancellation of the query after the query is started, so the future cancelled
+     * before that is checked by {@link QueryCancellation#start(int)}.
+     *
+     * @return true if the current thread runs a query whose future is cancelled
+     */
+    static boolean isCancelled() {
+        CompletableFuture<?> future = running.get();
+        return future != null && future.isCancelled();
+    }
+
+    private static void close(AutoCloseable result) {
+        try {
+            result.close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "[AsyncQueries] failed to close the result of the cancelled query", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How long the result of a query with the CACHE hint is cached and which results are cached.
+ * <p>
+ * The options follow the mode of the hint, every one with its value: TTL - the time the result is read
+ * from the cache, MAXROWS - the max number of the rows of a result which is cached, STALE - the time after
+ * the TTL the expired result is still read while it is loaded again in background, so the readers do not wait
+ * for the load. A time is a number of seconds or a number with the unit s, m, h or d.
+ * <pre>
+ * CACHE GLOBAL TTL 1d MAXROWS 100000 STALE 10m SELECT Id, Name FROM Account
+ * </pre>
+ * The options which are not in the hint are taken from the connection.
+ */
+public final class CachePolicy {
+
+    /** the longest time a result is kept, the stale time included */
+    public static final long MAX_TIME_TO_LIVE = TimeUnit.DAYS.toMillis(7);
+
+    public static final String OPTIONS = "(?:\\s+(?:TTL|MAXROWS|STALE)\\s+\\d+[smhd]?\\b)*";
+    private static final Pattern OPTION = Pattern.compile("(?i)(TTL|MAXROWS|STALE)\\s+(\\d+)([smhd]?)");
+
+    private static final long NOT_SET = -1;
+
+    private final long timeToLive;
+    private final long maxRows;
+    private final long staleWhileRevalidate;
+
+    /**
+     * @param timeToLive           milliseconds the result is read from the cache
+     * @param maxRows              the max number of the rows of a cached result, 0 - no limit
+     * @param staleWhileRevalidate milliseconds the expired result is read while it is loaded again, 0 - not read
+     */
+    public CachePolicy(long timeToLive, long maxRows, long staleWhileRevalidate) {
+        this.timeToLive = timeToLive;
+        this.maxRows = maxRows;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * @param options the options of the hint matched by {@link #OPTIONS}
+     * @return the options of the hint, the options which are not in the hint are taken from the defaults
+     */
+    public static CachePolicy parse(String options, CachePolicy defaults) {
+        long timeToLive = NOT_SET;
+        long maxRows = NOT_SET;
+        long staleWhileRevalidate = NOT_SET;
+        Matcher option = OPTION.matcher(options == null ? "" : options);
+        while (option.find()) {
+            long value = Long.parseLong(option.group(2));
+            switch (option.group(1).toUpperCase()) {
+                case "TTL":
+                    timeToLive = toMillis(value, option.group(3));
+                    break;
+                case "STALE":
+                    staleWhileRevalidate = toMillis(value, option.group(3));
+                    break;
+                default:
+                    maxRows = value;
+            }
+        }
+        return new CachePolicy(timeToLive != NOT_SET ? timeToLive : defaults.timeToLive,
+                maxRows != NOT_SET ? maxRows : defaults.maxRows,
+                staleWhileRevalidate != NOT_SET ? staleWhileRevalidate : defaults.staleWhileRevalidate);
+    }
+
+    private static long toMillis(long value, String unit) {
+        switch (unit.toLowerCase()) {
+            case "m":
+                return TimeUnit.MINUTES.toMillis(value);
+            case "h":
+                return TimeUnit.HOURS.toMillis(value);
+            case "d":
+                return TimeUnit.DAYS.toMillis(value);
+            default:
+                return TimeUnit.SECONDS.toMillis(value);
+        }
+    }
+
+    /**
+     * @return milliseconds the result is read from the cache, no more than {@link #MAX_TIME_TO_LIVE}
+     */
+    public long getTimeToLive() {
+        return Math.min(timeToLive, MAX_TIME_TO_LIVE);
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * @return milliseconds the expired result is read while it is loaded again, the result is kept
+     * no more than {@link #MAX_TIME_TO_LIVE}
+     */
+    public long getStaleWhileRevalidate() {
+        return Math.max(0, Math.min(staleWhileRevalidate, MAX_TIME_TO_LIVE - getTimeToLive()));
+    }
+
+    /**
+     * @return true if the result of the number of rows is cached
+     */
+    public boolean isCached(long rows) {
+        return maxRows <= 0 || rows <= maxRows;
+    }
+
+    @Override
+    public String toString() {
+        return "CachePolicy{ttl " + timeToLive + " ms, max rows " + maxRows + ", stale " + staleWhileRevalidate + " ms}";
+    }
+}
@@ -1,21 +1,35 @@
 package com.ascendix.jdbc.salesforce.statement;
 
+import com.ascendix.jdbc.salesforce.delegates.BulkQueryCursor;
+import com.ascendix.jdbc.salesforce.delegates.BulkQueryService;
+import com.ascendix.jdbc.salesforce.delegates.ChunkedQueryCursor;
+import com.ascendix.jdbc.salesforce.delegates.PartnerQueryCursor;
 import com.ascendix.jdbc.salesforce.delegates.PartnerService;
 import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import com.ascendix.jdbc.salesforce.resultset.ColumnarRows;
+import com.ascendix.jdbc.salesforce.resultset.ResultSetCodec;
+import com.ascendix.jdbc.salesforce.resultset.SpillingResultSet;
+import com.ascendix.jdbc.salesforce.resultset.StreamingResultSet;
+import com.ascendix.jdbc.salesforce.resultset.TypedValues;
+import com.ascendix.jdbc.salesforce.connection.AbortableCalls;
+import com.ascendix.jdbc.salesforce.connection.CacheDatabase;
 import com.ascendix.jdbc.salesforce.connection.ForceConnection;
+import com.ascendix.jdbc.salesforce.connection.ForceConnectionInfo;
+import com.ascendix.jdbc.salesforce.connection.ForceService;
 import com.ascendix.jdbc.salesforce.delegates.ForceResultField;
 import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
 import com.ascendix.jdbc.salesforce.metadata.ForceDatabaseMetaData;
 import com.ascendix.jdbc.salesforce.statement.processor.*;
+import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.ws.ConnectionException;
 import org.apache.commons.lang3.StringUtils;
 import org.mapdb.DB;
-import org.mapdb.DBMaker;
 import org.mapdb.HTreeMap;
 import org.mapdb.Serializer;
 import org.mule.tools.soql.exception.SOQLParsingException;
 
 import javax.sql.rowset.RowSetMetaDataImpl;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -37,9 +51,11 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -54,41 +70,101 @@ public class ForcePreparedStatement implements PreparedStatement {
     private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
     private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
 
-    private final static String CACHE_HINT = "(?is)\\A\\s*(CACHE\\s*(GLOBAL|SESSION)).*";
+    private final static String CACHE_HINT = "(?is)\\A\\s*(CACHE\\s*(GLOBAL|SESSION|INCREMENTAL)(" + CachePolicy.OPTIONS + ")).*";
+    private final static String BULK_HINT = "(?is)\\A\\s*(BULK\\s+)SELECT\\b.*";
+    private final static String PARALLEL_HINT = "(?is)\\A\\s*(PARALLEL(?:\\s+(\\d+))?(?:\\s+(ORDERED|UNORDERED))?\\s+)SELECT\\b.*";
+    /** Id ranges per worker of a parallel extract, more ranges than workers even the load when the Ids are not dense */
+    private final static int RANGES_PER_WORKER = 4;
+    private final static String BULK_UNSUPPORTED = "(?i)\\b(GROUP\\s+BY|OFFSET|TYPEOF|(COUNT|COUNT_DISTINCT|SUM|AVG|MIN|MAX)\\s*\\()";
     private final static int GB = 1073741824;
+    private final static long MB = 1024L * 1024L;
     private static final String SOSL_QUERY_RESULT = "SOSL_QUERY_RESULT";
 
     protected enum CacheMode {
-        NO_CACHE, GLOBAL, SESSION
+        NO_CACHE, GLOBAL, SESSION, INCREMENTAL
     }
 
     private String soqlQuery;
     private ForceConnection connection;
     private PartnerService partnerService;
+    /** the connection of the session the statement makes its calls by, so only they are aborted by cancel() */
+    private PartnerConnection statementConnection;
+    private final AbortableCalls calls = new AbortableCalls();
+    private final QueryCancellation cancellation = new QueryCancellation();
     private ResultSetMetaData metadata;
     private int fetchSize;
     private int maxRows;
+    /** seconds the query may run, -1 - the default of the connection */
+    private int queryTimeout = -1;
+    private int resultSetType = ResultSet.TYPE_FORWARD_ONLY;
     private List<Object> parameters = new ArrayList<>();
     private CacheMode cacheMode;
-    private static DB cacheDb = DBMaker.tempFileDB().closeOnJvmShutdown().make();
+    /** the options of the CACHE hint, see {@link CachePolicy} */
+    private String cacheOptions;
+    /** the query is run by the Bulk API */
+    private boolean bulkHint;
+    /** the workers of the PARALLEL hint, 0 - the hint without the number, -1 - no hint */
+    private int parallelHint = -1;
+    /** the PARALLEL hint requests the ordered merge of the Id ranges */
+    private boolean orderedHint;
     private int updateCount = -1;
     private boolean updateCountReturned = false;
     private ResultSet resultSet;
+    /** the last result which is not cached, it holds a query cursor or a spill file until it is closed */
+    private ResultSet queryResultSet;
     private boolean resultSetReturned = false;
     private SQLWarning warnings = new SQLWarning();
 
+    private static final SingleFlight<ResultSetMetaData> metadataLoads = new SingleFlight<>();
+
     // TODO: Join caches and move it to ForceConnection class. Divide to session
     // and static global cache.
-    private static HTreeMap<String, ResultSet> dataCache = cacheDb
-            .hashMap("DataCache", Serializer.STRING, Serializer.ELSA)
-            .expireAfterCreate(60, TimeUnit.MINUTES)
-            .expireStoreSize(16 * GB)
-            .create();
-    private static HTreeMap<String, ResultSetMetaData> metadataCache = cacheDb
-            .hashMap("MetadataCache", Serializer.STRING, Serializer.ELSA)
-            .expireAfterCreate(60, TimeUnit.MINUTES)
-            .expireStoreSize(1 * GB)
-            .create();
+    /**
+     * The caches of the statements, the cache database is opened by the first statement which needs it,
+     * so the cache file set by the connection properties is used.
+     */
+    private static final class Caches {
+
+        private static final DB cacheDb = CacheDatabase.get();
+        private static final ResultCache dataCache = new ResultCache(cacheDb, "DataCache",
+                ForceService.DEFAULT_RESULT_CACHE_HEAP_BUDGET * MB, 60, TimeUnit.MINUTES, 16L * GB);
+        private static final HTreeMap<String, ResultSetMetaData> metadataCache = cacheDb
+                .hashMap("MetadataCache", Serializer.STRING, ResultSetCodec.METADATA)
+                .expireAfterCreate(60, TimeUnit.MINUTES)
+                .expireStoreSize(1 * GB)
+                .createOrOpen();
+        private static final IncrementalCache incrementalCache = new IncrementalCache(cacheDb, "IncrementalCache",
+                ForceService.DEFAULT_RESULT_CACHE_HEAP_BUDGET * MB, 60, TimeUnit.MINUTES, 16L * GB);
+
+        static {
+            // the results kept in heap are lost when the JVM exits, the results kept in the cache file are not
+            dataCache.setWriteThrough(CacheDatabase.isPersistent());
+            incrementalCache.getResults().setWriteThrough(CacheDatabase.isPersistent());
+        }
+    }
+
+    /**
+     * @return the cache of the results of the queries with the CACHE hint, shared by all the connections
+     */
+    public static ResultCache getResultCache() {
+        return Caches.dataCache;
+    }
+
+    /**
+     * @return the cache of the results of the queries with the CACHE INCREMENTAL hint
+     */
+    public static IncrementalCache getIncrementalCache() {
+        return Caches.incrementalCache;
+    }
+
+    /**
+     * Removes the cached results of the sObject changed by the driver, the results cached incrementally
+     * are refreshed by the next read.
+     */
+    public static void invalidateCachedResults(String objectName) {
+        Caches.dataCache.invalidate(objectName);
+        Caches.incrementalCache.invalidate(objectName);
+    }
 
     public ForcePreparedStatement(ForceConnection connection) {
         logger.info("[PrepStat] constructor conn IMPLEMENTED ");
@@ -98,8 +174,17 @@ public class ForcePreparedStatement implements PreparedStatement {
     public ForcePreparedStatement(ForceConnection connection, String soql) {
         logger.info("[PrepStat] constructor soql IMPLEMENTED "+soql);
         this.connection = connection;
-        this.cacheMode = getCacheMode(soql);
-        this.soqlQuery = removeCacheHints(soql);
+        setQuery(soql);
+    }
+
+    public ForcePreparedStatement(ForceConnection connection, int resultSetType) {
+        this(connection);
+        this.resultSetType = resultSetType;
+    }
+
+    public ForcePreparedStatement(ForceConnection connection, String soql, int resultSetType) {
+        this(connection, soql);
+        this.resultSetType = resultSetType;
     }
 
     public static <T extends Throwable> RuntimeException rethrowAsNonChecked(Throwable throwable) throws T {
@@ -113,17 +198,176 @@ public class ForcePreparedStatement implements PreparedStatement {
         this.updateCountReturned = false;
         this.resultSetReturned = false;
         this.resultSet = null;
+        // the result of the last execution holds its cursor, workers or spill file, it is closed by the next one
+        closeQueryResultSet();
 
-        return cacheMode == CacheMode.NO_CACHE
-                ? query()
-                : dataCache.computeIfAbsent(getCacheKey(), s -> {
+        cancellation.start(getQueryTimeout());
+        calls.reset();
+        cancellation.onCancel(calls::abort);
+        try {
+            if (cacheMode == CacheMode.NO_CACHE) {
+                // closed with the statement, the cached results are shared and never closed
+                queryResultSet = query();
+                return queryResultSet;
+            }
+            long heapBudget = connection.getConnectionInfo().getResultCacheHeapBudget() * MB;
+            String preparedSoql = prepareLimitedQuery();
+            SoqlCacheKey cacheKey = SoqlCacheKey.of(preparedSoql);
+            CachePolicy policy = getCachePolicy();
+            if (cacheMode == CacheMode.INCREMENTAL) {
+                if (SoqlDeltas.isRefreshable(preparedSoql)) {
+                    Caches.incrementalCache.getResults().raiseHeapBudget(heapBudget);
+                    return cacheKey.toStatementOrder(Caches.incrementalCache.get(getCacheKey(cacheKey), preparedSoql,
+                            getIncrementalSource(cacheKey), cancellation, policy.getTimeToLive()));
+                }
+                logger.info("[PrepStat] query is not refreshable, it is cached as a whole "+soqlQuery);
+            }
+            Caches.dataCache.raiseHeapBudget(heapBudget);
+            return cacheKey.toStatementOrder(Caches.dataCache.get(getCacheKey(cacheKey),
+                    () -> checkCancelled(() -> cacheKey.toKeyOrder(query())), this::getQueriedObjectNames, cancellation,
+                    policy, policy.getStaleWhileRevalidate() > 0 ? getRefresher(cacheKey) : null));
+        } catch (SQLException | RuntimeException e) {
+            if (e instanceof SoqlCacheKey.NotInKeyOrderException) {
+                logger.info("[PrepStat] the result is not cached, its columns are not the fields of the query "+soqlQuery);
+                return ((SoqlCacheKey.NotInKeyOrderException) e).getResult();
+            }
+            if (e.getCause() instanceof SoqlCacheKey.NotInKeyOrderException) {
+                // loaded by a statement whose select list may have another order, the query is run again uncached
+                queryResultSet = checkCancelled(this::query);
+                return queryResultSet;
+            }
+            // the calls of a cancelled query fail as they are aborted
+            cancellation.check(e);
+            throw e;
+        } finally {
+            cancellation.finish();
+        }
+    }
+
+    /**
+     * Runs a load of the cached result, the statements waiting for the result load it again if this one is cancelled.
+     */
+    private <T> T checkCancelled(SingleFlight.Call<T> load) throws SQLException {
+        try {
+            return load.call();
+        } catch (SQLException | RuntimeException e) {
+            cancellation.check(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the policy of the CACHE hint with the defaults of the connection
+     */
+    private CachePolicy getCachePolicy() {
+        ForceConnectionInfo info = connection.getConnectionInfo();
+        return CachePolicy.parse(cacheOptions, new CachePolicy(TimeUnit.SECONDS.toMillis(info.getCacheTtl()),
+                info.getCacheMaxRows(), TimeUnit.SECONDS.toMillis(info.getCacheStaleWhileRevalidate())));
+    }
+
+    /**
+     * @return the loader of the expired result in background, the result is loaded by a copy of the statement
+     * so this one can be run again or closed meanwhile
+     */
+    private ResultCache.Loader getRefresher(SoqlCacheKey cacheKey) {
+        ForcePreparedStatement copy = new ForcePreparedStatement(connection, resultSetType);
+        copy.soqlQuery = soqlQuery;
+        copy.parameters = new ArrayList<>(parameters);
+        copy.cacheMode = cacheMode;
+        copy.cacheOptions = cacheOptions;
+        copy.bulkHint = bulkHint;
+        copy.parallelHint = parallelHint;
+        copy.orderedHint = orderedHint;
+        copy.maxRows = maxRows;
+        copy.fetchSize = fetchSize;
+        copy.queryTimeout = queryTimeout;
+        return () -> {
+            copy.cancellation.start(copy.getQueryTimeout());
+            copy.calls.reset();
+            copy.cancellation.onCancel(copy.calls::abort);
             try {
-                return query();
-            } catch (SQLException e) {
-                rethrowAsNonChecked(e);
-                return null;
+                return cacheKey.toKeyOrder(copy.query());
+            } finally {
+                copy.cancellation.finish();
+            }
+        };
+    }
+
+    /**
+     * @return the queries of the incremental refresh, their results have the columns in the order of the key
+     */
+    private IncrementalCache.Source getIncrementalSource(SoqlCacheKey cacheKey) {
+        return new IncrementalCache.Source() {
+            @Override
+            public Instant getServerTime() throws SQLException {
+                return checkCancelled(() -> {
+                    try {
+                        return getPartnerService().getServerTimestamp();
+                    } catch (ConnectionException e) {
+                        throw new SQLException(e);
+                    }
+                });
             }
-        });
+
+            @Override
+            public ResultSet query() throws SQLException {
+                return checkCancelled(() -> cacheKey.toKeyOrder(ForcePreparedStatement.this.query()));
+            }
+
+            @Override
+            public CachedResultSet query(String soql) throws SQLException {
+                logger.info("[PrepStat] query modified records "+soql);
+                return checkCancelled(() -> {
+                    try {
+                        return (CachedResultSet) cacheKey.toKeyOrder(readAll(cancellable(openPages(soql))));
+                    } catch (ConnectionException e) {
+                        throw new SQLException(e);
+                    }
+                });
+            }
+
+            @Override
+            public Set<String> queryAllIds(String soql) throws SQLException {
+                return checkCancelled(() -> {
+                    try {
+                        return getPartnerService().queryAllIds(soql);
+                    } catch (ConnectionException e) {
+                        throw new SQLException(e);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * @return the sObjects the result of the query is invalidated by, any sObject if they are not known
+     */
+    private Collection<String> getQueriedObjectNames() {
+        try {
+            return getSoqlQueryAnalyzer().getObjectNames();
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "[PrepStat] objects of the query are not known "+soqlQuery, e);
+            return Collections.singleton(ResultCache.ANY_OBJECT);
+        }
+    }
+
+    /**
+     * Runs {@link #executeQuery()} on the executor of the driver, on a virtual thread where the JVM has them,
+     * so the independent statements of a connection can wait for Salesforce at the same time.
+     * A statement runs one query at a time, the statements running at once have to be separate.
+     * Cancelling the future cancels the query.
+     */
+    public CompletableFuture<ResultSet> executeQueryAsync() {
+        return AsyncQueries.supply(this::executeQuery, cancellation::cancel);
+    }
+
+    /**
+     * Runs {@link #executeUpdate()} on the executor of the driver the same way as {@link #executeQueryAsync()}.
+     *
+     * @return the future of the number of the records changed
+     */
+    public CompletableFuture<Integer> executeUpdateAsync() {
+        return AsyncQueries.supply(this::executeUpdate, cancellation::cancel);
     }
 
     private ResultSet query() throws SQLException {
@@ -172,35 +416,273 @@ public class ForcePreparedStatement implements PreparedStatement {
             }
         }
         try {
-            String preparedSoql = prepareQuery();
-            List<List> forceQueryResult = getPartnerService().query(preparedSoql, getFieldDefinitions());
-            if (!forceQueryResult.isEmpty()) {
-                List<ColumnMap<String, Object>> maps = Collections.synchronizedList(new LinkedList<>());
-                forceQueryResult.forEach(record -> maps.add(convertToColumnMap(record)));
-                return new CachedResultSet(maps, getMetaData());
-            } else {
-                return new CachedResultSet(Collections.emptyList(), getMetaData());
+            String preparedSoql = prepareLimitedQuery();
+            StreamingResultSet.PageSupplier pages = cancellable(openPages(preparedSoql));
+            if (isStreamingResult()) {
+                return new StreamingResultSet(pages, getMetaData());
             }
+            int heapBudget = connection.getConnectionInfo().getResultSetHeapBudget();
+            if (cacheMode == CacheMode.NO_CACHE && heapBudget > 0) {
+                return loadSpillingResultSet(pages, heapBudget * 1024L * 1024L);
+            }
+            return readAll(pages);
         } catch (ConnectionException | SOQLParsingException e) {
             throw new SQLException(e);
         }
     }
 
+    private CachedResultSet readAll(StreamingResultSet.PageSupplier pages) throws SQLException {
+        ColumnarRows rows = new ColumnarRows();
+        try (StreamingResultSet.PageSupplier supplier = pages) {
+            List<ColumnMap<String, Object>> page;
+            while ((page = supplier.nextPage()) != null) {
+                page.forEach(rows::add);
+            }
+        }
+        return new CachedResultSet(rows, getMetaData());
+    }
+
+    /**
+     * Stops reading the pages when the query is cancelled. The supplier is closed by the cancellation,
+     * which stops the background fetching of the cursor, and the cancellation is checked between the pages.
+     */
+    private StreamingResultSet.PageSupplier cancellable(StreamingResultSet.PageSupplier pages) {
+        cancellation.onCancel(pages);
+        return new StreamingResultSet.PageSupplier() {
+            @Override
+            public List<ColumnMap<String, Object>> nextPage() throws SQLException {
+                cancellation.check();
+                List<ColumnMap<String, Object>> page;
+                try {
+                    page = pages.nextPage();
+                } catch (SQLException | RuntimeException e) {
+                    cancellation.check(e);
+                    throw e;
+                }
+                // the page of a closed cursor may be cut short by the cancellation
+                cancellation.check();
+                return page;
+            }
+
+            @Override
+            public void close() throws SQLException {
+                pages.close();
+            }
+        };
+    }
+
+    /**
+     * Cached results have to be kept whole to be stored in the cache or to be scrolled,
+     * all the other results are read page by page.
+     */
+    private boolean isStreamingResult() {
+        return cacheMode == CacheMode.NO_CACHE && resultSetType == ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    /**
+     * Loads a scrollable result which keeps only the given number of bytes of rows in heap and spills the rest to disk.
+     * The rows are not cached, the cached results have to be kept whole in heap.
+     */
+    private ResultSet loadSpillingResultSet(StreamingResultSet.PageSupplier pages, long heapBudget) throws SQLException {
+        SpillingResultSet resultSet = new SpillingResultSet(getMetaData(), heapBudget);
+        try (StreamingResultSet.PageSupplier supplier = pages) {
+            List<ColumnMap<String, Object>> page;
+            while ((page = supplier.nextPage()) != null) {
+                for (ColumnMap<String, Object> row : page) {
+                    resultSet.add(row);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            resultSet.close();
+            throw e;
+        }
+        return resultSet;
+    }
+
+    /**
+     * Runs the query with the Partner API or with the Bulk API when the query has the BULK hint.
+     * A query with the PARALLEL hint, or any query if the connection has parallel extract workers,
+     * is split to the ranges of the Ids which are run in parallel if the query can be split.
+     * A Partner API query which reports more records than the bulk threshold of the connection
+     * is run again with the Bulk API if the Bulk API supports it.
+     */
+    private StreamingResultSet.PageSupplier openPages(String preparedSoql) throws ConnectionException, SQLException {
+        // the decoders are initialized before the rows are converted, possibly by several threads
+        getColumnDecoders();
+        if (bulkHint) {
+            return openBulkPages(preparedSoql);
+        }
+        int workers = getParallelWorkers();
+        if (workers > 0 && SoqlChunks.isSplittable(preparedSoql)) {
+            return openChunkedPages(preparedSoql, workers);
+        }
+        PartnerQueryCursor cursor = getPartnerService().openQuery(preparedSoql, getFieldDefinitions(), getFetchSize(), maxRows);
+        int bulkThreshold = connection.getConnectionInfo().getBulkThreshold();
+        if (bulkThreshold > 0 && cursor.getTotalSize() > bulkThreshold && isBulkSupported(preparedSoql, getFieldDefinitions())) {
+            logger.info("[PrepStat] query of " + cursor.getTotalSize() + " records switched to the Bulk API");
+            cursor.close();
+            return openBulkPages(preparedSoql);
+        }
+        return new StreamingResultSet.PageSupplier() {
+            @Override
+            public List<ColumnMap<String, Object>> nextPage() throws SQLException {
+                try {
+                    return cursor.nextPage(ForcePreparedStatement.this::convertToColumnMap);
+                } catch (ConnectionException e) {
+                    throw new SQLException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    private int getParallelWorkers() {
+        int connectionWorkers = connection.getConnectionInfo().getParallelExtract();
+        if (parallelHint > 0) {
+            return parallelHint;
+        } else if (parallelHint == 0) {
+            return connectionWorkers > 0 ? connectionWorkers : ForceService.DEFAULT_PARALLEL_EXTRACT_WORKERS;
+        }
+        return connectionWorkers;
+    }
+
+    /**
+     * Splits the query to the ranges of the Ids between its first and last record and runs the ranges in parallel,
+     * every worker in its own connection of the session. The rows are merged in the order of the ranges
+     * for the ORDERED hint and for the queries ordered by Id.
+     */
+    private StreamingResultSet.PageSupplier openChunkedPages(String preparedSoql, int workers) throws ConnectionException, SQLException {
+        PartnerService partnerService = getPartnerService();
+        String firstId = partnerService.queryFirstId(SoqlChunks.boundaryQuery(preparedSoql, true));
+        String lastId = firstId == null ? null : partnerService.queryFirstId(SoqlChunks.boundaryQuery(preparedSoql, false));
+        List<String> queries = lastId == null
+                ? Collections.singletonList(preparedSoql)
+                : SoqlChunks.splitQuery(preparedSoql, firstId, lastId, workers * RANGES_PER_WORKER);
+        boolean ordered = orderedHint || SoqlChunks.isOrderedById(preparedSoql);
+        // every range may return the rows of the LIMIT, the merge returns them once
+        int limit = SoqlChunks.limitOf(preparedSoql);
+        int mergedRows = limit > 0 && (maxRows <= 0 || limit < maxRows) ? limit : maxRows;
+        PartnerConnection partnerConnection = getStatementConnection();
+        ChunkedQueryCursor<ColumnMap<String, Object>> cursor = partnerService.openChunkedQuery(queries,
+                getFieldDefinitions(), getFetchSize(), mergedRows, ordered, workers,
+                () -> ForceService.createSessionConnection(partnerConnection), this::convertToColumnMap);
+        return new StreamingResultSet.PageSupplier() {
+            @Override
+            public List<ColumnMap<String, Object>> nextPage() throws SQLException {
+                try {
+                    return cursor.nextPage();
+                } catch (ConnectionException e) {
+                    throw new SQLException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    private StreamingResultSet.PageSupplier openBulkPages(String preparedSoql) throws SQLException {
+        BulkQueryCursor cursor;
+        try {
+            BulkQueryService bulkQueryService = BulkQueryService.forConnection(connection.getPartnerConnection(),
+                    connection.getConnectionInfo().getApiVersion());
+            // stops waiting for the job and aborts it
+            cancellation.onCancel(bulkQueryService::cancel);
+            cursor = bulkQueryService.openQuery(preparedSoql, maxRows);
+        } catch (IOException e) {
+            throw new SQLException("Bulk query failed: " + e.getMessage(), e);
+        }
+        return new StreamingResultSet.PageSupplier() {
+            @Override
+            public List<ColumnMap<String, Object>> nextPage() throws SQLException {
+                try {
+                    List<String> names = cursor.getColumnNames();
+                    return cursor.nextPage(getFetchSize(), values -> convertToColumnMap(names, values));
+                } catch (IOException e) {
+                    throw new SQLException("Failed to read the results of bulk query job " + cursor.getJobId(), e);
+                }
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    /**
+     * The Bulk API does not run the parent-child subqueries, the aggregate functions and a few more clauses.
+     */
+    static boolean isBulkSupported(String soql, List<?> fieldDefinitions) {
+        return fieldDefinitions.stream().noneMatch(def -> def instanceof List)
+                && !Pattern.compile(BULK_UNSUPPORTED).matcher(soql).find();
+    }
+
     private String prepareQuery() {
         logger.info("[PrepStat] prepareQuery IMPLEMENTED "+soqlQuery);
         return setParams(soqlQuery);
     }
 
+    /**
+     * @return the prepared query with the max rows of the statement pushed down to its LIMIT clause
+     */
+    private String prepareLimitedQuery() {
+        return SoqlLimits.applyMaxRows(prepareQuery(), maxRows);
+    }
+
+    /**
+     * Converts a row of the results, the values are decoded to the types of their fields here once
+     * so the result sets do not parse them on every read.
+     */
     private ColumnMap<String, Object> convertToColumnMap(List<ForceResultField> record) {
+        List<Function<Object, Object>> decoders = getColumnDecoders();
         ColumnMap<String, Object> columnMap = new ColumnMap<>();
-        record.stream()
-                .map(field -> field == null ? new ForceResultField(null, null, null, null) : field)
-                .forEach(field -> {
-                    columnMap.put(field.getFullName(), field.getValue());
-                });
+        for (int column = 0; column < record.size(); column++) {
+            ForceResultField field = record.get(column);
+            if (field == null) {
+                columnMap.put(null, null);
+            } else {
+                Object value = column < decoders.size() ? decoders.get(column).apply(field.getValue()) : field.getValue();
+                columnMap.put(field.getFullName(), value);
+            }
+        }
         return columnMap;
     }
 
+    /**
+     * Converts a row of the Bulk API results, the values of the columns are in the order of the field definitions.
+     */
+    private ColumnMap<String, Object> convertToColumnMap(List<String> names, String[] values) {
+        List<Function<Object, Object>> decoders = getColumnDecoders();
+        ColumnMap<String, Object> columnMap = new ColumnMap<>();
+        for (int column = 0; column < values.length; column++) {
+            String name = column < names.size() ? names.get(column) : null;
+            Object value = column < decoders.size() ? decoders.get(column).apply(values[column]) : values[column];
+            columnMap.put(name, value);
+        }
+        return columnMap;
+    }
+
+    private List<Function<Object, Object>> columnDecoders;
+
+    /**
+     * @return the decoders of the values by the types of the flattened field definitions
+     */
+    private List<Function<Object, Object>> getColumnDecoders() {
+        if (columnDecoders == null) {
+            columnDecoders = flatten(getFieldDefinitions()).stream()
+                    .map(field -> TypedValues.decoderFor(field.getType()))
+                    .collect(Collectors.toList());
+        }
+        return columnDecoders;
+    }
+
     protected String removeCacheHints(String query) {
         Matcher matcher = Pattern.compile(CACHE_HINT).matcher(query);
         if (matcher.matches()) {
@@ -211,6 +693,36 @@ public class ForcePreparedStatement implements PreparedStatement {
         }
     }
 
+    protected boolean isBulkHint(String query) {
+        return Pattern.compile(BULK_HINT).matcher(query).matches();
+    }
+
+    protected String removeBulkHint(String query) {
+        Matcher matcher = Pattern.compile(BULK_HINT).matcher(query);
+        return matcher.matches() ? query.substring(0, matcher.start(1)) + query.substring(matcher.end(1)) : query;
+    }
+
+    protected String removeParallelHint(String query) {
+        Matcher matcher = Pattern.compile(PARALLEL_HINT).matcher(query);
+        return matcher.matches() ? query.substring(0, matcher.start(1)) + query.substring(matcher.end(1)) : query;
+    }
+
+    /**
+     * Takes the statement text with the hints, the hints are removed from the query.
+     */
+    private void setQuery(String sql) {
+        this.cacheMode = getCacheMode(sql);
+        Matcher cacheHint = Pattern.compile(CACHE_HINT).matcher(sql);
+        this.cacheOptions = cacheHint.matches() ? cacheHint.group(3) : null;
+        String query = removeCacheHints(sql);
+        this.bulkHint = isBulkHint(query);
+        query = removeBulkHint(query);
+        Matcher parallel = Pattern.compile(PARALLEL_HINT).matcher(query);
+        this.parallelHint = !parallel.matches() ? -1 : parallel.group(2) != null ? Integer.parseInt(parallel.group(2)) : 0;
+        this.orderedHint = parallel.matches() && "ORDERED".equalsIgnoreCase(parallel.group(3));
+        this.soqlQuery = removeParallelHint(query);
+    }
+
     protected CacheMode getCacheMode(String query) {
         Matcher matcher = Pattern.compile(CACHE_HINT).matcher(query);
         if (matcher.matches()) {
@@ -221,11 +733,18 @@ public class ForcePreparedStatement implements PreparedStatement {
         }
     }
 
-    private String getCacheKey() {
-        String preparedQuery = prepareQuery();
-        return cacheMode == CacheMode.GLOBAL
-                ? preparedQuery
-                : connection.getPartnerConnection().getSessionHeader().getSessionId() + preparedQuery;
+    /**
+     * @return the key of the query in the namespace of the org and the API version, the key of the SESSION mode
+     * with the hash of the session id - the cache may be kept in a file
+     */
+    private String getCacheKey(SoqlCacheKey cacheKey) {
+        PartnerConnection partnerConnection = connection.getPartnerConnection();
+        String sessionId = partnerConnection.getSessionHeader().getSessionId();
+        String namespace = CacheDatabase.namespace(sessionId, partnerConnection.getConfig().getServiceEndpoint(),
+                connection.getConnectionInfo().getApiVersion());
+        return cacheMode != CacheMode.SESSION
+                ? namespace + cacheKey.getKey()
+                : namespace + CacheDatabase.hash(sessionId) + cacheKey.getKey();
     }
 
     public List<Object> getParameters() {
@@ -249,7 +768,9 @@ public class ForcePreparedStatement implements PreparedStatement {
         return result;
     }
 
-    private final static DateFormat SF_DATETIME_FORMATTER = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    /** immutable, the parameters are set by the statements of several threads at once */
+    private final static DateTimeFormatter SF_DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
     private static Map<Class<?>, Function<Object, String>> paramConverters = new HashMap<>();
 
     static {
@@ -262,11 +783,15 @@ public class ForcePreparedStatement implements PreparedStatement {
         paramConverters.put(Integer.class, Object::toString);
         paramConverters.put(Long.class, Object::toString);
         paramConverters.put(Short.class, Object::toString);
-        paramConverters.put(java.util.Date.class, SF_DATETIME_FORMATTER::format);
-        paramConverters.put(Timestamp.class, SF_DATETIME_FORMATTER::format);
+        paramConverters.put(java.util.Date.class, ForcePreparedStatement::toSoqlDateTimeParam);
+        paramConverters.put(Timestamp.class, ForcePreparedStatement::toSoqlDateTimeParam);
         paramConverters.put(null, p -> "NULL");
     }
 
+    private static String toSoqlDateTimeParam(Object param) {
+        return SF_DATETIME_FORMATTER.format(Instant.ofEpochMilli(((java.util.Date) param).getTime()));
+    }
+
     protected static String toSoqlStringParam(Object param) {
         return "'" + param.toString().replaceAll("\\\\", "\\\\\\\\").replaceAll("'", "\\\\'") + "'";
     }
@@ -477,43 +1002,73 @@ public class ForcePreparedStatement implements PreparedStatement {
 
     public ResultSetMetaData getMetaData() throws SQLException {
         logger.info("[PrepStat] getMetaData IMPLEMENTED "+soqlQuery);
-        return cacheMode == CacheMode.NO_CACHE
-                ? loadMetaData()
-                : metadataCache.computeIfAbsent(getCacheKey(), s -> {
-            try {
-                return loadMetaData();
-            } catch (SQLException e) {
-                rethrowAsNonChecked(e);
-                return null;
-            }
-        });
+        if (cacheMode == CacheMode.NO_CACHE) {
+            return loadMetaData();
+        }
+        SoqlCacheKey cacheKey = SoqlCacheKey.of(prepareQuery());
+        String key = getCacheKey(cacheKey);
+        ResultSetMetaData cached = Caches.metadataCache.get(key);
+        if (cached == null) {
+            // loaded once for the statements which need it at the same time, the metadata is not changed by them
+            cached = metadataLoads.run(key, () -> {
+                ResultSetMetaData loaded = cacheKey.toKeyOrder(loadMetaData());
+                if (loaded != null) {
+                    Caches.metadataCache.put(key, loaded);
+                }
+                return loaded;
+            }, null);
+        }
+        return cacheKey.toStatementOrder(cached);
     }
 
     private PartnerService getPartnerService() throws ConnectionException {
         logger.info("[PrepStat] getPartnerService IMPLEMENTED "+soqlQuery);
         if (partnerService == null) {
             logger.info("[PrepStat] getPartnerService creating service ");
-            partnerService = new PartnerService(connection.getPartnerConnection());
+            partnerService = new PartnerService(getStatementConnection(),
+                    connection.getConnectionInfo().getPrefetchDepth(),
+                    connection.getConnectionInfo().getChildQueryConcurrency(),
+                    connection.getConnectionInfo().getDecodeParallelism());
         }
         return partnerService;
     }
 
+    private PartnerConnection getStatementConnection() throws ConnectionException {
+        if (statementConnection == null) {
+            statementConnection = ForceService.createSessionConnection(connection.getPartnerConnection(), calls);
+        }
+        return statementConnection;
+    }
+
     public boolean reconnect(String url, String userName, String userPass) throws ConnectionException {
         logger.info("[PrepStat] RECONNECT IMPLEMENTED newUserName="+userName + " url="+url);
         boolean updated = connection.updatePartnerConnection(url, userName, userPass);
         partnerService = null;
+        statementConnection = null;
         return updated;
     }
 
     public void setFetchSize(int rows) throws SQLException {
+        if (rows < 0) {
+            throw new SQLException("Fetch size must be >= 0, but was " + rows);
+        }
         this.fetchSize = rows;
     }
 
+    /**
+     * @return the fetch size set for the statement or the connection default if it is not set
+     */
     public int getFetchSize() throws SQLException {
+        if (fetchSize == 0 && connection != null) {
+            return connection.getConnectionInfo().getFetchSize();
+        }
         return fetchSize;
     }
 
     public void setMaxRows(int max) throws SQLException {
+        if (max < 0) {
+            throw new SQLException("Max rows must be >= 0, but was " + max);
+        }
         this.maxRows = max;
     }
 
@@ -693,8 +1248,7 @@ public class ForcePreparedStatement implements PreparedStatement {
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
         logger.info("[PrepStat] executeQuery IMPLEMENTED "+sql);
-        this.cacheMode = getCacheMode(sql);
-        this.soqlQuery = removeCacheHints(sql);
+        setQuery(sql);
         this.resultSet = executeQuery();
         return this.resultSet;
     }
@@ -702,8 +1256,7 @@ public class ForcePreparedStatement implements PreparedStatement {
     @Override
     public int executeUpdate(String sql) throws SQLException {
         logger.info("[PrepStat] executeUpdate IMPLEMENTED "+sql);
-        this.cacheMode = getCacheMode(sql);
-        this.soqlQuery = removeCacheHints(sql);
+        setQuery(sql);
 
         this.updateCount = -1;
         this.updateCountReturned = false;
@@ -714,8 +1267,15 @@ public class ForcePreparedStatement implements PreparedStatement {
 
     @Override
     public void close() throws SQLException {
-        // TODO Auto-generated method stub
+        closeQueryResultSet();
+    }
 
+    private void closeQueryResultSet() throws SQLException {
+        if (queryResultSet != null) {
+            ResultSet closed = queryResultSet;
+            queryResultSet = null;
+            closed.close();
+        }
     }
 
     @Override
@@ -736,22 +1296,33 @@ public class ForcePreparedStatement implements PreparedStatement {
 
     }
 
+    /**
+     * @return the query timeout set for the statement or the connection default if it is not set
+     */
     @Override
     public int getQueryTimeout() throws SQLException {
-        // TODO Auto-generated method stub
-        return 0;
+        if (queryTimeout < 0 && connection != null) {
+            return connection.getConnectionInfo().getQueryTimeout();
+        }
+        return Math.max(queryTimeout, 0);
     }
 
     @Override
     public void setQueryTimeout(int seconds) throws SQLException {
-        // TODO Auto-generated method stub
-
+        if (seconds < 0) {
+            throw new SQLException("Query timeout must be >= 0, but was " + seconds);
+        }
+        this.queryTimeout = seconds;
     }
 
+    /**
+     * Cancels the running query from another thread: the calls in flight are aborted, the cursors stop fetching
+     * and the query fails with the cancellation. A forward-only result which is being read is cancelled too.
+     */
     @Override
     public void cancel() throws SQLException {
-        // TODO Auto-generated method stub
-
+        logger.info("[PrepStat] cancel IMPLEMENTED " + soqlQuery);
+        cancellation.cancel();
     }
 
     @Override
@@ -778,8 +1349,7 @@ public class ForcePreparedStatement implements PreparedStatement {
     @Override
     public boolean execute(String sql) throws SQLException {
         logger.info("[PrepStat] execute IMPLEMENTED "+sql);
-        this.cacheMode = getCacheMode(sql);
-        this.soqlQuery = removeCacheHints(sql);
+        setQuery(sql);
 
         this.updateCount = -1;
         this.updateCountReturned = false;
@@ -848,8 +1418,8 @@ public class ForcePreparedStatement implements PreparedStatement {
 
     @Override
     public int getResultSetType() throws SQLException {
-        logger.info("[PrepStat] getResultSetType NOT_IMPLEMENTED "+soqlQuery);
-        return 0;
+        logger.info("[PrepStat] getResultSetType IMPLEMENTED "+soqlQuery);
+        return resultSetType;
     }
 
     @Override
@@ -961,14 +1531,15 @@ public class ForcePreparedStatement implements PreparedStatement {
 
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException {
-        // TODO Auto-generated method stub
-        return null;
+        if (isWrapperFor(iface)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("The statement is not a wrapper for " + iface.getName());
     }
 
     @Override
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        // TODO Auto-generated method stub
-        return false;
+        return iface != null && iface.isInstance(this);
     }
 
     @Override
@@ -0,0 +1,304 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import com.ascendix.jdbc.salesforce.resultset.ColumnarRows;
+import org.mapdb.DB;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the results of the queries with the CACHE INCREMENTAL hint, shared by all the connections of the JVM.
+ * <p>
+ * A result older than the refresh interval is not loaded again, it is refreshed by the records of its query
+ * modified since the last refresh: the rows of the records modified or deleted since then, found by queryAll
+ * in the SystemModstamp index, are removed and the rows of the modified records the query still returns are
+ * appended. A refresh reads only the changed records from Salesforce, so its API calls are bound by the number
+ * of the changed records, not by the size of the result. The refreshed result is still built in memory from all
+ * the cached rows.
+ * The refresh starts from the server time taken before the last one less an overlap, so the records committed
+ * while it ran are read again by the next one.
+ * <p>
+ * The results are kept in a {@link ResultCache} for a day, so the records removed for good from the Recycle Bin,
+ * which are not returned by queryAll, are dropped from them at least once a day. The change of an sObject
+ * by the driver makes its results due for a refresh.
+ */
+public class IncrementalCache {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    /** the time the next refresh reads again before the last one, a transaction may commit its changes late */
+    static final long OVERLAP_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The queries of a statement, every result with the columns in the same order.
+     */
+    interface Source {
+        Instant getServerTime() throws SQLException;
+
+        /**
+         * @return the whole result of the query
+         */
+        ResultSet query() throws SQLException;
+
+        /**
+         * @return the result of the given query built from the query of the statement
+         */
+        CachedResultSet query(String soql) throws SQLException;
+
+        /**
+         * @return the Ids of the records of the query, the deleted ones included
+         */
+        Set<String> queryAllIds(String soql) throws SQLException;
+    }
+
+    private final ResultCache results;
+    /** the state of the refreshes of every cached result */
+    private final HTreeMap<String, RefreshState> states;
+    /** the refresh interval of the queries with no TTL of their own */
+    private final long refreshInterval;
+    private final LongSupplier clock;
+    private final SingleFlight<ResultSet> refreshes = new SingleFlight<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    /** the number of the last invalidation of every sObject */
+    private final Map<String, Long> invalidatedAt = new ConcurrentHashMap<>();
+
+    private final AtomicLong fullLoads = new AtomicLong();
+    private final AtomicLong incrementalRefreshes = new AtomicLong();
+    private final AtomicLong refreshedRows = new AtomicLong();
+
+    /**
+     * @param refreshInterval the time a result is read with no refresh
+     */
+    public IncrementalCache(DB db, String name, long heapBudget, long refreshInterval, TimeUnit unit, long diskBudget) {
+        this(new ResultCache(db, name, heapBudget, 1, TimeUnit.DAYS, diskBudget),
+                db.hashMap(name + "States", Serializer.STRING, new RefreshStateSerializer())
+                        .expireAfterUpdate(1, TimeUnit.DAYS)
+                        .createOrOpen(),
+                unit.toMillis(refreshInterval), System::currentTimeMillis);
+    }
+
+    IncrementalCache(ResultCache results, HTreeMap<String, RefreshState> states, long refreshInterval, LongSupplier clock) {
+        this.results = results;
+        this.states = states;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached result of the key, refreshed if it is older than the refresh interval,
+     * or loads and caches it. A result is refreshed once for all the threads which need it at the same time.
+     *
+     * @param soql         the query of the result, refreshable by {@link SoqlDeltas}
+     * @param cancellation the cancellation of the statement, null - not cancelled
+     * @return a new cursor over the cached rows
+     */
+    ResultSet get(String key, String soql, Source source, QueryCancellation cancellation) throws SQLException {
+        return get(key, soql, source, cancellation, refreshInterval);
+    }
+
+    /**
+     * @param refreshInterval milliseconds the result is read with no refresh, the TTL of the query
+     */
+    ResultSet get(String key, String soql, Source source, QueryCancellation cancellation,
+                  long refreshInterval) throws SQLException {
+        RefreshState state = states.get(key);
+        if (state != null && clock.getAsLong() - state.refreshedAt < refreshInterval) {
+            ResultSet cached = results.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ResultSet refreshed = refreshes.run(key, () -> refresh(key, soql, source), cancellation);
+        // every reader gets its own cursor
+        ResultSet cached = results.get(key);
+        return cached != null ? cached : refreshed;
+    }
+
+    private ResultSet refresh(String key, String soql, Source source) throws SQLException {
+        String objectName = SoqlDeltas.objectName(soql);
+        long since = invalidations.get();
+        RefreshState state = states.get(key);
+        ResultSet cached = state != null ? results.get(key) : null;
+        Instant serverTime = source.getServerTime();
+        ResultSet result = null;
+        if (cached != null && cached.getClass() == CachedResultSet.class) {
+            result = refresh((CachedResultSet) cached, soql, Instant.ofEpochMilli(state.highWaterMark - OVERLAP_MILLIS), source);
+        }
+        if (result == null) {
+            result = source.query();
+            fullLoads.incrementAndGet();
+        }
+        results.put(key, result);
+        states.put(key, new RefreshState(objectName, serverTime.toEpochMilli(), clock.getAsLong()));
+        // checked after the state is stored, the result refreshed while the sObject was changed by the driver
+        // is refreshed again by the next read
+        if (isInvalidatedSince(objectName, since)) {
+            states.put(key, new RefreshState(objectName, serverTime.toEpochMilli(), 0));
+        }
+        return result;
+    }
+
+    /**
+     * @return the refreshed result, null if the sObject can not be queried by SystemModstamp
+     */
+    private ResultSet refresh(CachedResultSet cached, String soql, Instant modifiedSince, Source source) throws SQLException {
+        Set<String> modifiedIds;
+        CachedResultSet modified;
+        try {
+            modifiedIds = source.queryAllIds(SoqlDeltas.modifiedIdsSince(soql, modifiedSince));
+            modified = source.query(SoqlDeltas.modifiedSince(soql, modifiedSince));
+        } catch (SQLException e) {
+            if (SingleFlight.isCancellation(e)) {
+                throw e;
+            }
+            logger.log(Level.WARNING, "[IncrementalCache] the result is loaded again, the changed records are not read " + soql, e);
+            return null;
+        }
+        incrementalRefreshes.incrementAndGet();
+        refreshedRows.addAndGet(modifiedIds.size());
+        logger.info("[IncrementalCache] refreshed " + modifiedIds.size() + " changed records of " + SoqlDeltas.objectName(soql));
+        return merge(cached, modifiedIds, modified);
+    }
+
+    /**
+     * @param modifiedIds the Ids of the records whose rows are removed
+     * @param modified    the rows appended
+     * @return the rows of the cached result with the rows of the modified records replaced
+     */
+    static CachedResultSet merge(CachedResultSet cached, Set<String> modifiedIds, CachedResultSet modified) throws SQLException {
+        ColumnarRows cachedRows = cached.getRows();
+        ColumnarRows modifiedRows = modified.getRows();
+        Set<String> removed = new HashSet<>(modifiedIds);
+        int modifiedIdColumn = idColumn(modified.getMetaData());
+        for (int row = 0; row < modifiedRows.size(); row++) {
+            removed.add((String) modifiedRows.get(row, modifiedIdColumn));
+        }
+        ColumnarRows merged = new ColumnarRows();
+        int cachedIdColumn = idColumn(cached.getMetaData());
+        for (int row = 0; row < cachedRows.size(); row++) {
+            if (!removed.contains((String) cachedRows.get(row, cachedIdColumn))) {
+                merged.add(toColumnMap(cachedRows, row));
+            }
+        }
+        for (int row = 0; row < modifiedRows.size(); row++) {
+            merged.add(toColumnMap(modifiedRows, row));
+        }
+        return new CachedResultSet(merged, cached.getMetaData());
+    }
+
+    private static int idColumn(ResultSetMetaData metaData) throws SQLException {
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            if ("Id".equalsIgnoreCase(metaData.getColumnName(column))) {
+                return column;
+            }
+        }
+        throw new SQLException("The Id is not selected by the query refreshed");
+    }
+
+    private static ColumnMap<String, Object> toColumnMap(ColumnarRows rows, int row) {
+        List<String> names = rows.getColumnNames();
+        ColumnMap<String, Object> columnMap = new ColumnMap<>();
+        for (int column = 1; column <= names.size(); column++) {
+            columnMap.put(names.get(column - 1), rows.get(row, column));
+        }
+        return columnMap;
+    }
+
+    /**
+     * Makes the results of the sObject due for a refresh, the results are kept and refreshed by the next read.
+     *
+     * @return the number of the results due for a refresh
+     */
+    public int invalidate(String objectName) {
+        invalidatedAt.put(objectName.toUpperCase(Locale.ROOT), invalidations.incrementAndGet());
+        int invalidated = 0;
+        for (Object key : states.keySet()) {
+            RefreshState state = states.get(key);
+            if (state != null && state.objectName.equalsIgnoreCase(objectName) && state.refreshedAt != 0) {
+                states.put((String) key, new RefreshState(state.objectName, state.highWaterMark, 0));
+                invalidated++;
+            }
+        }
+        return invalidated;
+    }
+
+    private boolean isInvalidatedSince(String objectName, long since) {
+        Long invalidated = invalidatedAt.get(objectName.toUpperCase(Locale.ROOT));
+        return invalidated != null && invalidated > since;
+    }
+
+    public ResultCache getResults() {
+        return results;
+    }
+
+    /**
+     * @return the number of the results loaded whole
+     */
+    public long getFullLoads() {
+        return fullLoads.get();
+    }
+
+    public long getIncrementalRefreshes() {
+        return incrementalRefreshes.get();
+    }
+
+    /**
+     * @return the number of the changed records read by the refreshes
+     */
+    public long getRefreshedRows() {
+        return refreshedRows.get();
+    }
+
+    /**
+     * The sObject of a cached result, the server time its last refresh started at and the time it was refreshed,
+     * 0 - the result is due for a refresh.
+     */
+    static class RefreshState {
+
+        private final String objectName;
+        private final long highWaterMark;
+        private final long refreshedAt;
+
+        RefreshState(String objectName, long highWaterMark, long refreshedAt) {
+            this.objectName = objectName;
+            this.highWaterMark = highWaterMark;
+            this.refreshedAt = refreshedAt;
+        }
+    }
+
+    static class RefreshStateSerializer implements Serializer<RefreshState> {
+
+        @Override
+        public void serialize(DataOutput2 out, RefreshState state) throws IOException {
+            out.writeUTF(state.objectName);
+            out.packLong(state.highWaterMark);
+            out.packLong(state.refreshedAt);
+        }
+
+        @Override
+        public RefreshState deserialize(DataInput2 in, int available) throws IOException {
+            return new RefreshState(in.readUTF(), in.unpackLong(), in.unpackLong());
+        }
+    }
+}
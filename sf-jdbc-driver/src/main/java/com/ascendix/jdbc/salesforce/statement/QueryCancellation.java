@@ -0,0 +1,135 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cancellation of the query run by a statement, by {@link java.sql.Statement#cancel()} or by the query timeout.
+ * <p>
+ * The cancellation is cooperative: the parts of the running query register the actions which stop them,
+ * such as closing the cursors and aborting the calls in flight, and the statement checks the state
+ * between the pages of rows. The timeouts of all the statements are run by one scheduler thread,
+ * which only cancels the query, the query is stopped by the thread running it.
+ */
+class QueryCancellation {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    /** SQL state of the cancelled operation */
+    static final String CANCELLED_STATE = "HY008";
+    /** SQL state of the expired timeout */
+    static final String TIMEOUT_STATE = "HYT00";
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sf-jdbc-query-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<AutoCloseable> actions = new ArrayList<>();
+    private ScheduledFuture<?> timeoutTask;
+    private int timeoutSeconds;
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+
+    /**
+     * Starts a new query, the actions of the previous one are dropped. The asynchronous query whose future
+     * is already cancelled starts cancelled.
+     *
+     * @param timeoutSeconds the seconds after which the query is cancelled, 0 - no limit
+     */
+    synchronized void start(int timeoutSeconds) {
+        finish();
+        actions.clear();
+        cancelled = AsyncQueries.isCancelled();
+        timedOut = false;
+        this.timeoutSeconds = timeoutSeconds;
+        if (timeoutSeconds > 0) {
+            timeoutTask = scheduler.schedule(this::timeout, timeoutSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the timer of the query. The query can still be cancelled until the next one is started,
+     * the result may be read page by page after the execution is finished.
+     */
+    synchronized void finish() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
+        }
+    }
+
+    /**
+     * Registers an action stopping a part of the query, it is run at once if the query is already cancelled.
+     */
+    void onCancel(AutoCloseable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                actions.add(action);
+                return;
+            }
+        }
+        run(action);
+    }
+
+    private void timeout() {
+        logger.info("[QueryCancellation] query timed out after " + timeoutSeconds + " seconds");
+        timedOut = true;
+        cancel();
+    }
+
+    void cancel() {
+        List<AutoCloseable> cancelActions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancelActions = new ArrayList<>(actions);
+            actions.clear();
+        }
+        cancelActions.forEach(QueryCancellation::run);
+    }
+
+    private static void run(AutoCloseable action) {
+        try {
+            action.close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "[QueryCancellation] failed to stop the query", e);
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws SQLException if the query is cancelled, {@link SQLTimeoutException} if it is cancelled by the timeout
+     */
+    void check() throws SQLException {
+        check(null);
+    }
+
+    /**
+     * Reports the failure of a cancelled query as the cancellation, the calls of a cancelled query fail
+     * as they are aborted.
+     */
+    void check(Throwable cause) throws SQLException {
+        if (timedOut) {
+            throw new SQLTimeoutException("The query timed out after " + timeoutSeconds + " seconds", TIMEOUT_STATE, cause);
+        }
+        if (cancelled) {
+            throw new SQLException("The query was cancelled", CANCELLED_STATE, cause);
+        }
+    }
+}
@@ -0,0 +1,695 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import com.ascendix.jdbc.salesforce.resultset.ColumnarRows;
+import com.ascendix.jdbc.salesforce.resultset.ResultSetCodec;
+import org.mapdb.DB;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the results of the queries with the CACHE hint, shared by all the connections of the JVM.
+ * <p>
+ * The cache has two tiers. The heap tier keeps the recently read results as they are, up to a budget of their
+ * estimated size, and serves them with no decoding - every reader gets its own cursor over the shared rows.
+ * The least recently read results over the budget are demoted to the disk tier, a MapDB map of the results
+ * encoded by {@link ResultSetCodec}, and are promoted back to heap when they are read again.
+ * A result expires the time to live of its {@link CachePolicy} after it is loaded in both tiers. The results
+ * which are not plain {@link CachedResultSet} are decoded on every read, they are kept only on disk.
+ * <p>
+ * A result missing from the cache is loaded once for all the threads which need it at the same time,
+ * the others wait for it and read it from the cache, or read its rows if it is not cached. An expired result still within the stale time of its policy
+ * is read as it is and loaded again in background, no reader waits for the load.
+ * <p>
+ * Every result is tagged with the sObjects it is read from. The change of an sObject by the driver invalidates
+ * the results tagged with it through the index of the tags, so the results can be cached long.
+ * A result loaded while its sObject was changed is not cached. The tags of a result are removed with it,
+ * the tags of the expired results are pruned once the results are gone from both tiers.
+ */
+public class ResultCache {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    /** the tag of the results whose sObjects are not known, they are invalidated by the change of any sObject */
+    public static final String ANY_OBJECT = "*";
+    private static final char TAG_SEPARATOR = '\u0000';
+    /** the prefix of the tags of a key, no sObject starts with it */
+    private static final char KEY_TAG_PREFIX = '\u0001';
+
+    @FunctionalInterface
+    public interface Loader {
+        ResultSet load() throws SQLException;
+    }
+
+    private final HTreeMap<String, DiskEntry> disk;
+    /**
+     * the sObject and the key of every tagged result, separated by {@link #TAG_SEPARATOR},
+     * and the same tag the other way round after {@link #KEY_TAG_PREFIX} to find the tags of a key
+     */
+    private final NavigableSet<String> tags;
+    /** the keys of the expired results whose tags are pruned */
+    private final Queue<String> expired;
+    /** the results are stored under the read lock and invalidated under the write lock */
+    private final ReadWriteLock invalidation = new ReentrantReadWriteLock();
+    private final AtomicLong invalidations = new AtomicLong();
+    /** the number of the last invalidation of every sObject */
+    private final Map<String, Long> invalidatedAt = new ConcurrentHashMap<>();
+    private final CachePolicy defaultPolicy;
+    private final LongSupplier clock;
+    private final Map<String, HeapEntry> heap = new LinkedHashMap<>(16, 0.75f, true);
+    private long heapBytes;
+    private volatile long heapBudget;
+    /** the results put to heap are stored on disk too */
+    private volatile boolean writeThrough;
+
+    private final AtomicLong heapHits = new AtomicLong();
+    private final AtomicLong heapMisses = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong diskMisses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    /** the value of a load is the result which is not cached, the threads waiting for it read its rows */
+    private final SingleFlight<CachedResultSet> loads = new SingleFlight<>();
+    /** the keys of the expired results being loaded again in background */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param db         the database of the disk tier
+     * @param heapBudget bytes of the results kept in heap, 0 - all the results are kept on disk
+     * @param timeToLive the time to live of the results cached with no policy
+     */
+    public ResultCache(DB db, String name, long heapBudget, long timeToLive, TimeUnit unit, long diskBudget) {
+        this(db, name, heapBudget, timeToLive, unit, diskBudget, new ConcurrentLinkedQueue<>());
+    }
+
+    private ResultCache(DB db, String name, long heapBudget, long timeToLive, TimeUnit unit, long diskBudget,
+                        Queue<String> expired) {
+        // the results expire by their policies, the longest policy is the last resort.
+        // The listener is called under the lock of the map, the keys expired are pruned later
+        this(db.hashMap(name, Serializer.STRING, new DiskEntrySerializer())
+                .expireAfterCreate(Math.max(unit.toMillis(timeToLive), CachePolicy.MAX_TIME_TO_LIVE))
+                .expireStoreSize(diskBudget)
+                .modificationListener((key, oldValue, newValue, triggered) -> {
+                    if (triggered) {
+                        expired.add(key);
+                    }
+                })
+                .createOrOpen(), db.treeSet(name + "Tags", Serializer.STRING).createOrOpen(), expired,
+                heapBudget, unit.toMillis(timeToLive), System::currentTimeMillis);
+    }
+
+    ResultCache(HTreeMap<String, DiskEntry> disk, long heapBudget, long timeToLive, LongSupplier clock) {
+        this(disk, new ConcurrentSkipListSet<>(), heapBudget, timeToLive, clock);
+    }
+
+    ResultCache(HTreeMap<String, DiskEntry> disk, NavigableSet<String> tags, long heapBudget, long timeToLive,
+                LongSupplier clock) {
+        this(disk, tags, new ConcurrentLinkedQueue<>(), heapBudget, timeToLive, clock);
+    }
+
+    private ResultCache(HTreeMap<String, DiskEntry> disk, NavigableSet<String> tags, Queue<String> expired,
+                        long heapBudget, long timeToLive, LongSupplier clock) {
+        this.disk = disk;
+        this.tags = tags;
+        this.expired = expired;
+        this.heapBudget = heapBudget;
+        this.defaultPolicy = new CachePolicy(timeToLive, 0, 0);
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached result of the key or loads and caches it, the result is not tagged.
+     *
+     * @return a new cursor over the cached rows
+     */
+    public ResultSet get(String key, Loader loader) throws SQLException {
+        return get(key, loader, Collections::emptySet, null);
+    }
+
+    ResultSet get(String key, Loader loader, Supplier<Collection<String>> objectNames,
+                  QueryCancellation cancellation) throws SQLException {
+        return get(key, loader, objectNames, cancellation, defaultPolicy, null);
+    }
+
+    /**
+     * @param objectNames  the sObjects of the loaded result, read after it is loaded
+     * @param cancellation the cancellation of the statement, which stops waiting for the result another one loads
+     * @param refresher    loads the expired result in background, it must not depend on the caller,
+     *                     null - the expired result is loaded by the caller
+     */
+    ResultSet get(String key, Loader loader, Supplier<Collection<String>> objectNames, QueryCancellation cancellation,
+                  CachePolicy policy, Loader refresher) throws SQLException {
+        while (true) {
+            boolean[] stale = new boolean[1];
+            ResultSet cached = read(key, stale);
+            if (cached != null && !stale[0]) {
+                return cached;
+            }
+            if (cached != null && refresher != null) {
+                staleHits.incrementAndGet();
+                refreshInBackground(key, refresher, objectNames, policy);
+                return cached;
+            }
+            ResultSet[] loaded = new ResultSet[1];
+            CachedResultSet notCached = loads.run(key, () -> {
+                long since = invalidations.get();
+                loaded[0] = loader.load();
+                boolean stored = put(key, loaded[0], objectNames.get(), since, policy);
+                return !stored && isColumnar(loaded[0]) ? (CachedResultSet) loaded[0] : null;
+            }, cancellation);
+            if (loaded[0] != null) {
+                return loaded[0];
+            }
+            if (notCached != null) {
+                // loaded by another thread and not cached, every waiting thread gets its own cursor over its rows
+                return new HeapEntry(notCached, 0, 0).newResultSet();
+            }
+            // loaded by another thread, read from the cache unless it is gone already
+        }
+    }
+
+    /**
+     * Loads the expired result again on the executor of the asynchronous queries, once at a time.
+     * The result is read as it is until it is loaded or until the stale time is over if the load fails.
+     */
+    private void refreshInBackground(String key, Loader refresher, Supplier<Collection<String>> objectNames,
+                                     CachePolicy policy) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        AsyncQueries.supply(() -> {
+            long since = invalidations.get();
+            put(key, refresher.load(), objectNames.get(), since, policy);
+            return null;
+        }, () -> {
+        }).whenComplete((result, error) -> {
+            refreshing.remove(key);
+            if (error != null) {
+                logger.log(Level.WARNING, "[ResultCache] failed to refresh the expired result", error);
+            }
+        });
+    }
+
+    /**
+     * @return a new cursor over the cached rows of the key, null if the key is not cached or has expired
+     */
+    public ResultSet get(String key) {
+        boolean[] stale = new boolean[1];
+        ResultSet cached = read(key, stale);
+        return stale[0] ? null : cached;
+    }
+
+    /**
+     * @param stale set to true if the result read has expired and is within its stale time
+     * @return a new cursor over the cached rows of the key, null if the key is not cached or is past its stale time
+     */
+    private ResultSet read(String key, boolean[] stale) {
+        long now = clock.getAsLong();
+        HeapEntry heapEntry;
+        synchronized (heap) {
+            heapEntry = heap.get(key);
+            if (heapEntry != null && heapEntry.isExpired(now)) {
+                removeFromHeap(key);
+                expired.add(key);
+                heapEntry = null;
+            }
+        }
+        if (heapEntry != null) {
+            heapHits.incrementAndGet();
+            stale[0] = heapEntry.isStale(now);
+            return heapEntry.newResultSet();
+        }
+        heapMisses.incrementAndGet();
+        long since = invalidations.get();
+        DiskEntry diskEntry = disk.get(key);
+        if (diskEntry != null && diskEntry.isExpired(now)) {
+            // the disk tier expires the results by the longest policy
+            disk.remove(key);
+            expired.add(key);
+            diskEntry = null;
+        }
+        if (diskEntry == null) {
+            diskMisses.incrementAndGet();
+            pruneExpired();
+            return null;
+        }
+        ResultSet result;
+        try {
+            result = diskEntry.getResult();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "[ResultCache] failed to read the cached result", e);
+            remove(key);
+            diskMisses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        if (isColumnar(result)) {
+            Lock lock = invalidation.readLock();
+            lock.lock();
+            try {
+                // the disk tier keeps its copy, the entry demoted again is not written.
+                // The entry read before an invalidation may be invalidated, it is not promoted
+                if (invalidations.get() == since) {
+                    putToHeap(key, new HeapEntry((CachedResultSet) result, diskEntry.expiresAt, diskEntry.staleUntil));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        stale[0] = diskEntry.isStale(now);
+        return result;
+    }
+
+    /**
+     * Caches the result loaded just now, the result is not read by the cache so it can be returned to the caller.
+     * The result is not tagged.
+     */
+    public void put(String key, ResultSet result) {
+        put(key, result, Collections.emptySet(), invalidations.get(), defaultPolicy);
+    }
+
+    /**
+     * @param objectNames the sObjects the result is tagged with
+     * @param since       the number of the last invalidation before the result was loaded, the result is not
+     *                    cached if one of its sObjects was invalidated after it
+     * @return true if the result is cached
+     */
+    private boolean put(String key, ResultSet result, Collection<String> objectNames, long since, CachePolicy policy) {
+        pruneExpired();
+        if (isColumnar(result) && !policy.isCached(((CachedResultSet) result).getRows().size())) {
+            logger.info("[ResultCache] not caching the result of " + ((CachedResultSet) result).getRows().size()
+                    + " rows over the max rows of its policy " + policy.getMaxRows());
+            // the expired result is not read any longer
+            remove(key);
+            return false;
+        }
+        Lock lock = invalidation.readLock();
+        lock.lock();
+        try {
+            if (isInvalidatedSince(objectNames, since)) {
+                logger.info("[ResultCache] not caching the result loaded while its objects were changed " + objectNames);
+                return false;
+            }
+            for (String objectName : objectNames) {
+                tags.add(tag(objectName, key));
+                tags.add(keyTag(key, objectName));
+            }
+            long expiresAt = clock.getAsLong() + policy.getTimeToLive();
+            long staleUntil = expiresAt + policy.getStaleWhileRevalidate();
+            disk.remove(key);
+            if (isColumnar(result)) {
+                HeapEntry heapEntry = new HeapEntry((CachedResultSet) result, expiresAt, staleUntil);
+                putToHeap(key, heapEntry);
+                if (writeThrough) {
+                    demote(key, new DiskEntry(heapEntry.newResultSet(), expiresAt, staleUntil));
+                }
+            } else {
+                demote(key, new DiskEntry(result, expiresAt, staleUntil));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isInvalidatedSince(Collection<String> objectNames, long since) {
+        if (invalidations.get() == since) {
+            return false;
+        }
+        for (String objectName : objectNames) {
+            if (ANY_OBJECT.equals(objectName)) {
+                return true;
+            }
+            Long invalidated = invalidatedAt.get(objectName.toUpperCase(Locale.ROOT));
+            if (invalidated != null && invalidated > since) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String tag(String objectName, String key) {
+        return objectName.toUpperCase(Locale.ROOT) + TAG_SEPARATOR + key;
+    }
+
+    private static String keyTag(String key, String objectName) {
+        return KEY_TAG_PREFIX + key + TAG_SEPARATOR + objectName.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Removes the results tagged with the sObject and the results whose sObjects are not known,
+     * the results of the sObject being loaded at the moment are not cached.
+     *
+     * @return the number of the results removed
+     */
+    public int invalidate(String objectName) {
+        String object = objectName.toUpperCase(Locale.ROOT);
+        Lock lock = invalidation.writeLock();
+        lock.lock();
+        try {
+            pruneExpired();
+            invalidatedAt.put(object, invalidations.incrementAndGet());
+            int removed = removeTagged(object) + removeTagged(ANY_OBJECT);
+            logger.info("[ResultCache] invalidated " + removed + " results of " + objectName);
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int removeTagged(String object) {
+        String prefix = object + TAG_SEPARATOR;
+        List<String> tagged = new ArrayList<>(tags.subSet(prefix, true, prefix + Character.MAX_VALUE, true));
+        for (String tag : tagged) {
+            remove(tag.substring(prefix.length()));
+        }
+        return tagged.size();
+    }
+
+    /**
+     * Removes the result of the key from both tiers with its tags.
+     */
+    public void remove(String key) {
+        Lock lock = invalidation.writeLock();
+        lock.lock();
+        try {
+            synchronized (heap) {
+                removeFromHeap(key);
+            }
+            disk.remove(key);
+            removeTags(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeTags(String key) {
+        String prefix = KEY_TAG_PREFIX + key + TAG_SEPARATOR;
+        List<String> keyTags = new ArrayList<>(tags.subSet(prefix, true, prefix + Character.MAX_VALUE, true));
+        for (String keyTag : keyTags) {
+            tags.remove(tag(keyTag.substring(prefix.length()), key));
+            tags.remove(keyTag);
+        }
+    }
+
+    /**
+     * Removes the tags of the expired results gone from both tiers, the result of the key cached again
+     * since it expired keeps its tags. The keys are pruned under the write lock, out of the locks of the tiers.
+     */
+    private void pruneExpired() {
+        if (expired.isEmpty()) {
+            return;
+        }
+        Lock lock = invalidation.writeLock();
+        lock.lock();
+        try {
+            String key;
+            while ((key = expired.poll()) != null) {
+                if (!isCached(key)) {
+                    removeTags(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isCached(String key) {
+        synchronized (heap) {
+            if (heap.containsKey(key)) {
+                return true;
+            }
+        }
+        return disk.containsKey(key);
+    }
+
+    /**
+     * @return the number of the tags in the index
+     */
+    int getTags() {
+        return tags.size();
+    }
+
+    private static boolean isColumnar(ResultSet result) {
+        return result.getClass() == CachedResultSet.class;
+    }
+
+    private void putToHeap(String key, HeapEntry entry) {
+        List<Map.Entry<String, HeapEntry>> demoted = new ArrayList<>();
+        synchronized (heap) {
+            removeFromHeap(key);
+            heap.put(key, entry);
+            heapBytes += entry.bytes;
+            Iterator<Map.Entry<String, HeapEntry>> eldest = heap.entrySet().iterator();
+            while (heapBytes > heapBudget && eldest.hasNext()) {
+                Map.Entry<String, HeapEntry> evicted = eldest.next();
+                eldest.remove();
+                heapBytes -= evicted.getValue().bytes;
+                demoted.add(evicted);
+            }
+        }
+        // encoded out of the lock, the readers of the heap do not wait for it
+        for (Map.Entry<String, HeapEntry> evicted : demoted) {
+            HeapEntry heapEntry = evicted.getValue();
+            if (!heapEntry.isExpired(clock.getAsLong())) {
+                demote(evicted.getKey(), new DiskEntry(heapEntry.newResultSet(), heapEntry.expiresAt, heapEntry.staleUntil));
+            } else {
+                expired.add(evicted.getKey());
+            }
+        }
+    }
+
+    private void removeFromHeap(String key) {
+        HeapEntry removed = heap.remove(key);
+        if (removed != null) {
+            heapBytes -= removed.bytes;
+        }
+    }
+
+    private void demote(String key, DiskEntry entry) {
+        try {
+            disk.putIfAbsentBoolean(key, entry);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "[ResultCache] failed to store the result on disk", e);
+        }
+    }
+
+    /**
+     * Stores the results put to heap on disk too, so the disk tier kept in a file has all the results
+     * when the JVM exits. The results are encoded as they are cached instead of when they are demoted.
+     */
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    /**
+     * Raises the heap budget, the cache is shared by the connections and takes the biggest budget of them.
+     */
+    public void raiseHeapBudget(long bytes) {
+        if (bytes > heapBudget) {
+            synchronized (heap) {
+                heapBudget = Math.max(heapBudget, bytes);
+            }
+        }
+    }
+
+    public long getHeapBudget() {
+        return heapBudget;
+    }
+
+    public long getHeapBytes() {
+        synchronized (heap) {
+            return heapBytes;
+        }
+    }
+
+    public int getHeapEntries() {
+        synchronized (heap) {
+            return heap.size();
+        }
+    }
+
+    public long getHeapHits() {
+        return heapHits.get();
+    }
+
+    public long getHeapMisses() {
+        return heapMisses.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getDiskMisses() {
+        return diskMisses.get();
+    }
+
+    /**
+     * @return the number of the expired results read while they were loaded again
+     */
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    /**
+     * @return the number of the misses which waited for the same result loaded by another thread
+     */
+    public long getCoalescedLoads() {
+        return loads.getCoalesced();
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache{heap " + getHeapEntries() + " entries " + getHeapBytes() + "/" + heapBudget + " bytes"
+                + ", heap hits " + heapHits + " misses " + heapMisses
+                + ", disk hits " + diskHits + " misses " + diskMisses + ", stale hits " + staleHits
+                + ", coalesced loads " + getCoalescedLoads() + "}";
+    }
+
+    private static class HeapEntry {
+
+        private final ColumnarRows rows;
+        private final ResultSetMetaData metaData;
+        private final long expiresAt;
+        private final long staleUntil;
+        private final long bytes;
+
+        private HeapEntry(CachedResultSet result, long expiresAt, long staleUntil) {
+            this.rows = result.getRows();
+            this.metaData = getMetaData(result);
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+            this.bytes = rows.estimateBytes();
+        }
+
+        private static ResultSetMetaData getMetaData(CachedResultSet result) {
+            try {
+                return result.getMetaData();
+            } catch (SQLException e) {
+                // not thrown by the cached result
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @return true if the result is past its stale time
+         */
+        boolean isExpired(long now) {
+            return now >= staleUntil;
+        }
+
+        boolean isStale(long now) {
+            return now >= expiresAt;
+        }
+
+        CachedResultSet newResultSet() {
+            return new CachedResultSet(rows, metaData);
+        }
+    }
+
+    /**
+     * Result on disk, it is decoded when it is read - the entries which have expired or are replaced
+     * are not decoded.
+     */
+    static class DiskEntry {
+
+        private final long expiresAt;
+        private final long staleUntil;
+        private ResultSet result;
+        private byte[] encoded;
+
+        DiskEntry(ResultSet result, long expiresAt, long staleUntil) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
+
+        private DiskEntry(byte[] encoded, long expiresAt, long staleUntil) {
+            this.encoded = encoded;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
+
+        /**
+         * @return true if the result is past its stale time
+         */
+        boolean isExpired(long now) {
+            return now >= staleUntil;
+        }
+
+        boolean isStale(long now) {
+            return now >= expiresAt;
+        }
+
+        ResultSet getResult() throws IOException {
+            if (result == null) {
+                result = ResultSetCodec.RESULT_SET.deserialize(new DataInput2.ByteArray(encoded), encoded.length);
+            }
+            return result;
+        }
+
+        private byte[] getEncoded() throws IOException {
+            if (encoded == null) {
+                DataOutput2 out = new DataOutput2();
+                ResultSetCodec.RESULT_SET.serialize(out, result);
+                encoded = out.copyBytes();
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Stores the time the result expires, its stale time and the result encoded by {@link ResultSetCodec}.
+     */
+    static class DiskEntrySerializer implements Serializer<DiskEntry> {
+
+        @Override
+        public void serialize(DataOutput2 out, DiskEntry entry) throws IOException {
+            byte[] encoded = entry.getEncoded();
+            out.packLong(entry.expiresAt);
+            out.packLong(entry.staleUntil - entry.expiresAt);
+            out.packInt(encoded.length);
+            out.write(encoded);
+        }
+
+        @Override
+        public DiskEntry deserialize(DataInput2 in, int available) throws IOException {
+            long expiresAt = in.unpackLong();
+            long staleUntil = expiresAt + in.unpackLong();
+            byte[] encoded = new byte[in.unpackInt()];
+            in.readFully(encoded);
+            return new DiskEntry(encoded, expiresAt, staleUntil);
+        }
+    }
+}
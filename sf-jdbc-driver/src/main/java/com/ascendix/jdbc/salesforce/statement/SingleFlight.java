@@ -0,0 +1,105 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one call per key at a time, the threads which need the same key while the call runs wait for it
+ * and get its value or its failure, so a cache miss of many threads at once is loaded from Salesforce once.
+ * <p>
+ * Nothing is kept after the call is finished - the value is cached by the caller and the failure is not cached,
+ * the next call runs again. The call cancelled by the statement which runs it is run again by a waiting thread.
+ *
+ * @param <V> the value of the call
+ */
+class SingleFlight<V> {
+
+    @FunctionalInterface
+    interface Call<V> {
+        V call() throws SQLException;
+    }
+
+    private final ConcurrentMap<String, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param cancellation the cancellation of the statement of the caller, which stops the waiting, null - not cancelled
+     * @return the value of the call run by this thread or by another one
+     */
+    V run(String key, Call<V> call, QueryCancellation cancellation) throws SQLException {
+        while (true) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> running = calls.putIfAbsent(key, flight);
+            if (running == null) {
+                return call(key, call, flight);
+            }
+            coalesced.incrementAndGet();
+            try {
+                return await(running, cancellation);
+            } catch (SQLException e) {
+                if (!isCancellation(e.getCause())) {
+                    throw e;
+                }
+                // the statement which ran the call was cancelled, not this one
+            }
+        }
+    }
+
+    private V call(String key, Call<V> call, CompletableFuture<V> flight) throws SQLException {
+        try {
+            V value = call.call();
+            flight.complete(value);
+            return value;
+        } catch (SQLException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, flight);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> running, QueryCancellation cancellation) throws SQLException {
+        // the copy is cancelled, the call goes on for the other threads
+        CompletableFuture<V> waiting = running.thenApply(value -> value);
+        if (cancellation != null) {
+            cancellation.onCancel(() -> waiting.cancel(false));
+        }
+        try {
+            return waiting.get();
+        } catch (CancellationException e) {
+            if (cancellation != null) {
+                cancellation.check();
+            }
+            throw new SQLException("The query was cancelled", QueryCancellation.CANCELLED_STATE, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the same query of another statement", e);
+        } catch (ExecutionException e) {
+            Throwable failure = e.getCause();
+            if (failure instanceof SQLException) {
+                SQLException sqlFailure = (SQLException) failure;
+                // a new exception thrown from this thread, the failure is the same for all the waiting ones
+                throw new SQLException(sqlFailure.getMessage(), sqlFailure.getSQLState(), sqlFailure.getErrorCode(), sqlFailure);
+            }
+            throw new SQLException(failure.getMessage(), failure);
+        }
+    }
+
+    static boolean isCancellation(Throwable failure) {
+        return failure instanceof SQLException
+                && (QueryCancellation.CANCELLED_STATE.equals(((SQLException) failure).getSQLState())
+                || QueryCancellation.TIMEOUT_STATE.equals(((SQLException) failure).getSQLState()));
+    }
+
+    /**
+     * @return the number of the calls which waited for the call of another thread
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,261 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import org.mule.tools.soql.SOQLParserHelper;
+import org.mule.tools.soql.query.SOQLQuery;
+import org.mule.tools.soql.query.select.FieldSpec;
+import org.mule.tools.soql.query.select.SelectSpec;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The key the results of a query are cached by, the equivalent queries generated by different tools share it.
+ * <p>
+ * The query is parsed and written back by the SOQL parser, the whitespace and the case outside the string literals
+ * are normalized and the fields of a select list of plain fields are sorted. The result cached by the key keeps its
+ * columns in the order of the key, every statement reads them in the order of its own select list.
+ * The result whose columns are not the fields of the select list is not cached, its columns can not be reordered.
+ * The queries the parser does not read, SOSL for one, get only their whitespace and case normalized.
+ * The keys are computed once per query text.
+ */
+public final class SoqlCacheKey {
+
+    private static final String SF_JDBC_DRIVER_NAME = "SF JDBC driver";
+    private static final Logger logger = Logger.getLogger(SF_JDBC_DRIVER_NAME);
+
+    private static final int CACHED_KEYS = 1024;
+    private static final Map<String, SoqlCacheKey> keys = new LinkedHashMap<String, SoqlCacheKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SoqlCacheKey> eldest) {
+            return size() > CACHED_KEYS;
+        }
+    };
+
+    private final String key;
+    /** the column of the statement in every position of the key, starting at 1, null - the orders are the same */
+    private final int[] keyColumns;
+    /** the position in the key of every column of the statement, starting at 1 */
+    private final int[] statementColumns;
+
+    private SoqlCacheKey(String key, int[] keyColumns) {
+        this.key = key;
+        this.keyColumns = keyColumns;
+        this.statementColumns = keyColumns == null ? null : invert(keyColumns);
+    }
+
+    public static SoqlCacheKey of(String soql) {
+        SoqlCacheKey cached;
+        synchronized (keys) {
+            cached = keys.get(soql);
+        }
+        if (cached == null) {
+            // computed out of the lock, a key computed twice at once is the same
+            cached = parse(soql);
+            synchronized (keys) {
+                keys.put(soql, cached);
+            }
+        }
+        return cached;
+    }
+
+    static SoqlCacheKey parse(String soql) {
+        SOQLQuery query;
+        try {
+            query = SOQLParserHelper.createSOQLData(soql);
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "[SoqlCacheKey] the query is not parsed, its text is the key", e);
+            query = null;
+        }
+        return query != null ? canonical(query, soql) : new SoqlCacheKey(normalize(soql), null);
+    }
+
+    /**
+     * @param soql the query the parsed query is read from
+     */
+    static SoqlCacheKey canonical(SOQLQuery query, String soql) {
+        String text;
+        List<String> fields = new ArrayList<>();
+        try {
+            text = query.toSOQLText();
+            for (SelectSpec spec : query.getSelectSpecs()) {
+                // the fields with aliases, the functions, the subqueries and TYPEOF keep their order
+                if (!(spec instanceof FieldSpec) || ((FieldSpec) spec).getAlias() != null) {
+                    fields = null;
+                    break;
+                }
+                fields.add(fieldPath((FieldSpec) spec));
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "[SoqlCacheKey] the query is not written back, its text is the key", e);
+            return new SoqlCacheKey(normalize(soql), null);
+        }
+        int from = text == null ? -1 : text.toUpperCase().indexOf(" FROM ");
+        if (from < 0) {
+            return new SoqlCacheKey(normalize(text != null ? text : soql), null);
+        }
+        if (fields == null || fields.size() < 2) {
+            return new SoqlCacheKey(normalize(text), null);
+        }
+        List<String> names = fields;
+        int[] keyColumns = IntStream.range(0, names.size()).boxed()
+                .sorted(Comparator.comparing(column -> names.get(column).toUpperCase()))
+                .mapToInt(column -> column + 1)
+                .toArray();
+        String selectList = IntStream.of(keyColumns)
+                .mapToObj(column -> names.get(column - 1))
+                .collect(Collectors.joining(", "));
+        boolean sorted = IntStream.range(0, keyColumns.length).allMatch(i -> keyColumns[i] == i + 1);
+        return new SoqlCacheKey(normalize("SELECT " + selectList + text.substring(from)), sorted ? null : keyColumns);
+    }
+
+    private static String fieldPath(FieldSpec field) {
+        List<String> path = new ArrayList<>();
+        if (field.getObjectPrefixNames() != null) {
+            path.addAll(field.getObjectPrefixNames());
+        }
+        path.add(field.getFieldName());
+        return String.join(".", path);
+    }
+
+    /**
+     * Collapses the whitespace and upper cases the text outside the string literals, the names in SOQL
+     * are not case-sensitive.
+     */
+    static String normalize(String soql) {
+        StringBuilder result = new StringBuilder(soql.length());
+        int i = 0;
+        while (i < soql.length()) {
+            char c = soql.charAt(i);
+            if (c == '\'') {
+                int end = skipLiteral(soql, i);
+                result.append(soql, i, end);
+                i = end;
+            } else if (Character.isWhitespace(c)) {
+                while (i < soql.length() && Character.isWhitespace(soql.charAt(i))) {
+                    i++;
+                }
+                if (result.length() > 0 && i < soql.length()) {
+                    result.append(' ');
+                }
+            } else {
+                result.append(Character.toUpperCase(c));
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    private static int skipLiteral(String soql, int start) {
+        int i = start + 1;
+        while (i < soql.length()) {
+            char c = soql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\'') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return soql.length();
+    }
+
+    private static int[] invert(int[] columns) {
+        int[] inverted = new int[columns.length];
+        for (int position = 1; position <= columns.length; position++) {
+            inverted[columns[position - 1] - 1] = position;
+        }
+        return inverted;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the result loaded by the statement with its columns in the order of the key
+     * @throws NotInKeyOrderException if the result has not a column for every field, the result is not cached
+     */
+    public ResultSet toKeyOrder(ResultSet result) throws SQLException {
+        if (keyColumns != null && result != null && result.getClass() == CachedResultSet.class
+                && !canSelectColumns((CachedResultSet) result, keyColumns)) {
+            throw new NotInKeyOrderException((CachedResultSet) result);
+        }
+        return selectColumns(result, keyColumns);
+    }
+
+    /**
+     * @return the cached result with its columns in the order of the statement
+     */
+    public ResultSet toStatementOrder(ResultSet result) throws SQLException {
+        return selectColumns(result, statementColumns);
+    }
+
+    public ResultSetMetaData toKeyOrder(ResultSetMetaData metaData) throws SQLException {
+        return selectColumns(metaData, keyColumns);
+    }
+
+    public ResultSetMetaData toStatementOrder(ResultSetMetaData metaData) throws SQLException {
+        return selectColumns(metaData, statementColumns);
+    }
+
+    /**
+     * A select list of plain fields has a column for every field, the other results are kept as they are.
+     */
+    private static ResultSet selectColumns(ResultSet result, int[] columns) throws SQLException {
+        if (columns == null || result == null || result.getClass() != CachedResultSet.class) {
+            return result;
+        }
+        CachedResultSet cached = (CachedResultSet) result;
+        return canSelectColumns(cached, columns) ? cached.selectColumns(columns) : result;
+    }
+
+    private static boolean canSelectColumns(CachedResultSet result, int[] columns) {
+        return result.getRows().getColumnCount() == columns.length || result.getRows().size() == 0;
+    }
+
+    private static ResultSetMetaData selectColumns(ResultSetMetaData metaData, int[] columns) throws SQLException {
+        if (columns == null || metaData == null || metaData.getColumnCount() != columns.length) {
+            return metaData;
+        }
+        return CachedResultSet.selectColumns(metaData, columns);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    /**
+     * The failure of the load of a result which can not be put in the order of the key, the result is not cached
+     * under the key shared by the other orders. The statement which loaded it reads it as it is loaded,
+     * the statements waiting for the same load get the failure as the cause of their own.
+     */
+    static class NotInKeyOrderException extends SQLException {
+
+        private final transient CachedResultSet result;
+
+        NotInKeyOrderException(CachedResultSet result) {
+            super("The columns of the result are not the fields of the select list, the result is not cached");
+            this.result = result;
+        }
+
+        /**
+         * @return the result in the order of the statement which loaded it
+         */
+        CachedResultSet getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a SOQL query to queries of the ranges of the record Ids, so the ranges can be extracted in parallel.
+ * <p>
+ * Only a plain query of one object is split: no GROUP BY, OFFSET, aggregate functions and no ORDER BY
+ * other than by Id. The filter of a range is added to the WHERE clause of the outer query, the subqueries
+ * and the other clauses are kept as they are. The ranges are cut from the span of the first and the last Id
+ * of the query treating the 15 characters Ids as base 62 numbers, the first range is open at the start
+ * and the last one at the end, so no record is lost whatever the ranges are. Every range keeps the LIMIT
+ * of the query, the merged rows of the ranges have to be limited to it once by {@link #limitOf}.
+ */
+public final class SoqlChunks {
+
+    private static final Pattern SELECT_QUERY = Pattern.compile("(?is)\\A\\s*SELECT\\s.*");
+    private static final String ID_DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int ID_LENGTH = 15;
+    private static final BigInteger ID_BASE = BigInteger.valueOf(ID_DIGITS.length());
+    // clauses which end the WHERE clause of a query
+    private static final List<String> CLAUSES_AFTER_WHERE = Arrays.asList("WITH", "GROUP", "ORDER", "LIMIT", "OFFSET", "FOR", "UPDATE", "ALL");
+    private static final List<String> NOT_SPLIT = Arrays.asList("GROUP", "OFFSET", "TYPEOF", "HAVING");
+    private static final List<String> AGGREGATE_FUNCTIONS = Arrays.asList("COUNT", "COUNT_DISTINCT", "SUM", "AVG", "MIN", "MAX");
+
+    private SoqlChunks() {
+    }
+
+    /**
+     * @return true if the query can be split by the ranges of the Ids
+     */
+    public static boolean isSplittable(String soql) {
+        if (soql == null || !SELECT_QUERY.matcher(soql).matches()) {
+            return false;
+        }
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        int from = indexOf(tokens, "FROM", 0);
+        if (from < 0 || from + 1 >= tokens.size()) {
+            return false;
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            SoqlLimits.Token token = tokens.get(i);
+            if (NOT_SPLIT.contains(token.word)) {
+                return false;
+            }
+            // the rows of the ranges are limited by the literal LIMIT only
+            if ("LIMIT".equals(token.word) && (i + 1 >= tokens.size() || !tokens.get(i + 1).word.matches("\\d+"))) {
+                return false;
+            }
+            if (i < from && AGGREGATE_FUNCTIONS.contains(token.word) && isFunctionCall(soql, token)) {
+                return false;
+            }
+        }
+        return isOrderedByIdOnly(tokens);
+    }
+
+    /**
+     * @return true if the query has the ORDER BY Id clause, the rows of the ranges then have to be merged in order
+     */
+    public static boolean isOrderedById(String soql) {
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        return indexOf(tokens, "ORDER", 0) >= 0 && isOrderedByIdOnly(tokens);
+    }
+
+    /**
+     * @return the LIMIT of a splittable query, 0 - no limit
+     */
+    public static int limitOf(String soql) {
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        int limit = indexOf(tokens, "LIMIT", indexOf(tokens, "FROM", 0));
+        if (limit < 0 || limit + 1 >= tokens.size() || !tokens.get(limit + 1).word.matches("\\d+")) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Long.parseLong(tokens.get(limit + 1).word));
+    }
+
+    private static boolean isOrderedByIdOnly(List<SoqlLimits.Token> tokens) {
+        int order = indexOf(tokens, "ORDER", indexOf(tokens, "FROM", 0));
+        if (order < 0) {
+            return true;
+        }
+        // ORDER BY Id [ASC] [NULLS FIRST|LAST] is the only order kept by the ranges
+        if (order + 2 >= tokens.size() || !"BY".equals(tokens.get(order + 1).word) || !"ID".equals(tokens.get(order + 2).word)) {
+            return false;
+        }
+        int next = order + 3;
+        if (next < tokens.size() && "ASC".equals(tokens.get(next).word)) {
+            next++;
+        }
+        if (next + 1 < tokens.size() && "NULLS".equals(tokens.get(next).word)) {
+            next += 2;
+        }
+        return next >= tokens.size() || CLAUSES_AFTER_WHERE.contains(tokens.get(next).word);
+    }
+
+    private static boolean isFunctionCall(String soql, SoqlLimits.Token token) {
+        int i = token.end;
+        while (i < soql.length() && Character.isWhitespace(soql.charAt(i))) {
+            i++;
+        }
+        return i < soql.length() && soql.charAt(i) == '(';
+    }
+
+    private static int indexOf(List<SoqlLimits.Token> tokens, String word, int fromIndex) {
+        for (int i = Math.max(0, fromIndex); i < tokens.size(); i++) {
+            if (word.equals(tokens.get(i).word)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param ascending true for the query of the first Id, false - of the last one
+     * @return the query of the first or the last Id of the records matched by the query
+     */
+    public static String boundaryQuery(String soql, boolean ascending) {
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        int from = indexOf(tokens, "FROM", 0);
+        int end = whereEnd(soql, tokens, from);
+        return "SELECT Id " + soql.substring(tokens.get(from).start, end).trim()
+                + " ORDER BY Id " + (ascending ? "ASC" : "DESC") + " LIMIT 1";
+    }
+
+    /**
+     * @param chunks the number of the ranges, the ranges are fewer if there are not enough distinct Ids between
+     *               the first and the last one
+     * @return the queries of the ranges of the Ids in the order of the ranges
+     */
+    public static List<String> splitQuery(String soql, String firstId, String lastId, int chunks) {
+        List<String> boundaries = splitIdRange(firstId, lastId, chunks);
+        if (boundaries.isEmpty()) {
+            return Collections.singletonList(soql);
+        }
+        List<String> queries = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            String lower = i > 0 ? "Id >= '" + boundaries.get(i - 1) + "'" : null;
+            String upper = i < boundaries.size() ? "Id < '" + boundaries.get(i) + "'" : null;
+            queries.add(withCondition(soql, lower == null ? upper : upper == null ? lower : lower + " AND " + upper));
+        }
+        return queries;
+    }
+
+    /**
+     * @return the query with the condition added to its WHERE clause
+     */
+    static String withCondition(String soql, String condition) {
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        int from = indexOf(tokens, "FROM", 0);
+        int end = whereEnd(soql, tokens, from);
+        int where = indexOf(tokens, "WHERE", from);
+        if (where >= 0) {
+            String filter = soql.substring(tokens.get(where).end, end).trim();
+            return soql.substring(0, tokens.get(where).end) + " (" + filter + ") AND " + condition + tail(soql, end);
+        }
+        return soql.substring(0, end).replaceFirst("\\s*\\z", "") + " WHERE " + condition + tail(soql, end);
+    }
+
+    private static String tail(String soql, int end) {
+        return end < soql.length() ? " " + soql.substring(end).replaceFirst("\\A\\s*", "") : "";
+    }
+
+    /**
+     * @return the position after the WHERE clause, or after the FROM clause if there is no WHERE clause
+     */
+    private static int whereEnd(String soql, List<SoqlLimits.Token> tokens, int from) {
+        for (int i = from + 1; i < tokens.size(); i++) {
+            if (CLAUSES_AFTER_WHERE.contains(tokens.get(i).word)) {
+                return tokens.get(i).start;
+            }
+        }
+        return soql.replaceFirst("[\\s;]*\\z", "").length();
+    }
+
+    /**
+     * @return the Ids which split the range from the first to the last Id to the given number of ranges of the same
+     * span, every Id is greater than the first one and the Ids are ascending
+     */
+    static List<String> splitIdRange(String firstId, String lastId, int chunks) {
+        BigInteger first = decodeId(firstId);
+        BigInteger span = decodeId(lastId).subtract(first);
+        List<String> boundaries = new ArrayList<>();
+        BigInteger previous = first;
+        for (int i = 1; i < chunks && span.signum() > 0; i++) {
+            BigInteger boundary = first.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(chunks)));
+            if (boundary.compareTo(previous) > 0) {
+                boundaries.add(encodeId(boundary));
+                previous = boundary;
+            }
+        }
+        return boundaries;
+    }
+
+    private static BigInteger decodeId(String id) {
+        BigInteger value = BigInteger.ZERO;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int digit = i < id.length() ? ID_DIGITS.indexOf(id.charAt(i)) : 0;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a record Id: " + id);
+            }
+            value = value.multiply(ID_BASE).add(BigInteger.valueOf(digit));
+        }
+        return value;
+    }
+
+    private static String encodeId(BigInteger value) {
+        char[] id = new char[ID_LENGTH];
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            BigInteger[] quotientAndRemainder = value.divideAndRemainder(ID_BASE);
+            id[i] = ID_DIGITS.charAt(quotientAndRemainder[1].intValue());
+            value = quotientAndRemainder[0];
+        }
+        return new String(id);
+    }
+}
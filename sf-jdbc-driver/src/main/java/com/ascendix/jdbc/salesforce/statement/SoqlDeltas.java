@@ -0,0 +1,124 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the queries of the records of a SOQL query changed since a time, so the cached result of the query
+ * can be refreshed by the changed records instead of being loaded again.
+ * <p>
+ * Only a plain query of one object is refreshed: a select list of the fields of the object with the Id among them,
+ * no relationship fields, functions or subqueries, and no clauses other than WHERE. The change of a parent record
+ * or of a child record does not change the SystemModstamp of the record, so the fields of the other objects
+ * could not be refreshed, and the rows of a limited, ordered or grouped query are not the rows of the object.
+ * The queries filtered by the records of other objects or by the dates relative to today are not refreshed either.
+ * The formula fields are refreshed only with their records.
+ */
+public final class SoqlDeltas {
+
+    private static final Pattern SELECT_QUERY = Pattern.compile("(?is)\\A\\s*SELECT\\s.*");
+    private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_]*");
+    private static final Pattern SEMI_JOIN = Pattern.compile("(?is).*\\(\\s*SELECT\\s.*");
+    // the date literals relative to today, the records they match change with no change of the records
+    private static final Pattern RELATIVE_DATE = Pattern.compile("TODAY|YESTERDAY|TOMORROW"
+            + "|(LAST|THIS|NEXT)_(WEEK|MONTH|QUARTER|YEAR|90_DAYS|FISCAL_QUARTER|FISCAL_YEAR)|(LAST|NEXT)_N_\\w+|N_\\w+_AGO");
+    // clauses which change the rows of the query
+    private static final List<String> NOT_REFRESHED = Arrays.asList("WITH", "GROUP", "HAVING", "ORDER", "LIMIT",
+            "OFFSET", "FOR", "UPDATE", "ALL", "TYPEOF", "USING");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private SoqlDeltas() {
+    }
+
+    /**
+     * @return true if the result of the query can be refreshed by the records changed since it was loaded
+     */
+    public static boolean isRefreshable(String soql) {
+        if (soql == null || !SELECT_QUERY.matcher(soql).matches()) {
+            return false;
+        }
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        int from = indexOf(tokens, "FROM");
+        // no alias and no clauses other than WHERE after the object
+        if (from < 0 || from + 1 >= tokens.size() || tokens.get(from + 1).word.contains(".")
+                || from + 2 < tokens.size() && !"WHERE".equals(tokens.get(from + 2).word)) {
+            return false;
+        }
+        // the conditions in parentheses are checked too, the fields of the related records filter by other objects
+        int objectStart = tokens.get(from + 1).start;
+        for (SoqlLimits.Token token : SoqlLimits.allTokens(soql)) {
+            if (NOT_REFRESHED.contains(token.word) || RELATIVE_DATE.matcher(token.word).matches()
+                    || token.start >= objectStart && isRelationshipField(token.word)) {
+                return false;
+            }
+        }
+        String selectList = soql.substring(tokens.get(0).end, tokens.get(from).start);
+        if (selectList.contains("(") || SEMI_JOIN.matcher(soql).matches()) {
+            return false;
+        }
+        boolean id = false;
+        for (String field : selectList.split(",")) {
+            String name = field.trim();
+            if (!FIELD_NAME.matcher(name).matches()) {
+                return false;
+            }
+            id |= "Id".equalsIgnoreCase(name);
+        }
+        return id;
+    }
+
+    /**
+     * @return the object of a query which is refreshable
+     */
+    public static String objectName(String soql) {
+        List<SoqlLimits.Token> tokens = SoqlLimits.topLevelTokens(soql);
+        SoqlLimits.Token object = tokens.get(indexOf(tokens, "FROM") + 1);
+        return soql.substring(object.start, object.end);
+    }
+
+    /**
+     * @return the query of the records of the query modified after the time, the deleted ones excluded
+     */
+    public static String modifiedSince(String soql, Instant since) {
+        return SoqlChunks.withCondition(soql, "SystemModstamp > " + format(since));
+    }
+
+    /**
+     * The query is run with queryAll - the deleted records and the records which do not match the query
+     * any more are among them, their rows are removed from the cached result.
+     *
+     * @return the query of the Ids of all the records of the object modified after the time
+     */
+    public static String modifiedIdsSince(String soql, Instant since) {
+        return "SELECT Id FROM " + objectName(soql) + " WHERE SystemModstamp > " + format(since);
+    }
+
+    /**
+     * @return the SOQL literal of the time rounded down to the second
+     */
+    static String format(Instant time) {
+        return DATE_TIME.format(time.truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    /**
+     * @return true if the word is a field of a related record, the numbers with a fraction are not
+     */
+    private static boolean isRelationshipField(String word) {
+        return word.contains(".") && Character.isLetter(word.charAt(0));
+    }
+
+    private static int indexOf(List<SoqlLimits.Token> tokens, String word) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (word.equals(tokens.get(i).word)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
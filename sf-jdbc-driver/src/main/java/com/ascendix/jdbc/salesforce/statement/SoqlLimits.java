@@ -0,0 +1,135 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Pushes the JDBC max rows of a statement down to the LIMIT clause of a SOQL query,
+ * so Salesforce does not return more records than the client is going to read.
+ * <p>
+ * Only the outer query is changed - the LIMIT clauses of the child subqueries are left as they are.
+ */
+public final class SoqlLimits {
+
+    private static final Pattern SELECT_QUERY = Pattern.compile("(?is)\\A\\s*SELECT\\s.*");
+    // LIMIT restricts the records counted by COUNT() rather than the number of rows returned
+    private static final Pattern COUNT_QUERY = Pattern.compile("(?is)\\A\\s*SELECT\\s+COUNT\\s*\\(\\s*\\)\\s.*");
+    // clauses which follow LIMIT in a SOQL query
+    private static final List<String> CLAUSES_AFTER_LIMIT = Arrays.asList("OFFSET", "FOR", "UPDATE", "ALL");
+
+    private SoqlLimits() {
+    }
+
+    static class Token {
+        final String word;
+        final int start;
+        final int end;
+
+        private Token(String word, int start, int end) {
+            this.word = word;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * @param soql    the query to limit
+     * @param maxRows the max number of rows, 0 - no limit
+     * @return the query with LIMIT not greater than maxRows
+     */
+    public static String applyMaxRows(String soql, int maxRows) {
+        if (maxRows <= 0 || soql == null || !SELECT_QUERY.matcher(soql).matches() || COUNT_QUERY.matcher(soql).matches()) {
+            return soql;
+        }
+        List<Token> tokens = topLevelTokens(soql);
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if ("LIMIT".equals(token.word)) {
+                return limitTo(soql, i + 1 < tokens.size() ? tokens.get(i + 1) : null, maxRows);
+            }
+        }
+        boolean afterFrom = false;
+        for (Token token : tokens) {
+            if ("FROM".equals(token.word)) {
+                afterFrom = true;
+            } else if (afterFrom && CLAUSES_AFTER_LIMIT.contains(token.word)) {
+                return soql.substring(0, token.start) + "LIMIT " + maxRows + " " + soql.substring(token.start);
+            }
+        }
+        String query = soql.replaceFirst("[\\s;]*\\z", "");
+        return query + " LIMIT " + maxRows + soql.substring(query.length());
+    }
+
+    private static String limitTo(String soql, Token limitValue, int maxRows) {
+        if (limitValue == null || !limitValue.word.matches("\\d+")) {
+            // not a literal limit - keep the query as it is
+            return soql;
+        }
+        long limit = Long.parseLong(limitValue.word);
+        if (limit <= maxRows) {
+            return soql;
+        }
+        return soql.substring(0, limitValue.start) + maxRows + soql.substring(limitValue.end);
+    }
+
+    /**
+     * Splits the query to words skipping string literals and everything inside the parentheses.
+     */
+    static List<Token> topLevelTokens(String soql) {
+        return tokens(soql, true);
+    }
+
+    /**
+     * Splits the query to words skipping string literals, the words inside the parentheses included.
+     */
+    static List<Token> allTokens(String soql) {
+        return tokens(soql, false);
+    }
+
+    private static List<Token> tokens(String soql, boolean topLevel) {
+        List<Token> tokens = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        while (i < soql.length()) {
+            char c = soql.charAt(i);
+            if (c == '\'') {
+                i = skipLiteral(soql, i);
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                int start = i;
+                while (i < soql.length() && (Character.isLetterOrDigit(soql.charAt(i)) || soql.charAt(i) == '_'
+                        || soql.charAt(i) == '.')) {
+                    i++;
+                }
+                if (depth == 0 || !topLevel) {
+                    tokens.add(new Token(soql.substring(start, i).toUpperCase(), start, i));
+                }
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipLiteral(String soql, int start) {
+        int i = start + 1;
+        while (i < soql.length()) {
+            char c = soql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\'') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+}
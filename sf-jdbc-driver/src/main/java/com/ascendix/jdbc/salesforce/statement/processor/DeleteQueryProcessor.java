@@ -40,16 +40,23 @@ public class DeleteQueryProcessor {
         try {
             List<String> recordsToDelete = DeleteQueryAnalyzer.getRecords();
             DeleteResult[] records = partnerService.deleteRecords(DeleteQueryAnalyzer.getFromObjectName(), recordsToDelete);
+            boolean deleted = false;
             for(DeleteResult result: records) {
                 if (result.isSuccess()) {
                     resultSet.log(DeleteQueryAnalyzer.getFromObjectName()+" deleted with Id="+result.getId());
+                    deleted = true;
                 } else {
                     resultSet.addWarning(DeleteQueryAnalyzer.getFromObjectName()+" failed to delete with error="+ Arrays.stream(result.getErrors()).map(IError::getMessage).collect(Collectors.joining(",")));
                 }
             }
+            if (deleted) {
+                ForcePreparedStatement.invalidateCachedResults(DeleteQueryAnalyzer.getFromObjectName());
+            }
         } catch (ConnectionException e) {
             resultSet.addWarning("Failed request to delete entities with error: "+e.getMessage());
             logger.log(Level.SEVERE,"Failed request to delete entities with error: "+e.getMessage(), e);
+            // the records may have been deleted before the request failed
+            ForcePreparedStatement.invalidateCachedResults(DeleteQueryAnalyzer.getFromObjectName());
         }
         return resultSet;
     }
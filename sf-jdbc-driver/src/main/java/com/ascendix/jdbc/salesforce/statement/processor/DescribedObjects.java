@@ -0,0 +1,35 @@
+package com.ascendix.jdbc.salesforce.statement.processor;
+
+import com.sforce.soap.partner.DescribeSObjectResult;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The descriptions of the sObjects read by the analyzers of the queries.
+ */
+final class DescribedObjects {
+
+    private DescribedObjects() {
+    }
+
+    /**
+     * The cache is shared by the statements of the connection, the object described by two of them at the same time
+     * is kept once. The object is not described inside computeIfAbsent, the describe call would block the other
+     * objects of the map until it returns.
+     *
+     * @return the cached description of the object, described by the descriptor if it is not cached
+     */
+    static DescribeSObjectResult describe(String objectName, Map<String, DescribeSObjectResult> cache,
+                                          Function<String, DescribeSObjectResult> descriptor) {
+        DescribeSObjectResult description = cache.get(objectName);
+        if (description == null) {
+            description = descriptor.apply(objectName);
+            DescribeSObjectResult described = cache.putIfAbsent(objectName, description);
+            if (described != null) {
+                description = described;
+            }
+        }
+        return description;
+    }
+}
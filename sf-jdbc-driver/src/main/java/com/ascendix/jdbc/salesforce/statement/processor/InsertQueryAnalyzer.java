@@ -105,16 +105,6 @@ public class InsertQueryAnalyzer {
                 .orElseThrow(() -> new IllegalArgumentException("Unknown field name \"" + name + "\" in object \"" + objectDesc.getName() + "\""));
     }
 
-    private DescribeSObjectResult describeObject(String fromObjectName) {
-        if (!describedObjectsCache.containsKey(fromObjectName)) {
-            DescribeSObjectResult description = objectDescriptor.apply(fromObjectName);
-            describedObjectsCache.put(fromObjectName, description);
-            return description;
-        } else {
-            return describedObjectsCache.get(fromObjectName);
-        }
-    }
-
     protected String getFromObjectName() {
         return queryData.getTable().getName();
     }
@@ -47,9 +47,14 @@ public class InsertQueryProcessor {
             }
             statement.setUpdateCount(updateCount);
             statement.setResultSet(resultSet);
+            if (updateCount > 0) {
+                ForcePreparedStatement.invalidateCachedResults(insertQueryAnalyzer.getFromObjectName());
+            }
         } catch (ConnectionException e) {
             resultSet.addWarning("Failed request to create entities with error: "+e.getMessage());
             logger.log(Level.SEVERE,"Failed request to create entities with error: "+e.getMessage(), e);
+            // the records may have been created before the request failed
+            ForcePreparedStatement.invalidateCachedResults(insertQueryAnalyzer.getFromObjectName());
         }
         return resultSet;
     }
@@ -15,13 +15,22 @@ import org.mule.tools.soql.query.select.FunctionCallSpec;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class SoqlQueryAnalyzer {
 
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:\\\\.|[^'\\\\])*'");
+    private static final Pattern FROM_OBJECT = Pattern.compile("(?i)\\bFROM\\s+([A-Za-z_]\\w*)");
+    private static final Pattern FIELD_PATH = Pattern.compile("\\b([A-Za-z_]\\w*(?:\\.[A-Za-z_]\\w*)+)\\b");
+
     private String soql;
     private Function<String, DescribeSObjectResult> objectDescriptor;
     private Map<String, DescribeSObjectResult> describedObjectsCache;
@@ -38,6 +47,8 @@ public class SoqlQueryAnalyzer {
     }
 
     private List fieldDefinitions;
+    /** the objects the fields are read from, collected with the field definitions */
+    private Set<String> objectNames;
 
     private class SelectSpecVisitor extends SOQLDataBaseVisitor<Void> {
 
@@ -72,6 +83,8 @@ public class SoqlQueryAnalyzer {
             while (!fieldPrefixes.isEmpty()) {
                 String referenceName = fieldPrefixes.get(0);
                 Field reference = findField(referenceName, describeObject(fromObject), fld -> fld.getRelationshipName());
+                // the polymorphic reference reads from all its objects
+                Collections.addAll(objectNames, reference.getReferenceTo());
                 fromObject = reference.getReferenceTo()[0];
                 fieldPrefixes.remove(0);
             }
@@ -111,6 +124,7 @@ public class SoqlQueryAnalyzer {
 
             SoqlQueryAnalyzer subqueryAnalyzer = new SoqlQueryAnalyzer(subquery.toSOQLText(), objectDescriptor, describedObjectsCache);
             fieldDefinitions.add(new ArrayList(subqueryAnalyzer.getFieldDefinitions()));
+            objectNames.addAll(subqueryAnalyzer.getObjectNames());
             return null;
         }
 
@@ -119,7 +133,9 @@ public class SoqlQueryAnalyzer {
     public List getFieldDefinitions() {
         if (fieldDefinitions == null) {
             fieldDefinitions = new ArrayList<>();
+            objectNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
             String rootEntityName = getQueryData().getFromClause().getMainObjectSpec().getObjectName();
+            objectNames.add(rootEntityName);
             SelectSpecVisitor visitor = new SelectSpecVisitor(rootEntityName);
             getQueryData().getSelectSpecs()
                     .forEach(spec -> spec.accept(visitor));
@@ -127,6 +143,48 @@ public class SoqlQueryAnalyzer {
         return fieldDefinitions;
     }
 
+    /**
+     * @return the names of the objects the results of the query depend on - the object of the query, the objects
+     * of the relationship fields and of the child subqueries, the objects of the semi-join subqueries and of the
+     * relationship fields of the other clauses. The relationship names of the child subqueries are listed as well.
+     */
+    public Set<String> getObjectNames() {
+        getFieldDefinitions();
+        Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        names.addAll(objectNames);
+        String text = STRING_LITERAL.matcher(soql).replaceAll("''");
+        Matcher from = FROM_OBJECT.matcher(text);
+        while (from.find()) {
+            names.add(from.group(1));
+        }
+        Matcher path = FIELD_PATH.matcher(text);
+        while (path.find()) {
+            addParentObjects(Arrays.asList(path.group(1).split("\\.")), names);
+        }
+        return names;
+    }
+
+    /**
+     * Adds the objects of a relationship path of the object of the query, the paths of the semi-joins
+     * and the other paths which are not found are skipped.
+     */
+    private void addParentObjects(List<String> path, Set<String> names) {
+        String fromObject = getFromObjectName();
+        int start = path.get(0).equalsIgnoreCase(fromObject) ? 1 : 0;
+        for (int i = start; i < path.size() - 1; i++) {
+            String relationshipName = path.get(i);
+            Field reference = Arrays.stream(describeObject(fromObject).getFields())
+                    .filter(field -> relationshipName.equalsIgnoreCase(field.getRelationshipName()))
+                    .findFirst()
+                    .orElse(null);
+            if (reference == null || reference.getReferenceTo() == null || reference.getReferenceTo().length == 0) {
+                return;
+            }
+            Collections.addAll(names, reference.getReferenceTo());
+            fromObject = reference.getReferenceTo()[0];
+        }
+    }
+
     private Field findField(String name, DescribeSObjectResult objectDesc, Function<Field, String> nameFetcher) {
         return Arrays.stream(objectDesc.getFields())
                 .filter(field -> name.equalsIgnoreCase(nameFetcher.apply(field)))
@@ -135,13 +193,7 @@ public class SoqlQueryAnalyzer {
     }
 
     private DescribeSObjectResult describeObject(String fromObjectName) {
-        if (!describedObjectsCache.containsKey(fromObjectName)) {
-            DescribeSObjectResult description = objectDescriptor.apply(fromObjectName);
-            describedObjectsCache.put(fromObjectName, description);
-            return description;
-        } else {
-            return describedObjectsCache.get(fromObjectName);
-        }
+        return DescribedObjects.describe(fromObjectName, describedObjectsCache, objectDescriptor);
     }
 
     public String getFromObjectName() {
@@ -139,13 +139,7 @@ public class SoslQueryAnalyzer {
     }
 
     private DescribeSObjectResult describeObject(String fromObjectName) {
-        if (!describedObjectsCache.containsKey(fromObjectName)) {
-            DescribeSObjectResult description = objectDescriptor.apply(fromObjectName);
-            describedObjectsCache.put(fromObjectName, description);
-            return description;
-        } else {
-            return describedObjectsCache.get(fromObjectName);
-        }
+        return DescribedObjects.describe(fromObjectName, describedObjectsCache, objectDescriptor);
     }
 
     protected String getFromObjectName() {
@@ -39,16 +39,23 @@ public class UpdateQueryProcessor {
         try {
             List<Map<String, Object>> recordsToUpdate = updateQueryAnalyzer.getRecords();
             ISaveResult[] records = partnerService.saveRecords(updateQueryAnalyzer.getFromObjectName(), recordsToUpdate);
+            boolean updated = false;
             for(ISaveResult result: records) {
                 if (result.isSuccess()) {
                     resultSet.log(updateQueryAnalyzer.getFromObjectName()+" updated with Id="+result.getId());
+                    updated = true;
                 } else {
                     resultSet.addWarning(updateQueryAnalyzer.getFromObjectName()+" failed to update with error="+ Arrays.stream(result.getErrors()).map(IError::getMessage).collect(Collectors.joining(",")));
                 }
             }
+            if (updated) {
+                ForcePreparedStatement.invalidateCachedResults(updateQueryAnalyzer.getFromObjectName());
+            }
         } catch (ConnectionException e) {
             resultSet.addWarning("Failed request to update entities with error: "+e.getMessage());
             logger.log(Level.SEVERE,"Failed request to update entities with error: "+e.getMessage(), e);
+            // the records may have been updated before the request failed
+            ForcePreparedStatement.invalidateCachedResults(updateQueryAnalyzer.getFromObjectName());
         }
         return resultSet;
     }
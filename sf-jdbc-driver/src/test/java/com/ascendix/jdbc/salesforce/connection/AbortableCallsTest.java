@@ -0,0 +1,125 @@
+package com.ascendix.jdbc.salesforce.connection;
+
+import com.sforce.soap.partner.Connector;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AbortableCallsTest {
+
+    private static final String QUERY_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns=\"urn:partner.soap.sforce.com\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<soapenv:Body><queryResponse><result><done>true</done><queryLocator xsi:nil=\"true\"/>"
+            + "<size>0</size></result></queryResponse></soapenv:Body></soapenv:Envelope>";
+
+    private HttpServer server;
+    /** the responses wait until it is released */
+    private final CountDownLatch response = new CountDownLatch(1);
+    private final CountDownLatch requested = new CountDownLatch(1);
+    private final AbortableCalls calls = new AbortableCalls();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/services/Soap/u/51.0", this::respond);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        response.countDown();
+        server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() >= 0) {
+                // the request is not checked
+            }
+        }
+        requested.countDown();
+        try {
+            response.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = QUERY_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } catch (IOException ignored) {
+            // the aborted call has closed the connection
+        }
+    }
+
+    private PartnerConnection connection() throws ConnectionException {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setManualLogin(true);
+        config.setSessionId("session-1");
+        config.setServiceEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/services/Soap/u/51.0");
+        config.setReadTimeout(30_000);
+        config.setTransportFactory(calls);
+        return Connector.newConnection(config);
+    }
+
+    @Test
+    public void testCallsThroughTransport() throws Exception {
+        response.countDown();
+
+        QueryResult result = connection().query("SELECT Id FROM Account");
+        assertTrue(result.isDone());
+        assertEquals(0, result.getSize());
+        assertEquals(0, calls.getCallsInFlight());
+    }
+
+    @Test(timeout = 10_000)
+    public void testAbortsCallInFlight() throws Exception {
+        PartnerConnection connection = connection();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread query = new Thread(() -> {
+            try {
+                connection.query("SELECT Id FROM Account");
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        query.start();
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.getCallsInFlight());
+
+        calls.abort();
+        query.join(5000);
+        assertFalse("The call is not aborted", query.isAlive());
+        assertTrue(String.valueOf(failure.get()), failure.get() instanceof ConnectionException);
+        assertEquals(0, calls.getCallsInFlight());
+
+        // the new calls are refused until the reset
+        try {
+            connection.query("SELECT Id FROM Account");
+            fail("The call is not refused");
+        } catch (ConnectionException expected) {
+        }
+        calls.reset();
+        response.countDown();
+        assertTrue(connection.query("SELECT Id FROM Account").isDone());
+    }
+}
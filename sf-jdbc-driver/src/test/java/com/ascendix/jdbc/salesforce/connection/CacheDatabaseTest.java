@@ -0,0 +1,93 @@
+package com.ascendix.jdbc.salesforce.connection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mapdb.DB;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CacheDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeepsCachesInFile() throws IOException {
+        File file = new File(folder.getRoot(), "caches/driver.db");
+        DB db = CacheDatabase.open(file);
+        db.hashMap("Cache", Serializer.STRING, Serializer.STRING).createOrOpen().put("key", "value");
+        db.close();
+
+        DB reopened = CacheDatabase.open(file);
+
+        assertEquals("value", reopened.hashMap("Cache", Serializer.STRING, Serializer.STRING).createOrOpen().get("key"));
+        reopened.close();
+    }
+
+    @Test
+    public void testCreatesFileOfAnotherVersionAgain() throws IOException {
+        File file = folder.newFile();
+        file.delete();
+        DB db = CacheDatabase.open(file);
+        db.hashMap("Cache", Serializer.STRING, Serializer.STRING).createOrOpen().put("key", "value");
+        db.atomicInteger(CacheDatabase.FORMAT_VERSION_NAME).open().set(CacheDatabase.FORMAT_VERSION + 1);
+        db.close();
+
+        DB reopened = CacheDatabase.open(file);
+
+        assertFalse(reopened.exists("Cache"));
+        assertEquals(CacheDatabase.FORMAT_VERSION, reopened.atomicInteger(CacheDatabase.FORMAT_VERSION_NAME).open().get());
+        reopened.close();
+    }
+
+    @Test
+    public void testCreatesBrokenFileAgain() throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "not a cache file, not a cache file, not a cache file".getBytes(StandardCharsets.UTF_8));
+
+        DB db = CacheDatabase.open(file);
+
+        assertNotNull(db);
+        Map<String, String> cache = db.hashMap("Cache", Serializer.STRING, Serializer.STRING).createOrOpen();
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+        db.close();
+    }
+
+    @Test
+    public void testCreatesFileNotClosedAgain() throws IOException {
+        File file = folder.newFile();
+        file.delete();
+        DB db = CacheDatabase.open(file);
+        db.hashMap("Cache", Serializer.STRING, Serializer.STRING).createOrOpen().put("key", "value");
+        // the copy of the open file is the file of a JVM killed
+        File killed = new File(folder.getRoot(), "killed.db");
+        Files.copy(file.toPath(), killed.toPath());
+        db.close();
+
+        DB reopened = CacheDatabase.open(killed);
+
+        assertFalse(reopened.exists("Cache"));
+        reopened.close();
+    }
+
+    @Test
+    public void testNamespacesKeysByOrgAndApiVersion() {
+        assertEquals("00D000000000001/50.0/",
+                CacheDatabase.namespace("00D000000000001!AQ0AQ.secret", "https://na1.salesforce.com/services/Soap/u/50.0", "50.0"));
+        assertEquals("na1.salesforce.com/51.0/",
+                CacheDatabase.namespace("secret", "https://na1.salesforce.com/services/Soap/u/51.0", "51.0"));
+        String hash = CacheDatabase.hash("00D000000000001!AQ0AQ.secret");
+        assertEquals(64, hash.length());
+        assertFalse(hash.contains("secret"));
+        assertEquals(hash, CacheDatabase.hash("00D000000000001!AQ0AQ.secret"));
+    }
+}
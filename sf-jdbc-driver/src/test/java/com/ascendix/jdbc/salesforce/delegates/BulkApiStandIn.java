@@ -0,0 +1,107 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local HTTP server which serves the Bulk API 2.0 query job resources of one job instead of Salesforce.
+ */
+public class BulkApiStandIn implements AutoCloseable {
+
+    public static final String API_VERSION = "51.0";
+    public static final String JOB_ID = "750000000000001";
+    private static final String JOBS_PATH = "/services/data/v" + API_VERSION + "/jobs/query";
+
+    private final HttpServer server;
+    private final String[] chunks;
+    private int pollsBeforeComplete;
+    private String failure;
+    private int polls;
+    /** the method, the path under the jobs resource and the query of every request */
+    public final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    public final List<String> authorizations = Collections.synchronizedList(new ArrayList<>());
+    public volatile String jobRequest;
+
+    /**
+     * @param chunks the CSV result chunks of the job, every chunk with its header line
+     */
+    public BulkApiStandIn(String... chunks) throws IOException {
+        this.chunks = chunks;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(JOBS_PATH, this::handle);
+        server.start();
+    }
+
+    public BulkApiStandIn completeAfterPolls(int polls) {
+        this.pollsBeforeComplete = polls;
+        return this;
+    }
+
+    public BulkApiStandIn failWith(String errorMessage) {
+        this.failure = errorMessage;
+        return this;
+    }
+
+    public String getInstanceUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring(JOBS_PATH.length());
+        String query = exchange.getRequestURI().getQuery();
+        requests.add(method + " " + path + (query != null ? "?" + query : ""));
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        if ("POST".equals(method) && path.isEmpty()) {
+            jobRequest = read(exchange.getRequestBody());
+            respond(exchange, "application/json", "{\"id\":\"" + JOB_ID + "\",\"state\":\"UploadComplete\"}");
+        } else if ("GET".equals(method) && path.equals("/" + JOB_ID)) {
+            String state = failure != null ? "Failed" : polls++ >= pollsBeforeComplete ? "JobComplete" : "InProgress";
+            respond(exchange, "application/json", "{\"id\":\"" + JOB_ID + "\",\"state\":\"" + state + "\""
+                    + (failure != null ? ",\"errorMessage\":\"" + failure + "\"" : "") + "}");
+        } else if ("GET".equals(method) && path.equals("/" + JOB_ID + "/results")) {
+            int chunk = query != null && query.startsWith("locator=") ? Integer.parseInt(query.substring(8)) : 0;
+            exchange.getResponseHeaders().add("Sforce-Locator", chunk + 1 < chunks.length ? String.valueOf(chunk + 1) : "null");
+            respond(exchange, "text/csv", chunks[chunk]);
+        } else if ("POST".equals(method) && path.equals("/" + JOB_ID)) {
+            respond(exchange, "application/json", "{\"id\":\"" + JOB_ID + "\",\"state\":\"Aborted\"}");
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType + "; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
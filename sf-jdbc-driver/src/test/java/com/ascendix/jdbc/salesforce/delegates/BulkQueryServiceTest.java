@@ -0,0 +1,107 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkQueryServiceTest {
+
+    private static final String SOQL = "SELECT Id, Name FROM Account";
+
+    private static BulkQueryService service(BulkApiStandIn standIn) {
+        BulkQueryService service = new BulkQueryService(standIn.getInstanceUrl(), BulkApiStandIn.API_VERSION, "session-1");
+        service.setPollIntervals(1, 5);
+        return service;
+    }
+
+    private static List<String> ids(List<String[]> page) {
+        List<String> ids = new ArrayList<>();
+        page.forEach(values -> ids.add(values[0]));
+        return ids;
+    }
+
+    @Test
+    public void testStreamsRowsOfAllChunks() throws Exception {
+        try (BulkApiStandIn standIn = new BulkApiStandIn(
+                "\"Id\",\"Name\"\n\"001A\",\"Acme\"\n\"001B\",\"Big, Co\"\n\"001C\",\n",
+                "\"Id\",\"Name\"\n\"001D\",\"Delta\"\n").completeAfterPolls(2)) {
+            StubPartnerConnection connection = new StubPartnerConnection();
+            connection.getConfig().setServiceEndpoint(standIn.getInstanceUrl() + "/services/Soap/u/51.0/00D000000000001");
+            BulkQueryService service = BulkQueryService.forConnection(connection, BulkApiStandIn.API_VERSION);
+            service.setPollIntervals(1, 5);
+
+            try (BulkQueryCursor cursor = service.openQuery(SOQL, 0)) {
+                assertEquals(Arrays.asList("Id", "Name"), cursor.getColumnNames());
+                List<String[]> page = cursor.nextPage(2, values -> values);
+                assertEquals(Arrays.asList("001A", "001B"), ids(page));
+                assertEquals("Big, Co", page.get(1)[1]);
+                page = cursor.nextPage(2, values -> values);
+                assertEquals(Arrays.asList("001C", "001D"), ids(page));
+                assertNull(page.get(0)[1]);
+                assertNull(cursor.nextPage(2, values -> values));
+                assertFalse(cursor.hasNextPage());
+            }
+
+            assertTrue(standIn.jobRequest.contains("\"operation\":\"query\""));
+            assertTrue(standIn.jobRequest.contains(SOQL));
+            assertEquals(Arrays.asList("POST ", "GET /" + BulkApiStandIn.JOB_ID, "GET /" + BulkApiStandIn.JOB_ID,
+                    "GET /" + BulkApiStandIn.JOB_ID, "GET /" + BulkApiStandIn.JOB_ID + "/results",
+                    "GET /" + BulkApiStandIn.JOB_ID + "/results?locator=1"), standIn.requests);
+            standIn.authorizations.forEach(authorization -> assertEquals("Bearer stub-session", authorization));
+        }
+    }
+
+    @Test
+    public void testStopsAtMaxRows() throws Exception {
+        try (BulkApiStandIn standIn = new BulkApiStandIn(
+                "Id,Name\n001A,Acme\n001B,Beta\n001C,Gamma\n", "Id,Name\n001D,Delta\n")) {
+            try (BulkQueryCursor cursor = service(standIn).openQuery(SOQL, 2)) {
+                assertEquals(Arrays.asList("001A", "001B"), ids(cursor.nextPage(10, values -> values)));
+                assertNull(cursor.nextPage(10, values -> values));
+            }
+            // the next chunk is not requested once the limit is reached
+            assertFalse(standIn.requests.contains("GET /" + BulkApiStandIn.JOB_ID + "/results?locator=1"));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testCancelAbortsWaitingJob() throws Exception {
+        try (BulkApiStandIn standIn = new BulkApiStandIn("Id\n001A\n").completeAfterPolls(Integer.MAX_VALUE)) {
+            BulkQueryService service = service(standIn);
+            service.setPollIntervals(60_000, 60_000);
+            new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                service.cancel();
+            }).start();
+
+            try {
+                service.openQuery(SOQL, 0);
+                fail("The cancelled job is not reported");
+            } catch (InterruptedIOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(BulkApiStandIn.JOB_ID));
+            }
+            assertEquals("POST /" + BulkApiStandIn.JOB_ID + "?_HttpMethod=PATCH", standIn.requests.get(standIn.requests.size() - 1));
+        }
+    }
+
+    @Test
+    public void testReportsFailedJob() throws Exception {
+        try (BulkApiStandIn standIn = new BulkApiStandIn().failWith("INVALID_FIELD: No such column 'Foo'")) {
+            try {
+                service(standIn).openQuery("SELECT Foo FROM Account", 0);
+                fail("The failed job is not reported");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("No such column 'Foo'"));
+            }
+        }
+    }
+}
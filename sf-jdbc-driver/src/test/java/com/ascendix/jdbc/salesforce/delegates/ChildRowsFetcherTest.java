@@ -0,0 +1,135 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.ascendix.jdbc.salesforce.delegates.SoapQueryResults.*;
+import static org.junit.Assert.*;
+
+public class ChildRowsFetcherTest {
+
+    private static final List SCHEMA = Arrays.asList(
+            new FieldDef("Id", "Id", "id"),
+            new FieldDef("Name", "Name", "string"),
+            Arrays.asList(new FieldDef("Id", "Id", "id"), new FieldDef("LastName", "LastName", "string")));
+
+    /**
+     * Serves a parent batch and the child batches by their locators.
+     */
+    private static class ChildBatchesConnection extends StubPartnerConnection {
+        private final QueryResult parents;
+        private final Map<String, QueryResult> childBatches = new HashMap<>();
+        private final List<String> locators = Collections.synchronizedList(new ArrayList<>());
+        private CyclicBarrier barrier;
+
+        ChildBatchesConnection(QueryResult parents) throws ConnectionException {
+            this.parents = parents;
+        }
+
+        ChildBatchesConnection addChildBatch(String locator, QueryResult batch) {
+            childBatches.put(locator, batch);
+            return this;
+        }
+
+        @Override
+        public QueryResult query(String queryString) {
+            return parents;
+        }
+
+        @Override
+        public QueryResult queryMore(String queryLocator) throws ConnectionException {
+            locators.add(queryLocator);
+            if (barrier != null && queryLocator.endsWith("-1")) {
+                try {
+                    // every parent waits until the child rows of all the parents are being fetched
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    throw new ConnectionException("The child subqueries are not fetched concurrently", e);
+                }
+            }
+            QueryResult batch = childBatches.get(queryLocator);
+            if (batch == null) {
+                throw new ConnectionException("Invalid query locator: " + queryLocator);
+            }
+            return batch;
+        }
+    }
+
+    private static String contact(String id) {
+        return record("Contact", id, field("LastName", "Last " + id));
+    }
+
+    private static String account(String id, String childLocator, String... contacts) {
+        return record("Account", id, field("Name", "Name " + id) + subqueryBatch("Contacts", childLocator, contacts));
+    }
+
+    private static ChildBatchesConnection threeAccounts() throws ConnectionException {
+        return new ChildBatchesConnection(parse(
+                account("001A", "A-1", contact("003A1")),
+                account("001B", null, contact("003B1")),
+                account("001C", "C-1", contact("003C1")),
+                account("001D", "D-1")))
+                .addChildBatch("A-1", parseBatch("A-2", contact("003A2")))
+                .addChildBatch("A-2", parseBatch(null, contact("003A3")))
+                .addChildBatch("C-1", parseBatch(null, contact("003C2"), contact("003C3")))
+                .addChildBatch("D-1", parseBatch(null, contact("003D1")));
+    }
+
+    @Test
+    public void testFetchesRemainingChildRows() throws ConnectionException {
+        ChildBatchesConnection connection = threeAccounts();
+
+        List<List> rows = new PartnerService(connection, 0, 1).query("SELECT", SCHEMA);
+
+        assertEquals(Arrays.asList("A-1", "A-2", "C-1", "D-1"), connection.locators);
+        assertEquals(8, rows.size());
+        List<String> contactIds = new ArrayList<>();
+        for (List row : rows) {
+            contactIds.add((String) ((ForceResultField) row.get(2)).getValue());
+        }
+        assertEquals(Arrays.asList("003A1", "003A2", "003A3", "003B1", "003C1", "003C2", "003C3", "003D1"), contactIds);
+        assertEquals(new ForceResultField(null, null, "Contacts.LastName", "Last 003C3"), rows.get(6).get(3));
+        assertEquals(new ForceResultField(null, null, "Id", "001C"), rows.get(6).get(0));
+    }
+
+    @Test
+    public void testFetchesChildRowsOfParentsConcurrently() throws ConnectionException {
+        ChildBatchesConnection connection = threeAccounts();
+        connection.barrier = new CyclicBarrier(3);
+
+        List<List> rows = new PartnerService(connection, 0, 3).query("SELECT", SCHEMA);
+
+        assertEquals(4, connection.locators.size());
+        assertEquals(8, rows.size());
+        assertEquals(new ForceResultField(null, null, "Contacts.Id", "003A3"), rows.get(2).get(2));
+        assertEquals(new ForceResultField(null, null, "Contacts.Id", "003D1"), rows.get(7).get(2));
+    }
+
+    @Test
+    public void testFailsWhenChildRowsCannotBeFetched() throws ConnectionException {
+        ChildBatchesConnection connection = new ChildBatchesConnection(parse(
+                account("001A", "A-1", contact("003A1")),
+                account("001B", "B-1", contact("003B1"))))
+                .addChildBatch("A-1", parseBatch(null, contact("003A2")));
+
+        try {
+            new PartnerService(connection, 0, 2).query("SELECT", SCHEMA);
+            fail("The missing child batch is not reported");
+        } catch (ConnectionException e) {
+            assertEquals("Invalid query locator: B-1", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.ascendix.jdbc.salesforce.statement.SoqlChunks;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ChunkedQueryCursorTest {
+
+    private static final List<FieldDef> SCHEMA = Arrays.asList(new FieldDef("Id", "Id", "id"), new FieldDef("Name", "Name", "string"));
+
+    /**
+     * Serves the batches of every range query by the query text, the batches are the names of Account records.
+     */
+    private static class RangesConnection extends StubPartnerConnection {
+        private final Map<String, List<String[]>> ranges;
+        private final Map<String, CountDownLatch> gates;
+
+        RangesConnection(Map<String, List<String[]>> ranges, Map<String, CountDownLatch> gates) throws ConnectionException {
+            this.ranges = ranges;
+            this.gates = gates;
+        }
+
+        @Override
+        public QueryResult query(String queryString) throws ConnectionException {
+            if (queryString.startsWith("failing")) {
+                throw new ConnectionException("Range query failed: " + queryString);
+            }
+            CountDownLatch gate = gates.get(queryString);
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return rangeBatch(queryString, 0);
+        }
+
+        @Override
+        public QueryResult queryMore(String queryLocator) {
+            String[] locator = queryLocator.split("#");
+            return rangeBatch(locator[0], Integer.parseInt(locator[1]));
+        }
+
+        private QueryResult rangeBatch(String query, int index) {
+            List<String[]> batches = ranges.get(query);
+            String[] names = batches.get(index);
+            SObject[] records = new SObject[names.length];
+            for (int i = 0; i < names.length; i++) {
+                records[i] = account(names[i]);
+            }
+            QueryResult result = new QueryResult();
+            result.setRecords(records);
+            result.setSize(records.length);
+            boolean done = index == batches.size() - 1;
+            result.setDone(done);
+            result.setQueryLocator(done ? null : query + "#" + (index + 1));
+            return result;
+        }
+    }
+
+    private final Map<String, List<String[]>> ranges = new HashMap<>();
+    private final Map<String, CountDownLatch> gates = new HashMap<>();
+    private final AtomicInteger connectionsOpened = new AtomicInteger();
+
+    private ChunkedQueryCursorTest range(String query, String[]... batches) {
+        ranges.put(query, Arrays.asList(batches));
+        return this;
+    }
+
+    private ChunkedQueryCursor<String> open(List<String> queries, int maxRows, boolean ordered, int workers) throws ConnectionException {
+        PartnerService service = new PartnerService(new StubPartnerConnection(), 0);
+        return service.openChunkedQuery(queries, SCHEMA, 0, maxRows, ordered, workers, () -> {
+            connectionsOpened.incrementAndGet();
+            return new RangesConnection(ranges, gates);
+        }, row -> (String) ((ForceResultField) row.get(1)).getValue());
+    }
+
+    private static List<List<String>> readPages(ChunkedQueryCursor<String> cursor) throws ConnectionException {
+        List<List<String>> pages = new ArrayList<>();
+        List<String> page;
+        while ((page = cursor.nextPage()) != null) {
+            pages.add(page);
+        }
+        return pages;
+    }
+
+    private static List<String> rows(List<List<String>> pages) {
+        List<String> rows = new ArrayList<>();
+        pages.forEach(rows::addAll);
+        return rows;
+    }
+
+    private void threeRanges() {
+        range("r0", new String[]{"a", "b"}, new String[]{"c"})
+                .range("r1", new String[]{"d"})
+                .range("r2", new String[]{"e"}, new String[]{"f"});
+    }
+
+    @Test
+    public void testOrderedMergeReturnsRowsInOrderOfRanges() throws Exception {
+        threeRanges();
+        CountDownLatch gate = new CountDownLatch(1);
+        gates.put("r0", gate);
+        // the first range is the last to arrive
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            gate.countDown();
+        }).start();
+
+        try (ChunkedQueryCursor<String> cursor = open(Arrays.asList("r0", "r1", "r2"), 0, true, 3)) {
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), rows(readPages(cursor)));
+            assertFalse(cursor.hasNextPage());
+        }
+        // the first range holds its worker, the other ranges may be read by one worker before the third starts
+        assertTrue(connectionsOpened.get() + " connections", connectionsOpened.get() >= 2 && connectionsOpened.get() <= 3);
+    }
+
+    @Test
+    public void testUnorderedMergeDoesNotWaitForSlowRange() throws Exception {
+        threeRanges();
+        CountDownLatch gate = new CountDownLatch(1);
+        gates.put("r0", gate);
+
+        try (ChunkedQueryCursor<String> cursor = open(Arrays.asList("r0", "r1", "r2"), 0, false, 3)) {
+            List<String> early = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                early.addAll(cursor.nextPage());
+            }
+            Collections.sort(early);
+            assertEquals(Arrays.asList("d", "e", "f"), early);
+
+            gate.countDown();
+            List<String> rest = rows(readPages(cursor));
+            assertEquals(Arrays.asList("a", "b", "c"), rest);
+        }
+    }
+
+    @Test
+    public void testWorkersAreBounded() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            range("r" + i, new String[]{"n" + i});
+        }
+        List<String> queries = new ArrayList<>(ranges.keySet());
+        Collections.sort(queries);
+
+        try (ChunkedQueryCursor<String> cursor = open(queries, 0, true, 2)) {
+            assertEquals(Arrays.asList("n0", "n1", "n2", "n3", "n4", "n5", "n6", "n7"), rows(readPages(cursor)));
+        }
+        // the second worker may not start before the first one has read all the ranges
+        assertTrue(connectionsOpened.get() + " connections", connectionsOpened.get() <= 2);
+    }
+
+    @Test
+    public void testStopsAtMaxRows() throws Exception {
+        threeRanges();
+
+        try (ChunkedQueryCursor<String> cursor = open(Arrays.asList("r0", "r1", "r2"), 4, true, 2)) {
+            assertEquals(Arrays.asList("a", "b", "c", "d"), rows(readPages(cursor)));
+        }
+    }
+
+    @Test
+    public void testLimitedQueryReturnsLimitRows() throws Exception {
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            // every range of a query with LIMIT 10 returns 10 rows
+            String[] rows = new String[10];
+            Arrays.fill(rows, "r" + i);
+            range("r" + i, rows);
+            queries.add("r" + i);
+        }
+
+        try (ChunkedQueryCursor<String> cursor = open(queries, SoqlChunks.limitOf("SELECT Id FROM Account LIMIT 10"), false, 4)) {
+            assertEquals(10, rows(readPages(cursor)).size());
+        }
+    }
+
+    @Test
+    public void testPropagatesFailureOfRange() throws Exception {
+        threeRanges();
+
+        try (ChunkedQueryCursor<String> cursor = open(Arrays.asList("r0", "failing-r1", "r2"), 0, true, 2)) {
+            readPages(cursor);
+            fail("The failure of the range is not reported");
+        } catch (ConnectionException e) {
+            assertEquals("Range query failed: failing-r1", e.getMessage());
+        }
+    }
+}
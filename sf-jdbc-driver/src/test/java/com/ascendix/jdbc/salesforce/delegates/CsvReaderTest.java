@@ -0,0 +1,66 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CsvReaderTest {
+
+    private static List<String[]> readAll(String csv, int bufferSize) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv), bufferSize)) {
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static final String CSV = "\"Id\",\"Name\",\"Description\",\"Amount\"\n"
+            + "\"001A\",\"Acme, Inc.\",\"Says \"\"hello\"\"\",\"10.5\"\r\n"
+            + "\"001B\",,\"line one\nline two\",\n"
+            + "001C,Plain,\"\",7\n";
+
+    private static void assertRecords(List<String[]> records) {
+        assertEquals(4, records.size());
+        assertArrayEquals(new String[]{"Id", "Name", "Description", "Amount"}, records.get(0));
+        assertArrayEquals(new String[]{"001A", "Acme, Inc.", "Says \"hello\"", "10.5"}, records.get(1));
+        assertArrayEquals(new String[]{"001B", null, "line one\nline two", null}, records.get(2));
+        assertArrayEquals(new String[]{"001C", "Plain", "", "7"}, records.get(3));
+    }
+
+    @Test
+    public void testReadsRecords() throws IOException {
+        assertRecords(readAll(CSV, 1024));
+    }
+
+    @Test
+    public void testReadsValuesSplitByBufferRefills() throws IOException {
+        for (int bufferSize = 1; bufferSize < 16; bufferSize++) {
+            assertRecords(readAll(CSV, bufferSize));
+        }
+    }
+
+    @Test
+    public void testEndOfInput() throws IOException {
+        assertTrue(readAll("", 16).isEmpty());
+
+        List<String[]> records = readAll("a,b,", 16);
+        assertEquals(1, records.size());
+        assertArrayEquals(new String[]{"a", "b", null}, records.get(0));
+
+        records = readAll("a,\"b\"", 16);
+        assertArrayEquals(new String[]{"a", "b"}, records.get(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedQuote() throws IOException {
+        readAll("a,\"b\n", 16);
+    }
+}
@@ -0,0 +1,63 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.bind.XmlObject;
+import org.apache.commons.collections4.IteratorUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The stream based record flattening used by {@link PartnerService} before {@link ProjectionPlan}.
+ * Kept as the reference for the tests and the baseline for the benchmark.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+class LegacyRecordFlattener {
+
+    private final static List<String> SOAP_RESPONSE_SERVICE_OBJECT_TYPES = Arrays.asList("type", "done", "queryLocator",
+            "size");
+
+    List<List> flatten(QueryResult queryResult) {
+        return removeServiceInfo(Arrays.asList(queryResult.getRecords()), null);
+    }
+
+    private List<List> removeServiceInfo(List<XmlObject> rows, String parentName) {
+        return rows.stream()
+                .filter(this::isDataObjectType)
+                .map(row -> removeServiceInfo(row, parentName))
+                .collect(Collectors.toList());
+    }
+
+    private List<ForceResultField> removeServiceInfo(XmlObject row, String parentName) {
+        return IteratorUtils.toList(row.getChildren()).stream()
+                .filter(this::isDataObjectType)
+                .skip(1)
+                .flatMap(field -> translateField(field, parentName))
+                .collect(Collectors.toList());
+    }
+
+    private Stream<ForceResultField> translateField(XmlObject field, String parentName) {
+        Stream.Builder outStream = Stream.builder();
+
+        String fieldType = field.getXmlType() != null ? field.getXmlType().getLocalPart() : null;
+        if ("sObject".equalsIgnoreCase(fieldType)) {
+            List<ForceResultField> childFields = removeServiceInfo(field, field.getName().getLocalPart());
+            childFields.forEach(outStream::add);
+        } else if ("QueryResult".equals(fieldType)) {
+            outStream.add(removeServiceInfo(IteratorUtils.toList(field.getChildren()), field.getName().getLocalPart()));
+        } else {
+            String name = field.getName().getLocalPart();
+            if (parentName != null) {
+                name = parentName + "." + name;
+            }
+            outStream.add(new ForceResultField(null, fieldType, name, field.getValue()));
+        }
+        return outStream.build();
+    }
+
+    private boolean isDataObjectType(XmlObject obj) {
+        return !SOAP_RESPONSE_SERVICE_OBJECT_TYPES.contains(obj.getName().getLocalPart());
+    }
+}
@@ -0,0 +1,169 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class PartnerQueryCursorTest {
+
+    private static final List<FieldDef> SCHEMA = Arrays.asList(new FieldDef("Id", "Id", "id"), new FieldDef("Name", "Name", "string"));
+
+    private static List<String> names(List<List> page) {
+        return page.stream()
+                .map(row -> (String) ((ForceResultField) row.get(1)).getValue())
+                .collect(Collectors.toList());
+    }
+
+    private static void waitFor(StubPartnerConnection connection, int queryMoreCalls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connection.queryMoreCalls.get() < queryMoreCalls && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testFetchesOnDemandWithoutPrefetch() throws Exception {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a", "b").addBatch("c");
+        PartnerService service = new PartnerService(connection, 0);
+
+        PartnerQueryCursor cursor = service.openQuery("SELECT Name FROM Account", SCHEMA);
+        assertEquals(1, connection.queryCalls.get());
+        assertEquals(Arrays.asList("a", "b"), names(cursor.nextPage()));
+        assertEquals(0, connection.queryMoreCalls.get());
+        assertEquals(Arrays.asList("c"), names(cursor.nextPage()));
+        assertEquals(1, connection.queryMoreCalls.get());
+        assertNull(cursor.nextPage());
+        assertFalse(cursor.hasNextPage());
+    }
+
+    @Test
+    public void testPrefetchesNextBatchInBackground() throws Exception {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a").addBatch("b").addBatch("c").addBatch("d");
+        PartnerService service = new PartnerService(connection, 1);
+
+        PartnerQueryCursor cursor = service.openQuery("SELECT Name FROM Account", SCHEMA);
+        assertEquals(Arrays.asList("a"), names(cursor.nextPage()));
+        waitFor(connection, 1);
+        Thread.sleep(50);
+        // the depth limits how far the background fetch runs ahead of the consumer
+        assertEquals(1, connection.queryMoreCalls.get());
+
+        List<String> rest = new ArrayList<>();
+        List<List> page;
+        while ((page = cursor.nextPage()) != null) {
+            rest.addAll(names(page));
+        }
+        assertEquals(Arrays.asList("b", "c", "d"), rest);
+        assertEquals(3, connection.queryMoreCalls.get());
+    }
+
+    @Test
+    public void testCloseStopsPrefetch() throws Exception {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a").addBatch("b").addBatch("c").addBatch("d");
+        PartnerService service = new PartnerService(connection, 1);
+
+        PartnerQueryCursor cursor = service.openQuery("SELECT Name FROM Account", SCHEMA);
+        cursor.nextPage();
+        waitFor(connection, 1);
+        cursor.close();
+        Thread.sleep(50);
+
+        assertEquals(1, connection.queryMoreCalls.get());
+        assertNull(cursor.nextPage());
+    }
+
+    @Test(timeout = 5000)
+    public void testCloseByAnotherThreadWakesUpConsumer() throws Exception {
+        CountDownLatch response = new CountDownLatch(1);
+        StubPartnerConnection connection = new StubPartnerConnection() {
+            @Override
+            public QueryResult queryMore(String queryLocator) throws ConnectionException {
+                // a blocked socket read does not respond to the interrupt
+                while (response.getCount() > 0) {
+                    try {
+                        response.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return super.queryMore(queryLocator);
+            }
+        }.addBatch("a").addBatch("b");
+        PartnerService service = new PartnerService(connection, 1);
+
+        try {
+            PartnerQueryCursor cursor = service.openQuery("SELECT Name FROM Account", SCHEMA);
+            cursor.nextPage();
+            new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                cursor.close();
+            }).start();
+
+            assertNull(cursor.nextPage());
+            assertFalse(cursor.hasNextPage());
+        } finally {
+            response.countDown();
+        }
+    }
+
+    @Test
+    public void testStopsAtMaxRows() throws Exception {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a", "b").addBatch("c", "d").addBatch("e");
+        PartnerService service = new PartnerService(connection, 0);
+
+        PartnerQueryCursor cursor = service.openQuery("SELECT Name FROM Account", SCHEMA, 0, 3);
+        assertEquals(Arrays.asList("a", "b"), names(cursor.nextPage()));
+        assertEquals(Arrays.asList("c"), names(cursor.nextPage()));
+        assertFalse(cursor.hasNextPage());
+        assertNull(cursor.nextPage());
+        assertEquals(1, connection.queryMoreCalls.get());
+    }
+
+    @Test
+    public void testMaxRowsWithinFirstBatchSkipsQueryMore() throws Exception {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a", "b").addBatch("c");
+        PartnerService service = new PartnerService(connection, 1);
+
+        List<List> rows = service.query("SELECT Name FROM Account", SCHEMA, 0, 2);
+        Thread.sleep(50);
+
+        assertEquals(Arrays.asList("a", "b"), names(rows));
+        assertEquals(0, connection.queryMoreCalls.get());
+    }
+
+    @Test
+    public void testDecodesPageInParallelKeepingOrder() throws Exception {
+        String[] batch = new String[1000];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = "n" + i;
+        }
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch(batch).addBatch("last");
+        PartnerService service = new PartnerService(connection, 0, 1, 4);
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        PartnerQueryCursor cursor = service.openQuery("SELECT Name FROM Account", SCHEMA, 0, 900);
+        List<String> page = cursor.nextPage(row -> {
+            threads.add(Thread.currentThread().getName());
+            return (String) ((ForceResultField) row.get(1)).getValue();
+        });
+
+        assertEquals(Arrays.asList(batch).subList(0, 900), page);
+        assertTrue(threads.toString(), threads.stream().anyMatch(name -> name.startsWith("sf-jdbc-decode-")));
+        assertFalse(cursor.hasNextPage());
+    }
+}
@@ -5,9 +5,12 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 
@@ -140,4 +143,38 @@ public class PartnerResultToCrtesianTableTest {
         assertEquals(actual, expected);
     }
 
+    @Test
+    public void testExpandRowKeepsSubqueryOrder() {
+        List schema = Arrays.asList(new Object(), Arrays.asList(new Object(), new Object()), new Object(), Arrays.asList(new Object(), new Object()));
+        List row = Arrays.asList(11, Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)), 12, Arrays.asList(Arrays.asList(5, 6), Arrays.asList(7, 8)));
+
+        List<List> actual = new ArrayList<>();
+        Iterator<List> expanded = PartnerResultToCrtesianTable.expandRow(row, schema);
+        while (expanded.hasNext()) {
+            actual.add(new ArrayList<>(expanded.next()));
+        }
+
+        assertEquals(Arrays.asList(
+                Arrays.asList(11, 1, 2, 12, 5, 6),
+                Arrays.asList(11, 1, 2, 12, 7, 8),
+                Arrays.asList(11, 3, 4, 12, 5, 6),
+                Arrays.asList(11, 3, 4, 12, 7, 8)
+        ), actual);
+    }
+
+    @Test
+    public void testExpandRowReusesRowBuffer() {
+        List schema = Arrays.asList(new Object(), Arrays.asList(new Object(), new Object()));
+        List row = Arrays.asList(11, Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5, 6)));
+
+        Iterator<List> expanded = PartnerResultToCrtesianTable.expandRow(row, schema);
+        List first = expanded.next();
+        assertEquals(Arrays.asList(11, 1, 2), first);
+        List second = expanded.next();
+
+        assertSame(first, second);
+        assertEquals(Arrays.asList(11, 3, 4), second);
+        assertEquals(Arrays.asList(11, 5, 6), expanded.next());
+        assertFalse(expanded.hasNext());
+    }
 }
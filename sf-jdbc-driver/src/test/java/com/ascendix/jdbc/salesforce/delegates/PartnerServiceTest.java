@@ -0,0 +1,49 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.ws.ConnectionException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PartnerServiceTest {
+
+    private static final List<FieldDef> SCHEMA = Arrays.asList(new FieldDef("Id", "Id", "id"), new FieldDef("Name", "Name", "string"));
+
+    @Test
+    public void testQuerySendsBatchSize() throws ConnectionException {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a").addBatch("b");
+        PartnerService service = new PartnerService(connection);
+
+        List<List> rows = service.query("SELECT Id, Name FROM Account", SCHEMA, 1000, 0);
+
+        assertEquals(2, rows.size());
+        assertEquals(Arrays.asList(1000, 1000), connection.batchSizes);
+    }
+
+    @Test
+    public void testQueryClampsBatchSize() throws ConnectionException {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a");
+        PartnerService service = new PartnerService(connection);
+
+        service.query("SELECT Id, Name FROM Account", SCHEMA, 10, 0);
+        service.query("SELECT Id, Name FROM Account", SCHEMA, 5000, 0);
+
+        assertEquals(Arrays.asList(200, 2000), connection.batchSizes);
+    }
+
+    @Test
+    public void testQueryWithoutBatchSizeClearsHeader() throws ConnectionException {
+        StubPartnerConnection connection = new StubPartnerConnection().addBatch("a");
+        connection.setQueryOptions(500);
+        PartnerService service = new PartnerService(connection);
+
+        service.query("SELECT Id, Name FROM Account", SCHEMA);
+
+        assertEquals(Collections.singletonList(0), connection.batchSizes);
+    }
+}
@@ -0,0 +1,88 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.soap.partner.QueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.ascendix.jdbc.salesforce.delegates.SoapQueryResults.*;
+
+/**
+ * Rows per second decoded from a batch of 50-column records by the stream based flattening
+ * and by the compiled projection plan.
+ * <p>
+ * Run the main method from the IDE or {@code org.openjdk.jmh.Main ProjectionPlanBenchmark} with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionPlanBenchmark {
+
+    private static final int COLUMNS = 50;
+    private static final int RECORDS = 200;
+
+    private QueryResult batch;
+    private LegacyRecordFlattener legacy;
+    private ProjectionPlan plan;
+
+    @Setup
+    public void setUp() {
+        List<FieldDef> schema = new ArrayList<>();
+        schema.add(new FieldDef("Id", "Id", "id"));
+        StringBuilder fields = new StringBuilder();
+        for (int i = 1; i < COLUMNS - 1; i++) {
+            schema.add(new FieldDef("Field" + i + "__c", "Field" + i + "__c", "string"));
+            fields.append(field("Field" + i + "__c", "value " + i));
+        }
+        schema.add(new FieldDef("Name", "Owner.Name", "string"));
+        fields.append(relationship("Owner", "User", field("Name", "Bob")));
+
+        String[] records = new String[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = record("Account", "001" + i, fields.toString());
+        }
+        batch = parse(records);
+        legacy = new LegacyRecordFlattener();
+        plan = ProjectionPlan.compile(schema);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<List> legacyFlattening() {
+        return legacy.flatten(batch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<List> projectionPlan() {
+        return plan.decodeRecords(Arrays.asList(batch.getRecords()).iterator(), null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProjectionPlanBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
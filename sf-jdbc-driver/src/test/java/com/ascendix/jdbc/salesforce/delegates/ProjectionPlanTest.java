@@ -0,0 +1,93 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.ascendix.jdbc.salesforce.statement.FieldDef;
+import com.sforce.soap.partner.QueryResult;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.ascendix.jdbc.salesforce.delegates.SoapQueryResults.*;
+import static org.junit.Assert.assertEquals;
+
+public class ProjectionPlanTest {
+
+    private static final List SCHEMA = Arrays.asList(
+            new FieldDef("Id", "Id", "id"),
+            new FieldDef("Name", "Name", "string"),
+            new FieldDef("Name", "Owner.Name", "string"),
+            Arrays.asList(new FieldDef("Id", "Id", "id"), new FieldDef("LastName", "LastName", "string")));
+
+    private static QueryResult accounts() {
+        return parse(
+                record("Account", "001A", field("Name", "Acme")
+                        + relationship("Owner", "User", field("Name", "Bob"))
+                        + subquery("Contacts",
+                                record("Contact", "003A", field("LastName", "Smith")),
+                                record("Contact", "003B", field("LastName", null)))),
+                record("Account", "001B", field("Name", "Globex")
+                        + relationship("Owner", "User", field("Name", "Ann"))
+                        + subquery("Contacts")));
+    }
+
+    @Test
+    public void testDecodesLikeLegacyFlattening() {
+        QueryResult result = accounts();
+
+        List<List> expected = new LegacyRecordFlattener().flatten(result);
+        List<List> actual = ProjectionPlan.compile(SCHEMA).decodeRecords(Arrays.asList(result.getRecords()).iterator(), null);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testDecodesRelationshipsAndSubqueries() {
+        List<List> rows = ProjectionPlan.compile(SCHEMA).decodeRecords(Arrays.asList(accounts().getRecords()).iterator(), null);
+
+        assertEquals(2, rows.size());
+        List row = rows.get(0);
+        assertEquals(4, row.size());
+        assertEquals(new ForceResultField(null, null, "Id", "001A"), row.get(0));
+        assertEquals(new ForceResultField(null, null, "Owner.Name", "Bob"), row.get(2));
+        List<List> contacts = (List<List>) row.get(3);
+        assertEquals(2, contacts.size());
+        assertEquals(new ForceResultField(null, null, "Contacts.LastName", "Smith"), contacts.get(0).get(1));
+        assertEquals(new ForceResultField(null, null, "Contacts.LastName", null), contacts.get(1).get(1));
+    }
+
+    @Test
+    public void testPadsEmptyRelationshipToItsWidth() {
+        List schema = Arrays.asList(
+                new FieldDef("Id", "Id", "id"),
+                new FieldDef("Name", "Account.Name", "string"),
+                new FieldDef("Industry", "Account.Industry", "string"),
+                new FieldDef("Name", "Name", "string"));
+        QueryResult result = parse(
+                record("Contact", "003A", field("Account", null) + field("Name", "Smith")),
+                record("Contact", "003B", relationship("Account", "Account", field("Name", "Acme") + field("Industry", "Tech"))
+                        + field("Name", "Jones")),
+                record("Contact", "003C", field("Account", null) + field("Name", "Brown")));
+
+        List<List> rows = ProjectionPlan.compile(schema).decodeRecords(Arrays.asList(result.getRecords()).iterator(), null);
+
+        // the first row is padded by the expected schema, the last one by the width of the relationship decoded
+        for (List row : Arrays.asList(rows.get(0), rows.get(2))) {
+            assertEquals(4, row.size());
+            assertEquals(new ForceResultField(null, null, "Account.Name", null), row.get(1));
+            assertEquals(new ForceResultField(null, null, "Account.Industry", null), row.get(2));
+        }
+        assertEquals(new ForceResultField(null, null, "Name", "Smith"), rows.get(0).get(3));
+        assertEquals(new ForceResultField(null, null, "Account.Industry", "Tech"), rows.get(1).get(2));
+        assertEquals(new ForceResultField(null, null, "Name", "Brown"), rows.get(2).get(3));
+    }
+
+    @Test
+    public void testGrowsForUnexpectedFields() {
+        QueryResult result = accounts();
+
+        List<List> expected = new LegacyRecordFlattener().flatten(result);
+        List<List> actual = ProjectionPlan.compile(null).decodeRecords(Arrays.asList(result.getRecords()).iterator(), null);
+
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.bind.TypeMapper;
+import com.sforce.ws.parser.PullParserException;
+import com.sforce.ws.parser.XmlInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds query results the same way the Partner API does - by parsing the SOAP response XML,
+ * so the records have the XML types of the real responses.
+ */
+class SoapQueryResults {
+
+    private static final String NAMESPACES = "xmlns=\"urn:partner.soap.sforce.com\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+            + " xmlns:sf=\"urn:sobject.partner.soap.sforce.com\"";
+
+    /**
+     * @param records the XML of the records elements
+     */
+    static QueryResult parse(String... records) {
+        return parseBatch(null, records);
+    }
+
+    /**
+     * @param queryLocator the locator of the next batch, null for the last batch
+     * @param records      the XML of the records elements
+     */
+    static QueryResult parseBatch(String queryLocator, String... records) {
+        StringBuilder xml = new StringBuilder("<result " + NAMESPACES + " xsi:type=\"QueryResult\">")
+                .append(queryLocatorFields(queryLocator));
+        for (String record : records) {
+            xml.append(record);
+        }
+        xml.append("<size>").append(records.length).append("</size></result>");
+        try {
+            XmlInputStream in = new XmlInputStream();
+            in.setInput(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), "UTF-8");
+            QueryResult result = new QueryResult();
+            result.load(in, new TypeMapper());
+            return result;
+        } catch (IOException | ConnectionException | PullParserException e) {
+            throw new IllegalArgumentException("Invalid query result XML", e);
+        }
+    }
+
+    /**
+     * @param fields the XML of the fields, the Id is added twice as the Partner API does
+     */
+    static String record(String type, String id, String fields) {
+        return "<records xsi:type=\"sf:sObject\">" + sObjectContent(type, id, fields) + "</records>";
+    }
+
+    static String relationship(String name, String type, String fields) {
+        return "<sf:" + name + " xsi:type=\"sf:sObject\"><sf:type>" + type + "</sf:type>"
+                + "<sf:Id xsi:nil=\"true\"/>" + fields + "</sf:" + name + ">";
+    }
+
+    static String subquery(String name, String... records) {
+        return subqueryBatch(name, null, records);
+    }
+
+    /**
+     * @param queryLocator the locator of the next batch of the child rows, null if all the child rows are returned
+     */
+    static String subqueryBatch(String name, String queryLocator, String... records) {
+        StringBuilder xml = new StringBuilder("<sf:" + name + " xsi:type=\"QueryResult\">")
+                .append(queryLocatorFields(queryLocator));
+        for (String record : records) {
+            xml.append(record);
+        }
+        return xml.append("<size>").append(records.length).append("</size></sf:").append(name).append(">").toString();
+    }
+
+    private static String queryLocatorFields(String queryLocator) {
+        return queryLocator == null
+                ? "<done>true</done><queryLocator xsi:nil=\"true\"/>"
+                : "<done>false</done><queryLocator>" + queryLocator + "</queryLocator>";
+    }
+
+    static String field(String name, String value) {
+        return value == null ? "<sf:" + name + " xsi:nil=\"true\"/>" : "<sf:" + name + ">" + value + "</sf:" + name + ">";
+    }
+
+    private static String sObjectContent(String type, String id, String fields) {
+        return "<sf:type>" + type + "</sf:type>" + field("Id", id) + field("Id", id) + fields;
+    }
+}
@@ -0,0 +1,89 @@
+package com.ascendix.jdbc.salesforce.delegates;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Partner connection which serves the query batches from memory instead of calling Salesforce.
+ */
+public class StubPartnerConnection extends PartnerConnection {
+
+    private final List<SObject[]> batches = new ArrayList<>();
+    public final AtomicInteger queryCalls = new AtomicInteger();
+    public final AtomicInteger queryMoreCalls = new AtomicInteger();
+    public final List<String> queries = new ArrayList<>();
+    /** the QueryOptions batch size sent with every query/queryMore call, 0 - no header */
+    public final List<Integer> batchSizes = new ArrayList<>();
+
+    public StubPartnerConnection() throws ConnectionException {
+        super(stubConfig());
+    }
+
+    private static ConnectorConfig stubConfig() {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setManualLogin(true);
+        config.setSessionId("stub-session");
+        config.setServiceEndpoint("http://localhost/services/Soap/u/51.0");
+        return config;
+    }
+
+    /**
+     * Adds a batch of Account records with the given names.
+     */
+    public StubPartnerConnection addBatch(String... names) {
+        SObject[] records = new SObject[names.length];
+        for (int i = 0; i < names.length; i++) {
+            records[i] = account(names[i]);
+        }
+        batches.add(records);
+        return this;
+    }
+
+    public static SObject account(String name) {
+        SObject record = new SObject("Account");
+        record.setName(new QName("records"));
+        // Partner API returns the Id twice - the first one is dropped by the driver
+        record.addField("Id", "id-" + name);
+        record.addField("Id", "id-" + name);
+        record.addField("Name", name);
+        return record;
+    }
+
+    @Override
+    public QueryResult query(String queryString) throws ConnectionException {
+        queryCalls.incrementAndGet();
+        queries.add(queryString);
+        recordBatchSize();
+        return batch(0);
+    }
+
+    @Override
+    public QueryResult queryMore(String queryLocator) throws ConnectionException {
+        queryMoreCalls.incrementAndGet();
+        recordBatchSize();
+        return batch(Integer.parseInt(queryLocator));
+    }
+
+    private synchronized void recordBatchSize() {
+        batchSizes.add(getQueryOptions() == null ? 0 : getQueryOptions().getBatchSize());
+    }
+
+    protected QueryResult batch(int index) {
+        QueryResult result = new QueryResult();
+        SObject[] records = index < batches.size() ? batches.get(index) : new SObject[0];
+        result.setRecords(records);
+        result.setSize(records.length);
+        boolean done = index >= batches.size() - 1;
+        result.setDone(done);
+        result.setQueryLocator(done ? null : String.valueOf(index + 1));
+        return result;
+    }
+}
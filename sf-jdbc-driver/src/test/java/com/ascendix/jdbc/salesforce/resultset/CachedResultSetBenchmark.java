@@ -0,0 +1,105 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of every column of 80-column rows by name: through the column index of the result set,
+ * by position, and with the upper case copy and linear search of the names used before the index.
+ * <p>
+ * Run the main method from the IDE or {@code org.openjdk.jmh.Main CachedResultSetBenchmark} with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachedResultSetBenchmark {
+
+    private static final int COLUMNS = 80;
+    private static final int ROWS = 1000;
+
+    private String[] columnNames;
+    private ColumnarRows rows;
+    private List<ColumnMap<String, Object>> upperCaseRows;
+
+    @Setup
+    public void setUp() {
+        columnNames = new String[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++) {
+            columnNames[column] = "Field" + column + "__c";
+        }
+        rows = new ColumnarRows();
+        upperCaseRows = new ArrayList<>();
+        for (int row = 0; row < ROWS; row++) {
+            ColumnMap<String, Object> values = new ColumnMap<>();
+            ColumnMap<String, Object> upperCaseValues = new ColumnMap<>();
+            for (int column = 0; column < COLUMNS; column++) {
+                values.add(columnNames[column], "value " + row + "/" + column);
+                upperCaseValues.add(columnNames[column].toUpperCase(), "value " + row + "/" + column);
+            }
+            rows.add(values);
+            upperCaseRows.add(upperCaseValues);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS * COLUMNS)
+    public void readByName(Blackhole blackhole) throws SQLException {
+        CachedResultSet resultSet = new CachedResultSet(rows, null);
+        while (resultSet.next()) {
+            for (String columnName : columnNames) {
+                blackhole.consume(resultSet.getObject(columnName));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS * COLUMNS)
+    public void readByIndex(Blackhole blackhole) throws SQLException {
+        CachedResultSet resultSet = new CachedResultSet(rows, null);
+        while (resultSet.next()) {
+            for (int column = 1; column <= COLUMNS; column++) {
+                blackhole.consume(resultSet.getObject(column));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS * COLUMNS)
+    public void readByNameLinearSearch(Blackhole blackhole) {
+        for (ColumnMap<String, Object> row : upperCaseRows) {
+            for (String columnName : columnNames) {
+                blackhole.consume(row.get(columnName.toUpperCase()));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CachedResultSetBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
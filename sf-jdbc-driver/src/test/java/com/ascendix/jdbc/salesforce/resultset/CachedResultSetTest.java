@@ -5,10 +5,22 @@ import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.sql.rowset.RowSetMetaDataImpl;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class CachedResultSetTest {
 
@@ -32,4 +44,126 @@ public class CachedResultSetTest {
         assertEquals(23, calendar.get(Calendar.DAY_OF_MONTH));
     }
 
+    @Test
+    public void testGettersOfDecodedValues() throws SQLException {
+        CachedResultSet resultSet = new CachedResultSet(new ColumnMap<String, Object>()
+                .add("CreatedDate", Instant.parse("2017-06-23T12:34:56.789Z"))
+                .add("CloseDate", LocalDate.of(2017, 6, 23))
+                .add("Start__c", OffsetTime.parse("08:30:00.000Z"))
+                .add("Amount", 1500.5)
+                .add("Rate__c", new BigDecimal("0.125"))
+                .add("NumberOfEmployees", 42)
+                .add("IsDeleted", false));
+
+        assertTrue(resultSet.next());
+        assertEquals(Timestamp.from(Instant.parse("2017-06-23T12:34:56.789Z")), resultSet.getObject(1));
+        assertEquals(Instant.parse("2017-06-23T12:34:56.789Z").toEpochMilli(), resultSet.getTimestamp("CreatedDate").getTime());
+        assertEquals("2017-06-23T12:34:56.789Z", resultSet.getString(1));
+        assertEquals(java.sql.Date.valueOf("2017-06-23"), resultSet.getDate("CloseDate"));
+        assertEquals(java.sql.Date.valueOf("2017-06-23"), resultSet.getObject("CloseDate"));
+        assertEquals("2017-06-23", resultSet.getString("CloseDate"));
+        assertEquals(8 * 3600_000 + 30 * 60_000, resultSet.getTime("Start__c").getTime());
+        assertEquals("08:30:00.000Z", resultSet.getString("Start__c"));
+        assertEquals(1500.5, resultSet.getDouble("Amount"), 0);
+        assertEquals(1500, resultSet.getInt("Amount"));
+        assertEquals(new BigDecimal("1500.5"), resultSet.getBigDecimal("Amount"));
+        assertEquals("1500.5", resultSet.getString("Amount"));
+        assertEquals(new BigDecimal("0.125"), resultSet.getBigDecimal("Rate__c"));
+        assertEquals("0.125", resultSet.getString("Rate__c"));
+        assertEquals(42L, resultSet.getLong("NumberOfEmployees"));
+        assertEquals(42.0, resultSet.getDouble("NumberOfEmployees"), 0);
+        assertEquals("42", resultSet.getString("NumberOfEmployees"));
+        assertFalse(resultSet.getBoolean("IsDeleted"));
+        assertEquals("false", resultSet.getString("IsDeleted"));
+    }
+
+    @Test
+    public void testGettersParseValuesKeptAsStrings() throws SQLException {
+        CachedResultSet resultSet = new CachedResultSet(new ColumnMap<String, Object>()
+                .add("CreatedDate", "2017-06-23T12:34:56.789Z")
+                .add("Amount", "1500.5")
+                .add("IsDeleted", "true"));
+
+        assertTrue(resultSet.next());
+        assertEquals(Instant.parse("2017-06-23T12:34:56.789Z").toEpochMilli(), resultSet.getTimestamp(1).getTime());
+        assertEquals("2017-06-23T12:34:56.789Z", resultSet.getObject(1));
+        assertEquals(1500.5, resultSet.getDouble(2), 0);
+        assertTrue(resultSet.getBoolean(3));
+    }
+
+    @Test
+    public void testScrolls() throws SQLException {
+        CachedResultSet resultSet = new CachedResultSet(Arrays.asList(
+                new ColumnMap<String, Object>().add("Name", "a"),
+                new ColumnMap<String, Object>().add("Name", "b"),
+                new ColumnMap<String, Object>().add("Name", "c")));
+
+        assertTrue(resultSet.absolute(2));
+        assertEquals("b", resultSet.getString(1));
+        assertEquals(2, resultSet.getRow());
+        assertTrue(resultSet.previous());
+        assertEquals("a", resultSet.getString(1));
+        assertFalse(resultSet.previous());
+        assertTrue(resultSet.isBeforeFirst());
+        assertTrue(resultSet.absolute(-1));
+        assertTrue(resultSet.isLast());
+        assertFalse(resultSet.next());
+        assertFalse(resultSet.next());
+        assertTrue(resultSet.isAfterLast());
+        assertEquals(0, resultSet.getRow());
+        assertTrue(resultSet.relative(-2));
+        assertEquals("b", resultSet.getString(1));
+        resultSet.afterLast();
+        assertTrue(resultSet.previous());
+        assertEquals("c", resultSet.getString(1));
+    }
+
+    @Test
+    public void testGetObjectByNameIgnoresCase() throws SQLException {
+        CachedResultSet resultSet = new CachedResultSet(new ColumnMap<String, Object>()
+                .add("Id", "001")
+                .add("Owner.Name", "Bob"));
+
+        assertTrue(resultSet.next());
+        assertEquals("001", resultSet.getObject("ID"));
+        assertEquals("Bob", resultSet.getString("owner.name"));
+        assertNull(resultSet.getObject("Missing"));
+    }
+
+    @Test
+    public void testFindColumnByMetadataLabelAndName() throws SQLException {
+        RowSetMetaDataImpl metadata = new RowSetMetaDataImpl();
+        metadata.setColumnCount(2);
+        metadata.setColumnName(1, "Name");
+        metadata.setColumnLabel(1, "Name");
+        metadata.setColumnName(2, "Name");
+        metadata.setColumnLabel(2, "Owner.Name");
+        CachedResultSet resultSet = new CachedResultSet(Collections.singletonList(new ColumnMap<String, Object>()
+                .add("Name", "Acme")
+                .add("Owner.Name", "Bob")), metadata);
+
+        assertEquals(1, resultSet.findColumn("NAME"));
+        assertEquals(2, resultSet.findColumn("owner.name"));
+        assertTrue(resultSet.next());
+        assertEquals("Bob", resultSet.getString("Owner.Name"));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testFindColumnFailsForUnknownColumn() throws SQLException {
+        new CachedResultSet(new ColumnMap<String, Object>().add("Id", "001")).findColumn("Name");
+    }
+
+    @Test
+    public void testColumnIndexWithManyColumns() {
+        ColumnIndex index = new ColumnIndex(100);
+        for (int column = 1; column <= 100; column++) {
+            index.add("Field" + column + "__c", column);
+        }
+        index.add("FIELD1__C", 101);
+
+        for (int column = 1; column <= 100; column++) {
+            assertEquals(column, index.indexOf("field" + column + "__C"));
+        }
+        assertEquals(0, index.indexOf("Field101__c"));
+    }
 }
@@ -0,0 +1,134 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ColumnarRowsTest {
+
+    private static ColumnMap<String, Object> row(Object id, Object amount, Object active, Object name) {
+        return new ColumnMap<String, Object>()
+                .add("ID", id)
+                .add("AMOUNT", amount)
+                .add("ACTIVE", active)
+                .add("NAME", name);
+    }
+
+    @Test
+    public void testStoresTypedValuesAndNulls() {
+        ColumnarRows rows = new ColumnarRows(Arrays.asList(
+                row(1, 10.5, true, "a"),
+                row(null, null, null, null),
+                row(3, 30d, false, "c")));
+
+        assertEquals(3, rows.size());
+        assertEquals(4, rows.getColumnCount());
+        assertEquals(1, rows.get(0, 1));
+        assertEquals(10.5, rows.get(0, 2));
+        assertEquals(true, rows.get(0, 3));
+        assertEquals("a", rows.get(0, "NAME"));
+        assertNull(rows.get(1, 1));
+        assertNull(rows.get(1, 2));
+        assertNull(rows.get(1, 3));
+        assertNull(rows.get(1, 4));
+        assertEquals(false, rows.get(2, 3));
+        assertEquals(30d, rows.get(2, "AMOUNT"));
+    }
+
+    @Test
+    public void testKeepsValuesOfMixedClasses() {
+        ColumnarRows rows = new ColumnarRows(Arrays.asList(
+                row(1, 1d, true, "a"),
+                row(2L, new BigDecimal("2.5"), "yes", 4)));
+
+        assertEquals(1, rows.get(0, 1));
+        assertEquals(2L, rows.get(1, 1));
+        assertEquals(1d, rows.get(0, 2));
+        assertEquals(new BigDecimal("2.5"), rows.get(1, 2));
+        assertEquals(true, rows.get(0, 3));
+        assertEquals("yes", rows.get(1, 3));
+        assertEquals(4, rows.get(1, 4));
+    }
+
+    @Test
+    public void testStoresDatesAndInstants() {
+        Instant millis = Instant.parse("2017-06-23T12:34:56.789Z");
+        Instant nanos = Instant.parse("2017-06-23T12:34:56.789123Z");
+        ColumnarRows rows = new ColumnarRows(Arrays.asList(
+                row(LocalDate.of(2017, 6, 23), millis, null, millis),
+                row(null, null, null, nanos),
+                row(LocalDate.of(1969, 12, 31), Instant.EPOCH, null, null)));
+
+        assertEquals(LocalDate.of(2017, 6, 23), rows.get(0, 1));
+        assertNull(rows.get(1, 1));
+        assertEquals(LocalDate.of(1969, 12, 31), rows.get(2, 1));
+        assertEquals(millis, rows.get(0, 2));
+        assertNull(rows.get(1, 2));
+        assertEquals(Instant.EPOCH, rows.get(2, 2));
+        assertEquals(millis, rows.get(0, 4));
+        assertEquals(nanos, rows.get(1, 4));
+    }
+
+    @Test
+    public void testSharesNamesOfShorterRows() {
+        ColumnarRows rows = new ColumnarRows();
+        rows.add(new ColumnMap<String, Object>().add("ID", 1));
+        rows.add(new ColumnMap<String, Object>().add(null, null).add("NAME", "b"));
+        rows.add(row(3, null, null, null));
+
+        assertEquals(Arrays.asList("ID", "NAME", "ACTIVE", "NAME"), rows.getColumnNames());
+        assertNull(rows.get(0, 2));
+        assertEquals("b", rows.get(1, "NAME"));
+        assertEquals(3, rows.get(2, "ID"));
+    }
+
+    @Test
+    public void testManyRows() {
+        ColumnarRows rows = new ColumnarRows();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(row(i, i % 3 == 0 ? null : (double) i, i % 2 == 0, "n" + i));
+        }
+
+        assertEquals(1000, rows.size());
+        assertEquals(999, rows.get(999, 1));
+        assertNull(rows.get(999, 2));
+        assertEquals(998d, rows.get(998, 2));
+        assertEquals(false, rows.get(999, 3));
+        assertEquals(true, rows.get(998, 3));
+        assertEquals("n500", rows.get(500, 4));
+    }
+
+    @Test
+    public void testResultSetIsSerializable() throws IOException, ClassNotFoundException, SQLException {
+        CachedResultSet resultSet = new CachedResultSet(Arrays.asList(row(1, 2d, true, "a"), row(null, null, false, "b")));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(resultSet);
+        }
+        CachedResultSet copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (CachedResultSet) in.readObject();
+        }
+
+        assertTrue(copy.next());
+        assertEquals(1, copy.getObject(1));
+        assertEquals("a", copy.getString("NAME"));
+        assertTrue(copy.next());
+        assertNull(copy.getObject(1));
+        assertEquals(false, copy.getObject(3));
+        assertFalse(copy.next());
+    }
+}
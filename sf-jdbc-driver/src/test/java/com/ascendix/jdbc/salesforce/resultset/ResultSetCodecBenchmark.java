@@ -0,0 +1,142 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import com.ascendix.jdbc.salesforce.statement.ForcePreparedStatement;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of cached Account results by {@link ResultSetCodec} and by the ELSA serialization
+ * the cache used before, with and without the compression. The sizes of the encoded results are printed
+ * by the main method before the run.
+ * <p>
+ * Run the main method from the IDE or {@code org.openjdk.jmh.Main ResultSetCodecBenchmark} with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSetCodecBenchmark {
+
+    private static final String[] TYPES = {"Customer - Direct", "Customer - Channel", "Prospect", "Partner", null};
+    private static final String[] INDUSTRIES = {"Banking", "Energy", "Retail", "Technology", "Healthcare", "Media"};
+    private static final String[] COUNTRIES = {"USA", "Germany", "France", "Japan", "Brazil"};
+
+    @Param({"100", "5000"})
+    public int rows;
+
+    private ResultSet resultSet;
+    private byte[] encoded;
+    private byte[] compressed;
+    private byte[] elsa;
+
+    /**
+     * @return the Account rows as they are read from Salesforce - unique ids and names, repeating picklists
+     * and owners, nullable numbers and dates, increasing creation times
+     */
+    static CachedResultSet accounts(int rows) {
+        ColumnarRows columns = new ColumnarRows();
+        ColumnMap<String, Object> first = null;
+        for (int i = 0; i < rows; i++) {
+            ColumnMap<String, Object> row = new ColumnMap<String, Object>()
+                    .add("Id", String.format("0015g00000%08dAAA", i))
+                    .add("Name", "Account " + i)
+                    .add("Type", TYPES[i % TYPES.length])
+                    .add("Industry", INDUSTRIES[i * 7 % INDUSTRIES.length])
+                    .add("BillingCountry", COUNTRIES[i % COUNTRIES.length])
+                    .add("OwnerId", String.format("0055g00000%08dAAA", i % 20))
+                    .add("AnnualRevenue", i % 7 == 0 ? null : 1000.0 * (i % 500) + 0.5)
+                    .add("NumberOfEmployees", i % 3 == 0 ? null : 10 + i % 1000)
+                    .add("IsDeleted", i % 50 == 0)
+                    .add("CreatedDate", Instant.ofEpochMilli(1577836800000L + i * 61_000L))
+                    .add("LastActivityDate", i % 4 == 0 ? null : LocalDate.ofEpochDay(18262 + i % 400));
+            columns.add(row);
+            if (first == null) {
+                first = row;
+            }
+        }
+        return new CachedResultSet(columns, ForcePreparedStatement.dummyMetaData(first));
+    }
+
+    static byte[] encodeWithElsa(ResultSet resultSet) throws IOException {
+        DataOutput2 out = new DataOutput2();
+        Serializer.ELSA.serialize(out, resultSet);
+        return out.copyBytes();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        resultSet = accounts(rows);
+        encoded = ResultSetCodec.encode(resultSet, -1);
+        compressed = ResultSetCodec.encode(resultSet, ResultSetCodec.DEFAULT_COMPRESSION_THRESHOLD);
+        elsa = encodeWithElsa(resultSet);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() throws IOException {
+        return ResultSetCodec.encode(resultSet, -1);
+    }
+
+    @Benchmark
+    public byte[] encodeCodecCompressed() throws IOException {
+        return ResultSetCodec.encode(resultSet, ResultSetCodec.DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    @Benchmark
+    public byte[] encodeElsa() throws IOException {
+        return encodeWithElsa(resultSet);
+    }
+
+    @Benchmark
+    public ResultSet decodeCodec() throws IOException {
+        return ResultSetCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public ResultSet decodeCodecCompressed() throws IOException {
+        return ResultSetCodec.decode(compressed);
+    }
+
+    @Benchmark
+    public Object decodeElsa() throws IOException {
+        return Serializer.ELSA.deserialize(new DataInput2.ByteArray(elsa), elsa.length);
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        for (int rows : new int[]{100, 5000}) {
+            CachedResultSet resultSet = accounts(rows);
+            System.out.printf("%d rows: codec %d bytes, compressed %d bytes, ELSA %d bytes%n", rows,
+                    ResultSetCodec.encode(resultSet, -1).length,
+                    ResultSetCodec.encode(resultSet, ResultSetCodec.DEFAULT_COMPRESSION_THRESHOLD).length,
+                    encodeWithElsa(resultSet).length);
+        }
+        Options options = new OptionsBuilder()
+                .include(ResultSetCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
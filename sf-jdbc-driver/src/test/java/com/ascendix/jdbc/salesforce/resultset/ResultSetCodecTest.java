@@ -0,0 +1,169 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ResultSetCodecTest {
+
+    @Test
+    public void testRoundTripOfColumnTypes() throws Exception {
+        ColumnarRows rows = new ColumnarRows();
+        for (int i = 0; i < 300; i++) {
+            rows.add(new ColumnMap<String, Object>()
+                    .add("Int", i % 5 == 0 ? null : i - 100)
+                    .add("Long", (long) i * Integer.MAX_VALUE)
+                    .add("Double", i % 3 == 0 ? null : i / 3.0)
+                    .add("Boolean", i % 11 == 0 ? null : i % 2 == 0)
+                    .add("Unique", "name " + i)
+                    .add("Picklist", i % 9 == 0 ? null : "value " + i % 4)
+                    .add("Date", LocalDate.ofEpochDay(18000 - i * 3))
+                    .add("Instant", Instant.ofEpochMilli(1600000000000L + (i % 2 == 0 ? i : -i) * 1000L))
+                    .add("Nanos", i % 2 == 0 ? Instant.ofEpochSecond(i, 1) : Instant.ofEpochMilli(i))
+                    .add("Decimal", new BigDecimal(i).movePointLeft(2))
+                    .add("Mixed", i % 2 == 0 ? (Object) i : "text " + i)
+                    .add("Empty", null)
+                    .add("Unicode", "Zürich " + i % 3));
+        }
+        ResultSet resultSet = new CachedResultSet(rows, null);
+
+        CachedResultSet decoded = (CachedResultSet) ResultSetCodec.decode(ResultSetCodec.encode(resultSet, -1));
+
+        assertSameRows(rows, decoded.getRows());
+        assertEquals(0, decoded.getMetaData().getColumnCount());
+    }
+
+    @Test
+    public void testRoundTripOfMetaData() throws Exception {
+        CachedResultSet accounts = ResultSetCodecBenchmark.accounts(10);
+
+        CachedResultSet decoded = (CachedResultSet) ResultSetCodec.decode(ResultSetCodec.encode(accounts, -1));
+
+        ResultSetMetaData expected = accounts.getMetaData();
+        ResultSetMetaData actual = decoded.getMetaData();
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        for (int column = 1; column <= expected.getColumnCount(); column++) {
+            assertEquals(expected.getColumnName(column), actual.getColumnName(column));
+            assertEquals(expected.getColumnLabel(column), actual.getColumnLabel(column));
+            assertEquals(expected.getColumnType(column), actual.getColumnType(column));
+            assertEquals(expected.getColumnTypeName(column), actual.getColumnTypeName(column));
+            assertEquals(expected.getPrecision(column), actual.getPrecision(column));
+            assertEquals(expected.getSchemaName(column), actual.getSchemaName(column));
+            assertEquals(expected.getCatalogName(column), actual.getCatalogName(column));
+            assertEquals(expected.isCaseSensitive(column), actual.isCaseSensitive(column));
+        }
+        assertTrue(decoded.next());
+        assertEquals("Account 0", decoded.getString("Name"));
+        assertEquals(Types.VARCHAR, actual.getColumnType(1));
+    }
+
+    @Test
+    public void testCompressesBigResults() throws Exception {
+        CachedResultSet accounts = ResultSetCodecBenchmark.accounts(2000);
+
+        byte[] plain = ResultSetCodec.encode(accounts, -1);
+        byte[] compressed = ResultSetCodec.encode(accounts, ResultSetCodec.DEFAULT_COMPRESSION_THRESHOLD);
+        byte[] small = ResultSetCodec.encode(ResultSetCodecBenchmark.accounts(2), ResultSetCodec.DEFAULT_COMPRESSION_THRESHOLD);
+
+        assertTrue(compressed.length < plain.length);
+        assertEquals(0, small[1]);
+        assertSameRows(accounts.getRows(), ((CachedResultSet) ResultSetCodec.decode(compressed)).getRows());
+        assertSameRows(accounts.getRows(), ((CachedResultSet) ResultSetCodec.decode(plain)).getRows());
+    }
+
+    @Test
+    public void testSmallerThanElsa() throws Exception {
+        CachedResultSet accounts = ResultSetCodecBenchmark.accounts(1000);
+
+        byte[] elsa = ResultSetCodecBenchmark.encodeWithElsa(accounts);
+        byte[] plain = ResultSetCodec.encode(accounts, -1);
+
+        assertTrue(plain.length + " < " + elsa.length, plain.length < elsa.length);
+    }
+
+    @Test
+    public void testSerializesOtherResults() throws Exception {
+        CommandLogCachedResultSet log = new CommandLogCachedResultSet(Arrays.asList("first", "second"));
+
+        ResultSet decoded = ResultSetCodec.decode(ResultSetCodec.encode(log, -1));
+
+        assertEquals(CommandLogCachedResultSet.class, decoded.getClass());
+        assertTrue(decoded.next());
+        assertTrue(decoded.next());
+        assertEquals("second", decoded.getString(CommandLogCachedResultSet.LOG_COLUMN));
+    }
+
+    @Test
+    public void testRejectsOtherFormatVersion() throws Exception {
+        byte[] encoded = ResultSetCodec.encode(ResultSetCodecBenchmark.accounts(2), -1);
+        encoded[0] = 99;
+
+        try {
+            ResultSetCodec.decode(encoded);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("99"));
+        }
+    }
+
+    @Test
+    public void testMetaDataSerializer() throws Exception {
+        ResultSetMetaData metaData = ResultSetCodecBenchmark.accounts(1).getMetaData();
+        DataOutput2 out = new DataOutput2();
+        ResultSetCodec.METADATA.serialize(out, metaData);
+
+        ResultSetMetaData decoded = ResultSetCodec.METADATA.deserialize(new DataInput2.ByteArray(out.copyBytes()), out.pos);
+
+        assertEquals(metaData.getColumnCount(), decoded.getColumnCount());
+        assertEquals("CreatedDate", decoded.getColumnName(10));
+        assertEquals(metaData.getColumnType(10), decoded.getColumnType(10));
+    }
+
+    @Test
+    public void testStoredInMapDb() throws SQLException {
+        DB db = DBMaker.memoryDB().make();
+        try {
+            HTreeMap<String, ResultSet> cache = db
+                    .hashMap("DataCache", Serializer.STRING, ResultSetCodec.RESULT_SET)
+                    .create();
+            CachedResultSet accounts = ResultSetCodecBenchmark.accounts(500);
+
+            cache.put("SELECT Id FROM Account", accounts);
+            CachedResultSet cached = (CachedResultSet) cache.get("SELECT Id FROM Account");
+
+            assertNotSame(accounts, cached);
+            assertSameRows(accounts.getRows(), cached.getRows());
+            assertTrue(cached.absolute(500));
+            assertEquals("Account 499", cached.getString("Name"));
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void assertSameRows(ColumnarRows expected, ColumnarRows actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getColumnNames(), actual.getColumnNames());
+        for (int row = 0; row < expected.size(); row++) {
+            for (int column = 1; column <= expected.getColumnCount(); column++) {
+                assertEquals("row " + row + " column " + column, expected.get(row, column), actual.get(row, column));
+            }
+        }
+    }
+}
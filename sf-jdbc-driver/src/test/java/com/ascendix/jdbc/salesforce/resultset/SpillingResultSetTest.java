@@ -0,0 +1,106 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class SpillingResultSetTest {
+
+    private static SpillingResultSet load(int rows, long heapBudget) throws SQLException {
+        SpillingResultSet resultSet = new SpillingResultSet(null, heapBudget);
+        for (int i = 0; i < rows; i++) {
+            resultSet.add(new ColumnMap<String, Object>()
+                    .add("Id", "006" + i)
+                    .add("Amount", i % 5 == 0 ? null : i * 1.5)
+                    .add("Number", i));
+        }
+        return resultSet;
+    }
+
+    @Test
+    public void testKeepsSmallResultInHeap() throws SQLException {
+        SpillingResultSet resultSet = load(10, 1024 * 1024);
+
+        assertNull(resultSet.getSpillFile());
+        assertTrue(resultSet.last());
+        assertEquals(10, resultSet.getRow());
+        assertEquals("0069", resultSet.getString("ID"));
+        assertTrue(resultSet.previous());
+        assertEquals(8, resultSet.getInt(3));
+    }
+
+    @Test
+    public void testScrollsOverSpilledRows() throws SQLException {
+        SpillingResultSet resultSet = load(5000, 4096);
+        Path spillFile = resultSet.getSpillFile();
+
+        assertNotNull(spillFile);
+        assertTrue(Files.exists(spillFile));
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(resultSet.next());
+            assertEquals("006" + i, resultSet.getString(1));
+        }
+        assertFalse(resultSet.next());
+        assertTrue(resultSet.isAfterLast());
+
+        assertTrue(resultSet.absolute(1234));
+        assertEquals(1233, resultSet.getInt("Number"));
+        assertEquals(1233 * 1.5, resultSet.getDouble("Amount"), 0);
+        assertTrue(resultSet.previous());
+        assertEquals("0061232", resultSet.getString("Id"));
+        assertTrue(resultSet.absolute(-1));
+        assertEquals(4999, resultSet.getInt(3));
+        assertTrue(resultSet.relative(-4000));
+        assertEquals(999, resultSet.getInt(3));
+        assertTrue(resultSet.first());
+        assertNull(resultSet.getObject(2));
+        assertTrue(resultSet.last());
+        assertEquals(5000, resultSet.getRow());
+        assertFalse(resultSet.absolute(5001));
+        assertTrue(resultSet.isAfterLast());
+        assertTrue(resultSet.previous());
+        assertTrue(resultSet.isLast());
+
+        resultSet.close();
+        assertTrue(resultSet.isClosed());
+        assertFalse(Files.exists(spillFile));
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testEncodesValuesOfAllClasses() throws SQLException {
+        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(1_500_000_000_000L);
+        Object[] values = {null, "Ünïcödé ✓", Integer.MIN_VALUE, Long.MAX_VALUE, -0.25, true, false,
+                new BigDecimal("-12345678901234567890.125"), LocalDate.of(1969, 7, 20),
+                Instant.parse("2017-06-23T12:34:56.789123456Z"), OffsetTime.parse("08:30:00.000+02:00"), calendar};
+        ColumnMap<String, Object> row = new ColumnMap<>();
+        for (int i = 0; i < values.length; i++) {
+            row.add("Column" + i, values[i]);
+        }
+        SpillingResultSet resultSet = new SpillingResultSet(null, 4);
+        resultSet.add(row);
+        resultSet.add(new ColumnMap<String, Object>().add("Column0", "short row"));
+
+        assertNotNull(resultSet.getSpillFile());
+        assertTrue(resultSet.next());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], resultSet.getValue(i + 1));
+        }
+        assertTrue(resultSet.next());
+        assertEquals("short row", resultSet.getString(1));
+        assertNull(resultSet.getObject("Column11"));
+        resultSet.close();
+    }
+}
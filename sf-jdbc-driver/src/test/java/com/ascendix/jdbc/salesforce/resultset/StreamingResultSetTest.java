@@ -0,0 +1,114 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StreamingResultSetTest {
+
+    private static List<ColumnMap<String, Object>> page(String... names) {
+        List<ColumnMap<String, Object>> page = new ArrayList<>();
+        for (String name : names) {
+            page.add(new ColumnMap<String, Object>().add("Name", name));
+        }
+        return page;
+    }
+
+    private static class TestPageSupplier implements StreamingResultSet.PageSupplier {
+        private final Iterator<List<ColumnMap<String, Object>>> pages;
+        private final AtomicInteger fetched = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        TestPageSupplier(List<List<ColumnMap<String, Object>>> pages) {
+            this.pages = pages.iterator();
+        }
+
+        @Override
+        public List<ColumnMap<String, Object>> nextPage() {
+            if (!pages.hasNext()) {
+                return null;
+            }
+            fetched.incrementAndGet();
+            return pages.next();
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    public void testFetchesPagesOnDemand() throws SQLException {
+        TestPageSupplier supplier = new TestPageSupplier(Arrays.asList(page("a", "b"), page("c")));
+        StreamingResultSet resultSet = new StreamingResultSet(supplier, null);
+
+        assertEquals(0, supplier.fetched.get());
+        assertTrue(resultSet.next());
+        assertEquals("a", resultSet.getString(1));
+        assertTrue(resultSet.isFirst());
+        assertEquals(1, supplier.fetched.get());
+        assertTrue(resultSet.next());
+        assertEquals("b", resultSet.getString(1));
+        assertEquals(1, supplier.fetched.get());
+        assertTrue(resultSet.next());
+        assertEquals("c", resultSet.getString(1));
+        assertEquals(2, supplier.fetched.get());
+        assertEquals(3, resultSet.getRow());
+        assertFalse(resultSet.next());
+        assertTrue(resultSet.isAfterLast());
+        assertTrue(supplier.closed.get());
+    }
+
+    @Test
+    public void testSkipsEmptyPages() throws SQLException {
+        TestPageSupplier supplier = new TestPageSupplier(Arrays.asList(page(), page("a"), page()));
+        StreamingResultSet resultSet = new StreamingResultSet(supplier, null);
+
+        assertTrue(resultSet.isBeforeFirst());
+        assertTrue(resultSet.next());
+        assertEquals("a", resultSet.getString(1));
+        assertTrue(resultSet.isLast());
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testEmptyResult() throws SQLException {
+        TestPageSupplier supplier = new TestPageSupplier(Collections.emptyList());
+        StreamingResultSet resultSet = new StreamingResultSet(supplier, null);
+
+        assertFalse(resultSet.isBeforeFirst());
+        assertFalse(resultSet.next());
+        assertFalse(resultSet.isAfterLast());
+        assertTrue(supplier.closed.get());
+    }
+
+    @Test
+    public void testCloseReleasesSupplier() throws SQLException {
+        TestPageSupplier supplier = new TestPageSupplier(Arrays.asList(page("a"), page("b")));
+        StreamingResultSet resultSet = new StreamingResultSet(supplier, null);
+
+        assertTrue(resultSet.next());
+        resultSet.close();
+
+        assertTrue(supplier.closed.get());
+        assertEquals(1, supplier.fetched.get());
+        assertTrue(resultSet.isClosed());
+    }
+
+    @Test(expected = SQLException.class)
+    public void testScrollingIsNotSupported() throws SQLException {
+        StreamingResultSet resultSet = new StreamingResultSet(new TestPageSupplier(Collections.emptyList()), null);
+        resultSet.previous();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ascendix.jdbc.salesforce.resultset;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TypedValuesTest {
+
+    @Test
+    public void testDecodesByForceType() {
+        assertEquals(42, TypedValues.decoderFor("_int").apply("42"));
+        assertEquals(42, TypedValues.decoderFor("int").apply("42"));
+        assertEquals(1500.5, TypedValues.decoderFor("_double").apply("1500.5"));
+        assertEquals(15.0, TypedValues.decoderFor("percent").apply("15.0"));
+        assertEquals(2.5, TypedValues.decoderFor("currency").apply("2.5"));
+        assertEquals(new BigDecimal("0.125"), TypedValues.decoderFor("decimal").apply("0.125"));
+        assertEquals(true, TypedValues.decoderFor("_boolean").apply("true"));
+        assertEquals(LocalDate.of(2017, 6, 23), TypedValues.decoderFor("date").apply("2017-06-23"));
+        assertEquals(Instant.parse("2017-06-23T12:34:56.789Z"),
+                TypedValues.decoderFor("datetime").apply("2017-06-23T12:34:56.789Z"));
+        assertEquals(OffsetTime.parse("08:30:00.000Z"), TypedValues.decoderFor("time").apply("08:30:00.000Z"));
+    }
+
+    @Test
+    public void testKeepsStringsAndValuesWhichDoNotParse() {
+        assertEquals("Acme", TypedValues.decoderFor("string").apply("Acme"));
+        assertEquals("001", TypedValues.decoderFor("id").apply("001"));
+        assertEquals("n/a", TypedValues.decoderFor("_double").apply("n/a"));
+        assertEquals("yes", TypedValues.decoderFor("_boolean").apply("yes"));
+        assertEquals("2017-06-23", TypedValues.decoderFor(null).apply("2017-06-23"));
+        assertNull(TypedValues.decoderFor("date").apply(null));
+        Integer count = 7;
+        assertSame(count, TypedValues.decoderFor("_double").apply(count));
+    }
+
+    @Test
+    public void testFormatsDecodedValuesAsPartnerApi() {
+        String[][] values = {
+                {"_int", "42"},
+                {"_double", "1500.5"},
+                {"decimal", "15000.00"},
+                {"_boolean", "false"},
+                {"date", "2017-06-23"},
+                {"datetime", "2017-06-23T12:34:56.789Z"},
+                {"datetime", "2017-06-23T00:00:00.000Z"},
+                {"time", "08:30:00.000Z"},
+        };
+        for (String[] value : values) {
+            Function<Object, Object> decoder = TypedValues.decoderFor(value[0]);
+            assertEquals(value[1], TypedValues.toSalesforceString(decoder.apply(value[1])));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AsyncQueriesTest {
+
+    @Test
+    public void testRunsQueryOnDriverThread() throws Exception {
+        CompletableFuture<String> future = AsyncQueries.supply(() -> Thread.currentThread().getName(), () -> {
+        });
+
+        assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("sf-jdbc-async-"));
+    }
+
+    @Test
+    public void testCompletesWithFailureOfQuery() throws Exception {
+        CompletableFuture<String> future = AsyncQueries.supply(() -> {
+            throw new SQLException("INVALID_FIELD");
+        }, () -> {
+        });
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The failure of the query is not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+            assertEquals("INVALID_FIELD", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testQueriesOverlap() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CompletableFuture<Boolean> first = AsyncQueries.supply(() -> {
+            started.countDown();
+            return started.await(5, TimeUnit.SECONDS);
+        }, () -> {
+        });
+        CompletableFuture<Boolean> second = AsyncQueries.supply(() -> {
+            started.countDown();
+            return started.await(5, TimeUnit.SECONDS);
+        }, () -> {
+        });
+
+        // each query waits until the other one is started
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelOfFutureCancelsQuery() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CompletableFuture<String> future = AsyncQueries.supply(() -> {
+            running.countDown();
+            cancelled.await(5, TimeUnit.SECONDS);
+            throw new SQLException("The query was cancelled");
+        }, cancelled::countDown);
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testCancelBeforeQueryStartsItsCancellationIsKept() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch checked = new CountDownLatch(1);
+        AtomicBoolean startedCancelled = new AtomicBoolean();
+        QueryCancellation cancellation = new QueryCancellation();
+        CompletableFuture<String> future = AsyncQueries.supply(() -> {
+            running.countDown();
+            // the future is cancelled before the statement starts the cancellation of the query
+            cancelled.await(5, TimeUnit.SECONDS);
+            cancellation.start(0);
+            startedCancelled.set(cancellation.isCancelled());
+            checked.countDown();
+            return "rows";
+        }, cancellation::cancel);
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        cancelled.countDown();
+
+        assertTrue(checked.await(5, TimeUnit.SECONDS));
+        assertTrue(startedCancelled.get());
+    }
+
+    @Test
+    public void testClosesResultOfCancelledQuery() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        CompletableFuture<AutoCloseable> future = AsyncQueries.supply(() -> {
+            running.countDown();
+            cancelled.await(5, TimeUnit.SECONDS);
+            return closed::countDown;
+        }, () -> {
+        });
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        cancelled.countDown();
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,53 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CachePolicyTest {
+
+    private static final CachePolicy DEFAULTS = new CachePolicy(TimeUnit.HOURS.toMillis(1), 0, 0);
+
+    @Test
+    public void testParsesOptions() {
+        CachePolicy policy = CachePolicy.parse(" TTL 30s MAXROWS 1000 stale 5m", DEFAULTS);
+
+        assertEquals(TimeUnit.SECONDS.toMillis(30), policy.getTimeToLive());
+        assertEquals(1000, policy.getMaxRows());
+        assertEquals(TimeUnit.MINUTES.toMillis(5), policy.getStaleWhileRevalidate());
+        assertEquals(TimeUnit.DAYS.toMillis(2), CachePolicy.parse(" TTL 2d", DEFAULTS).getTimeToLive());
+        assertEquals(TimeUnit.HOURS.toMillis(3), CachePolicy.parse(" TTL 3h", DEFAULTS).getTimeToLive());
+        assertEquals(TimeUnit.SECONDS.toMillis(90), CachePolicy.parse(" TTL 90", DEFAULTS).getTimeToLive());
+    }
+
+    @Test
+    public void testTakesMissingOptionsFromDefaults() {
+        CachePolicy defaults = new CachePolicy(TimeUnit.MINUTES.toMillis(10), 500, TimeUnit.MINUTES.toMillis(1));
+
+        CachePolicy policy = CachePolicy.parse(" MAXROWS 20", defaults);
+
+        assertEquals(TimeUnit.MINUTES.toMillis(10), policy.getTimeToLive());
+        assertEquals(20, policy.getMaxRows());
+        assertEquals(TimeUnit.MINUTES.toMillis(1), policy.getStaleWhileRevalidate());
+        assertEquals(500, CachePolicy.parse(null, defaults).getMaxRows());
+    }
+
+    @Test
+    public void testKeepsResultsNoLongerThanMaxTimeToLive() {
+        CachePolicy policy = CachePolicy.parse(" TTL 30d STALE 1d", DEFAULTS);
+        CachePolicy stale = CachePolicy.parse(" TTL 6d STALE 2d", DEFAULTS);
+
+        assertEquals(CachePolicy.MAX_TIME_TO_LIVE, policy.getTimeToLive());
+        assertEquals(0, policy.getStaleWhileRevalidate());
+        assertEquals(TimeUnit.DAYS.toMillis(1), stale.getStaleWhileRevalidate());
+    }
+
+    @Test
+    public void testCachesResultsUpToMaxRows() {
+        assertTrue(CachePolicy.parse(" MAXROWS 10", DEFAULTS).isCached(10));
+        assertFalse(CachePolicy.parse(" MAXROWS 10", DEFAULTS).isCached(11));
+        assertTrue(DEFAULTS.isCached(Long.MAX_VALUE));
+    }
+}
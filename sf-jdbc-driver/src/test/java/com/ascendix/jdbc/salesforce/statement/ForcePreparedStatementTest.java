@@ -4,12 +4,27 @@ import com.ascendix.jdbc.salesforce.statement.ForcePreparedStatement;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ForcePreparedStatementTest {
 
@@ -39,6 +54,39 @@ public class ForcePreparedStatementTest {
         assertEquals("NULL", ForcePreparedStatement.convertToSoqlParam(null));
     }
 
+    @Test(timeout = 60000)
+    public void testConvertToSoqlParam_Concurrent() throws Exception {
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                long offset = i * 7919_000L;
+                results.add(executor.submit(() -> {
+                    SimpleDateFormat expectedFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+                    start.await();
+                    int mismatches = 0;
+                    for (int run = 0; run < 2000; run++) {
+                        long time = 1488800000000L + offset + run * 86_399_000L;
+                        String expected = expectedFormat.format(new java.util.Date(time));
+                        Object param = run % 2 == 0 ? new java.util.Date(time) : new Timestamp(time);
+                        if (!expected.equals(ForcePreparedStatement.convertToSoqlParam(param))) {
+                            mismatches++;
+                        }
+                    }
+                    return mismatches;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(0), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testAddParameter() {
         ForcePreparedStatement statement = new ForcePreparedStatement(null, "");
@@ -66,12 +114,27 @@ public class ForcePreparedStatementTest {
     }
 
 
+    @Test
+    public void testUnwrap() throws Exception {
+        ForcePreparedStatement statement = new ForcePreparedStatement(null, "");
+
+        assertTrue(statement.isWrapperFor(PreparedStatement.class));
+        assertSame(statement, statement.unwrap(ForcePreparedStatement.class));
+        assertFalse(statement.isWrapperFor(Connection.class));
+        try {
+            statement.unwrap(Connection.class);
+            fail("The statement is unwrapped to a connection");
+        } catch (SQLException expected) {
+        }
+    }
+
     @Test
     public void testGetCacheMode() {
         ForcePreparedStatement statement = new ForcePreparedStatement(null, "");
 
         assertEquals(ForcePreparedStatement.CacheMode.SESSION, statement.getCacheMode("CACHE SESSION select name from Account"));
         assertEquals(ForcePreparedStatement.CacheMode.GLOBAL, statement.getCacheMode(" Cache global select name from Account"));
+        assertEquals(ForcePreparedStatement.CacheMode.INCREMENTAL, statement.getCacheMode("CACHE INCREMENTAL select Id from Account"));
         assertEquals(ForcePreparedStatement.CacheMode.NO_CACHE, statement.getCacheMode("select name from Account"));
         assertEquals(ForcePreparedStatement.CacheMode.NO_CACHE, statement.getCacheMode(" Cache unknown select name from Account"));
     }
@@ -80,6 +143,42 @@ public class ForcePreparedStatementTest {
     public void removeCacheHints() {
         ForcePreparedStatement statement = new ForcePreparedStatement(null, "");
         assertEquals("  select name from Account", statement.removeCacheHints(" Cache global select name from Account"));
+        assertEquals(" select name from Account", statement.removeCacheHints("CACHE SESSION TTL 30s MAXROWS 1000 STALE 5m select name from Account"));
+        assertEquals(ForcePreparedStatement.CacheMode.GLOBAL, statement.getCacheMode("CACHE GLOBAL ttl 1d select name from Account"));
+    }
+
+    @Test
+    public void testBulkHint() {
+        ForcePreparedStatement statement = new ForcePreparedStatement(null, "");
+
+        assertTrue(statement.isBulkHint(" Bulk select name from Account"));
+        assertTrue(statement.isBulkHint("BULK\nSELECT name from Account"));
+        assertFalse(statement.isBulkHint("select bulk from Account"));
+        assertFalse(statement.isBulkHint("BULKSELECT name from Account"));
+        assertEquals(" select name from Account", statement.removeBulkHint(" Bulk select name from Account"));
+        assertEquals("  select name from Account",
+                statement.removeBulkHint(statement.removeCacheHints(" Cache global BULK select name from Account")));
+    }
+
+    @Test
+    public void testIsBulkSupported() {
+        List<Object> fields = new ArrayList<>(Arrays.asList(new FieldDef("Id", "Id", "id"), new FieldDef("Name", "Name", "string")));
+
+        assertTrue(ForcePreparedStatement.isBulkSupported("SELECT Id, Name FROM Account WHERE Name LIKE 'A%'", fields));
+        assertFalse(ForcePreparedStatement.isBulkSupported("SELECT Name, COUNT(Id) FROM Account GROUP BY Name", fields));
+        assertFalse(ForcePreparedStatement.isBulkSupported("SELECT Id, Name FROM Account LIMIT 10 OFFSET 20", fields));
+
+        fields.add(Collections.singletonList(new FieldDef("Id", "Id", "id")));
+        assertFalse(ForcePreparedStatement.isBulkSupported("SELECT Id, Name, (SELECT Id FROM Contacts) FROM Account", fields));
+    }
+
+    @Test
+    public void testParallelHint() {
+        ForcePreparedStatement statement = new ForcePreparedStatement(null, "");
+
+        assertEquals(" select name from Account", statement.removeParallelHint(" Parallel select name from Account"));
+        assertEquals("select name from Account", statement.removeParallelHint("PARALLEL 8 ORDERED select name from Account"));
+        assertEquals("select parallel from Account", statement.removeParallelHint("select parallel from Account"));
     }
 
 }
@@ -0,0 +1,219 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class IncrementalCacheTest {
+
+    private static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(60);
+    private static final String SOQL = "SELECT Id, Name FROM Account";
+
+    private DB db;
+    private final AtomicLong clock = new AtomicLong(Instant.parse("2024-03-01T10:00:00Z").toEpochMilli());
+    private final FakeAccounts accounts = new FakeAccounts();
+    private IncrementalCache cache;
+
+    @Before
+    public void setUp() {
+        db = DBMaker.memoryDB().make();
+        ResultCache results = new ResultCache(db.hashMap("Results", Serializer.STRING, new ResultCache.DiskEntrySerializer()).create(),
+                1024 * 1024, TimeUnit.DAYS.toMillis(1), clock::get);
+        cache = new IncrementalCache(results,
+                db.hashMap("States", Serializer.STRING, new IncrementalCache.RefreshStateSerializer()).create(),
+                REFRESH_INTERVAL, clock::get);
+        for (int i = 0; i < 5; i++) {
+            accounts.save("001" + i, "Account " + i);
+        }
+        // the records are older than the overlap of the refreshes
+        clock.addAndGet(TimeUnit.HOURS.toMillis(1));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testReadsCachedResultUntilRefreshInterval() throws SQLException {
+        assertEquals(5, count(cache.get("accounts", SOQL, accounts, null)));
+        clock.addAndGet(REFRESH_INTERVAL - 1);
+        accounts.save("0010", "Renamed");
+
+        ResultSet cached = cache.get("accounts", SOQL, accounts, null);
+
+        assertTrue(cached.next());
+        assertEquals("Account 0", cached.getString("Name"));
+        assertEquals(1, cache.getFullLoads());
+        assertEquals(0, cache.getIncrementalRefreshes());
+        assertEquals(Arrays.asList(SOQL), accounts.queries);
+    }
+
+    @Test
+    public void testRefreshesChangedRecordsOnly() throws SQLException {
+        cache.get("accounts", SOQL, accounts, null);
+        clock.addAndGet(REFRESH_INTERVAL);
+        accounts.save("0011", "Renamed");
+        accounts.delete("0013");
+        accounts.save("0015", "Account 5");
+
+        ResultSet refreshed = cache.get("accounts", SOQL, accounts, null);
+
+        Map<String, String> rows = rows(refreshed);
+        assertEquals(5, rows.size());
+        assertEquals("Renamed", rows.get("0011"));
+        assertEquals("Account 5", rows.get("0015"));
+        assertFalse(rows.containsKey("0013"));
+        assertEquals(1, cache.getFullLoads());
+        assertEquals(1, cache.getIncrementalRefreshes());
+        assertEquals(3, cache.getRefreshedRows());
+        // read from the server time of the full load less the overlap
+        assertEquals("SELECT Id, Name FROM Account WHERE SystemModstamp > 2024-03-01T10:55:00Z", accounts.queries.get(1));
+        assertEquals(Arrays.asList("SELECT Id FROM Account WHERE SystemModstamp > 2024-03-01T10:55:00Z"), accounts.queryAllQueries);
+        assertEquals(rows, rows(cache.get("accounts", SOQL, accounts, null)));
+        assertEquals(2, accounts.queries.size());
+    }
+
+    @Test
+    public void testRefreshesResultOfObjectChangedByDriver() throws SQLException {
+        cache.get("accounts", SOQL, accounts, null);
+        accounts.save("0012", "Renamed");
+
+        assertEquals(1, cache.invalidate("ACCOUNT"));
+        assertEquals(0, cache.invalidate("Contact"));
+
+        assertEquals("Renamed", rows(cache.get("accounts", SOQL, accounts, null)).get("0012"));
+        assertEquals(1, cache.getIncrementalRefreshes());
+    }
+
+    @Test
+    public void testLoadsAgainWhenChangesAreNotRead() throws SQLException {
+        cache.get("accounts", SOQL, accounts, null);
+        clock.addAndGet(REFRESH_INTERVAL);
+        accounts.failure = new SQLException("No such column 'SystemModstamp' on entity 'Account'", "42000");
+        accounts.save("0012", "Renamed");
+
+        Map<String, String> rows = rows(cache.get("accounts", SOQL, accounts, null));
+
+        assertEquals("Renamed", rows.get("0012"));
+        assertEquals(2, cache.getFullLoads());
+        assertEquals(0, cache.getIncrementalRefreshes());
+    }
+
+    @Test
+    public void testDoesNotLoadAgainWhenCancelled() throws SQLException {
+        cache.get("accounts", SOQL, accounts, null);
+        clock.addAndGet(REFRESH_INTERVAL);
+        accounts.failure = new SQLException("The query was cancelled", QueryCancellation.CANCELLED_STATE);
+
+        try {
+            cache.get("accounts", SOQL, accounts, null);
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            assertEquals(QueryCancellation.CANCELLED_STATE, e.getSQLState());
+        }
+        assertEquals(1, cache.getFullLoads());
+    }
+
+    private static int count(ResultSet resultSet) throws SQLException {
+        int count = 0;
+        while (resultSet.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Map<String, String> rows(ResultSet resultSet) throws SQLException {
+        Map<String, String> rows = new LinkedHashMap<>();
+        while (resultSet.next()) {
+            rows.put(resultSet.getString("Id"), resultSet.getString("Name"));
+        }
+        return rows;
+    }
+
+    /**
+     * The accounts of an org, every change is stamped with the time of the clock.
+     */
+    private class FakeAccounts implements IncrementalCache.Source {
+
+        private final Map<String, String> names = new LinkedHashMap<>();
+        private final Map<String, Long> modstamps = new LinkedHashMap<>();
+        private final List<String> queries = new ArrayList<>();
+        private final List<String> queryAllQueries = new ArrayList<>();
+        private SQLException failure;
+
+        void save(String id, String name) {
+            names.put(id, name);
+            modstamps.put(id, clock.get());
+        }
+
+        void delete(String id) {
+            names.remove(id);
+            modstamps.put(id, clock.get());
+        }
+
+        private Set<String> modifiedIds(String soql) {
+            long since = Instant.parse(soql.substring(soql.lastIndexOf(' ') + 1)).toEpochMilli();
+            Set<String> ids = new HashSet<>();
+            modstamps.forEach((id, modstamp) -> {
+                if (modstamp > since) {
+                    ids.add(id);
+                }
+            });
+            return ids;
+        }
+
+        @Override
+        public Instant getServerTime() {
+            return Instant.ofEpochMilli(clock.get());
+        }
+
+        @Override
+        public ResultSet query() {
+            return query(SOQL);
+        }
+
+        @Override
+        public CachedResultSet query(String soql) {
+            queries.add(soql);
+            Set<String> ids = soql.contains("SystemModstamp") ? modifiedIds(soql) : names.keySet();
+            List<ColumnMap<String, Object>> rows = new ArrayList<>();
+            names.forEach((id, name) -> {
+                if (ids.contains(id)) {
+                    rows.add(new ColumnMap<String, Object>().add("Id", id).add("Name", name));
+                }
+            });
+            return new CachedResultSet(rows, ForcePreparedStatement.dummyMetaData(
+                    new ColumnMap<String, Object>().add("Id", null).add("Name", null)));
+        }
+
+        @Override
+        public Set<String> queryAllIds(String soql) throws SQLException {
+            if (failure != null) {
+                throw failure;
+            }
+            queryAllQueries.add(soql);
+            return modifiedIds(soql);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QueryCancellationTest {
+
+    @Test
+    public void testCancelRunsActionsOnce() throws Exception {
+        QueryCancellation cancellation = new QueryCancellation();
+        AtomicInteger stopped = new AtomicInteger();
+        cancellation.start(0);
+        cancellation.onCancel(stopped::incrementAndGet);
+        cancellation.check();
+
+        cancellation.cancel();
+        cancellation.cancel();
+        assertEquals(1, stopped.get());
+        try {
+            cancellation.check();
+            fail("The cancellation is not reported");
+        } catch (SQLTimeoutException e) {
+            fail("The cancellation is reported as the timeout");
+        } catch (SQLException e) {
+            assertEquals(QueryCancellation.CANCELLED_STATE, e.getSQLState());
+        }
+
+        // the action registered after the cancellation is run at once
+        cancellation.onCancel(stopped::incrementAndGet);
+        assertEquals(2, stopped.get());
+    }
+
+    @Test
+    public void testTimeoutCancelsQuery() throws Exception {
+        QueryCancellation cancellation = new QueryCancellation();
+        CountDownLatch stopped = new CountDownLatch(1);
+        cancellation.start(1);
+        cancellation.onCancel(stopped::countDown);
+
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        try {
+            cancellation.check();
+            fail("The timeout is not reported");
+        } catch (SQLTimeoutException e) {
+            assertEquals(QueryCancellation.TIMEOUT_STATE, e.getSQLState());
+        }
+    }
+
+    @Test
+    public void testFinishStopsTimerAndStartResets() throws Exception {
+        QueryCancellation cancellation = new QueryCancellation();
+        AtomicInteger stopped = new AtomicInteger();
+        cancellation.start(1);
+        cancellation.onCancel(stopped::incrementAndGet);
+        cancellation.finish();
+        Thread.sleep(1200);
+        assertEquals(0, stopped.get());
+        assertFalse(cancellation.isCancelled());
+
+        cancellation.cancel();
+        cancellation.start(0);
+        assertFalse(cancellation.isCancelled());
+        cancellation.check();
+    }
+}
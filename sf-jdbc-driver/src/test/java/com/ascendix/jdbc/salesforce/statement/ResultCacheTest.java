@@ -0,0 +1,421 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import com.ascendix.jdbc.salesforce.resultset.CommandLogCachedResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+
+    private static final long TTL = 60_000;
+
+    private DB db;
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        db = DBMaker.memoryDB().make();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private ResultCache cache(long heapBudget) {
+        return new ResultCache(db.hashMap("DataCache", Serializer.STRING, new ResultCache.DiskEntrySerializer()).createOrOpen(),
+                db.treeSet("DataCacheTags", Serializer.STRING).createOrOpen(), heapBudget, TTL, clock::get);
+    }
+
+    private ResultSet get(ResultCache cache, String key, String... objectNames) throws SQLException {
+        return cache.get(key, () -> load(key, 3), () -> Arrays.asList(objectNames), null);
+    }
+
+    private ResultSet load(String name, int rows) {
+        loads.incrementAndGet();
+        List<ColumnMap<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            result.add(new ColumnMap<String, Object>().add("Id", "001" + i).add("Name", name + " " + i));
+        }
+        return new CachedResultSet(result, ForcePreparedStatement.dummyMetaData(result.get(0)));
+    }
+
+    @Test
+    public void testServesHotResultsFromHeap() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+
+        ResultSet first = cache.get("accounts", () -> load("Account", 10));
+        ResultSet second = cache.get("accounts", () -> load("Account", 10));
+        ResultSet third = cache.get("accounts", () -> load("Account", 10));
+
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHeapHits());
+        assertEquals(1, cache.getHeapMisses());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(1, cache.getHeapEntries());
+        assertTrue(cache.getHeapBytes() > 0);
+        assertNotSame(second, third);
+        // every reader has its own cursor over the shared rows
+        assertTrue(second.absolute(5));
+        assertTrue(third.next());
+        assertEquals("Account 4", second.getString("Name"));
+        assertEquals("Account 0", third.getString("Name"));
+        assertTrue(first.next());
+        assertEquals("Account 0", first.getString("Name"));
+    }
+
+    @Test
+    public void testLoadsConcurrentMissesOnce() throws Exception {
+        ResultCache cache = cache(1024 * 1024);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<ResultSet>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(() -> cache.get("accounts", () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                    return load("Account", 3);
+                })));
+            }
+            for (int i = 0; i < 1000 && cache.getCoalescedLoads() < 9; i++) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Set<ResultSet> cursors = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<ResultSet> result : results) {
+                ResultSet cached = result.get(10, TimeUnit.SECONDS);
+                assertTrue(cached.last());
+                assertEquals("Account 2", cached.getString("Name"));
+                cursors.add(cached);
+            }
+            assertEquals(1, loads.get());
+            assertEquals(9, cache.getCoalescedLoads());
+            assertEquals(10, cursors.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDemotesLeastRecentlyReadResultsToDisk() throws SQLException {
+        ResultCache probe = cache(Long.MAX_VALUE);
+        probe.put("probe", load("Account", 100));
+        long resultBytes = probe.getHeapBytes();
+        ResultCache cache = new ResultCache(db.hashMap("Demoted", Serializer.STRING, new ResultCache.DiskEntrySerializer()).create(),
+                resultBytes * 3 / 2, TTL, clock::get);
+
+        cache.put("accounts", load("Account", 100));
+        cache.put("contacts", load("Contact", 100));
+
+        assertEquals(1, cache.getHeapEntries());
+        ResultSet accounts = cache.get("accounts");
+        assertNotNull(accounts);
+        assertEquals(1, cache.getDiskHits());
+        assertTrue(accounts.absolute(100));
+        assertEquals("Account 99", accounts.getString("Name"));
+
+        // promoted back to heap, the contacts are demoted in turn
+        assertNotNull(cache.get("accounts"));
+        assertEquals(1, cache.getHeapHits());
+        assertNotNull(cache.get("contacts"));
+        assertEquals(2, cache.getDiskHits());
+        assertEquals(0, cache.getDiskMisses());
+    }
+
+    @Test
+    public void testKeepsEverythingOnDiskWithoutBudget() throws SQLException {
+        ResultCache cache = cache(0);
+
+        cache.get("accounts", () -> load("Account", 3));
+        ResultSet cached = cache.get("accounts", () -> load("Account", 3));
+
+        assertEquals(1, loads.get());
+        assertEquals(0, cache.getHeapEntries());
+        assertEquals(1, cache.getDiskHits());
+        assertTrue(cached.last());
+        assertEquals("Account 2", cached.getString("Name"));
+    }
+
+    @Test
+    public void testExpiresInBothTiers() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        cache.get("accounts", () -> load("Account", 3));
+        ResultCache diskOnly = new ResultCache(db.hashMap("DiskOnly", Serializer.STRING, new ResultCache.DiskEntrySerializer()).create(),
+                0, TTL, clock::get);
+        diskOnly.get("accounts", () -> load("Account", 3));
+
+        clock.addAndGet(TTL);
+
+        assertNull(cache.get("accounts"));
+        assertNull(diskOnly.get("accounts"));
+        assertEquals(0, cache.getHeapEntries());
+        cache.get("accounts", () -> load("Account", 3));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testKeepsOtherResultsOnDisk() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+
+        cache.put("log", new CommandLogCachedResultSet(Collections.singletonList("done")));
+        ResultSet cached = cache.get("log");
+
+        assertEquals(0, cache.getHeapEntries());
+        assertEquals(CommandLogCachedResultSet.class, cached.getClass());
+        assertTrue(cached.next());
+        assertEquals("done", cached.getString(CommandLogCachedResultSet.LOG_COLUMN));
+    }
+
+    @Test
+    public void testWritesHeapResultsThroughToDisk() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        cache.setWriteThrough(true);
+        ResultSet loaded = get(cache, "accounts", "Account");
+
+        // the cache of the next JVM reads the disk tier kept in the cache file
+        ResultCache restarted = cache(1024 * 1024);
+        ResultSet cached = get(restarted, "accounts", "Account");
+
+        assertEquals(1, loads.get());
+        assertEquals(1, restarted.getDiskHits());
+        assertTrue(loaded.next());
+        assertTrue(cached.next());
+        assertEquals("accounts 0", cached.getString("Name"));
+        assertEquals(1, restarted.invalidate("Account"));
+        assertNull(restarted.get("accounts"));
+    }
+
+    @Test
+    public void testInvalidatesResultsOfChangedObject() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        get(cache, "contacts", "Contact", "Account");
+        get(cache, "accounts", "Account", "User");
+        get(cache, "users", "User");
+        get(cache, "search", ResultCache.ANY_OBJECT);
+
+        assertEquals(3, cache.invalidate("account"));
+
+        assertNull(cache.get("contacts"));
+        assertNull(cache.get("accounts"));
+        assertNull(cache.get("search"));
+        assertNotNull(cache.get("users"));
+        get(cache, "accounts", "Account", "User");
+        assertEquals(5, loads.get());
+        assertEquals(2, cache.invalidate("USER"));
+    }
+
+    @Test
+    public void testInvalidatesResultsOnDisk() throws SQLException {
+        ResultCache cache = cache(0);
+        get(cache, "accounts", "Account");
+
+        cache.invalidate("Account");
+
+        assertNull(cache.get("accounts"));
+        assertEquals(0, cache.getDiskHits());
+    }
+
+    @Test
+    public void testRemovesTagsOfRemovedAndExpiredResults() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        get(cache, "contacts", "Contact", "Account");
+        get(cache, "accounts", "Account");
+        ResultCache diskOnly = new ResultCache(db.hashMap("DiskOnly", Serializer.STRING, new ResultCache.DiskEntrySerializer()).create(),
+                0, TTL, clock::get);
+        get(diskOnly, "accounts", "Account");
+
+        cache.remove("contacts");
+        assertEquals(2, cache.getTags());
+        clock.addAndGet(TTL);
+        assertNull(cache.get("accounts"));
+        assertNull(diskOnly.get("accounts"));
+
+        assertEquals(0, cache.getTags());
+        assertEquals(0, diskOnly.getTags());
+        assertEquals(0, cache.invalidate("Account"));
+    }
+
+    @Test
+    public void testDoesNotCacheResultLoadedWhileObjectChanged() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+
+        ResultSet loaded = cache.get("accounts", () -> {
+            ResultSet result = load("Account", 3);
+            cache.invalidate("Account");
+            return result;
+        }, () -> Collections.singleton("Account"), null);
+        get(cache, "contacts", "Contact");
+
+        assertTrue(loaded.next());
+        assertNull(cache.get("accounts"));
+        assertNotNull(cache.get("contacts"));
+    }
+
+    @Test
+    public void testExpiresByPolicy() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        CachePolicy shortLived = new CachePolicy(TTL / 10, 0, 0);
+        cache.get("accounts", () -> load("Account", 3), Collections::emptySet, null, shortLived, null);
+        cache.get("contacts", () -> load("Contact", 3));
+
+        clock.addAndGet(TTL / 10);
+
+        assertNull(cache.get("accounts"));
+        assertNotNull(cache.get("contacts"));
+    }
+
+    @Test
+    public void testDoesNotCacheResultOverMaxRows() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        CachePolicy policy = new CachePolicy(TTL, 5, 0);
+
+        ResultSet loaded = cache.get("accounts", () -> load("Account", 6), Collections::emptySet, null, policy, null);
+        cache.get("contacts", () -> load("Contact", 5), Collections::emptySet, null, policy, null);
+
+        assertTrue(loaded.last());
+        assertEquals(6, loaded.getRow());
+        assertNull(cache.get("accounts"));
+        assertNotNull(cache.get("contacts"));
+    }
+
+    @Test
+    public void testLoadsConcurrentMissesOfResultOverMaxRowsOnce() throws Exception {
+        ResultCache cache = cache(1024 * 1024);
+        CachePolicy policy = new CachePolicy(TTL, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<ResultSet>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(() -> cache.get("accounts", () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                    return load("Account", 6);
+                }, Collections::emptySet, null, policy, null)));
+            }
+            for (int i = 0; i < 1000 && cache.getCoalescedLoads() < 9; i++) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Set<ResultSet> cursors = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<ResultSet> result : results) {
+                ResultSet loaded = result.get(10, TimeUnit.SECONDS);
+                assertTrue(loaded.last());
+                assertEquals(6, loaded.getRow());
+                cursors.add(loaded);
+            }
+            // the result is not cached, the waiting threads read the rows of the one load
+            assertEquals(1, loads.get());
+            assertEquals(10, cursors.size());
+            assertNull(cache.get("accounts"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testServesExpiredResultWhileLoadingItInBackground() throws Exception {
+        ResultCache cache = cache(0);
+        CachePolicy policy = new CachePolicy(TTL, 0, TTL);
+        CountDownLatch release = new CountDownLatch(1);
+        ResultCache.Loader refresher = () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            }
+            return load("Reloaded", 3);
+        };
+        cache.get("accounts", () -> load("Account", 3), Collections::emptySet, null, policy, refresher);
+        clock.addAndGet(TTL);
+
+        ResultSet stale = cache.get("accounts", () -> load("Account", 3), Collections::emptySet, null, policy, refresher);
+        ResultSet staleAgain = cache.get("accounts", () -> load("Account", 3), Collections::emptySet, null, policy, refresher);
+
+        assertTrue(stale.next());
+        assertEquals("Account 0", stale.getString("Name"));
+        assertTrue(staleAgain.next());
+        assertEquals(2, cache.getStaleHits());
+        assertNull(cache.get("accounts"));
+        release.countDown();
+        for (int i = 0; i < 1000 && cache.get("accounts") == null; i++) {
+            Thread.sleep(10);
+        }
+        ResultSet refreshed = cache.get("accounts");
+        assertTrue(refreshed.next());
+        assertEquals("Reloaded 0", refreshed.getString("Name"));
+        // loaded once in background, the readers did not wait for it
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLoadsResultPastItsStaleTime() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        CachePolicy policy = new CachePolicy(TTL, 0, TTL);
+        ResultCache.Loader refresher = () -> {
+            throw new SQLException("not expected");
+        };
+        cache.get("accounts", () -> load("Account", 3), Collections::emptySet, null, policy, refresher);
+
+        clock.addAndGet(2 * TTL);
+
+        ResultSet loaded = cache.get("accounts", () -> load("Reloaded", 3), Collections::emptySet, null, policy, refresher);
+        assertTrue(loaded.next());
+        assertEquals("Reloaded 0", loaded.getString("Name"));
+        assertEquals(0, cache.getStaleHits());
+    }
+
+    @Test
+    public void testRaisesHeapBudget() {
+        ResultCache cache = cache(100);
+
+        cache.raiseHeapBudget(50);
+        assertEquals(100, cache.getHeapBudget());
+        cache.raiseHeapBudget(200);
+        assertEquals(200, cache.getHeapBudget());
+    }
+
+    @Test
+    public void testRemove() throws SQLException {
+        ResultCache cache = cache(1024 * 1024);
+        cache.get("accounts", () -> load("Account", 3));
+
+        cache.remove("accounts");
+
+        assertNull(cache.get("accounts"));
+        assertEquals(0, cache.getHeapBytes());
+    }
+}
@@ -0,0 +1,152 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String> flights = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private String slowCall() throws SQLException {
+        calls.incrementAndGet();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new SQLException(e);
+        }
+        return "loaded";
+    }
+
+    private void awaitWaiting(long waiting) throws InterruptedException {
+        for (int i = 0; i < 1000 && flights.getCoalesced() < waiting; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(waiting, flights.getCoalesced());
+    }
+
+    @Test
+    public void testRunsConcurrentCallsOnce() throws Exception {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(executor.submit(() -> flights.run("key", this::slowCall, null)));
+        }
+        awaitWaiting(19);
+
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("loaded", result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRunsDifferentKeysApart() throws Exception {
+        release.countDown();
+
+        assertEquals("loaded", flights.run("first", this::slowCall, null));
+        assertEquals("loaded", flights.run("second", this::slowCall, null));
+        assertEquals("loaded", flights.run("first", this::slowCall, null));
+
+        assertEquals(3, calls.get());
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    @Test
+    public void testPropagatesFailureWithoutKeepingIt() throws Exception {
+        Future<String> failed = executor.submit(() -> flights.run("key", () -> {
+            slowCall();
+            throw new SQLException("INVALID_FIELD", "42000", 7);
+        }, null));
+        awaitRunning();
+        Future<String> waiting = executor.submit(() -> flights.run("key", this::slowCall, null));
+        awaitWaiting(1);
+
+        release.countDown();
+
+        SQLException failure = failure(failed);
+        SQLException waitingFailure = failure(waiting);
+        assertEquals("INVALID_FIELD", failure.getMessage());
+        assertEquals("INVALID_FIELD", waitingFailure.getMessage());
+        assertEquals("42000", waitingFailure.getSQLState());
+        assertEquals(7, waitingFailure.getErrorCode());
+        assertSame(failure, waitingFailure.getCause());
+        assertEquals("loaded", flights.run("key", this::slowCall, null));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testRunsAgainWhenCallerIsCancelled() throws Exception {
+        Future<String> cancelled = executor.submit(() -> flights.run("key", () -> {
+            slowCall();
+            throw new SQLException("The query was cancelled", QueryCancellation.CANCELLED_STATE);
+        }, null));
+        awaitRunning();
+        Future<String> waiting = executor.submit(() -> flights.run("key", () -> {
+            calls.incrementAndGet();
+            return "reloaded";
+        }, null));
+        awaitWaiting(1);
+
+        release.countDown();
+
+        assertEquals(QueryCancellation.CANCELLED_STATE, failure(cancelled).getSQLState());
+        assertEquals("reloaded", waiting.get(10, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testStopsWaitingWhenCancelled() throws Exception {
+        Future<String> running = executor.submit(() -> flights.run("key", this::slowCall, null));
+        awaitRunning();
+        QueryCancellation cancellation = new QueryCancellation();
+        cancellation.start(0);
+        Future<String> waiting = executor.submit(() -> flights.run("key", this::slowCall, cancellation));
+        awaitWaiting(1);
+
+        cancellation.cancel();
+
+        assertEquals(QueryCancellation.CANCELLED_STATE, failure(waiting).getSQLState());
+        assertFalse(running.isDone());
+        release.countDown();
+        assertEquals("loaded", running.get(10, TimeUnit.SECONDS));
+    }
+
+    private void awaitRunning() throws InterruptedException {
+        for (int i = 0; i < 1000 && calls.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static SQLException failure(Future<String> result) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return (SQLException) e.getCause();
+        }
+        fail("SQLException expected");
+        return null;
+    }
+}
@@ -0,0 +1,154 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import com.ascendix.jdbc.salesforce.metadata.ColumnMap;
+import com.ascendix.jdbc.salesforce.resultset.CachedResultSet;
+import org.junit.Test;
+import org.mule.tools.soql.query.SOQLQuery;
+import org.mule.tools.soql.query.SOQLSubQuery;
+import org.mule.tools.soql.query.select.FieldSpec;
+import org.mule.tools.soql.query.select.SelectSpec;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SoqlCacheKeyTest {
+
+    @Test
+    public void testNormalizesWhitespaceAndCase() {
+        assertEquals("SELECT ID FROM ACCOUNT WHERE NAME = 'Acme  Inc' AND TYPE != 'it''s'",
+                SoqlCacheKey.normalize("  select Id\n\tfrom  Account where Name = 'Acme  Inc' and Type != 'it''s'  "));
+        assertEquals("SELECT ID FROM ACCOUNT WHERE NAME = 'a\\' b'",
+                SoqlCacheKey.normalize("select Id from Account where Name = 'a\\' b'"));
+    }
+
+    @Test
+    public void testEquivalentTextsShareKey() {
+        SoqlCacheKey key = SoqlCacheKey.of("SELECT Id, Name FROM Account WHERE Name = 'x'");
+
+        assertEquals(key.getKey(), SoqlCacheKey.of("select id,  name\nFROM account where name = 'x'").getKey());
+        assertNotEquals(key.getKey(), SoqlCacheKey.of("SELECT Id, Name FROM Account WHERE Name = 'X'").getKey());
+        assertSame(key, SoqlCacheKey.of("SELECT Id, Name FROM Account WHERE Name = 'x'"));
+    }
+
+    @Test
+    public void testSortsPlainFields() {
+        SoqlCacheKey nameFirst = SoqlCacheKey.canonical(query("SELECT Name, Account.Id, Id FROM Contact",
+                field("Name"), field("Id", "Account"), field("Id")), "");
+        SoqlCacheKey idFirst = SoqlCacheKey.canonical(query("SELECT Id, Name, Account.Id FROM Contact",
+                field("Id"), field("Name"), field("Id", "Account")), "");
+
+        assertEquals("SELECT ACCOUNT.ID, ID, NAME FROM CONTACT", nameFirst.getKey());
+        assertEquals(nameFirst.getKey(), idFirst.getKey());
+    }
+
+    @Test
+    public void testKeepsOrderOfOtherSelectLists() {
+        SoqlCacheKey withSubquery = SoqlCacheKey.canonical(query("SELECT Name, Id, (SELECT Id FROM Contacts) FROM Account",
+                field("Name"), field("Id"), new SOQLSubQuery()), "");
+        SoqlCacheKey withAlias = SoqlCacheKey.canonical(query("SELECT Name n, Id FROM Account",
+                new AliasedField("Name", "n"), field("Id")), "");
+
+        assertEquals("SELECT NAME, ID, (SELECT ID FROM CONTACTS) FROM ACCOUNT", withSubquery.getKey());
+        assertEquals("SELECT NAME N, ID FROM ACCOUNT", withAlias.getKey());
+    }
+
+    @Test
+    public void testReadsCachedResultInStatementOrder() throws Exception {
+        SoqlCacheKey nameFirst = SoqlCacheKey.canonical(query("SELECT Name, Industry, Id FROM Account",
+                field("Name"), field("Industry"), field("Id")), "");
+        SoqlCacheKey idFirst = SoqlCacheKey.canonical(query("SELECT Id, Name, Industry FROM Account",
+                field("Id"), field("Name"), field("Industry")), "");
+        List<ColumnMap<String, Object>> rows = new ArrayList<>();
+        rows.add(new ColumnMap<String, Object>().add("Name", "Acme").add("Industry", "Energy").add("Id", "001A"));
+        ResultSet loaded = new CachedResultSet(rows, ForcePreparedStatement.dummyMetaData(rows.get(0)));
+
+        ResultSet cached = nameFirst.toKeyOrder(loaded);
+        ResultSet read = idFirst.toStatementOrder(cached);
+
+        assertEquals("Id", cached.getMetaData().getColumnName(1));
+        assertEquals("Industry", cached.getMetaData().getColumnName(2));
+        ResultSetMetaData metaData = read.getMetaData();
+        assertEquals(Arrays.asList("Id", "Name", "Industry"), Arrays.asList(
+                metaData.getColumnName(1), metaData.getColumnName(2), metaData.getColumnName(3)));
+        assertTrue(read.next());
+        assertEquals("001A", read.getString(1));
+        assertEquals("Acme", read.getString(2));
+        assertEquals("Energy", read.getString("Industry"));
+        assertEquals("Name", idFirst.toStatementOrder(nameFirst.toKeyOrder(loaded.getMetaData())).getColumnName(2));
+    }
+
+    @Test
+    public void testDoesNotReorderResultWithOtherColumns() throws Exception {
+        SoqlCacheKey nameFirst = SoqlCacheKey.canonical(query("SELECT Name, Industry, Id FROM Account",
+                field("Name"), field("Industry"), field("Id")), "");
+        List<ColumnMap<String, Object>> rows = new ArrayList<>();
+        rows.add(new ColumnMap<String, Object>().add("Name", "Acme").add("Id", "001A"));
+        ResultSet loaded = new CachedResultSet(rows, ForcePreparedStatement.dummyMetaData(rows.get(0)));
+
+        try {
+            nameFirst.toKeyOrder(loaded);
+            fail("the result with other columns is not cached under the shared key");
+        } catch (SoqlCacheKey.NotInKeyOrderException e) {
+            assertSame(loaded, e.getResult());
+        }
+    }
+
+    private static FieldSpec field(String name, String... objects) {
+        return new FieldSpec() {
+            @Override
+            public String getFieldName() {
+                return name;
+            }
+
+            @Override
+            public List<String> getObjectPrefixNames() {
+                return Arrays.asList(objects);
+            }
+        };
+    }
+
+    private static class AliasedField extends FieldSpec {
+        private final String name;
+        private final String alias;
+
+        AliasedField(String name, String alias) {
+            this.name = name;
+            this.alias = alias;
+        }
+
+        @Override
+        public String getFieldName() {
+            return name;
+        }
+
+        @Override
+        public String getAlias() {
+            return alias;
+        }
+
+        @Override
+        public List<String> getObjectPrefixNames() {
+            return Collections.emptyList();
+        }
+    }
+
+    private static SOQLQuery query(String text, SelectSpec... specs) {
+        return new SOQLQuery() {
+            @Override
+            public List<SelectSpec> getSelectSpecs() {
+                return Arrays.asList(specs);
+            }
+
+            @Override
+            public String toSOQLText() {
+                return text;
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SoqlChunksTest {
+
+    @Test
+    public void testSplittableQueries() {
+        assertTrue(SoqlChunks.isSplittable("SELECT Id, Name FROM Account"));
+        assertTrue(SoqlChunks.isSplittable("SELECT Id, (SELECT Id FROM Contacts) FROM Account WHERE Name LIKE 'Group%' LIMIT 10"));
+        assertTrue(SoqlChunks.isSplittable("SELECT Id FROM Account ORDER BY Id"));
+        assertTrue(SoqlChunks.isSplittable("SELECT Id FROM Account ORDER BY Id ASC LIMIT 5"));
+
+        assertFalse(SoqlChunks.isSplittable("SELECT Name, COUNT(Id) FROM Account GROUP BY Name"));
+        assertFalse(SoqlChunks.isSplittable("SELECT COUNT() FROM Account"));
+        assertFalse(SoqlChunks.isSplittable("SELECT Id FROM Account ORDER BY Name"));
+        assertFalse(SoqlChunks.isSplittable("SELECT Id FROM Account ORDER BY Id DESC"));
+        assertFalse(SoqlChunks.isSplittable("SELECT Id FROM Account LIMIT 10 OFFSET 5"));
+        assertFalse(SoqlChunks.isSplittable("INSERT INTO Account(Name) VALUES ('a')"));
+    }
+
+    @Test
+    public void testLimitsMergedRangesOnce() {
+        String soql = "SELECT Id FROM Account LIMIT 10";
+        List<String> queries = SoqlChunks.splitQuery(soql, "001000000000000", "001000000000010", 4);
+
+        assertEquals(4, queries.size());
+        // every range may return the 10 rows, the merge of the ranges is limited to them
+        assertEquals("SELECT Id FROM Account WHERE Id < '00100000000000F' LIMIT 10", queries.get(0));
+        assertEquals(10, SoqlChunks.limitOf(soql));
+        assertEquals(0, SoqlChunks.limitOf("SELECT Id, (SELECT Id FROM Contacts LIMIT 5) FROM Account"));
+    }
+
+    @Test
+    public void testOrderedById() {
+        assertTrue(SoqlChunks.isOrderedById("SELECT Id FROM Account ORDER BY Id"));
+        assertFalse(SoqlChunks.isOrderedById("SELECT Id FROM Account"));
+    }
+
+    @Test
+    public void testBoundaryQuery() {
+        assertEquals("SELECT Id FROM Account WHERE Name = 'x' ORDER BY Id ASC LIMIT 1",
+                SoqlChunks.boundaryQuery("SELECT Id, Name FROM Account WHERE Name = 'x' ORDER BY Id LIMIT 100", true));
+        assertEquals("SELECT Id FROM Account ORDER BY Id DESC LIMIT 1",
+                SoqlChunks.boundaryQuery("SELECT Id, Name FROM Account", false));
+    }
+
+    @Test
+    public void testAddsRangeCondition() {
+        assertEquals("SELECT Id FROM Account WHERE Id >= 'a'",
+                SoqlChunks.withCondition("SELECT Id FROM Account", "Id >= 'a'"));
+        assertEquals("SELECT Id FROM Account WHERE (Name = 'x' OR Name = 'y') AND Id >= 'a' ORDER BY Id LIMIT 5",
+                SoqlChunks.withCondition("SELECT Id FROM Account WHERE Name = 'x' OR Name = 'y' ORDER BY Id LIMIT 5", "Id >= 'a'"));
+        assertEquals("SELECT Id, (SELECT Id FROM Contacts WHERE Name = 'c') FROM Account WHERE Id >= 'a' LIMIT 5",
+                SoqlChunks.withCondition("SELECT Id, (SELECT Id FROM Contacts WHERE Name = 'c') FROM Account LIMIT 5", "Id >= 'a'"));
+    }
+
+    @Test
+    public void testSplitsIdRange() {
+        List<String> boundaries = SoqlChunks.splitIdRange("001000000000000", "001000000000010", 2);
+        // 10 in base 62 is 62, the middle is 31 - V
+        assertEquals(Collections.singletonList("00100000000000V"), boundaries);
+
+        boundaries = SoqlChunks.splitIdRange("001A00000000000AAA", "001z00000000000AAA", 8);
+        assertEquals(7, boundaries.size());
+        String previous = "001A00000000000";
+        for (String boundary : boundaries) {
+            assertEquals(15, boundary.length());
+            assertTrue(boundary + " follows " + previous, boundary.compareTo(previous) > 0);
+            previous = boundary;
+        }
+        assertTrue(previous.compareTo("001z00000000000") < 0);
+
+        // not enough Ids between the first and the last one
+        assertEquals(Collections.singletonList("001000000000001"), SoqlChunks.splitIdRange("001000000000000", "001000000000002", 8));
+        assertTrue(SoqlChunks.splitIdRange("001000000000000", "001000000000000", 8).isEmpty());
+    }
+
+    @Test
+    public void testSplitsQuery() {
+        assertEquals(Arrays.asList(
+                "SELECT Id FROM Account WHERE (Name != null) AND Id < '00100000000000V'",
+                "SELECT Id FROM Account WHERE (Name != null) AND Id >= '00100000000000V'"),
+                SoqlChunks.splitQuery("SELECT Id FROM Account WHERE Name != null", "001000000000000", "001000000000010", 2));
+        assertEquals(Collections.singletonList("SELECT Id FROM Account"),
+                SoqlChunks.splitQuery("SELECT Id FROM Account", "001000000000000", "001000000000000", 4));
+    }
+}
@@ -0,0 +1,53 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class SoqlDeltasTest {
+
+    private static final Instant SINCE = Instant.parse("2024-03-01T10:15:30.250Z");
+
+    @Test
+    public void testRefreshableQueries() {
+        assertTrue(SoqlDeltas.isRefreshable("SELECT Id, Name FROM Account"));
+        assertTrue(SoqlDeltas.isRefreshable("select Name, id from Account where Name LIKE 'Group%' and Industry = 'Energy'"));
+
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Name FROM Account"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id, Owner.Name FROM Account"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id, (SELECT Id FROM Contacts) FROM Account"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id, FORMAT(Amount) FROM Opportunity"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Account a"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Account ORDER BY Name"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Account LIMIT 10"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Account WHERE Id IN (SELECT AccountId FROM Contact)"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id, Name FROM Contact WHERE Account.Industry = 'Tech'"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Contact WHERE Name = 'a' AND (Owner.IsActive = true)"));
+        assertTrue(SoqlDeltas.isRefreshable("SELECT Id FROM Opportunity WHERE Amount > 5.5 AND Name = 'a.b'"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Task WHERE ActivityDate = LAST_N_DAYS:7"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Task WHERE ActivityDate > TODAY"));
+        assertFalse(SoqlDeltas.isRefreshable("SELECT Id FROM Task WHERE (ActivityDate > TODAY)"));
+        assertFalse(SoqlDeltas.isRefreshable(
+                "SELECT Id FROM Opportunity WHERE Type = 'x' AND (CloseDate = THIS_MONTH OR Amount > 5)"));
+        assertTrue(SoqlDeltas.isRefreshable(
+                "SELECT Id FROM Opportunity WHERE Type = 'x' AND (Name = 'TODAY' OR Amount > 5)"));
+        assertFalse(SoqlDeltas.isRefreshable("INSERT INTO Account(Name) VALUES ('a')"));
+    }
+
+    @Test
+    public void testModifiedSince() {
+        assertEquals("SELECT Id, Name FROM Account WHERE SystemModstamp > 2024-03-01T10:15:30Z",
+                SoqlDeltas.modifiedSince("SELECT Id, Name FROM Account", SINCE));
+        assertEquals("SELECT Id FROM Account WHERE (Name = 'a' OR Name = 'b') AND SystemModstamp > 2024-03-01T10:15:30Z",
+                SoqlDeltas.modifiedSince("SELECT Id FROM Account WHERE Name = 'a' OR Name = 'b'", SINCE));
+    }
+
+    @Test
+    public void testModifiedIdsSince() {
+        assertEquals("Account", SoqlDeltas.objectName("SELECT Id FROM Account WHERE Name = 'a'"));
+        assertEquals("SELECT Id FROM Account WHERE SystemModstamp > 2024-03-01T10:15:30Z",
+                SoqlDeltas.modifiedIdsSince("SELECT Id, Name FROM Account WHERE Name = 'a'", SINCE));
+    }
+}
@@ -0,0 +1,53 @@
+package com.ascendix.jdbc.salesforce.statement;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SoqlLimitsTest {
+
+    @Test
+    public void testAppendsLimit() {
+        assertEquals("SELECT Id FROM Account LIMIT 100",
+                SoqlLimits.applyMaxRows("SELECT Id FROM Account", 100));
+        assertEquals("SELECT Id FROM Account WHERE Name = 'a' ORDER BY Name LIMIT 100;\n",
+                SoqlLimits.applyMaxRows("SELECT Id FROM Account WHERE Name = 'a' ORDER BY Name;\n", 100));
+    }
+
+    @Test
+    public void testKeepsQueryWithoutMaxRows() {
+        assertEquals("SELECT Id FROM Account", SoqlLimits.applyMaxRows("SELECT Id FROM Account", 0));
+    }
+
+    @Test
+    public void testKeepsTighterLimit() {
+        assertEquals("SELECT Id FROM Account LIMIT 10",
+                SoqlLimits.applyMaxRows("SELECT Id FROM Account LIMIT 10", 100));
+    }
+
+    @Test
+    public void testLowersLooserLimit() {
+        assertEquals("SELECT Id FROM Account limit 100 OFFSET 5",
+                SoqlLimits.applyMaxRows("SELECT Id FROM Account limit 5000 OFFSET 5", 100));
+    }
+
+    @Test
+    public void testInsertsLimitBeforeTrailingClauses() {
+        assertEquals("SELECT Id FROM Account LIMIT 100 OFFSET 10",
+                SoqlLimits.applyMaxRows("SELECT Id FROM Account OFFSET 10", 100));
+        assertEquals("SELECT Id FROM Account LIMIT 100 FOR VIEW",
+                SoqlLimits.applyMaxRows("SELECT Id FROM Account FOR VIEW", 100));
+    }
+
+    @Test
+    public void testIgnoresSubqueriesAndLiterals() {
+        assertEquals("SELECT Id, (SELECT Id FROM Contacts LIMIT 5) FROM Account WHERE Name = 'x LIMIT 1' LIMIT 100",
+                SoqlLimits.applyMaxRows("SELECT Id, (SELECT Id FROM Contacts LIMIT 5) FROM Account WHERE Name = 'x LIMIT 1'", 100));
+    }
+
+    @Test
+    public void testKeepsCountAndNonSelectQueries() {
+        assertEquals("SELECT COUNT() FROM Account", SoqlLimits.applyMaxRows("SELECT COUNT() FROM Account", 100));
+        assertEquals("FIND {test} RETURNING Account", SoqlLimits.applyMaxRows("FIND {test} RETURNING Account", 100));
+    }
+}
@@ -1,5 +1,7 @@
 package com.ascendix.jdbc.salesforce.statement.processor;
 
+import com.ascendix.jdbc.salesforce.connection.ForceConnection;
+import com.ascendix.jdbc.salesforce.delegates.StubPartnerConnection;
 import com.ascendix.jdbc.salesforce.statement.FieldDef;
 import com.sforce.soap.partner.DescribeSObjectResult;
 import com.thoughtworks.xstream.XStream;
@@ -11,12 +13,24 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class SoqlQueryAnalyzerTest {
 
@@ -219,4 +233,59 @@ public class SoqlQueryAnalyzerTest {
         assertEquals("id", fieldDef.getType());
     }
 
+    @Test
+    public void testGetObjectNames() {
+        SoqlQueryAnalyzer analyzer = new SoqlQueryAnalyzer("SELECT Name, Owner.Name, (SELECT Id FROM Contacts) FROM Account"
+                + " WHERE Id IN (SELECT AccountId FROM Opportunity) AND Name != 'FROM Lead'", n -> this.describeSObject(n));
+
+        Set<String> actuals = analyzer.getObjectNames();
+
+        assertTrue(actuals.containsAll(Arrays.asList("Account", "User", "Contact", "Opportunity")));
+        assertTrue(actuals.contains("account"));
+        assertFalse(actuals.contains("Lead"));
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentAnalyzersShareDescribeCache() throws Exception {
+        ForceConnection connection = new ForceConnection(new StubPartnerConnection(), null);
+        Map<String, DescribeSObjectResult> cache = connection.getCache();
+        Map<String, AtomicInteger> describeCalls = new ConcurrentHashMap<>();
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String soql = i % 2 == 0 ? "SELECT Id, Name FROM Account" : "SELECT Id, Account.Name FROM Contact";
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<String> names = null;
+                    for (int run = 0; run < 50; run++) {
+                        SoqlQueryAnalyzer analyzer = new SoqlQueryAnalyzer(soql, n -> {
+                            describeCalls.computeIfAbsent(n, key -> new AtomicInteger()).incrementAndGet();
+                            return describeSObject(n);
+                        }, cache);
+                        names = listFlatFieldNames(analyzer);
+                    }
+                    return names;
+                }));
+            }
+            start.countDown();
+            for (Future<List<String>> result : results) {
+                assertEquals(Arrays.asList("Id", "Name"), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the objects described by several threads at once are kept once, the later runs take them from the cache
+        assertEquals(2, cache.size());
+        assertTrue(describeCalls.get("Account").get() <= threads);
+        assertTrue(describeCalls.get("Contact").get() <= threads);
+        DescribeSObjectResult account = cache.get("Account");
+        new SoqlQueryAnalyzer("SELECT Id FROM Account", n -> {
+            throw new AssertionError("described again: " + n);
+        }, cache).getFieldDefinitions();
+        assertSame(account, cache.get("Account"));
+    }
 }